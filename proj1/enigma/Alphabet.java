@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Farhad Alemi
@@ -10,6 +12,15 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _chars = chars;
+        int max = -1;
+        for (int i = 0; i < chars.length(); ++i) {
+            max = Math.max(max, chars.charAt(i));
+        }
+        _indices = new int[max + 1];
+        Arrays.fill(_indices, -1);
+        for (int i = chars.length() - 1; i >= 0; --i) {
+            _indices[chars.charAt(i)] = i;
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -24,7 +35,7 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _chars.indexOf(ch) != -1;
+        return toInt(ch) != -1;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -36,7 +47,7 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        return _chars.indexOf(ch);
+        return (ch < _indices.length) ? _indices[ch] : -1;
     }
 
     /** Getter method which return the characters in the alphabet. */
@@ -46,4 +57,8 @@ class Alphabet {
 
     /** Al the characters in the alphabet. */
     private String _chars;
+
+    /** Index of each character up to the largest one in the alphabet,
+     *  or -1 for characters not in it, so that toInt does not scan. */
+    private final int[] _indices;
 }
@@ -0,0 +1,310 @@
+package enigma;
+
+import com.sun.management.ThreadMXBean;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Throughput benchmarks for the enigma machine. Usage:
+ *      java enigma.Benchmarks NAME [ARGS...]
+ *  where NAME selects one of the benchmarks below. Each one prints its own
+ *  timings.
+ *  @author Farhad Alemi
+ */
+final class Benchmarks {
+
+    /** Rotor names, kinds and notches, and cycles of the naval rotors, as
+     *  in the default configuration. */
+    static final String[][] NAVAL = {
+        {"I", "MQ", "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)"},
+        {"II", "ME", "(FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)"},
+        {"III", "MV", "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)"},
+        {"IV", "MJ", "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)"},
+        {"V", "MZ", "(AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)"},
+        {"Beta", "N", "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)"},
+        {"Gamma", "N", "(AFNIRLBSQWVXGUZDKMTPCOYJHE)"},
+        {"B", "R", "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) "
+            + "(RX) (SZ) (TV)"},
+        {"C", "R", "(AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW) "
+            + "(QZ) (SX) (UY)"},
+    };
+
+    /** Number of untimed runs before the timed ones. */
+    static final int WARMUP = 3;
+
+    /** Run the benchmark named by ARGS[0], passing it the rest of ARGS. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 0) {
+                throw error("Usage: java enigma.Benchmarks NAME [ARGS...]");
+            }
+            switch (args[0]) {
+            case "throughput":
+                throughput(intArg(args, 1, 1 << 20), intArg(args, 2, 10));
+                break;
+            case "allocation":
+                allocation(intArg(args, 1, 1 << 20),
+                        intArg(args, 2, 1 << 16));
+                break;
+            case "engines":
+                engines(intArg(args, 1, 1 << 20), intArg(args, 2, 10));
+                break;
+            case "stream":
+                stream(intArg(args, 1, 256), intArg(args, 2, 3));
+                break;
+            default:
+                throw error("No benchmark named %s", args[0]);
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return ARGS[K] as an integer, or DEFAULTVALUE if it is missing. */
+    static int intArg(String[] args, int k, int defaultValue) {
+        try {
+            return (args.length > k) ? Integer.parseInt(args[k])
+                : defaultValue;
+        } catch (NumberFormatException excp) {
+            throw error("Bad number: %s", args[k]);
+        }
+    }
+
+    /** Return a five-rotor naval machine set to the settings of the
+     *  project's sample message. */
+    static Machine navalMachine() {
+        Alphabet alphabet = new Alphabet();
+        Collection<Rotor> allRotors = new ArrayList<>();
+        for (String[] rotor : NAVAL) {
+            Permutation perm = new Permutation(rotor[2], alphabet);
+            switch (rotor[1].charAt(0)) {
+            case 'M':
+                allRotors.add(new MovingRotor(rotor[0], perm,
+                        rotor[1].substring(1)));
+                break;
+            case 'R':
+                allRotors.add(new Reflector(rotor[0], perm));
+                break;
+            default:
+                allRotors.add(new FixedRotor(rotor[0], perm));
+                break;
+            }
+        }
+        Machine machine = new Machine(alphabet, 5, 3, allRotors);
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(YF) (ZH)", alphabet));
+        return machine;
+    }
+
+    /** Return LENGTH random indices into an alphabet of SIZE characters. */
+    static int[] randomMessage(int length, int size) {
+        Random random = new Random(61);
+        int[] message = new int[length];
+        for (int i = 0; i < length; ++i) {
+            message[i] = random.nextInt(size);
+        }
+        return message;
+    }
+
+    /** Print the number of characters per second the naval machine
+     *  encodes, one Machine.convert(int) call per character, over RUNS
+     *  runs of CHARS characters each. */
+    static void throughput(int chars, int runs) {
+        Machine machine = navalMachine();
+        int[] message = randomMessage(chars, 26);
+        long checksum = 0, best = Long.MAX_VALUE, total = 0;
+        for (int run = -WARMUP; run < runs; ++run) {
+            long start = System.nanoTime();
+            for (int c : message) {
+                checksum += machine.convert(c);
+            }
+            long time = System.nanoTime() - start;
+            if (run >= 0) {
+                best = Math.min(best, time);
+                total += time;
+            }
+        }
+        System.out.printf("throughput: %d chars x %d runs (checksum %d)%n",
+                chars, runs, checksum);
+        System.out.printf("  mean %.0f chars/s, best %.0f chars/s%n",
+                perSecond(chars, total / (double) runs),
+                perSecond(chars, best));
+    }
+
+    /** Print the number of characters per second the naval machine
+     *  encodes with each of its engines, over RUNS runs of CHARS
+     *  characters each, after checking that they agree. */
+    static void engines(int chars, int runs) {
+        int[] message = randomMessage(chars, 26);
+        int[] expected = null;
+        System.out.printf("engines: %d chars x %d runs%n", chars, runs);
+        for (Machine.Engine engine : Machine.Engine.values()) {
+            int[] result = new int[chars];
+            long best = Long.MAX_VALUE;
+            for (int run = -WARMUP; run < runs; ++run) {
+                Machine machine = navalMachine();
+                machine.setEngine(engine);
+                long start = System.nanoTime();
+                for (int i = 0; i < chars; ++i) {
+                    result[i] = machine.convert(message[i]);
+                }
+                long time = System.nanoTime() - start;
+                if (run >= 0) {
+                    best = Math.min(best, time);
+                }
+            }
+            if (expected == null) {
+                expected = result;
+            } else if (!Arrays.equals(expected, result)) {
+                throw error("engine %s disagrees", engine);
+            }
+            System.out.printf("  %-6s best %.0f chars/s%n", engine,
+                    perSecond(chars, best));
+        }
+    }
+
+    /** Return the rate of COUNT items in NANOS nanoseconds per second. */
+    static double perSecond(long count, double nanos) {
+        return count * 1e9 / nanos;
+    }
+
+    /** Print the bytes allocated per character by Machine.convert(int)
+     *  over CHARS characters, and the time and bytes per character taken
+     *  by Machine.convert(String) on one message of LENGTH characters. */
+    static void allocation(int chars, int length) {
+        ThreadMXBean threads =
+            (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        Machine machine = navalMachine();
+        int[] message = randomMessage(chars, 26);
+        long checksum = 0;
+        for (int run = 0; run < WARMUP; ++run) {
+            for (int c : message) {
+                checksum += machine.convert(c);
+            }
+        }
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int c : message) {
+            checksum += machine.convert(c);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        System.out.printf("allocation: %d chars (checksum %d)%n", chars,
+                checksum);
+        System.out.printf("  convert(int): %d bytes, %.3f bytes/char%n",
+                allocated, allocated / (double) chars);
+
+        char[] text = new char[length];
+        for (int i = 0; i < length; ++i) {
+            text[i] = (char) ('A' + message[i % chars]);
+        }
+        String msg = new String(text);
+        machine.convert(msg);
+        before = threads.getThreadAllocatedBytes(id);
+        long start = System.nanoTime();
+        String result = machine.convert(msg);
+        long time = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(id) - before;
+        System.out.printf("  convert(String) of %d chars: %.1f ms, "
+            + "%.3f bytes/char%n", result.length(), time / 1e6,
+            allocated / (double) length);
+    }
+
+    /** Print the rate at which a MessageStream converts a message file of
+     *  MEGABYTES megabytes, a settings line followed by one long message
+     *  line, and the bytes it allocates, over RUNS runs. Run with a small
+     *  heap (-Xmx) to see that memory does not grow with the file. */
+    static void stream(int megabytes, int runs) {
+        ThreadMXBean threads =
+            (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        File file;
+        long size;
+        try {
+            file = File.createTempFile("enigma", ".in");
+            file.deleteOnExit();
+            size = writeMessageFile(file, (long) megabytes << 20);
+        } catch (IOException excp) {
+            throw error("could not write message file: %s",
+                        excp.getMessage());
+        }
+        Machine machine = navalMachine();
+        MessageStream messages = new MessageStream(machine,
+            line -> machine.setRotors("AXLE"));
+        WritableByteChannel sink = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int n = src.remaining();
+                src.position(src.limit());
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        long best = Long.MAX_VALUE, allocated = 0;
+        for (int run = -1; run < runs; ++run) {
+            long before = threads.getThreadAllocatedBytes(id);
+            long start = System.nanoTime();
+            try (FileChannel in = FileChannel.open(file.toPath())) {
+                messages.process(in, sink);
+            } catch (IOException excp) {
+                throw error("could not read message file: %s",
+                            excp.getMessage());
+            }
+            long time = System.nanoTime() - start;
+            if (run >= 0) {
+                best = Math.min(best, time);
+                allocated = threads.getThreadAllocatedBytes(id) - before;
+            }
+        }
+        System.out.printf("stream: %d bytes x %d runs, max heap %d MB%n",
+                size, runs, Runtime.getRuntime().maxMemory() >> 20);
+        System.out.printf("  best %.1f MB/s, %d bytes allocated per run%n",
+                perSecond(size, best) / (1 << 20), allocated);
+    }
+
+    /** Write a settings line and then random message characters, with a
+     *  blank after every five, to FILE until it holds at least SIZE
+     *  bytes. Return its size. */
+    static long writeMessageFile(File file, long size) throws IOException {
+        int[] message = randomMessage(1 << 16, 26);
+        ByteBuffer buffer = ByteBuffer.allocate(message.length * 6 / 5 + 1);
+        for (int i = 0; i < message.length; ++i) {
+            buffer.put((byte) ('A' + message[i]));
+            if (i % 5 == 4) {
+                buffer.put((byte) ' ');
+            }
+        }
+        buffer.flip();
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap("* B Beta III IV I AXLE (YF) (ZH)\n"
+                    .getBytes()));
+            while (out.position() < size) {
+                out.write(buffer.duplicate());
+            }
+            out.write(ByteBuffer.wrap("\n".getBytes()));
+            return out.size();
+        }
+    }
+}
@@ -2,7 +2,6 @@ package enigma;
 
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Vector;
 
 import static org.junit.Assert.*;
 
@@ -16,7 +15,7 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
-        assertTrue(numRotors > 1);
+        assertTrue(numRotors > 1 && numRotors <= Long.SIZE);
         assertTrue(pawls >= 0 && pawls < numRotors);
         assertTrue(allRotors.size() >= numRotors);
 
@@ -24,6 +23,24 @@ class Machine {
         _numRotors = numRotors;
         _pawls = pawls;
         _allRotors = allRotors;
+        _engine = Engine.FUSED;
+    }
+
+    /** Ways of converting a character. ROTORS passes it through the
+     *  plugboard and each rotor in turn. FUSED composes the rotors into
+     *  tables (see convertFused), giving the same results in fewer
+     *  steps, as long as my rotors are moved and set only through me. */
+    enum Engine { ROTORS, FUSED }
+
+    /** Return the way I convert characters. */
+    Engine engine() {
+        return _engine;
+    }
+
+    /** Convert characters using ENGINE from now on. */
+    void setEngine(Engine engine) {
+        _engine = engine;
+        _entry = null;
     }
 
     /** Return the number of rotor slots I have. */
@@ -56,10 +73,23 @@ class Machine {
             }
         }
 
+        _slotIds = new int[rotors.length];
+        for (int i = 0; i < rotors.length; ++i) {
+            _slotIds[i] = i;
+            for (int j = 0; j < i; ++j) {
+                if (rotors[j].equals(rotors[i])) {
+                    _slotIds[i] = j;
+                    break;
+                }
+            }
+        }
+
         if (_pawls != countMoving) {
             throw new EnigmaException("Incorrect number of moving rotor");
         }
 
+        _entry = null;
+
         if (!_currRotors[0].reflecting()) {
             throw new EnigmaException("Rotor 1 is not Reflector");
         }
@@ -97,6 +127,7 @@ class Machine {
                 }
             }
         }
+        _entry = null;
     }
 
     /** Set the plugboard to PLUGBOARD. */
@@ -109,51 +140,83 @@ class Machine {
             }
         }
         _plugboard = plugboard;
+        _entry = null;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
-     *  the machine. */
+     *  the machine. Allocates nothing. */
     int convert(int c) {
         if (c < 0 || c >= _alphabet.size()) {
             throw new EnigmaException("Character not in alphabet");
         }
-        int permuteChar = _plugboard.permute(c);
-        Vector<String> rotorsTurned = new Vector<>();
+        long turned = step();
+        if (_engine == Engine.FUSED) {
+            return convertFused(c, turned);
+        }
+        return convertRotors(c);
+    }
+
+    /** Advances the rotors for the next character. Returns the bit mask
+     *  of the slots whose rotors advanced (see advance). */
+    private long step() {
+        long turned = 0;
 
         if (_currRotors.length != 2) {
             for (int i = 1; i < numRotors() - 1; ++i) {
                 if (i + 1 < numRotors() - 1) {
                     if (_currRotors[i + 1].atNotch()
                             && _currRotors[i].rotates()) {
-                        if (!rotorsTurned.contains(_currRotors[i].name())) {
-                            rotorsTurned.add(_currRotors[i].name());
-                            _currRotors[i].advance();
-                        }
-                        if (!rotorsTurned.contains(_currRotors[i + 1]
-                                .name())) {
-                            rotorsTurned.add(_currRotors[i + 1].name());
-                            _currRotors[i + 1].advance();
-                        }
+                        turned = advance(i, turned);
+                        turned = advance(i + 1, turned);
                     }
                 } else {
                     if (_currRotors[i + 1].atNotch()
                             && _currRotors[i].rotates()) {
-                        if (!rotorsTurned.contains(_currRotors[i].name())) {
-                            rotorsTurned.add(_currRotors[i].name());
-                            _currRotors[i].advance();
-                        }
-                    }
-                    if (!rotorsTurned.contains(_currRotors[i + 1].name())) {
-                        rotorsTurned.add(_currRotors[i + 1].name());
-                        _currRotors[i + 1].advance();
+                        turned = advance(i, turned);
                     }
+                    turned = advance(i + 1, turned);
                 }
             }
         } else {
             _currRotors[1].advance();
+            turned = 1L << _slotIds[1];
         }
+        return turned;
+    }
 
+    /** Returns the conversion of C, the rotors having just advanced as
+     *  TURNED says, using the fused tables.
+     *
+     *  For fixed rotor settings, the whole path through the machine is a
+     *  permutation of the alphabet, but caching it for each rotor position
+     *  would not pay: the fast rotor visits each position once between
+     *  steps of the next rotor. So the path is split at the fast rotor.
+     *  Going in through the plugboard and the fast rotor, and coming back
+     *  out through both, depends only on the fast rotor's setting, and
+     *  is tabulated once for all settings. Everything between, through
+     *  the slower rotors and the reflector, changes only when a slower
+     *  rotor advances; it is tabulated for each position of the slower
+     *  moving rotors as that position is first reached, and kept while
+     *  the rotors, settings and plugboard stay the same. A character then
+     *  costs three table lookups. */
+    private int convertFused(int c, long turned) {
+        if (_entry == null) {
+            fuse();
+        } else if ((turned & _slowMask) != 0) {
+            findInner();
+        }
+        if (_inner == null) {
+            return convertRotors(c);
+        }
+        int row = _fast.setting() * _alphabet.size();
+        return _exit[row + _inner[_entry[row + c]]];
+    }
+
+    /** Returns the conversion of C through the plugboard and each rotor,
+     *  without advancing them. */
+    private int convertRotors(int c) {
+        int permuteChar = _plugboard.permute(c);
         for (int i = numRotors() - 1; i > 0; --i) {
             permuteChar = _currRotors[i].convertForward(permuteChar);
         }
@@ -164,19 +227,128 @@ class Machine {
         return _plugboard.permute(permuteChar);
     }
 
-    /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
-    String convert(String msg) {
-        String result = "";
+    /** Sets up the fused tables for the current rotors, settings and
+     *  plugboard. A rotor that sits in several slots moves them together,
+     *  which the tables cannot follow, so such machines get empty tables,
+     *  no inner table and no slow rotors to watch, and convert through
+     *  the rotors. */
+    private void fuse() {
+        int size = _alphabet.size();
+        int last = numRotors() - 1;
+        _fast = _currRotors[last];
+        _inner = null;
+        _innerCache = null;
+        _slowMask = 0;
+        for (int i = 0; i < numRotors(); ++i) {
+            if (_slotIds[i] != i) {
+                _entry = new int[0];
+                _exit = _entry;
+                return;
+            }
+        }
+
+        _entry = new int[size * size];
+        _exit = new int[size * size];
+        int setting = _fast.setting();
+        for (int f = 0; f < size; ++f) {
+            _fast.set(f);
+            for (int c = 0; c < size; ++c) {
+                _entry[f * size + c] =
+                    _fast.convertForward(_plugboard.permute(c));
+                _exit[f * size + c] =
+                    _plugboard.permute(_fast.convertBackward(c));
+            }
+        }
+        _fast.set(setting);
+
+        long states = 1;
+        for (int i = 1; i < last; ++i) {
+            if (_currRotors[i].rotates()) {
+                _slowMask |= 1L << i;
+                states *= size;
+                if (states * size > MAX_CACHED) {
+                    states = 0;
+                    break;
+                }
+            }
+        }
+        if (states > 0) {
+            _innerCache = new int[(int) states][];
+        }
+        findInner();
+    }
+
+    /** Makes _inner the path through the slower rotors and the reflector
+     *  at their current settings, from the cache if it was seen before. */
+    private void findInner() {
+        int size = _alphabet.size();
+        int key = 0;
+        if (_innerCache != null) {
+            for (int i = 1; i < numRotors() - 1; ++i) {
+                if (_currRotors[i].rotates()) {
+                    key = key * size + _currRotors[i].setting();
+                }
+            }
+            if (_innerCache[key] != null) {
+                _inner = _innerCache[key];
+                return;
+            }
+        }
+        int[] inner = (_innerCache == null && _inner != null) ? _inner
+            : new int[size];
+        for (int x = 0; x < size; ++x) {
+            int p = x;
+            for (int i = numRotors() - 2; i > 0; --i) {
+                p = _currRotors[i].convertForward(p);
+            }
+            for (int i = 0; i < numRotors() - 1; ++i) {
+                p = _currRotors[i].convertBackward(p);
+            }
+            inner[x] = p;
+        }
+        if (_innerCache != null) {
+            _innerCache[key] = inner;
+        }
+        _inner = inner;
+    }
+
+    /** Advances the rotor in SLOT unless TURNED, a bit mask of the slots
+     *  whose rotors have already advanced for this character, has its
+     *  bit set. A rotor inserted in several slots shares one bit. Returns
+     *  TURNED with the bit set. */
+    private long advance(int slot, long turned) {
+        long bit = 1L << _slotIds[slot];
+        if ((turned & bit) == 0) {
+            _currRotors[slot].advance();
+        }
+        return turned | bit;
+    }
 
-        for (int i = 0; i < msg.length(); ++i) {
-            char c = msg.charAt(i);
+    /** Converts the characters of BUF from START to END in place, updating
+     *  the state of the rotors accordingly. Blanks and tabs are dropped,
+     *  so the converted characters end up packed at START. Returns the
+     *  index after the last of them. */
+    int convert(char[] buf, int start, int end) {
+        int out = start;
+        for (int i = start; i < end; ++i) {
+            char c = buf[i];
             if (c == ' ' || c == '\t') {
                 continue;
             }
-            result += _alphabet.toChar(convert(_alphabet.toInt(c)));
+            buf[out] = _alphabet.toChar(convert(_alphabet.toInt(c)));
+            out += 1;
         }
-        return result;
+        return out;
+    }
+
+    /** Returns the encoding/decoding of MSG, updating the state of
+     *  the rotors accordingly. */
+    String convert(String msg) {
+        if (_buffer.length < msg.length()) {
+            _buffer = new char[Math.max(msg.length(), 2 * _buffer.length)];
+        }
+        msg.getChars(0, msg.length(), _buffer, 0);
+        return new String(_buffer, 0, convert(_buffer, 0, msg.length()));
     }
 
     /** Common alphabet of my rotors. */
@@ -196,4 +368,41 @@ class Machine {
 
     /** Plug-board configuration for the machine. */
     private Permutation _plugboard;
+
+    /** For each rotor slot, the first slot holding the same rotor, which
+     *  names its bit in the mask of rotors that have advanced. */
+    private int[] _slotIds;
+
+    /** Reusable space for converting messages. */
+    private char[] _buffer = new char[0];
+
+    /** Largest number of entries kept in cached inner tables. */
+    static final long MAX_CACHED = 1 << 20;
+
+    /** The way I convert characters. */
+    private Engine _engine;
+
+    /** The rotor in the last slot, the fast one. */
+    private Rotor _fast;
+
+    /** For each fast rotor setting F and character C, the index, at
+     *  F * alphabet size + C, of C after the plugboard and the fast
+     *  rotor. Null when the fused tables must be set up again. */
+    private int[] _entry;
+
+    /** For each fast rotor setting F and index X, at F * alphabet size +
+     *  X, the character that X becomes back through the fast rotor and
+     *  the plugboard. */
+    private int[] _exit;
+
+    /** The path through the slower rotors and the reflector at their
+     *  current settings; null if the fused tables cannot be used. */
+    private int[] _inner;
+
+    /** Inner tables by the positions of the slower moving rotors, as a
+     *  number in base alphabet size; null if there would be too many. */
+    private int[][] _innerCache;
+
+    /** Bit mask of the slots of the slower moving rotors. */
+    private long _slowMask;
 }
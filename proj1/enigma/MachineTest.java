@@ -1,6 +1,7 @@
 package enigma;
 
 import org.junit.Rule;
+import org.junit.Test;
 import org.junit.rules.Timeout;
 
 import java.util.Collection;
@@ -61,6 +62,36 @@ public class MachineTest {
     static Reflector rotorB = new Reflector("B", b);
     static Reflector rotorC = new Reflector("C", c);
 
+    @Test
+    public void convertInPlaceTest() {
+        char[] buf = "xFROM HIS\tSHOULDERx".toCharArray();
+        Machine machine = Benchmarks.navalMachine();
+        int end = machine.convert(buf, 1, buf.length - 1);
+        assertEquals(16, end);
+        assertEquals("xAFIZKBKOXLIUFDC", new String(buf, 0, end));
+        assertEquals("QPPSYSZW", machine.convert("HIA WATHA"));
+    }
+
+    @Test
+    public void enginesAgreeTest() {
+        Machine rotors = Benchmarks.navalMachine();
+        Machine fused = Benchmarks.navalMachine();
+        rotors.setEngine(Machine.Engine.ROTORS);
+        assertEquals(Machine.Engine.FUSED, fused.engine());
+        int[] message = Benchmarks.randomMessage(40000, 26);
+        for (int i = 0; i < message.length; ++i) {
+            if (i == 20000) {
+                for (Machine machine : new Machine[] {rotors, fused}) {
+                    machine.setRotors("QEVZ", "BCDE");
+                    machine.setPlugboard(new Permutation("(AB) (CD)",
+                            new Alphabet(alphabet)));
+                }
+            }
+            assertEquals("character " + i, rotors.convert(message[i]),
+                    fused.convert(message[i]));
+        }
+    }
+
     public static void main(String[] args) {
         Collection<Rotor> allRotors = new HashSet<>();
         allRotors.add(MachineTest.rotorI);
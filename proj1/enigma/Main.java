@@ -2,7 +2,12 @@ package enigma;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 import java.util.Collection;
@@ -44,15 +49,17 @@ public final class Main {
         _config = getInput(args[0]);
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getChannel(args[1], StandardOpenOption.READ);
         } else {
-            _input = new Scanner(System.in);
+            _input = Channels.newChannel(System.in);
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _output = getChannel(args[2], StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
         } else {
-            _output = System.out;
+            _output = Channels.newChannel(System.out);
         }
         rotorNames = new String[]{"I", "II", "III", "IV", "V", "VI", "VII",
                                   "VIII", "Beta", "Gamma", "B", "C"};
@@ -67,10 +74,11 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a channel on the file named NAME, opened with OPTIONS. */
+    private FileChannel getChannel(String name,
+                                   StandardOpenOption... options) {
         try {
-            return new PrintStream(new File(name));
+            return FileChannel.open(Paths.get(name), options);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -78,20 +86,16 @@ public final class Main {
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+     *  results to _output. The messages are streamed through, so that
+     *  memory does not grow with the size of the input. */
     private void process() {
         Machine machine = readConfig();
-        parseConfig(_input.nextLine().split("[ ]"), machine);
-
-        while (_input.hasNext() || _input.hasNextLine()) {
-            String temp = _input.nextLine(), processed;
-
-            if (!temp.equals("") && temp.charAt(0) == '*') {
-                parseConfig(temp.split("[ ]"), machine);
-                continue;
-            }
-            processed = machine.convert(temp);
-            printMessageLine(processed);
+        MessageStream messages = new MessageStream(machine,
+            line -> parseConfig(line.split("[ ]"), machine));
+        try {
+            messages.process(_input, _output);
+        } catch (IOException excp) {
+            throw error("could not read messages: %s", excp.getMessage());
         }
     }
 
@@ -198,20 +202,6 @@ public final class Main {
         }
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        StringBuilder parsedMsg = new StringBuilder();
-
-        for (int i = 0; i < msg.length(); ++i) {
-            parsedMsg.append(msg.charAt(i));
-            if ((i + 1) % 5 == 0) {
-                parsedMsg.append(" ");
-            }
-        }
-        _output.println(parsedMsg);
-    }
-
     /** Searches the TOKEN for valid rotor names and returns true if values
      * are valid and false otherwise.
      */
@@ -257,13 +247,13 @@ public final class Main {
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private ReadableByteChannel _input;
 
     /** Source of machine configuration. */
     private Scanner _config;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private WritableByteChannel _output;
 
     /** Names of all rotors. */
     private static String[] rotorNames;
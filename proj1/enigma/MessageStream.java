@@ -0,0 +1,274 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Converts a stream of messages with a machine, a buffer at a time, so
+ *  that the memory used does not grow with the length of the input or of
+ *  any line in it. Input bytes are decoded into a char buffer, each run of
+ *  message characters is converted in place there, and the results are
+ *  written in groups of five to an output buffer, which is encoded and
+ *  written out whenever it fills and after each input buffer. Lines that
+ *  start with '*' are settings lines; each is collected whole and handed
+ *  to a callback before the messages that follow it are converted. The
+ *  first line must be a settings line.
+ *  @author Farhad Alemi
+ */
+class MessageStream {
+
+    /** Default size in bytes or characters of each buffer. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A stream converting messages with MACHINE, which passes each
+     *  settings line to SETTINGS. */
+    MessageStream(Machine machine, Consumer<String> settings) {
+        this(machine, settings, BUFFER_SIZE);
+    }
+
+    /** A stream converting messages with MACHINE, which passes each
+     *  settings line to SETTINGS, using buffers of BUFFERSIZE bytes or
+     *  characters. */
+    MessageStream(Machine machine, Consumer<String> settings,
+                  int bufferSize) {
+        if (bufferSize < LINE_SEPARATOR.length() + 2) {
+            throw error("buffer too small: %d", bufferSize);
+        }
+        _machine = machine;
+        _settingsLine = settings;
+        Charset charset = Charset.defaultCharset();
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _inBytes = ByteBuffer.allocate(bufferSize);
+        _inChars = CharBuffer.allocate(bufferSize);
+        _outChars = CharBuffer.allocate(bufferSize);
+        _outBytes = ByteBuffer.allocate(bufferSize);
+        _settings = new StringBuilder();
+    }
+
+    /** Convert all messages read from IN, writing them to OUT. Whatever
+     *  was converted before an error is still written. */
+    void process(ReadableByteChannel in, WritableByteChannel out)
+        throws IOException {
+        _out = out;
+        _state = LINE_START;
+        _started = _skipNewline = false;
+        _column = 0;
+        _decoder.reset();
+        _encoder.reset();
+        _inBytes.clear();
+        _outChars.clear();
+        try {
+            for (boolean eof = false; !eof;) {
+                eof = in.read(_inBytes) < 0;
+                _inBytes.flip();
+                CoderResult result;
+                do {
+                    result = _decoder.decode(_inBytes, _inChars, eof);
+                    drain();
+                } while (result.isOverflow());
+                if (eof) {
+                    while (_decoder.flush(_inChars).isOverflow()) {
+                        drain();
+                    }
+                    drain();
+                }
+                _inBytes.compact();
+                write(false);
+            }
+            endLine();
+            if (!_started) {
+                throw error("Bad configuration");
+            }
+        } finally {
+            write(true);
+        }
+    }
+
+    /** Scan the characters decoded into _inChars, then empty it. */
+    private void drain() {
+        _inChars.flip();
+        scan(_inChars.array(), _inChars.arrayOffset() + _inChars.position(),
+             _inChars.arrayOffset() + _inChars.limit());
+        _inChars.clear();
+    }
+
+    /** Process the characters BUF[START .. END-1], converting message
+     *  characters in place. */
+    private void scan(char[] buf, int start, int end) {
+        int i = start;
+        while (i < end) {
+            if (_skipNewline) {
+                _skipNewline = false;
+                if (buf[i] == '\n') {
+                    i += 1;
+                    continue;
+                }
+            }
+            if (_state == LINE_START) {
+                if (buf[i] == '*') {
+                    _state = SETTINGS;
+                } else if (!_started) {
+                    throw error("Bad configuration");
+                } else {
+                    _state = MESSAGE;
+                }
+            }
+            int eol = i;
+            while (eol < end && !isLineEnd(buf[eol])) {
+                eol += 1;
+            }
+            if (_state == SETTINGS) {
+                _settings.append(buf, i, eol - i);
+            } else {
+                emit(buf, i, _machine.convert(buf, i, eol));
+            }
+            if (eol == end) {
+                return;
+            }
+            _skipNewline = buf[eol] == '\r';
+            endLine();
+            i = eol + 1;
+        }
+    }
+
+    /** Finish the current line: apply it if it is a settings line, or end
+     *  its output if it is a message. */
+    private void endLine() {
+        if (_state == SETTINGS) {
+            String line = _settings.toString();
+            _settings.setLength(0);
+            _settingsLine.accept(line);
+            _started = true;
+        } else if (_state == MESSAGE) {
+            if (_outChars.remaining() < LINE_SEPARATOR.length()) {
+                write(false);
+            }
+            _outChars.put(LINE_SEPARATOR);
+            _column = 0;
+        }
+        _state = LINE_START;
+    }
+
+    /** Append the converted characters BUF[START .. END-1] to the output,
+     *  with a blank after each group of five on the line. */
+    private void emit(char[] buf, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            if (_outChars.remaining() < 2) {
+                write(false);
+            }
+            _outChars.put(buf[i]);
+            _column += 1;
+            if (_column == GROUP) {
+                _outChars.put(' ');
+                _column = 0;
+            }
+        }
+    }
+
+    /** Encode and write out the output buffer; END iff no more output
+     *  follows. */
+    private void write(boolean end) {
+        _outChars.flip();
+        try {
+            CoderResult result;
+            do {
+                result = _encoder.encode(_outChars, _outBytes, end);
+                flushBytes();
+            } while (result.isOverflow());
+            if (end) {
+                while (_encoder.flush(_outBytes).isOverflow()) {
+                    flushBytes();
+                }
+                flushBytes();
+            }
+        } catch (IOException excp) {
+            throw error("could not write messages: %s", excp.getMessage());
+        } finally {
+            _outChars.compact();
+        }
+    }
+
+    /** Write the encoded bytes in _outBytes to the output, then empty
+     *  it. */
+    private void flushBytes() throws IOException {
+        _outBytes.flip();
+        while (_outBytes.hasRemaining()) {
+            _out.write(_outBytes);
+        }
+        _outBytes.clear();
+    }
+
+    /** Return true iff C ends a line, as for Scanner.nextLine. */
+    private static boolean isLineEnd(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+            || c == '\u0085';
+    }
+
+    /** Number of characters in an output group. */
+    static final int GROUP = 5;
+
+    /** What ends each line of output. */
+    static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** States: at the start of a line, within a settings line, and within
+     *  a message line. */
+    private static final int LINE_START = 0, SETTINGS = 1, MESSAGE = 2;
+
+    /** The machine converting messages. */
+    private final Machine _machine;
+
+    /** Receives each settings line. */
+    private final Consumer<String> _settingsLine;
+
+    /** Decodes input bytes. */
+    private final CharsetDecoder _decoder;
+
+    /** Encodes output characters. */
+    private final CharsetEncoder _encoder;
+
+    /** Input bytes not yet decoded. */
+    private final ByteBuffer _inBytes;
+
+    /** Decoded input characters. */
+    private final CharBuffer _inChars;
+
+    /** Output characters not yet encoded. */
+    private final CharBuffer _outChars;
+
+    /** Encoded output bytes not yet written. */
+    private final ByteBuffer _outBytes;
+
+    /** The settings line read so far. */
+    private final StringBuilder _settings;
+
+    /** Destination of the output. */
+    private WritableByteChannel _out;
+
+    /** Where in a line the input is: LINE_START, SETTINGS or MESSAGE. */
+    private int _state;
+
+    /** True once a settings line has been applied. */
+    private boolean _started;
+
+    /** True iff the last character was a carriage return, so that a
+     *  newline following it ends no further line. */
+    private boolean _skipNewline;
+
+    /** Number of characters in the last, incomplete output group. */
+    private int _column;
+}
@@ -0,0 +1,97 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The suite of all JUnit tests for the MessageStream class.
+ *  @author Farhad Alemi
+ */
+public class MessageStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings lines passed to the stream. */
+    private List<String> settings = new ArrayList<>();
+
+    /** Return the output of streaming INPUT through the naval machine of
+     *  Benchmarks with buffers of BUFFERSIZE. */
+    private String stream(String input, int bufferSize) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessageStream messages = new MessageStream(Benchmarks.navalMachine(),
+                settings::add, bufferSize);
+        messages.process(Channels.newChannel(
+                new ByteArrayInputStream(input.getBytes(charset))),
+                Channels.newChannel(out));
+        return new String(out.toByteArray(), charset);
+    }
+
+    /** Return LINES joined by line separators, each one terminated. */
+    private String lines(String... lines) {
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            result.append(line).append(MessageStream.LINE_SEPARATOR);
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testGroups() throws IOException {
+        String input = "* S\r\nFROM HIS\tSHOULDER\r\nHIA WATHA";
+        String expected = lines("AFIZK BKOXL IUFDC ", "QPPSY SZW");
+        for (int size = 4; size <= 32; size += 1) {
+            settings.clear();
+            assertEquals("buffer size " + size, expected,
+                    stream(input, size));
+            assertEquals(List.of("* S"), settings);
+        }
+        assertEquals(expected, stream(input, MessageStream.BUFFER_SIZE));
+    }
+
+    @Test
+    public void testSettingsMidStream() throws IOException {
+        String output = stream("* ONE\n\nAB\r* TWO\n\n* THREE", 5);
+        assertEquals(List.of("* ONE", "* TWO", "* THREE"), settings);
+        assertEquals(2 + 3 * MessageStream.LINE_SEPARATOR.length(),
+                output.length());
+    }
+
+    @Test
+    public void testLongLine() throws IOException {
+        StringBuilder input = new StringBuilder("* S\n");
+        for (int i = 0; i < 10000; i += 1) {
+            input.append("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        }
+        String small = stream(input.toString(), 64);
+        assertEquals(small, stream(input.toString(),
+                MessageStream.BUFFER_SIZE));
+        assertEquals(260000 / 5 * 6 + MessageStream.LINE_SEPARATOR.length(),
+                small.length());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNoSettings() throws IOException {
+        stream("ABC\n* S\n", 16);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testEmpty() throws IOException {
+        stream("", 16);
+    }
+}
@@ -15,6 +15,7 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        findNotches();
     }
 
     @Override
@@ -29,13 +30,15 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        char currLetter = permutation().alphabet().toChar(setting());
-        for (int i = 0; i < _notches.length(); ++i) {
-            if (_notches.charAt(i) == currLetter) {
-                return true;
-            }
+        return _atNotch[setting()];
+    }
+
+    /** Sets _atNotch from _notches. */
+    private void findNotches() {
+        _atNotch = new boolean[size()];
+        for (int i = 0; i < size(); ++i) {
+            _atNotch[i] = _notches.indexOf(alphabet().toChar(i)) != -1;
         }
-        return false;
     }
 
     /** Returns the notch. */
@@ -52,8 +55,12 @@ class MovingRotor extends Rotor {
                        //(_alphabet.size() - _alphabet.toInt(alphaSetting.charAt(i)) + _currRotors[i + 1].setting()) % _alphabet.size()
         }
         _notches = newNotches;
+        findNotches();
     }
 
     /** Rotor notches. */
     private String _notches;
+
+    /** True at each setting where I am at a notch. */
+    private boolean[] _atNotch;
 }
@@ -16,6 +16,7 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _cycles = cycles;
+        compile();
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
@@ -23,6 +24,24 @@ class Permutation {
     private void addCycle(String cycle) {
         cycle = "(" + cycle + ")";
         _cycles = (_cycles.length() == 0) ? cycle : _cycles + " " + cycle;
+        compile();
+    }
+
+    /** Fill _forward and _inverse from _cycles, so that permuting or
+     *  inverting an index is one array access instead of scans of the
+     *  cycle string. */
+    private void compile() {
+        _forward = new int[size()];
+        _inverse = new int[size()];
+        try {
+            for (int i = 0; i < size(); ++i) {
+                char c = alphabet().toChar(i);
+                _forward[i] = alphabet().toInt(scanPermute(c));
+                _inverse[i] = alphabet().toInt(scanInvert(c));
+            }
+        } catch (IndexOutOfBoundsException excp) {
+            throw error("malformed cycles: %s", _cycles);
+        }
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -42,20 +61,37 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char permuteChar = permute(alphabet().toChar(p));
-        return alphabet().toInt(permuteChar);
+        return _forward[p];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to C modulo the alphabet size. */
     int invert(int c) {
-        char invertChar = invert(alphabet().toChar(wrap(c)));
-        return alphabet().toInt(invertChar);
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
+        int index = alphabet().toInt(p);
+        if (index == -1 || _forward[index] == -1) {
+            return scanPermute(p);
+        }
+        return alphabet().toChar(_forward[index]);
+    }
+
+    /** Return the result of applying the inverse of this permutation to C. */
+    char invert(char c) {
+        int index = alphabet().toInt(c);
+        if (index == -1 || _inverse[index] == -1) {
+            return scanInvert(c);
+        }
+        return alphabet().toChar(_inverse[index]);
+    }
+
+    /** Return the result of applying this permutation to P, found by
+     *  scanning _cycles. */
+    private char scanPermute(char p) {
         int indexOfP = _cycles.indexOf(p), permIndex;
         if (indexOfP == -1) {
             return p;
@@ -71,8 +107,9 @@ class Permutation {
         return _cycles.charAt(permIndex);
     }
 
-    /** Return the result of applying the inverse of this permutation to C. */
-    char invert(char c) {
+    /** Return the result of applying the inverse of this permutation to C,
+     *  found by scanning _cycles. */
+    private char scanInvert(char c) {
         int indexOfC = _cycles.indexOf(c), inverseIndex;
         if (indexOfC == -1 || !alphabet().contains(c)) {
             return c;
@@ -117,4 +154,12 @@ class Permutation {
 
     /** Cycles of this permutation. */
     private String _cycles;
+
+    /** Index of the image of each index of my alphabet, or -1 where the
+     *  image is not in it. */
+    private int[] _forward;
+
+    /** Index of the preimage of each index of my alphabet, or -1 where the
+     *  preimage is not in it. */
+    private int[] _inverse;
 }
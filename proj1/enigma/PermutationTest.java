@@ -184,4 +184,24 @@ public class PermutationTest {
         assertTrue(p5.derangement());
         assertFalse(p6.derangement());
     }
+
+    @Test
+    public void testNavalTables() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+
+    @Test
+    public void testAlphabetToInt() {
+        Alphabet a = new Alphabet("1!@2");
+        assertEquals(0, a.toInt('1'));
+        assertEquals(3, a.toInt('2'));
+        assertEquals(-1, a.toInt('A'));
+        assertEquals(-1, a.toInt('\u20ac'));
+        assertTrue(a.contains('@'));
+        assertFalse(a.contains('#'));
+        assertEquals(-1, new Alphabet("").toInt('A'));
+    }
 }
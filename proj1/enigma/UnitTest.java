@@ -11,7 +11,9 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class, RotorTest.class));
+                                      MovingRotorTest.class, RotorTest.class,
+                                      MachineTest.class,
+                                      MessageStreamTest.class));
     }
 
 }
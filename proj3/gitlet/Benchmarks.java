@@ -0,0 +1,768 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Micro-benchmarks for Gitlet's internal data structures, and, under
+ * "repo", whole commands on synthetic repositories. Usage:
+ *      java gitlet.Benchmarks NAME [ARGS...]
+ * where NAME selects one of the benchmarks below. Each benchmark prints its
+ * own timings; none of them touch the .gitlet directory of the current
+ * working directory.
+ *
+ * @author Farhad Alemi
+ */
+class Benchmarks {
+
+    /**
+     * Runs the benchmark named by ARGS[0].
+     *
+     * @param args NAME [ARGS...].
+     */
+    public static void main(String... args) {
+        if (args.length == 0) {
+            Main.softFail("Usage: java gitlet.Benchmarks NAME [ARGS...]");
+        }
+        switch (args[0]) {
+        case "merge-base":
+            mergeBase(intArg(args, 1, 100000), intArg(args, 2, 5));
+            break;
+        case "chunking":
+            chunking(intArg(args, 1, 64), intArg(args, 2, 8));
+            break;
+        case "commit-codec":
+            commitCodec(intArg(args, 1, 1000), intArg(args, 2, 2000));
+            break;
+        case "commit-tree":
+            commitTree(intArg(args, 1, 100000), intArg(args, 2, 100));
+            break;
+        case "prefix-lookup":
+            prefixLookup(intArg(args, 1, 100000), intArg(args, 2, 1000));
+            break;
+        case "diff":
+            diff(intArg(args, 1, 200000), intArg(args, 2, 2000));
+            break;
+        case "renames":
+            renames(intArg(args, 1, 5000), intArg(args, 2, 100));
+            break;
+        case "log":
+            log(intArg(args, 1, 100000));
+            break;
+        case "checkout":
+            checkout(intArg(args, 1, 20000), intArg(args, 2,
+                    Materializer.THREADS));
+            break;
+        case "repo":
+            RepoBenchmarks.run(intArg(args, 1, 1000), intArg(args, 2, 200),
+                    intArg(args, 3, 4), intArg(args, 4, 10),
+                    (args.length > 5) ? args[5] : null);
+            break;
+        default:
+            Main.softFail("No benchmark with that name exists.");
+        }
+    }
+
+    /**
+     * Compares the split-point computation that merge used to do (lists of
+     * first-parent ancestors searched with List.contains) with the
+     * generation-ordered merge-base search, on a synthetic history of COMMITS
+     * commits with many long-lived branches and merges between them.
+     *
+     * @param commits Number of commits in the synthetic history.
+     * @param queries Number of branch pairs to compute split points for.
+     */
+    static void mergeBase(int commits, int queries) {
+        Random random = new Random(61);
+        List<Integer> tips = new ArrayList<>();
+        CommitGraph graph = syntheticHistory(commits, 16, 0.05, random,
+                tips);
+        int[][] pairs = new int[queries][];
+        for (int i = 0; i < queries; ++i) {
+            pairs[i] = new int[]{tips.get(random.nextInt(tips.size())),
+                tips.get(random.nextInt(tips.size()))};
+        }
+
+        int disagreements = 0;
+        long start = System.nanoTime();
+        String[] legacy = new String[queries];
+        for (int i = 0; i < queries; ++i) {
+            legacy[i] = legacySplitPoint(graph, graph.hash(pairs[i][0]),
+                    graph.hash(pairs[i][1]));
+        }
+        long legacyTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < queries; ++i) {
+            int base = graph.mergeBase(pairs[i][0], pairs[i][1]);
+            String hash = (base == CommitGraph.NONE) ? "" : graph.hash(base);
+            if (!hash.equals(legacy[i])) {
+                disagreements += 1;
+            }
+        }
+        long newTime = System.nanoTime() - start;
+
+        System.out.printf("merge-base: %d commits, %d queries%n", commits,
+                queries);
+        report("first-parent lists", legacyTime, queries);
+        report("generation walk", newTime, queries);
+        System.out.printf("  speedup: %.1fx; %d of %d split points differ "
+                + "(first-parent lists miss merged-in history)%n",
+                (double) legacyTime / Math.max(newTime, 1), disagreements,
+                queries);
+    }
+
+    /**
+     * Stores VERSIONS successive versions of a SIZEMB-megabyte file, each
+     * differing from the last by one overwritten byte and one small
+     * insertion, first as full blobs and then as deduplicated chunks, and
+     * reports the bytes stored and the throughput of each.
+     *
+     * @param sizeMB Size of the file in megabytes.
+     * @param versions Number of versions stored.
+     */
+    static void chunking(int sizeMB, int versions) {
+        Random random = new Random(61);
+        byte[] contents = new byte[sizeMB << 20];
+        random.nextBytes(contents);
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("gitlet-bench");
+            File[] files = new File[versions];
+            for (int i = 0; i < versions; ++i) {
+                files[i] = new File(dir.toFile(), "version" + i);
+                Utils.writeContents(files[i], (Object) contents);
+                contents[random.nextInt(contents.length)] ^= 1;
+                byte[] inserted = new byte[100];
+                random.nextBytes(inserted);
+                int at = random.nextInt(contents.length);
+                byte[] next = new byte[contents.length + inserted.length];
+                System.arraycopy(contents, 0, next, 0, at);
+                System.arraycopy(inserted, 0, next, at, inserted.length);
+                System.arraycopy(contents, at, next, at + inserted.length,
+                        contents.length - at);
+                contents = next;
+            }
+            long input = 0;
+            for (File file : files) {
+                input += file.length();
+            }
+
+            File full = new File(dir.toFile(), "full");
+            full.mkdir();
+            long start = System.nanoTime();
+            for (int i = 0; i < versions; ++i) {
+                GitletUtils.copyAndSha1(files[i], new File(full, "blob" + i));
+            }
+            long fullTime = System.nanoTime() - start;
+
+            File chunked = new File(dir.toFile(), "chunked");
+            chunked.mkdir();
+            new Config(chunked).set(Config.CHUNKED, "true");
+            ObjectStore store = new ObjectStore(chunked);
+            start = System.nanoTime();
+            for (File file : files) {
+                try (InputStream in = Files.newInputStream(file.toPath())) {
+                    store.chunk(in);
+                }
+            }
+            long chunkedTime = System.nanoTime() - start;
+
+            System.out.printf("chunking: %d versions of a %d MB file%n",
+                    versions, sizeMB);
+            reportStorage("full blobs", full, input, fullTime);
+            reportStorage("chunked", chunked, input, chunkedTime);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            if (dir != null) {
+                delete(dir);
+            }
+        }
+    }
+
+    /**
+     * Compares encoding and decoding a commit that tracks FILES files with
+     * CommitCodec against Java serialization of the same commit with its
+     * files inline, ITERATIONS times each after an equal warm-up.
+     *
+     * @param files Number of files tracked by the commit.
+     * @param iterations Number of timed encodings and decodings.
+     */
+    static void commitCodec(int files, int iterations) {
+        HashMap<String, String> blobs = syntheticFiles(files, "v1");
+        Commit flat = new Commit("benchmark commit", new String[]{
+            Utils.sha1("parent")});
+        flat.setBlobs(blobs);
+        Commit commit = new Commit("benchmark commit", new String[]{
+            Utils.sha1("parent")}, flat.getTimestamp());
+        commit.setTree(Tree.write(new MemoryNodes(), blobs));
+        byte[] serialized = Utils.serialize(flat);
+        byte[] encoded = CommitCodec.encode(commit);
+
+        long[] times = new long[4];
+        for (int round = 0; round < 2; ++round) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                Utils.serialize(flat);
+            }
+            times[0] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                CommitCodec.encode(commit);
+            }
+            times[1] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                Utils.deserialize(serialized, Commit.class);
+            }
+            times[2] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                CommitCodec.decode(encoded);
+            }
+            times[3] = System.nanoTime() - start;
+        }
+
+        System.out.printf("commit-codec: %d files, %d iterations%n", files,
+                iterations);
+        System.out.printf("  %-22s %10d bytes%n", "serialized size",
+                serialized.length);
+        System.out.printf("  %-22s %10d bytes%n", "encoded size",
+                encoded.length);
+        report("serialize", times[0], iterations);
+        report("CommitCodec.encode", times[1], iterations);
+        report("deserialize", times[2], iterations);
+        report("CommitCodec.decode", times[3], iterations);
+    }
+
+    /**
+     * Makes COMMITS commits on top of one that tracks FILES files, each
+     * changing a single file, first the way commits used to be stored, with
+     * the whole table of files serialized into every commit, and then as
+     * tree updates that share all unchanged nodes with the parent. Reports
+     * the bytes each way writes and how long it takes, and then the time to
+     * find the files that differ between the first and the last commit.
+     *
+     * @param files Number of files tracked.
+     * @param commits Number of single-file commits.
+     */
+    static void commitTree(int files, int commits) {
+        HashMap<String, String> blobs = syntheticFiles(files, "v1");
+        String[] keys = blobs.keySet().toArray(new String[0]);
+        Random random = new Random(61);
+        String[] changed = new String[commits];
+        for (int i = 0; i < commits; ++i) {
+            changed[i] = keys[random.nextInt(keys.length)];
+        }
+
+        HashMap<String, String> first = new HashMap<>(blobs);
+        long flatBytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < commits; ++i) {
+            blobs.put(changed[i], Utils.sha1(changed[i], "v" + i));
+            Commit commit = new Commit("benchmark commit", null);
+            commit.setBlobs(blobs);
+            flatBytes += Utils.serialize(commit).length;
+        }
+        long flatTime = System.nanoTime() - start;
+
+        MemoryNodes nodes = new MemoryNodes();
+        String root = Tree.write(nodes, first);
+        String firstRoot = root;
+        long written = nodes._bytes;
+        start = System.nanoTime();
+        for (int i = 0; i < commits; ++i) {
+            TreeMap<String, String> change = new TreeMap<>();
+            change.put(changed[i], Utils.sha1(changed[i], "v" + i));
+            root = Tree.update(nodes, root, change);
+        }
+        long treeTime = System.nanoTime() - start;
+        long treeBytes = nodes._bytes - written;
+
+        start = System.nanoTime();
+        int flatDiff = 0;
+        for (Map.Entry<String, String> file : blobs.entrySet()) {
+            if (!file.getValue().equals(first.get(file.getKey()))) {
+                flatDiff += 1;
+            }
+        }
+        long flatDiffTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        HashMap<String, String[]> diff = new HashMap<>();
+        Tree.diff(nodes, firstRoot, root, diff);
+        long treeDiffTime = System.nanoTime() - start;
+
+        System.out.printf("commit-tree: %d files, %d single-file commits%n",
+                files, commits);
+        System.out.printf("  %-22s %10.1f KB/commit%n", "flat table",
+                flatBytes / 1024.0 / commits);
+        System.out.printf("  %-22s %10.1f KB/commit%n", "tree nodes",
+                treeBytes / 1024.0 / commits);
+        report("flat commit", flatTime, commits);
+        report("tree update", treeTime, commits);
+        report("flat diff", flatDiffTime, 1);
+        report("tree diff", treeDiffTime, 1);
+        System.out.printf("  %d and %d changed files found%n", flatDiff,
+                diff.size());
+    }
+
+    /**
+     * Stores FILES small blobs in a temporary repository and restores all
+     * of them into an empty directory, first one at a time and then with
+     * THREADS threads, and reports the time each takes.
+     *
+     * @param files Number of files.
+     * @param threads Number of threads of the parallel checkout.
+     */
+    static void checkout(int files, int threads) {
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("gitlet-bench");
+            File gitlet = new File(dir.toFile(), ".gitlet");
+            new File(gitlet, "blobs").mkdirs();
+            ObjectStore store = new ObjectStore(gitlet);
+            Random random = new Random(61);
+            String[] ids = new String[files];
+            for (int i = 0; i < files; ++i) {
+                byte[] contents = new byte[1024 + random.nextInt(4096)];
+                random.nextBytes(contents);
+                File source = new File(dir.toFile(), "source");
+                Utils.writeContents(source, (Object) contents);
+                ids[i] = Utils.sha1((Object) contents);
+                store.storeBlob(ids[i], "file" + i, source);
+            }
+
+            System.out.printf("checkout: %d files%n", files);
+            int[] counts = {1, threads};
+            for (int round = 0; round < counts.length; ++round) {
+                File work = new File(dir.toFile(), "work" + round);
+                work.mkdir();
+                Materializer materializer = new Materializer(store,
+                        counts[round]);
+                for (int i = 0; i < files; ++i) {
+                    materializer.add(ids[i], "file" + i, new File(work,
+                            "file" + i));
+                }
+                long start = System.nanoTime();
+                materializer.run();
+                report(counts[round] + " thread(s)",
+                        System.nanoTime() - start, files);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            if (dir != null) {
+                delete(dir);
+            }
+        }
+    }
+
+    /**
+     * Diffs and three-way merges a synthetic file of LINES lines against
+     * versions with EDITS scattered one-line edits each, as merge does for
+     * a file both branches changed.
+     *
+     * @param lines Number of lines in the base version.
+     * @param edits Number of lines each side changes.
+     */
+    static void diff(int lines, int edits) {
+        Random random = new Random(14);
+        List<String> base = new ArrayList<>();
+        for (int i = 0; i < lines; ++i) {
+            base.add(String.format("line %d of the base version%n", i));
+        }
+        List<String> ours = new ArrayList<>(base);
+        List<String> theirs = new ArrayList<>(base);
+        for (int i = 0; i < edits; ++i) {
+            int line = random.nextInt(lines);
+            ours.set(line, "ours " + ours.get(line));
+            line = random.nextInt(lines);
+            theirs.set(line, "theirs " + theirs.get(line));
+        }
+
+        long start = System.nanoTime();
+        int hunks = Diff.diff(base, ours).size();
+        long diffTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Diff3 merge = new Diff3(base, ours, theirs);
+        long mergeTime = System.nanoTime() - start;
+
+        System.out.printf("diff: %d lines, %d edits per side%n", lines,
+                edits);
+        report("diff", diffTime, 1);
+        report("diff3", mergeTime, 1);
+        System.out.printf("  %d hunks, %d conflicts, %d merged lines%n",
+                hunks, merge.conflicts(), merge.result().size());
+    }
+
+    /**
+     * Detects renames among FILES removed and FILES added files of LINES
+     * lines, half of them edited, first by comparing the signatures of
+     * every removed file with every added one, and then with Renames, which
+     * only compares files sharing a signature band.
+     *
+     * @param files Number of removed files, and of added files.
+     * @param lines Number of lines in each file.
+     */
+    static void renames(int files, int lines) {
+        Random random = new Random(15);
+        byte[][] removed = new byte[files][];
+        byte[][] added = new byte[files][];
+        for (int i = 0; i < files; ++i) {
+            StringBuilder text = new StringBuilder();
+            StringBuilder edited = new StringBuilder();
+            for (int j = 0; j < lines; ++j) {
+                String line = Long.toHexString(random.nextLong()) + "\n";
+                text.append(line);
+                edited.append(i % 2 == 1 && j % 5 == 0 ? "edited\n" : line);
+            }
+            removed[i] = text.toString().getBytes();
+            added[i] = edited.toString().getBytes();
+        }
+
+        long start = System.nanoTime();
+        int[][] signatures = new int[files][];
+        for (int i = 0; i < files; ++i) {
+            signatures[i] = Renames.signature(removed[i]);
+        }
+        int allPairs = 0;
+        for (int i = 0; i < files; ++i) {
+            int[] signature = Renames.signature(added[i]);
+            double best = 0;
+            for (int[] other : signatures) {
+                best = Math.max(best, Renames.similarity(signature, other));
+            }
+            if (best >= Renames.THRESHOLD) {
+                allPairs += 1;
+            }
+        }
+        long allPairsTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Renames renames = new Renames(false);
+        for (int i = 0; i < files; ++i) {
+            renames.addSource("old" + i, removed[i]);
+            renames.addTarget("new" + i, added[i]);
+        }
+        int banded = renames.detect().size();
+        long bandedTime = System.nanoTime() - start;
+
+        System.out.printf("renames: %d files of %d lines%n", files, lines);
+        report("all pairs", allPairsTime, 1);
+        report("signature bands", bandedTime, 1);
+        System.out.printf("  %d and %d renames%n", allPairs, banded);
+    }
+
+    /**
+     * Times log over CommitHeaders holding a chain of 1000 commits, and then
+     * one of COMMITS commits: the time to the first header, which should
+     * not depend on the length of the history, and the time to walk the
+     * whole chain and to stream every header.
+     *
+     * @param commits Number of commits in the longer history.
+     */
+    static void log(int commits) {
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("gitlet-bench");
+            System.out.printf("log: histories of 1000 and %d commits%n",
+                    commits);
+            for (int size : new int[] {1000, commits}) {
+                List<String> ids = new ArrayList<>();
+                List<Commit> headers = new ArrayList<>();
+                String parent = null;
+                for (int i = 0; i < size; ++i) {
+                    String id = Utils.sha1("commit", Integer.toString(i));
+                    headers.add(new Commit("commit " + i, (parent == null)
+                            ? null : new String[] {parent}, new Date(i)));
+                    ids.add(id);
+                    parent = id;
+                }
+                CommitHeaders index = new CommitHeaders(new File(
+                        dir.toFile(), "headers" + size), new File(
+                        dir.toFile(), "offsets" + size));
+                index.create(ids, headers);
+
+                long start = System.nanoTime();
+                try (CommitHeaders.Reader reader = index.reader()) {
+                    reader.read(parent);
+                }
+                long firstTime = System.nanoTime() - start;
+
+                int walked = 0;
+                start = System.nanoTime();
+                try (CommitHeaders.Reader reader = index.reader()) {
+                    for (String id = parent; id != null; walked += 1) {
+                        String[] parents = reader.read(id).getParents();
+                        id = (parents == null) ? null : parents[0];
+                    }
+                }
+                long walkTime = System.nanoTime() - start;
+
+                int[] streamed = new int[1];
+                start = System.nanoTime();
+                index.forEach((id, header) -> ++streamed[0] > 0);
+                long streamTime = System.nanoTime() - start;
+
+                report(size + " first header", firstTime, 1);
+                report(size + " first-parent walk", walkTime, walked);
+                report(size + " stream all", streamTime, streamed[0]);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            if (dir != null) {
+                delete(dir);
+            }
+        }
+    }
+
+    /**
+     * Resolves LOOKUPS abbreviated hashes among COMMITS commit hashes, first
+     * by comparing the prefix with every hash, as abbreviated commit ids
+     * used to be resolved, and then by binary search in a RecordIndex file.
+     *
+     * @param commits Number of commit hashes.
+     * @param lookups Number of abbreviated hashes resolved.
+     */
+    static void prefixLookup(int commits, int lookups) {
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("gitlet-bench");
+            List<String> ids = new ArrayList<>();
+            List<byte[]> records = new ArrayList<>();
+            for (int i = 0; i < commits; ++i) {
+                ids.add(Utils.sha1("commit", Integer.toString(i)));
+                records.add(GitletUtils.toRaw(ids.get(i)));
+            }
+            RecordIndex index = new RecordIndex(new File(dir.toFile(),
+                    "ids"), PackFile.RAW_LENGTH, PackFile.RAW_LENGTH);
+            index.create(records);
+            Random random = new Random(61);
+            String[] prefixes = new String[lookups];
+            for (int i = 0; i < lookups; ++i) {
+                prefixes[i] = ids.get(random.nextInt(commits)).substring(0,
+                        8);
+            }
+
+            int scanned = 0;
+            long start = System.nanoTime();
+            for (String prefix : prefixes) {
+                for (String id : ids) {
+                    if (id.startsWith(prefix)) {
+                        scanned += 1;
+                    }
+                }
+            }
+            long scanTime = System.nanoTime() - start;
+
+            int searched = 0;
+            start = System.nanoTime();
+            for (String prefix : prefixes) {
+                searched += index.range(GitletUtils.toRaw(prefix
+                        + "00000000000000000000000000000000"), GitletUtils
+                        .toRaw(prefix + "ffffffffffffffffffffffffffffffff"),
+                        2).size();
+            }
+            long searchTime = System.nanoTime() - start;
+
+            System.out.printf("prefix-lookup: %d commits, %d lookups%n",
+                    commits, lookups);
+            report("scan all hashes", scanTime, lookups);
+            report("index binary search", searchTime, lookups);
+            System.out.printf("  %d and %d matches%n", scanned, searched);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            if (dir != null) {
+                delete(dir);
+            }
+        }
+    }
+
+    /**
+     * Returns blob hashes for FILES synthetic files, keyed as in commits.
+     *
+     * @param files Number of files.
+     * @param version Mixed into every blob hash.
+     * @return Blob hashes by file key.
+     */
+    private static HashMap<String, String> syntheticFiles(int files,
+                                                          String version) {
+        HashMap<String, String> blobs = new HashMap<>();
+        for (int i = 0; i < files; ++i) {
+            String name = String.format("file%06d.txt", i);
+            blobs.put(CommitCodec.blobKey(name), Utils.sha1(name, version));
+        }
+        return blobs;
+    }
+
+    /** Tree nodes kept in memory, counting the bytes written. */
+    private static class MemoryNodes implements Tree.Nodes {
+        @Override
+        public byte[] readTree(String id) {
+            return _nodes.get(id);
+        }
+
+        @Override
+        public void writeTree(String id, byte[] contents) {
+            _nodes.put(id, contents);
+            _bytes += contents.length;
+        }
+
+        @Override
+        public boolean hasTree(String id) {
+            return _nodes.containsKey(id);
+        }
+
+        /** Stored nodes by hash. */
+        private final HashMap<String, byte[]> _nodes = new HashMap<>();
+
+        /** Total bytes written. */
+        private long _bytes;
+    }
+
+    /**
+     * Prints the bytes stored under DIR and the throughput of storing INPUT
+     * bytes in NANOS nanoseconds.
+     *
+     * @param label What was measured.
+     * @param dir Directory holding the stored objects.
+     * @param input Number of bytes stored.
+     * @param nanos Total time in nanoseconds.
+     */
+    private static void reportStorage(String label, File dir, long input,
+                                      long nanos) {
+        long stored;
+        try (var paths = Files.walk(dir.toPath())) {
+            stored = paths.map(Path::toFile).filter(File::isFile)
+                    .mapToLong(File::length).sum();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        System.out.printf("  %-22s %10.1f MB stored %10.1f MB/s%n", label,
+                stored / 1048576.0, input / 1048576.0 / (nanos / 1e9));
+    }
+
+    /**
+     * Deletes DIR and everything below it.
+     *
+     * @param dir Directory to delete.
+     */
+    static void delete(Path dir) {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        } catch (IOException e) {
+            return;
+        }
+    }
+
+    /**
+     * The split-point computation merge used before the commit graph, run
+     * against GRAPH instead of the disk: build both first-parent ancestor
+     * lists, then return the first of CURR's ancestors that GIVEN's list
+     * contains.
+     *
+     * @param graph Commit graph.
+     * @param curr Hash of the current head.
+     * @param given Hash of the given head.
+     * @return Split point hash, or "".
+     */
+    private static String legacySplitPoint(CommitGraph graph, String curr,
+                                           String given) {
+        List<String> currParents = graph.firstParentAncestors(curr);
+        List<String> givenParents = graph.firstParentAncestors(given);
+        for (String parent : currParents) {
+            if (givenParents.contains(parent)) {
+                return parent;
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Returns an in-memory history of COMMITS commits spread over BRANCHES
+     * branches. Each new commit goes on a random branch; with probability
+     * MERGERATE it merges another branch's tip into it. The final branch tips
+     * are added to TIPS.
+     *
+     * @param commits Number of commits.
+     * @param branches Number of branches.
+     * @param mergeRate Fraction of commits that are merges.
+     * @param random Source of randomness.
+     * @param tips Receives the positions of the branch tips.
+     * @return The synthetic commit graph.
+     */
+    static CommitGraph syntheticHistory(int commits, int branches,
+                                        double mergeRate, Random random,
+                                        List<Integer> tips) {
+        CommitGraph graph = new CommitGraph();
+        String[] heads = new String[branches];
+        HashSet<String> seen = new HashSet<>();
+        String root = Utils.sha1("synthetic", "0");
+        graph.add(root, null, 0);
+        for (int i = 0; i < branches; ++i) {
+            heads[i] = root;
+        }
+        for (int i = 1; i < commits; ++i) {
+            int branch = random.nextInt(branches);
+            String hash = Utils.sha1("synthetic", Integer.toString(i));
+            String[] parents;
+            if (random.nextDouble() < mergeRate) {
+                int other = random.nextInt(branches);
+                parents = (other == branch || heads[other].equals(
+                        heads[branch])) ? new String[]{heads[branch]}
+                        : new String[]{heads[branch], heads[other]};
+            } else {
+                parents = new String[]{heads[branch]};
+            }
+            graph.add(hash, parents, i);
+            heads[branch] = hash;
+        }
+        for (String head : heads) {
+            if (seen.add(head)) {
+                tips.add(graph.position(head));
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Prints one timing line.
+     *
+     * @param label What was measured.
+     * @param nanos Total time in nanoseconds.
+     * @param ops Number of operations timed.
+     */
+    static void report(String label, long nanos, int ops) {
+        System.out.printf("  %-22s %10.3f ms total %10.3f ms/op%n", label,
+                nanos / 1e6, nanos / 1e6 / Math.max(ops, 1));
+    }
+
+    /**
+     * Returns ARGS[K] as an integer, or DEFAULTVALUE if it is absent.
+     *
+     * @param args Command-line arguments.
+     * @param k Argument index.
+     * @param defaultValue Value used when ARGS[K] is missing.
+     * @return The argument's value.
+     */
+    static int intArg(String[] args, int k, int defaultValue) {
+        return (args.length > k) ? Integer.parseInt(args[k]) : defaultValue;
+    }
+}
@@ -0,0 +1,140 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Splits a stream into content-defined chunks using a gear rolling hash in
+ * the style of FastCDC. Chunk boundaries depend only on the bytes near them,
+ * so an edit in one place of a large file changes only the chunks around the
+ * edit, and the rest can be shared with earlier versions of the file.
+ *
+ * @author Farhad Alemi
+ */
+class Chunker {
+
+    /** No chunk except the last is smaller than this. */
+    static final int MIN_SIZE = 2 * 1024;
+
+    /** Target average chunk size. */
+    static final int AVG_SIZE = 8 * 1024;
+
+    /** No chunk is larger than this. */
+    static final int MAX_SIZE = 64 * 1024;
+
+    /** Boundary mask used before the average size is reached; it has more
+     *  bits than MASK_LARGE, which makes small chunks less likely. */
+    private static final long MASK_SMALL = 0xfffe000000000000L;
+
+    /** Boundary mask used after the average size is reached. */
+    private static final long MASK_LARGE = 0xffc0000000000000L;
+
+    /** Random value mixed into the hash for each possible byte. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x61b61b61bL);
+        for (int i = 0; i < GEAR.length; ++i) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * A chunker reading from IN.
+     *
+     * @param in Source of the bytes to chunk; not closed by the chunker.
+     */
+    Chunker(InputStream in) {
+        _in = in;
+        _buffer = new byte[2 * MAX_SIZE];
+    }
+
+    /**
+     * Returns the next chunk, or null once the stream is exhausted.
+     *
+     * @return Bytes of the next chunk.
+     * @throws IOException if the stream cannot be read.
+     */
+    byte[] next() throws IOException {
+        fill();
+        if (_end == _start) {
+            return null;
+        }
+        int length = cut(_buffer, _start, _end - _start);
+        byte[] chunk = Arrays.copyOfRange(_buffer, _start, _start + length);
+        _start += length;
+        return chunk;
+    }
+
+    /**
+     * Returns the length of the chunk starting at BUF[START], given that
+     * AVAILABLE bytes are buffered from there.
+     *
+     * @param buf Buffer.
+     * @param start Start of the chunk.
+     * @param available Number of buffered bytes from START on.
+     * @return Chunk length.
+     */
+    static int cut(byte[] buf, int start, int available) {
+        if (available <= MIN_SIZE) {
+            return available;
+        }
+        int limit = Math.min(available, MAX_SIZE);
+        int normal = Math.min(limit, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; ++i) {
+            hash = (hash << 1) + GEAR[buf[start + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i;
+            }
+        }
+        for (; i < limit; ++i) {
+            hash = (hash << 1) + GEAR[buf[start + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Makes sure at least MAX_SIZE bytes are buffered past _start, unless
+     * the stream ends first.
+     *
+     * @throws IOException if the stream cannot be read.
+     */
+    private void fill() throws IOException {
+        if (_end - _start >= MAX_SIZE || _eof) {
+            return;
+        }
+        System.arraycopy(_buffer, _start, _buffer, 0, _end - _start);
+        _end -= _start;
+        _start = 0;
+        while (_end < _buffer.length) {
+            int n = _in.read(_buffer, _end, _buffer.length - _end);
+            if (n < 0) {
+                _eof = true;
+                break;
+            }
+            _end += n;
+        }
+    }
+
+    /** Source stream. */
+    private final InputStream _in;
+
+    /** Buffered bytes are _buffer[_start .. _end - 1]. */
+    private final byte[] _buffer;
+
+    /** Start of the buffered, not yet returned bytes. */
+    private int _start;
+
+    /** End of the buffered bytes. */
+    private int _end;
+
+    /** True once the source stream is exhausted. */
+    private boolean _eof;
+}
@@ -0,0 +1,65 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkerTest {
+
+    /** Returns the chunks of CONTENTS. */
+    private static List<byte[]> chunks(byte[] contents) throws IOException {
+        List<byte[]> result = new ArrayList<>();
+        Chunker chunker = new Chunker(new ByteArrayInputStream(contents));
+        for (byte[] chunk = chunker.next(); chunk != null;
+             chunk = chunker.next()) {
+            result.add(chunk);
+        }
+        return result;
+    }
+
+    @Test
+    public void chunksCoverInputTest() throws IOException {
+        byte[] contents = new byte[1 << 20];
+        new Random(1).nextBytes(contents);
+        List<byte[]> chunks = chunks(contents);
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.size(); ++i) {
+            int length = chunks.get(i).length;
+            assertTrue(length <= Chunker.MAX_SIZE);
+            assertTrue(length >= Chunker.MIN_SIZE || i == chunks.size() - 1);
+            joined.write(chunks.get(i));
+        }
+        assertArrayEquals(contents, joined.toByteArray());
+    }
+
+    @Test
+    public void insertionChangesFewChunksTest() throws IOException {
+        byte[] contents = new byte[1 << 20];
+        new Random(2).nextBytes(contents);
+        byte[] edited = new byte[contents.length + 10];
+        System.arraycopy(contents, 0, edited, 0, 1000);
+        System.arraycopy(contents, 1000, edited, 1010,
+                contents.length - 1000);
+
+        HashSet<String> before = new HashSet<>();
+        for (byte[] chunk : chunks(contents)) {
+            before.add(Utils.sha1((Object) chunk));
+        }
+        int changed = 0;
+        for (byte[] chunk : chunks(edited)) {
+            if (!before.contains(Utils.sha1((Object) chunk))) {
+                changed += 1;
+            }
+        }
+        assertTrue(changed <= 2);
+    }
+}
@@ -1,15 +1,10 @@
 package gitlet;
 
-import java.io.File;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.Objects;
-
-import static org.junit.Assert.assertNotNull;
 
 /**
  * Represents the commits/snapshots similar to the real Git.
@@ -25,10 +20,21 @@ public class Commit implements Serializable {
      * @param parentCommits The parent commit(s).
      */
     Commit(String message, String[] parentCommits) {
+        this(message, parentCommits, (parentCommits != null) ? new Date(System
+                .currentTimeMillis()) : new Date(0));
+    }
+
+    /**
+     * A commit made at TIMESTAMP, as read back from the object store.
+     *
+     * @param message The commit message.
+     * @param parentCommits The parent commit(s).
+     * @param timestamp The commit date.
+     */
+    Commit(String message, String[] parentCommits, Date timestamp) {
         _message = message;
         _parentCommit = parentCommits;
-        _timestamp = (_parentCommit != null) ? new Date(System
-                .currentTimeMillis()) : new Date(0);
+        _timestamp = timestamp;
         _blobs = new HashMap<>();
     }
 
@@ -69,11 +75,17 @@ public class Commit implements Serializable {
     }
 
     /**
-     * Getter methods which returns the blobs tracked in the commit.
+     * Getter methods which returns the blobs tracked in the commit. A commit
+     * read with only its tree reads the whole tree from STORE the first
+     * time.
      *
+     * @param store Object store holding the commit's tree.
      * @return blobs in the commit.
      */
-    HashMap<String, String> getBlobs() {
+    HashMap<String, String> getBlobs(ObjectStore store) {
+        if (_blobs == null && _tree != null) {
+            _blobs = Tree.read(store, _tree);
+        }
         return _blobs;
     }
 
@@ -84,21 +96,74 @@ public class Commit implements Serializable {
      */
     void setBlobs(HashMap<String, String> blobs) {
         _blobs = blobs;
+        _tree = null;
+    }
+
+    /**
+     * Returns the hash of the blob the commit tracks under KEY, reading only
+     * the part of the tree in STORE that leads to it.
+     *
+     * @param store Object store holding the commit's tree.
+     * @param key Filename's SHA1, a dash and the file name.
+     * @return The blob hash, or null if the file is not tracked.
+     */
+    String getBlob(ObjectStore store, String key) {
+        if (_blobs != null || _tree == null) {
+            return (_blobs == null) ? null : _blobs.get(key);
+        }
+        return Tree.get(store, _tree, key);
+    }
+
+    /**
+     * Returns the root of the commit's tree. Commits made before trees
+     * existed only have their blobs; their tree is written to STORE the
+     * first time it is asked for.
+     *
+     * @param store Object store for the tree; may be null if the commit
+     *              has one.
+     * @return Hash of the root tree node.
+     */
+    String getTree(ObjectStore store) {
+        if (_tree == null) {
+            _tree = Tree.write(store, (_blobs == null)
+                    ? new HashMap<>() : _blobs);
+        }
+        return _tree;
+    }
+
+    /**
+     * Sets the commit's tree to the one rooted at TREE; its blobs are read
+     * from the tree when needed.
+     *
+     * @param tree Hash of the root tree node.
+     */
+    void setTree(String tree) {
+        _tree = tree;
+        _blobs = null;
+    }
+
+    /**
+     * Returns true iff the commit's tree is known without writing it.
+     *
+     * @return True if the commit has a tree.
+     */
+    boolean hasTree() {
+        return _tree != null;
     }
 
     /**
-     * Returns the commit which has the given hash.
+     * Returns the commit of repository REPO which has the given hash.
      *
+     * @param repo The repository.
      * @param commitHash The commit hash.
      * @return The commit having commitHash as its hash.
      */
-    public static Commit retrieveCommit(String commitHash) {
-        commitHash = hashAutoComplete(commitHash);
+    public static Commit retrieveCommit(Repository repo, String commitHash) {
+        commitHash = hashAutoComplete(repo, commitHash);
 
-        File commitFile = new File(Gitlet.commitsFolder() + Gitlet.SEPARATOR
-                + commitHash);
-        if (commitFile.exists()) {
-            return Utils.readObject(commitFile, Commit.class);
+        byte[] contents = repo.objectStore().readCommit(commitHash);
+        if (contents != null) {
+            return CommitCodec.decode(contents);
         } else {
             Main.softFail("No commit with that id exists.");
             return new Commit("");
@@ -117,93 +182,87 @@ public class Commit implements Serializable {
             return;
         }
 
-        System.out.println("===");
-        System.out.printf("commit %s\n", commitHash);
-
+        StringBuilder out = new StringBuilder("===\ncommit ")
+                .append(commitHash).append('\n');
         if (commit.getParents() != null && commit.getParents().length > 1) {
-            System.out.printf("Merge: %s %s\n", commit.getParents()[0]
-                    .substring(0, 7), commit.getParents()[1].substring(0, 7));
+            out.append("Merge: ").append(commit.getParents()[0], 0, 7)
+                    .append(' ').append(commit.getParents()[1], 0, 7)
+                    .append('\n');
         }
-        System.out.println("Date: " + new SimpleDateFormat("EEE MMM d HH:mm:ss"
-                + " yyyy Z").format(commit.getTimestamp()));
-        System.out.println(commit.getMessage());
-        System.out.println();
+        out.append("Date: ").append(formatDate(commit.getTimestamp()))
+                .append('\n').append(commit.getMessage()).append("\n\n");
+        System.out.print(out);
     }
 
     /**
-     * Returns a list of all the ancestors starting from the commit with the
-     * given hash.
+     * Returns DATE as log shows it.
      *
+     * @param date A commit date.
+     * @return Formatted date.
+     */
+    static String formatDate(Date date) {
+        return new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z").format(date);
+    }
+
+    /**
+     * Returns a list of all the ancestors starting from the commit of
+     * repository REPO with the given hash.
+     *
+     * @param repo The repository.
      * @param commitHash The commit hash starting from which the ancestors are
      * found.
      * @return The list of ancestors.
      */
-    public static List<String> getAncestors(String commitHash) {
-        String[] currParent;
-        List<String> ancestors;
-
-        ancestors = new ArrayList<>();
-        currParent = Objects.requireNonNull(retrieveCommit(commitHash))
-                .getParents();
-
-        while (currParent != null) {
-            ancestors.add(currParent[0]);
-            currParent = Objects.requireNonNull(retrieveCommit(currParent[0]))
-                    .getParents();
-        }
-        return ancestors;
+    public static List<String> getAncestors(Repository repo,
+                                            String commitHash) {
+        return repo.commitGraph().firstParentAncestors(
+                hashAutoComplete(repo, commitHash));
     }
 
     /**
-     * Returns the first common (nearest in currParents) parent from the lists
-     * of ancestors.
+     * Returns the split point of the commits with the given hashes: their
+     * latest common ancestor in repository REPO, following both parents of
+     * merge commits.
      *
-     * @param currParents Ancestors in a commit.
-     * @param givenParents Ancestors in a commit.
+     * @param repo The repository.
+     * @param currHash Hash of the current branch's head commit.
+     * @param givenHash Hash of the given branch's head commit.
+     * @return The split point's hash, or "" if the commits are unrelated.
      */
-    public static String findSplitPoint(List<String> currParents, List<String>
-            givenParents) {
-        String splitPoint = "";
-
-        assertNotNull(currParents);
-        assertNotNull(givenParents);
-
-        for (String parent : currParents) {
-            if (givenParents.contains(parent)) {
-                splitPoint = parent;
-                break;
-            }
-        }
-        return splitPoint;
+    public static String findSplitPoint(Repository repo, String currHash,
+                                        String givenHash) {
+        CommitGraph graph = repo.commitGraph();
+        int splitPoint = graph.mergeBase(graph.position(currHash),
+                graph.position(givenHash));
+        return (splitPoint == CommitGraph.NONE) ? "" : graph.hash(splitPoint);
     }
 
     /**
-     * Auto completes the commit hash, if possible.
+     * Auto completes the commit hash, if possible. The hash is looked up in
+     * the commit index of repository REPO rather than compared with every
+     * stored commit.
+     * @param repo The repository.
      * @param commitHash Commit hash.
      * @return The, possibly, completed commit hash.
      */
-    public static String hashAutoComplete(String commitHash) {
+    public static String hashAutoComplete(Repository repo,
+                                          String commitHash) {
         if (commitHash.length() != Utils.UID_LENGTH) {
-            boolean foundOnce = false;
-            String tempHash = "";
-            List<String> commitNames = Utils.plainFilenamesIn(Gitlet
-                    .commitsFolder());
-
-            for (String commitFile : Objects.requireNonNull(commitNames)) {
-                if (commitFile.startsWith(commitHash)) {
-                    if (foundOnce) {
-                        Main.softFail("Commit ID is not unique.");
-                    } else {
-                        foundOnce = true;
-                        tempHash = commitFile;
-                    }
-                }
+            List<String> matches = repo.objectStore().commitIndex()
+                    .resolve(commitHash, 2);
+            if (matches.size() > 1) {
+                Main.softFail("Commit ID is not unique.");
             }
-            commitHash = (foundOnce) ? tempHash : commitHash;
+            commitHash = (matches.size() == 1) ? matches.get(0) : commitHash;
         }
         return commitHash;
     }
 
+    /** The serialization id that Java derived for the original version of
+     * this class, fixed so that existing repositories stay readable as the
+     * class gains methods. */
+    private static final long serialVersionUID = -8436843222117652742L;
+
     /** Commit message. */
     private final String _message;
 
@@ -216,4 +275,8 @@ public class Commit implements Serializable {
     /** A mapping of file names to respective blobs. Filename's SHA1 is the
      * key, and staged file's SHA1 is the respective value. */
     private HashMap<String, String> _blobs;
+
+    /** Hash of the root node of the tree of tracked files; null for commits
+     * made before trees existed. */
+    private String _tree;
 }
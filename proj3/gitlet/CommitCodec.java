@@ -0,0 +1,225 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The binary encoding of commits. After MAGIC and VERSION come the
+ * timestamp, the message, the raw 20-byte hashes of the parents, and the raw
+ * hash of the root of the commit's Tree.
+ * <p>
+ * Version 1 commits held the tracked files themselves instead of a tree: a
+ * sorted table of file names, each stored as the length of the prefix it
+ * shares with the previous name followed by the rest of it, and then the raw
+ * hash of each file's blob in the same order. A blob key is always the SHA-1
+ * of the file name, a dash and the name, so only the name was stored; keys
+ * are rebuilt on decoding and interned, so commits read by one command share
+ * a single copy of each key. Commits written before this encoding existed
+ * are Java-serialized; they are recognized by the serialization stream magic.
+ * Both kinds are still decoded, and gc rewrites them in the current version.
+ *
+ * @author Farhad Alemi
+ */
+class CommitCodec {
+
+    /** Magic number at the start of every encoded commit. */
+    static final int MAGIC = 0x47434f4d;
+
+    /** Current encoding version. */
+    static final byte VERSION = 2;
+
+    /** Version whose commits hold a table of files rather than a tree. */
+    static final byte FLAT_VERSION = 1;
+
+    /** First two bytes of every Java serialization stream. */
+    private static final int SERIALIZED_MAGIC = 0xaced;
+
+    /**
+     * Returns the encoding of COMMIT.
+     *
+     * @param commit A commit.
+     * @return Encoded bytes.
+     */
+    static byte[] encode(Commit commit) {
+        if (!commit.hasTree()) {
+            throw Utils.error("Commit has no tree.");
+        }
+        byte[] message = commit.getMessage().getBytes(StandardCharsets.UTF_8);
+        String[] parents = (commit.getParents() == null) ? new String[0]
+                : commit.getParents();
+
+        byte[] result = new byte[4 + 1 + 8 + varIntSize(message.length)
+                + message.length + 1 + (parents.length + 1)
+                * PackFile.RAW_LENGTH];
+        ByteBuffer out = ByteBuffer.wrap(result);
+        out.putInt(MAGIC);
+        out.put(VERSION);
+        out.putLong(commit.getTimestamp().getTime());
+        putVarInt(out, message.length);
+        out.put(message);
+        out.put((byte) parents.length);
+        for (String parent : parents) {
+            GitletUtils.toRaw(parent, result, out.position());
+            out.position(out.position() + PackFile.RAW_LENGTH);
+        }
+        GitletUtils.toRaw(commit.getTree(null), result, out.position());
+        return result;
+    }
+
+    /**
+     * Returns the commit encoded in CONTENTS, which may also be a
+     * Java-serialized commit.
+     *
+     * @param contents Encoded commit.
+     * @return The commit.
+     */
+    static Commit decode(byte[] contents) {
+        if (isSerialized(contents)) {
+            return Utils.deserialize(contents, Commit.class);
+        }
+        try (DataInputStream in = new DataInputStream(new
+                ByteArrayInputStream(contents))) {
+            byte version = (in.readInt() == MAGIC) ? in.readByte() : -1;
+            if (version != VERSION && version != FLAT_VERSION) {
+                throw Utils.error("Unknown commit encoding.");
+            }
+            Date timestamp = new Date(in.readLong());
+            byte[] message = new byte[readVarInt(in)];
+            in.readFully(message);
+
+            byte[] raw = new byte[PackFile.RAW_LENGTH];
+            String[] parents = null;
+            int parentCount = in.readByte();
+            if (parentCount > 0) {
+                parents = new String[parentCount];
+                for (int i = 0; i < parentCount; ++i) {
+                    in.readFully(raw);
+                    parents[i] = GitletUtils.toHex(raw, 0, raw.length);
+                }
+            }
+
+            Commit commit = new Commit(new String(message,
+                    StandardCharsets.UTF_8), parents, timestamp);
+            if (version == VERSION) {
+                in.readFully(raw);
+                commit.setTree(GitletUtils.toHex(raw, 0, raw.length));
+                return commit;
+            }
+
+            int fileCount = readVarInt(in);
+            String[] keys = new String[fileCount];
+            byte[] previous = new byte[0];
+            for (int i = 0; i < fileCount; ++i) {
+                int shared = readVarInt(in);
+                byte[] name = new byte[shared + readVarInt(in)];
+                System.arraycopy(previous, 0, name, 0, shared);
+                in.readFully(name, shared, name.length - shared);
+                keys[i] = blobKey(new String(name, StandardCharsets.UTF_8));
+                previous = name;
+            }
+            HashMap<String, String> blobs = new HashMap<>(
+                    Math.max(16, fileCount * 4 / 3 + 1));
+            for (String key : keys) {
+                in.readFully(raw);
+                blobs.put(key, GitletUtils.toHex(raw, 0, raw.length));
+            }
+            commit.setBlobs(blobs);
+            return commit;
+        } catch (IOException e) {
+            throw Utils.error("Corrupt commit.");
+        }
+    }
+
+    /**
+     * Returns true iff CONTENTS is a Java-serialized commit rather than one
+     * in this encoding.
+     *
+     * @param contents Stored commit bytes.
+     * @return True for the old encoding.
+     */
+    static boolean isSerialized(byte[] contents) {
+        return contents.length >= 2 && ((contents[0] & 0xff) << 8
+                | (contents[1] & 0xff)) == SERIALIZED_MAGIC;
+    }
+
+    /**
+     * Returns true iff CONTENTS is a commit in the current version of this
+     * encoding, which gc leaves as it is.
+     *
+     * @param contents Stored commit bytes.
+     * @return True unless the commit predates trees.
+     */
+    static boolean isCurrent(byte[] contents) {
+        return contents.length > 4 && !isSerialized(contents)
+                && contents[4] == VERSION;
+    }
+
+    /**
+     * Returns the key under which a commit tracks file NAME, sharing one
+     * copy of each key per process.
+     *
+     * @param name File name.
+     * @return SHA-1 of NAME, a dash, and NAME.
+     */
+    static String blobKey(String name) {
+        return KEYS.computeIfAbsent(name, n -> Utils.sha1(n) + "-" + n);
+    }
+
+    /**
+     * Writes VALUE to OUT using seven bits per byte, low bits first.
+     *
+     * @param out Destination buffer.
+     * @param value A non-negative integer.
+     */
+    private static void putVarInt(ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Returns the number of bytes putVarInt uses for VALUE.
+     *
+     * @param value A non-negative integer.
+     * @return Encoded size.
+     */
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size += 1;
+        }
+        return size;
+    }
+
+    /**
+     * Reads an integer written by putVarInt from IN.
+     *
+     * @param in Source stream.
+     * @return The integer.
+     * @throws IOException if IN cannot be read.
+     */
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw Utils.error("Corrupt commit.");
+    }
+
+    /** Blob keys by file name, shared by all threads. */
+    private static final ConcurrentHashMap<String, String> KEYS =
+            new ConcurrentHashMap<>();
+}
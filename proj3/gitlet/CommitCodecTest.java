@@ -0,0 +1,62 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CommitCodecTest {
+
+    /** Returns a commit with parents PARENTS tracking files NAMES. */
+    private static Commit commit(String[] parents, String... names) {
+        Commit commit = new Commit("\u00fcbung: fixed wug.txt", parents);
+        HashMap<String, String> blobs = new HashMap<>();
+        for (String name : names) {
+            blobs.put(CommitCodec.blobKey(name), Utils.sha1(name, "blob"));
+        }
+        commit.setBlobs(blobs);
+        return commit;
+    }
+
+    /** Asserts that EXPECTED and ACTUAL hold the same message, timestamp
+     *  and parents. */
+    private static void assertSameHeader(Commit expected, Commit actual) {
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertArrayEquals(expected.getParents(), actual.getParents());
+    }
+
+    @Test
+    public void roundTripTest() {
+        Commit initial = new Commit("initial commit");
+        initial.setTree(Utils.sha1("empty tree"));
+        Commit decoded = CommitCodec.decode(CommitCodec.encode(initial));
+        assertSameHeader(initial, decoded);
+        assertNull(decoded.getParents());
+        assertEquals(initial.getTree(null), decoded.getTree(null));
+
+        Commit merge = commit(new String[]{Utils.sha1("a"), Utils.sha1("b")});
+        merge.setTree(Utils.sha1("tree"));
+        byte[] encoded = CommitCodec.encode(merge);
+        assertTrue(CommitCodec.isCurrent(encoded));
+        decoded = CommitCodec.decode(encoded);
+        assertSameHeader(merge, decoded);
+        assertEquals(merge.getTree(null), decoded.getTree(null));
+    }
+
+    @Test
+    public void serializedCommitTest() {
+        Commit commit = commit(new String[]{Utils.sha1("a")}, "wug.txt");
+        byte[] serialized = Utils.serialize(commit);
+        assertFalse(CommitCodec.isCurrent(serialized));
+        Commit decoded = CommitCodec.decode(serialized);
+        assertSameHeader(commit, decoded);
+        assertFalse(decoded.hasTree());
+        assertEquals(commit.getBlobs(null), decoded.getBlobs(null));
+    }
+}
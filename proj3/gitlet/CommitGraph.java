@@ -0,0 +1,454 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The commit graph: for every commit, the positions of its parents, its
+ * generation number and its timestamp. It lets ancestry walks run without
+ * deserializing whole commits. The graph is persisted in .gitlet/commit-graph
+ * as fixed-size records and is loaded once per invocation; commits missing
+ * from it (e.g. those copied over from a remote, or added by a concurrent
+ * gitlet process) are added the first time they are looked up.
+ *
+ * @author Farhad Alemi
+ */
+class CommitGraph {
+
+    /** Position used for a missing parent. */
+    static final int NONE = -1;
+
+    /** Magic number at the start of the commit-graph file. */
+    static final int MAGIC = 0x47434731;
+
+    /** Size of the file header in bytes. */
+    static final int HEADER_SIZE = 4;
+
+    /** Size of one record: hash, two parents, generation and timestamp. */
+    static final int RECORD_SIZE = PackFile.RAW_LENGTH + 4 + 4 + 4 + 8;
+
+    /** Merge-base flag of commits reachable from the first commit. */
+    private static final int FROM_A = 1;
+
+    /** Merge-base flag of commits reachable from the second commit. */
+    private static final int FROM_B = 2;
+
+    /** An empty graph that lives only in memory. */
+    CommitGraph() {
+        this(null, null);
+    }
+
+    /**
+     * The commit graph of the repository whose objects are in STORE, backed
+     * by the file GRAPHFILE.
+     *
+     * @param graphFile The commit-graph file; null for an in-memory graph.
+     * @param store Objects used to fill in commits missing from the graph.
+     */
+    CommitGraph(File graphFile, ObjectStore store) {
+        _graphFile = graphFile;
+        _store = store;
+        _hashes = new ArrayList<>();
+        _positions = new HashMap<>();
+        _parents = new int[16];
+        _generations = new int[8];
+        _timestamps = new long[8];
+        if (graphFile != null && graphFile.isFile()) {
+            load();
+            _persisted = size();
+        }
+    }
+
+    /**
+     * Returns the number of commits in the graph.
+     *
+     * @return Commit count.
+     */
+    int size() {
+        return _hashes.size();
+    }
+
+    /**
+     * Returns the position of commit HASH, adding it (and any missing
+     * ancestors) from the object store if necessary.
+     *
+     * @param hash Full commit hash.
+     * @return Position of HASH in the graph.
+     */
+    int position(String hash) {
+        Integer pos = _positions.get(hash);
+        if (pos == null) {
+            backfill(hash);
+            pos = _positions.get(hash);
+        }
+        return pos;
+    }
+
+    /**
+     * Returns true iff HASH is already in the graph.
+     *
+     * @param hash Full commit hash.
+     * @return True if present.
+     */
+    boolean contains(String hash) {
+        return _positions.containsKey(hash);
+    }
+
+    /**
+     * Returns the hash of the commit at POS.
+     *
+     * @param pos Graph position.
+     * @return Commit hash.
+     */
+    String hash(int pos) {
+        return _hashes.get(pos);
+    }
+
+    /**
+     * Returns the position of the first parent of the commit at POS.
+     *
+     * @param pos Graph position.
+     * @return Parent position, or NONE.
+     */
+    int firstParent(int pos) {
+        return _parents[2 * pos];
+    }
+
+    /**
+     * Returns the position of the second (merged-in) parent of the commit at
+     * POS.
+     *
+     * @param pos Graph position.
+     * @return Parent position, or NONE.
+     */
+    int secondParent(int pos) {
+        return _parents[2 * pos + 1];
+    }
+
+    /**
+     * Returns the generation number of the commit at POS: 1 for a root
+     * commit, otherwise one more than the largest generation of its parents.
+     *
+     * @param pos Graph position.
+     * @return Generation number.
+     */
+    int generation(int pos) {
+        return _generations[pos];
+    }
+
+    /**
+     * Returns the timestamp of the commit at POS.
+     *
+     * @param pos Graph position.
+     * @return Milliseconds since the epoch.
+     */
+    long timestamp(int pos) {
+        return _timestamps[pos];
+    }
+
+    /**
+     * Adds commit HASH, whose parents (possibly null) are PARENTS, to the
+     * graph. The parents must already be in the graph or in the store.
+     *
+     * @param hash Full commit hash.
+     * @param parents Parent hashes; null for the initial commit.
+     * @param timestamp Milliseconds since the epoch.
+     * @return Position of HASH.
+     */
+    int add(String hash, String[] parents, long timestamp) {
+        Integer existing = _positions.get(hash);
+        if (existing != null) {
+            return existing;
+        }
+        int first = NONE, second = NONE;
+        if (parents != null && parents.length > 0) {
+            first = position(parents[0]);
+            if (parents.length > 1) {
+                second = position(parents[1]);
+            }
+        }
+        int pos = append(hash, first, second, timestamp);
+        persist(pos, pos + 1);
+        return pos;
+    }
+
+    /**
+     * Returns the first-parent ancestors of HASH, nearest first, excluding
+     * HASH itself.
+     *
+     * @param hash Full commit hash.
+     * @return Ancestor hashes.
+     */
+    List<String> firstParentAncestors(String hash) {
+        List<String> result = new ArrayList<>();
+        for (int pos = firstParent(position(hash)); pos != NONE;
+             pos = firstParent(pos)) {
+            result.add(hash(pos));
+        }
+        return result;
+    }
+
+    /**
+     * Returns true iff the commit at ANCESTOR is reachable from the commit at
+     * DESCENDANT (a commit is its own ancestor). Commits whose generation is
+     * below ANCESTOR's cannot lead to it and are not explored.
+     *
+     * @param ancestor Graph position of the possible ancestor.
+     * @param descendant Graph position of the possible descendant.
+     * @return True if ANCESTOR is an ancestor of DESCENDANT.
+     */
+    boolean isAncestor(int ancestor, int descendant) {
+        int floor = generation(ancestor);
+        Deque<Integer> pending = new ArrayDeque<>();
+        HashSet<Integer> seen = new HashSet<>();
+        pending.push(descendant);
+        while (!pending.isEmpty()) {
+            int pos = pending.pop();
+            if (pos == ancestor) {
+                return true;
+            }
+            for (int i = 0; i < 2; ++i) {
+                int parent = _parents[2 * pos + i];
+                if (parent != NONE && generation(parent) >= floor
+                        && seen.add(parent)) {
+                    pending.push(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a lowest common ancestor of the commits at A and B, following
+     * both parents of merge commits. The search walks down from A and B at
+     * the same time, always expanding the commit with the highest generation
+     * number. A commit is therefore only expanded after every descendant of
+     * it that is reachable from A or B, so the first commit found to be
+     * reachable from both sides has no common ancestor below it in the walk,
+     * and commits older than it are never visited.
+     *
+     * @param a Graph position of one commit.
+     * @param b Graph position of the other commit.
+     * @return Position of the merge base, or NONE if A and B are unrelated.
+     */
+    int mergeBase(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        HashSet<Integer> expanded = new HashSet<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> {
+            int cmp = Integer.compare(generation(y), generation(x));
+            return (cmp != 0) ? cmp : Long.compare(timestamp(y),
+                    timestamp(x));
+        });
+        flags.put(a, FROM_A);
+        flags.put(b, FROM_B);
+        queue.add(a);
+        queue.add(b);
+
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            if (!expanded.add(pos)) {
+                continue;
+            }
+            int flag = flags.get(pos);
+            if (flag == (FROM_A | FROM_B)) {
+                return pos;
+            }
+            for (int i = 0; i < 2; ++i) {
+                int parent = _parents[2 * pos + i];
+                if (parent != NONE) {
+                    Integer old = flags.get(parent);
+                    if (old == null || (old | flag) != old) {
+                        flags.put(parent, (old == null) ? flag : old | flag);
+                        queue.add(parent);
+                    }
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Adds HASH and all of its ancestors that are not yet in the graph,
+     * reading them from the store, parents before children.
+     *
+     * @param hash Full commit hash.
+     */
+    private void backfill(String hash) {
+        Deque<String> pending = new ArrayDeque<>();
+        int start = size();
+        pending.push(hash);
+        while (!pending.isEmpty()) {
+            String top = pending.peek();
+            if (_positions.containsKey(top)) {
+                pending.pop();
+                continue;
+            }
+            Commit commit = readCommit(top);
+            String[] parents = _store.isShallow(top) ? null
+                    : commit.getParents();
+            boolean ready = true;
+            if (parents != null) {
+                for (String parent : parents) {
+                    if (!_positions.containsKey(parent)) {
+                        pending.push(parent);
+                        ready = false;
+                    }
+                }
+            }
+            if (ready) {
+                pending.pop();
+                append(top, parents == null ? NONE : _positions.get(parents[0]),
+                        parents == null || parents.length < 2 ? NONE
+                                : _positions.get(parents[1]),
+                        commit.getTimestamp().getTime());
+            }
+        }
+        persist(start, size());
+    }
+
+    /**
+     * Reads commit HASH from the store.
+     *
+     * @param hash Full commit hash.
+     * @return The commit.
+     */
+    private Commit readCommit(String hash) {
+        byte[] contents = (_store == null) ? null : _store.readCommit(hash);
+        if (contents == null) {
+            Main.softFail("No commit with that id exists.");
+        }
+        return CommitCodec.decode(contents);
+    }
+
+    /**
+     * Appends a record to the in-memory graph.
+     *
+     * @param hash Commit hash.
+     * @param first First parent position.
+     * @param second Second parent position.
+     * @param timestamp Milliseconds since the epoch.
+     * @return Position of the new record.
+     */
+    private int append(String hash, int first, int second, long timestamp) {
+        int pos = size();
+        if (pos == _generations.length) {
+            _parents = Arrays.copyOf(_parents, 4 * pos);
+            _generations = Arrays.copyOf(_generations, 2 * pos);
+            _timestamps = Arrays.copyOf(_timestamps, 2 * pos);
+        }
+        int generation = 1;
+        if (first != NONE) {
+            generation = Math.max(generation, _generations[first] + 1);
+        }
+        if (second != NONE) {
+            generation = Math.max(generation, _generations[second] + 1);
+        }
+        _hashes.add(hash);
+        _positions.put(hash, pos);
+        _parents[2 * pos] = first;
+        _parents[2 * pos + 1] = second;
+        _generations[pos] = generation;
+        _timestamps[pos] = timestamp;
+        return pos;
+    }
+
+    /** Reads the whole commit-graph file into memory. */
+    private void load() {
+        byte[] contents = Utils.readContents(_graphFile);
+        ByteBuffer buf = ByteBuffer.wrap(contents);
+        if (contents.length < HEADER_SIZE || buf.getInt() != MAGIC) {
+            return;
+        }
+        byte[] raw = new byte[PackFile.RAW_LENGTH];
+        while (buf.remaining() >= RECORD_SIZE) {
+            buf.get(raw);
+            int first = buf.getInt(), second = buf.getInt();
+            buf.getInt();
+            long timestamp = buf.getLong();
+            append(GitletUtils.toHex(raw, 0, raw.length), first, second,
+                    timestamp);
+        }
+    }
+
+    /**
+     * Appends the records at positions FROM (inclusive) to TO (exclusive)
+     * to the commit-graph file. Positions are only meaningful if the file
+     * holds exactly the records this graph has before FROM, so once another
+     * process has added to the file since this graph last wrote to it,
+     * nothing more is written; the commits left out are added again by
+     * whoever looks them up.
+     *
+     * @param from First position to write.
+     * @param to One past the last position to write.
+     */
+    private void persist(int from, int to) {
+        if (_graphFile == null || from >= to) {
+            return;
+        }
+        try (LockFile lock = new LockFile(_graphFile)) {
+            long length = _graphFile.length();
+            if (from != _persisted || (length != HEADER_SIZE + (long) from
+                    * RECORD_SIZE && !(from == 0 && length == 0))) {
+                return;
+            }
+            try (DataOutputStream out = new DataOutputStream(new
+                    BufferedOutputStream(Files.newOutputStream(_graphFile
+                    .toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)))) {
+                if (length == 0) {
+                    out.writeInt(MAGIC);
+                }
+                for (int pos = from; pos < to; ++pos) {
+                    out.write(GitletUtils.toRaw(hash(pos)));
+                    out.writeInt(firstParent(pos));
+                    out.writeInt(secondParent(pos));
+                    out.writeInt(generation(pos));
+                    out.writeLong(timestamp(pos));
+                }
+            }
+            _persisted = to;
+        } catch (IOException e) {
+            Main.softFail("File IO Failed.");
+        }
+    }
+
+    /** The commit-graph file, or null for an in-memory graph. */
+    private final File _graphFile;
+
+    /** Store used to fill in missing commits. */
+    private final ObjectStore _store;
+
+    /** Number of records, from the first, known to be in the file. */
+    private int _persisted;
+
+    /** Commit hash at each position. */
+    private final List<String> _hashes;
+
+    /** Position of each commit hash. */
+    private final HashMap<String, Integer> _positions;
+
+    /** Parent positions; entries 2i and 2i + 1 belong to position i. */
+    private int[] _parents;
+
+    /** Generation number at each position. */
+    private int[] _generations;
+
+    /** Timestamp at each position. */
+    private long[] _timestamps;
+}
@@ -0,0 +1,65 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommitGraphTest {
+
+    /** Returns a fake 40-character commit hash built from NAME. */
+    static String id(String name) {
+        return Utils.sha1(name);
+    }
+
+    @Test
+    public void generationTest() {
+        CommitGraph graph = new CommitGraph();
+        graph.add(id("a"), null, 0);
+        graph.add(id("b"), new String[]{id("a")}, 1);
+        graph.add(id("c"), new String[]{id("a")}, 2);
+        graph.add(id("d"), new String[]{id("c")}, 3);
+        graph.add(id("m"), new String[]{id("b"), id("d")}, 4);
+
+        assertEquals(1, graph.generation(graph.position(id("a"))));
+        assertEquals(2, graph.generation(graph.position(id("b"))));
+        assertEquals(3, graph.generation(graph.position(id("d"))));
+        assertEquals(4, graph.generation(graph.position(id("m"))));
+        assertEquals(graph.position(id("d")),
+                graph.secondParent(graph.position(id("m"))));
+        assertEquals(4L, graph.timestamp(graph.position(id("m"))));
+    }
+
+    @Test
+    public void firstParentAncestorsTest() {
+        CommitGraph graph = new CommitGraph();
+        graph.add(id("a"), null, 0);
+        graph.add(id("b"), new String[]{id("a")}, 1);
+        graph.add(id("c"), new String[]{id("a")}, 2);
+        graph.add(id("m"), new String[]{id("b"), id("c")}, 3);
+
+        assertEquals(Arrays.asList(id("b"), id("a")),
+                graph.firstParentAncestors(id("m")));
+        assertEquals(Arrays.asList(), graph.firstParentAncestors(id("a")));
+    }
+
+    @Test
+    public void isAncestorTest() {
+        CommitGraph graph = new CommitGraph();
+        graph.add(id("a"), null, 0);
+        graph.add(id("b"), new String[]{id("a")}, 1);
+        graph.add(id("c"), new String[]{id("a")}, 2);
+        graph.add(id("m"), new String[]{id("b"), id("c")}, 3);
+
+        int a = graph.position(id("a")), b = graph.position(id("b")),
+                c = graph.position(id("c")), m = graph.position(id("m"));
+        assertTrue(graph.isAncestor(c, m));
+        assertTrue(graph.isAncestor(a, m));
+        assertTrue(graph.isAncestor(m, m));
+        assertFalse(graph.isAncestor(m, c));
+        assertFalse(graph.isAncestor(b, c));
+    }
+}
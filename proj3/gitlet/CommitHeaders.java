@@ -0,0 +1,354 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * The headers of the commits of one object store: message, timestamp and
+ * parents, without trees or files, so that log and global-log never
+ * decompress or decode whole commits. Headers are appended to a log file,
+ * each as the raw commit hash, the timestamp, the number of parents and
+ * their raw hashes, and the length and UTF-8 bytes of the message. A
+ * RecordIndex maps each raw commit hash to the offset of its header, so one
+ * header is found with a binary search, and all of them are streamed by
+ * reading the log from the start; either way the first header is at hand
+ * after a fixed amount of work, however long the history.
+ *
+ * @author Farhad Alemi
+ */
+class CommitHeaders {
+
+    /**
+     * The headers kept in the log LOG, indexed by OFFSETS.
+     *
+     * @param log Header log file.
+     * @param offsets Index of header offsets.
+     */
+    CommitHeaders(File log, File offsets) {
+        _log = log;
+        _offsets = new RecordIndex(offsets, RAW, RAW + 8);
+    }
+
+    /**
+     * Returns true iff the headers have been built.
+     *
+     * @return True if present.
+     */
+    boolean exists() {
+        return _offsets.exists() && _log.isFile();
+    }
+
+    /**
+     * Adds the header of commit ID, COMMIT, unless it is already there.
+     * The log is locked meanwhile, so a commit that two processes add at
+     * once gets a single header.
+     *
+     * @param id Full commit hash.
+     * @param commit The commit.
+     */
+    void add(String id, Commit commit) {
+        byte[] raw = GitletUtils.toRaw(id);
+        try (LockFile lock = new LockFile(_log)) {
+            if (offset(raw) >= 0) {
+                return;
+            }
+            long offset = _log.length();
+            try (OutputStream out = Files.newOutputStream(_log.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write(encode(raw, commit));
+            } catch (IOException e) {
+                throw Utils.error("Cannot write %s.", _log.getPath());
+            }
+            _offsets.append(offsetRecord(raw, offset));
+        }
+    }
+
+    /**
+     * Replaces the headers with those of COMMITS, whose hashes are IDS.
+     *
+     * @param ids Full commit hashes.
+     * @param commits The commits, in the same order.
+     */
+    void create(List<String> ids, List<Commit> commits) {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        List<byte[]> offsets = new ArrayList<>();
+        for (int i = 0; i < ids.size(); ++i) {
+            byte[] raw = GitletUtils.toRaw(ids.get(i));
+            offsets.add(offsetRecord(raw, log.size()));
+            byte[] header = encode(raw, commits.get(i));
+            log.write(header, 0, header.length);
+        }
+        try (LockFile lock = new LockFile(_log)) {
+            lock.commit(log.toByteArray());
+            _offsets.create(offsets);
+        }
+    }
+
+    /**
+     * Returns the header of commit ID as a commit without files, or null if
+     * it has none.
+     *
+     * @param id Full commit hash.
+     * @return Message, timestamp and parents of the commit.
+     */
+    Commit read(String id) {
+        try (Reader reader = reader()) {
+            return reader.read(id);
+        }
+    }
+
+    /**
+     * Returns a reader of the headers as they are now.
+     *
+     * @return An open reader, to be closed by the caller.
+     */
+    Reader reader() {
+        return new Reader();
+    }
+
+    /**
+     * Reads headers by commit hash, keeping the files open between reads,
+     * for walks through history.
+     */
+    class Reader implements AutoCloseable {
+
+        /** A reader of the headers as they are now. */
+        Reader() {
+            _offsetReader = _offsets.reader();
+            try {
+                _in = new RandomAccessFile(_log, "r");
+            } catch (IOException e) {
+                _offsetReader.close();
+                throw Utils.error("Cannot read %s.", _log.getPath());
+            }
+        }
+
+        /**
+         * Returns the header of commit ID as a commit without files, or
+         * null if it has none.
+         *
+         * @param id Full commit hash.
+         * @return Message, timestamp and parents of the commit.
+         */
+        Commit read(String id) {
+            byte[] record = _offsetReader.find(GitletUtils.toRaw(id));
+            if (record == null) {
+                return null;
+            }
+            long offset = offsetOf(record);
+            try {
+                byte[] header = new byte[(int) Math.min(READ_SIZE,
+                        _in.length() - offset)];
+                _in.seek(offset);
+                _in.readFully(header);
+                int size = headerSize(header);
+                if (size > header.length) {
+                    header = new byte[size];
+                    _in.seek(offset);
+                    _in.readFully(header);
+                }
+                return decode(new DataInputStream(new ByteArrayInputStream(
+                        header, RAW, size - RAW)));
+            } catch (IOException e) {
+                throw Utils.error("Cannot read %s.", _log.getPath());
+            }
+        }
+
+        @Override
+        public void close() {
+            _offsetReader.close();
+            try {
+                _in.close();
+            } catch (IOException e) {
+                throw Utils.error("Cannot close %s.", _log.getPath());
+            }
+        }
+
+        /** Reader of the offset index. */
+        private final RecordIndex.Reader _offsetReader;
+
+        /** The open log. */
+        private final RandomAccessFile _in;
+    }
+
+    /**
+     * Calls VISITOR with the hash and header of each commit, in the order
+     * they were added, until it returns false.
+     *
+     * @param visitor Receives each commit hash and header.
+     */
+    void forEach(BiPredicate<String, Commit> visitor) {
+        byte[] raw = new byte[RAW];
+        try (DataInputStream in = new DataInputStream(new
+                BufferedInputStream(Files.newInputStream(_log.toPath()),
+                GitletUtils.BUFFER_SIZE))) {
+            while (readHash(in, raw)) {
+                if (!visitor.test(GitletUtils.toHex(raw, 0, RAW),
+                        decode(in))) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot read %s.", _log.getPath());
+        }
+    }
+
+    /**
+     * Returns the size of the header that starts HEADER, which holds at
+     * least its fixed-size part and parents.
+     *
+     * @param header The start of a header.
+     * @return Its size in bytes.
+     */
+    private static int headerSize(byte[] header) {
+        int parents = header[RAW + 8];
+        int pos = RAW + 9 + parents * RAW;
+        return pos + 4 + ((header[pos] & 0xff) << 24
+                | (header[pos + 1] & 0xff) << 16
+                | (header[pos + 2] & 0xff) << 8 | (header[pos + 3] & 0xff));
+    }
+
+    /**
+     * Returns the offset in the log of the header of commit RAW, or -1.
+     *
+     * @param raw Raw commit hash.
+     * @return Offset of the header.
+     */
+    private long offset(byte[] raw) {
+        if (!_offsets.exists()) {
+            return -1;
+        }
+        List<byte[]> records = _offsets.range(raw, raw, 1);
+        return records.isEmpty() ? -1 : offsetOf(records.get(0));
+    }
+
+    /**
+     * Returns the header offset held in offset index record RECORD.
+     *
+     * @param record A record made by offsetRecord.
+     * @return Offset of the header in the log.
+     */
+    private static long offsetOf(byte[] record) {
+        long offset = 0;
+        for (int i = RAW; i < RAW + 8; ++i) {
+            offset = (offset << 8) | (record[i] & 0xff);
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the offset index record of commit RAW, whose header is at
+     * OFFSET.
+     *
+     * @param raw Raw commit hash.
+     * @param offset Offset of the header in the log.
+     * @return RAW followed by OFFSET.
+     */
+    private static byte[] offsetRecord(byte[] raw, long offset) {
+        byte[] record = Arrays.copyOf(raw, RAW + 8);
+        for (int i = RAW + 7; i >= RAW; --i) {
+            record[i] = (byte) offset;
+            offset >>>= 8;
+        }
+        return record;
+    }
+
+    /**
+     * Returns the log entry of commit RAW, COMMIT.
+     *
+     * @param raw Raw commit hash.
+     * @param commit The commit.
+     * @return Encoded header.
+     */
+    private static byte[] encode(byte[] raw, Commit commit) {
+        String[] parents = (commit.getParents() == null) ? new String[0]
+                : commit.getParents();
+        byte[] message = commit.getMessage().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(raw);
+            out.writeLong(commit.getTimestamp().getTime());
+            out.writeByte(parents.length);
+            for (String parent : parents) {
+                out.write(GitletUtils.toRaw(parent));
+            }
+            out.writeInt(message.length);
+            out.write(message);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a header from IN, just after its commit hash.
+     *
+     * @param in The log, positioned after a commit hash.
+     * @return A commit with the header's message, timestamp and parents.
+     * @throws IOException if IN cannot be read.
+     */
+    private static Commit decode(DataInput in) throws IOException {
+        Date timestamp = new Date(in.readLong());
+        byte[] raw = new byte[RAW];
+        String[] parents = null;
+        int parentCount = in.readByte();
+        if (parentCount > 0) {
+            parents = new String[parentCount];
+            for (int i = 0; i < parentCount; ++i) {
+                in.readFully(raw);
+                parents[i] = GitletUtils.toHex(raw, 0, RAW);
+            }
+        }
+        byte[] message = new byte[in.readInt()];
+        in.readFully(message);
+        return new Commit(new String(message, StandardCharsets.UTF_8),
+                parents, timestamp);
+    }
+
+    /**
+     * Reads a raw commit hash from IN into RAW.
+     *
+     * @param in The log, positioned at the start of a header.
+     * @param raw Receives the hash.
+     * @return False if IN has ended.
+     * @throws IOException if IN cannot be read.
+     */
+    private static boolean readHash(DataInputStream in, byte[] raw)
+            throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return false;
+        }
+        raw[0] = (byte) first;
+        in.readFully(raw, 1, RAW - 1);
+        return true;
+    }
+
+    /** Number of bytes read at once for a header, enough for most. */
+    private static final int READ_SIZE = 512;
+
+    /** Length of a raw hash. */
+    private static final int RAW = PackFile.RAW_LENGTH;
+
+    /** The header log. */
+    private final File _log;
+
+    /** Raw commit hashes and the offsets of their headers in the log. */
+    private final RecordIndex _offsets;
+}
@@ -0,0 +1,74 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CommitHeadersTest {
+
+    /** Returns the hash of commit N. */
+    private static String id(int n) {
+        return Utils.sha1("commit", Integer.toString(n));
+    }
+
+    /** Returns the header of commit N, whose parent is commit N - 1. */
+    private static Commit header(int n) {
+        return new Commit("commit " + n + " \u00e9", (n == 0) ? null
+                : new String[] {id(n - 1)}, new Date(1000L * n));
+    }
+
+    @Test
+    public void addAndReadTest() throws IOException {
+        File dir = Files.createTempDirectory("headers").toFile();
+        CommitHeaders headers = new CommitHeaders(new File(dir, "headers"),
+                new File(dir, "offsets"));
+        List<String> ids = new ArrayList<>();
+        List<Commit> commits = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            ids.add(id(i));
+            commits.add(header(i));
+        }
+        headers.create(ids, commits);
+        for (int i = 100; i < 100 + RecordIndex.TAIL_LIMIT + 10; ++i) {
+            headers.add(id(i), header(i));
+        }
+        headers.add(id(5), header(5));
+        Commit merge = new Commit("merge", new String[] {id(1), id(2)},
+                new Date(7));
+        headers.add(id(-1), merge);
+
+        try (CommitHeaders.Reader reader = headers.reader()) {
+            for (int i = 0; i < 100 + RecordIndex.TAIL_LIMIT + 10; i += 37) {
+                Commit header = reader.read(id(i));
+                assertEquals(header(i).getMessage(), header.getMessage());
+                assertEquals(header(i).getTimestamp(), header.getTimestamp());
+                assertEquals(Arrays.toString(header(i).getParents()),
+                        Arrays.toString(header.getParents()));
+            }
+            assertArrayEquals(merge.getParents(),
+                    reader.read(id(-1)).getParents());
+            assertNull(reader.read(Utils.sha1("missing")));
+        }
+
+        List<String> streamed = new ArrayList<>();
+        headers.forEach((id, header) -> streamed.add(id));
+        assertEquals(100 + RecordIndex.TAIL_LIMIT + 11, streamed.size());
+        assertEquals(id(0), streamed.get(0));
+        assertEquals(id(-1), streamed.get(streamed.size() - 1));
+
+        streamed.clear();
+        headers.forEach((id, header) -> streamed.add(id) && streamed.size()
+                < 3);
+        assertEquals(3, streamed.size());
+    }
+}
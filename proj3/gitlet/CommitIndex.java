@@ -0,0 +1,343 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indices over the commits of one object store, kept in the folder
+ * commit-index as three RecordIndex files:
+ * <ul>
+ * <li>ids: the raw hash of every commit, so an abbreviated hash is resolved
+ * with a binary search;</li>
+ * <li>messages: the raw SHA-1 of each commit's message followed by the
+ * commit's hash, for find;</li>
+ * <li>words: the first WORD_KEY_LENGTH bytes of the SHA-1 of each distinct
+ * word of each message followed by the commit's hash, for find --words.</li>
+ * </ul>
+ * It also keeps the CommitHeaders of the commits, in the files headers and
+ * header-offsets, for log and global-log.
+ * The ObjectStore adds every commit it writes. A store without the folder,
+ * such as one made before the index existed, has it built from all its
+ * commits the first time it is needed. The file stamp holds the time of
+ * the store's commits folder as of the last commit indexed, so that commits
+ * added behind the index's back, by a version of gitlet without it, are
+ * noticed by looking up one time rather than listing every commit.
+ *
+ * @author Farhad Alemi
+ */
+class CommitIndex {
+
+    /** Number of bytes of a word's SHA-1 used as its key. */
+    static final int WORD_KEY_LENGTH = 8;
+
+    /**
+     * The index of the commits in STORE, kept in FOLDER.
+     *
+     * @param folder The commit-index folder.
+     * @param store The indexed store.
+     */
+    CommitIndex(File folder, ObjectStore store) {
+        _folder = folder;
+        _store = store;
+        _ids = new RecordIndex(new File(folder, "ids"), RAW, RAW);
+        _messages = new RecordIndex(new File(folder, "messages"), RAW,
+                2 * RAW);
+        _words = new RecordIndex(new File(folder, "words"), WORD_KEY_LENGTH,
+                WORD_KEY_LENGTH + RAW);
+        _headers = new CommitHeaders(new File(folder, "headers"),
+                new File(folder, "header-offsets"));
+        _stamp = new File(folder, "stamp");
+    }
+
+    /**
+     * Records that commit ID, COMMIT, has just been stored.
+     *
+     * @param id Full commit hash.
+     * @param commit The commit.
+     */
+    void add(String id, Commit commit) {
+        if (!_ids.exists() || !_headers.exists()) {
+            build();
+            return;
+        }
+        long modified = _store.commitsModified();
+        _headers.add(id, commit);
+        String message = commit.getMessage();
+        byte[] raw = GitletUtils.toRaw(id);
+        if (_ids.range(raw, raw, 1).isEmpty()) {
+            for (byte[] record : wordRecords(raw, message)) {
+                _words.append(record);
+            }
+            _messages.append(messageRecord(raw, message));
+            _ids.append(raw);
+        }
+        stamp(modified);
+    }
+
+    /**
+     * Returns the hashes of up to LIMIT commits starting with PREFIX. If
+     * the index misses PREFIX and commits were added since it was last
+     * stamped, as when a version of gitlet without the index added commits,
+     * it is rebuilt and searched again.
+     *
+     * @param prefix Abbreviated commit hash.
+     * @param limit Largest number of hashes wanted.
+     * @return Matching commit hashes.
+     */
+    List<String> resolve(String prefix, int limit) {
+        if (prefix.isEmpty() || prefix.length() > 2 * RAW
+                || !prefix.matches("[0-9a-f]+")) {
+            return new ArrayList<>();
+        }
+        ensureBuilt();
+        List<String> result = lookup(prefix, limit);
+        if (result.isEmpty() && !isCurrent()) {
+            build();
+            return lookup(prefix, limit);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the hashes of all commits whose message is MESSAGE.
+     *
+     * @param message A commit message.
+     * @return Commit hashes in ascending order.
+     */
+    List<String> withMessage(String message) {
+        ensureBuilt();
+        byte[] key = messageRecord(new byte[RAW], message);
+        TreeSet<String> result = new TreeSet<>();
+        for (byte[] record : _messages.range(key, key, 0)) {
+            result.add(GitletUtils.toHex(record, RAW, RAW));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Returns the hashes of all commits whose message contains every word
+     * in WORDS, ignoring case. Candidates found in the word index are
+     * checked against their messages, since word keys are truncated hashes.
+     *
+     * @param words Words to look for.
+     * @return Commit hashes in ascending order.
+     */
+    List<String> withWords(Collection<String> words) {
+        ensureBuilt();
+        Set<String> wanted = new HashSet<>();
+        for (String word : words) {
+            wanted.addAll(words(word));
+        }
+        Set<String> candidates = null;
+        for (String word : wanted) {
+            byte[] key = wordRecords(new byte[RAW], word).get(0);
+            Set<String> matches = new HashSet<>();
+            for (byte[] record : _words.range(key, key, 0)) {
+                matches.add(GitletUtils.toHex(record, WORD_KEY_LENGTH, RAW));
+            }
+            if (candidates == null) {
+                candidates = matches;
+            } else {
+                candidates.retainAll(matches);
+            }
+        }
+        TreeSet<String> result = new TreeSet<>();
+        if (candidates != null) {
+            for (String id : candidates) {
+                String message = CommitCodec.decode(_store.readCommit(id))
+                        .getMessage();
+                if (words(message).containsAll(wanted)) {
+                    result.add(id);
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Builds the index from scratch from every commit in the store. */
+    void build() {
+        _folder.mkdir();
+        long modified = _store.commitsModified();
+        List<byte[]> ids = new ArrayList<>();
+        List<byte[]> messages = new ArrayList<>();
+        List<byte[]> words = new ArrayList<>();
+        List<String> headerIds = _store.commitIds();
+        List<Commit> headers = new ArrayList<>();
+        for (String id : headerIds) {
+            byte[] raw = GitletUtils.toRaw(id);
+            Commit commit = CommitCodec.decode(_store.readCommit(id));
+            String message = commit.getMessage();
+            // Only the header is kept, not the file tables of old commits.
+            headers.add(new Commit(message, commit.getParents(),
+                    commit.getTimestamp()));
+            ids.add(raw);
+            messages.add(messageRecord(raw, message));
+            words.addAll(wordRecords(raw, message));
+        }
+        _words.create(words);
+        _messages.create(messages);
+        _headers.create(headerIds, headers);
+        _ids.create(ids);
+        stamp(modified);
+    }
+
+    /**
+     * Returns the headers of the indexed commits.
+     *
+     * @return Commit headers.
+     */
+    CommitHeaders headers() {
+        ensureBuilt();
+        return _headers;
+    }
+
+    /**
+     * Returns the distinct words of TEXT in lower case, in order of first
+     * appearance. Words are runs of letters and digits.
+     *
+     * @param text Any text.
+     * @return Its words.
+     */
+    static Set<String> words(String text) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT)
+                .split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** Builds the index if it does not exist yet. */
+    private void ensureBuilt() {
+        if (!_ids.exists() || !_headers.exists()) {
+            build();
+        }
+    }
+
+    /**
+     * Records that every commit stored by the time the commits folder was
+     * last modified at MODIFIED has been indexed.
+     *
+     * @param modified Modification time of the commits folder, read before
+     *                 the commits were indexed.
+     */
+    private void stamp(long modified) {
+        try (LockFile lock = new LockFile(_stamp)) {
+            lock.commit(ByteBuffer.allocate(2 * Long.BYTES).putLong(modified)
+                    .putLong(System.currentTimeMillis()).array());
+        }
+    }
+
+    /**
+     * Returns true iff the commits folder has not changed since the stamp
+     * was written, and did not change so shortly before it that a later
+     * change could have left its time the same.
+     *
+     * @return True if no commit can have been added behind the index.
+     */
+    private boolean isCurrent() {
+        if (!_stamp.isFile()) {
+            return false;
+        }
+        ByteBuffer stamp = ByteBuffer.wrap(Utils.readContents(_stamp));
+        if (stamp.remaining() != 2 * Long.BYTES) {
+            return false;
+        }
+        long modified = stamp.getLong(), recorded = stamp.getLong();
+        return modified == _store.commitsModified()
+                && TimeUnit.NANOSECONDS.toMillis(modified)
+                < recorded - StatCache.RACY_WINDOW;
+    }
+
+    /**
+     * Returns the hashes of up to LIMIT indexed commits starting with
+     * PREFIX, a string of hex digits. A commit that two processes stored at
+     * once may be indexed twice; it is returned once.
+     *
+     * @param prefix Abbreviated commit hash.
+     * @param limit Largest number of hashes wanted.
+     * @return Matching commit hashes.
+     */
+    private List<String> lookup(String prefix, int limit) {
+        char[] low = Arrays.copyOf(prefix.toCharArray(), 2 * RAW);
+        char[] high = Arrays.copyOf(prefix.toCharArray(), 2 * RAW);
+        Arrays.fill(low, prefix.length(), low.length, '0');
+        Arrays.fill(high, prefix.length(), high.length, 'f');
+        Set<String> result = new LinkedHashSet<>();
+        for (byte[] record : _ids.range(GitletUtils.toRaw(new String(low)),
+                GitletUtils.toRaw(new String(high)), limit)) {
+            result.add(GitletUtils.toHex(record, 0, RAW));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Returns the message index record of commit RAW with message MESSAGE.
+     *
+     * @param raw Raw commit hash.
+     * @param message Commit message.
+     * @return Raw SHA-1 of the message followed by RAW.
+     */
+    private static byte[] messageRecord(byte[] raw, String message) {
+        byte[] record = new byte[2 * RAW];
+        GitletUtils.toRaw(Utils.sha1(message), record, 0);
+        System.arraycopy(raw, 0, record, RAW, RAW);
+        return record;
+    }
+
+    /**
+     * Returns the word index records of commit RAW, one for each distinct
+     * word of MESSAGE.
+     *
+     * @param raw Raw commit hash.
+     * @param message Commit message.
+     * @return Word key followed by RAW, per word.
+     */
+    private static List<byte[]> wordRecords(byte[] raw, String message) {
+        List<byte[]> records = new ArrayList<>();
+        for (String word : words(message)) {
+            byte[] record = new byte[WORD_KEY_LENGTH + RAW];
+            byte[] hash = GitletUtils.toRaw(Utils.sha1(word));
+            System.arraycopy(hash, 0, record, 0, WORD_KEY_LENGTH);
+            System.arraycopy(raw, 0, record, WORD_KEY_LENGTH, RAW);
+            records.add(record);
+        }
+        return records;
+    }
+
+    /** Length of a raw hash. */
+    private static final int RAW = PackFile.RAW_LENGTH;
+
+    /** The commit-index folder. */
+    private final File _folder;
+
+    /** The indexed store. */
+    private final ObjectStore _store;
+
+    /** Raw commit hashes. */
+    private final RecordIndex _ids;
+
+    /** Message hashes and commit hashes. */
+    private final RecordIndex _messages;
+
+    /** Word keys and commit hashes. */
+    private final RecordIndex _words;
+
+    /** Message, timestamp and parents of each commit. */
+    private final CommitHeaders _headers;
+
+    /** Time of the commits folder as of the last commit indexed. */
+    private final File _stamp;
+}
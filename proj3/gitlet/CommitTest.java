@@ -2,9 +2,7 @@ package gitlet;
 
 import org.junit.Test;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -19,54 +17,52 @@ public class CommitTest {
 
         assertEquals(obj1.getMessage(), "Test Commit");
         assertNull(obj1.getParents());
-        assertTrue(obj1.getBlobs().isEmpty());
+        assertTrue(obj1.getBlobs(null).isEmpty());
 
         Commit obj2 = new Commit("MergeCommitTest", new String[]{"a", "1"});
         assertEquals(obj2.getMessage(), "MergeCommitTest");
         assertArrayEquals(obj2.getParents(), new String[]{"a", "1"});
-        assertTrue(obj2.getBlobs().isEmpty());
+        assertTrue(obj2.getBlobs(null).isEmpty());
     }
 
     @Test
     public void blobsTest() {
         Commit obj = new Commit("MergeCommitTest", new String[]{"a", "1"});
-        assertTrue(obj.getBlobs().isEmpty());
+        assertTrue(obj.getBlobs(null).isEmpty());
 
         HashMap<String, String> blobs = new HashMap<>();
         blobs.put("key1", "file1");
         blobs.put("key2", "file2");
         obj.setBlobs(blobs);
 
-        assertEquals(obj.getBlobs().get("key1"), "file1");
-        assertEquals(obj.getBlobs().get("key2"), "file2");
-        assertNull(obj.getBlobs().get("key3"));
+        assertEquals(obj.getBlobs(null).get("key1"), "file1");
+        assertEquals(obj.getBlobs(null).get("key2"), "file2");
+        assertNull(obj.getBlobs(null).get("key3"));
     }
 
     @Test
     public void findSplitPointTest() {
-        List<String> currParents = new ArrayList<>(),
-                givenParents = new ArrayList<>();
-
-        currParents.add("b4");
-        currParents.add("a1");
-        currParents.add("b5");
-        currParents.add("a1");
-        currParents.add("b1");
-        currParents.add("a2");
-        currParents.add("b2");
-        currParents.add("a3");
-        currParents.add("b3");
-        currParents.add("a4");
-
-        assertEquals(Commit.findSplitPoint(currParents, givenParents), "");
-
-        givenParents.add("a5");
-        assertEquals(Commit.findSplitPoint(currParents, givenParents), "");
-
-        givenParents.add("b1");
-        assertEquals(Commit.findSplitPoint(currParents, givenParents), "b1");
-
-        givenParents.add("b5");
-        assertEquals(Commit.findSplitPoint(currParents, givenParents), "b5");
+        CommitGraph graph = new CommitGraph();
+        String a1 = Utils.sha1("a1"), a2 = Utils.sha1("a2"),
+                b1 = Utils.sha1("b1"), b2 = Utils.sha1("b2"),
+                b3 = Utils.sha1("b3"), m1 = Utils.sha1("m1");
+
+        graph.add(a1, null, 0);
+        graph.add(a2, new String[]{a1}, 1);
+        graph.add(b1, new String[]{a1}, 2);
+        graph.add(b2, new String[]{b1}, 3);
+        graph.add(m1, new String[]{a2, b2}, 4);
+        graph.add(b3, new String[]{b2}, 5);
+
+        assertEquals(a1, graph.hash(graph.mergeBase(graph.position(a2),
+                graph.position(b2))));
+        assertEquals(b2, graph.hash(graph.mergeBase(graph.position(m1),
+                graph.position(b3))));
+        assertEquals(a2, graph.hash(graph.mergeBase(graph.position(a2),
+                graph.position(m1))));
+
+        graph.add(Utils.sha1("orphan"), null, 6);
+        assertEquals(CommitGraph.NONE, graph.mergeBase(graph.position(b3),
+                graph.position(Utils.sha1("orphan"))));
     }
 }
@@ -0,0 +1,303 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The on-disk encoding of stored objects. Every object written by the
+ * ObjectStore starts with a header of HEADER_LENGTH bytes: MAGIC, a method
+ * byte and the length of the original contents. The rest is either the
+ * contents themselves (STORED), used when deflating does not make them
+ * smaller, or their deflated form (DEFLATED). Bytes that do not start with a
+ * valid header were written before objects had headers, and are returned
+ * unchanged.
+ *
+ * @author Farhad Alemi
+ */
+class Compression {
+
+    /** Magic number at the start of every encoded object. */
+    static final int MAGIC = 0x474c5a31;
+
+    /** Method byte of objects stored as is. */
+    static final byte STORED = 0;
+
+    /** Method byte of deflated objects. */
+    static final byte DEFLATED = 1;
+
+    /** Length of the header: magic, method and original length. */
+    static final int HEADER_LENGTH = 13;
+
+    /**
+     * Returns the encoded form of CONTENTS.
+     *
+     * @param contents Original bytes.
+     * @return Header followed by the deflated or stored bytes.
+     */
+    static byte[] encode(byte[] contents) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater();
+        try (DataOutputStream out = new DataOutputStream(result)) {
+            writeHeader(out, DEFLATED, contents.length);
+            DeflaterOutputStream deflated = new DeflaterOutputStream(out,
+                    deflater);
+            deflated.write(contents);
+            deflated.finish();
+            if (result.size() < HEADER_LENGTH + contents.length) {
+                return result.toByteArray();
+            }
+            result.reset();
+            writeHeader(out, STORED, contents.length);
+            out.write(contents);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            deflater.end();
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Writes the encoded form of the contents of SOURCE to DEST, streaming
+     * them through a fixed-size buffer.
+     *
+     * @param source File holding the original bytes.
+     * @param dest Destination file; created or overwritten.
+     */
+    static void encode(File source, File dest) {
+        long length = source.length();
+        Deflater deflater = new Deflater();
+        try {
+            try (InputStream in = Files.newInputStream(source.toPath());
+                 DataOutputStream out = new DataOutputStream(Files
+                         .newOutputStream(dest.toPath()))) {
+                writeHeader(out, DEFLATED, length);
+                DeflaterOutputStream deflated = new DeflaterOutputStream(
+                        out, deflater, GitletUtils.BUFFER_SIZE);
+                in.transferTo(deflated);
+                deflated.finish();
+            }
+            if (dest.length() >= HEADER_LENGTH + length) {
+                try (InputStream in = Files.newInputStream(source.toPath());
+                     DataOutputStream out = new DataOutputStream(Files
+                             .newOutputStream(dest.toPath()))) {
+                    writeHeader(out, STORED, length);
+                    in.transferTo(out);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns the original bytes of the encoded object STORED.
+     *
+     * @param stored Object bytes as read from disk.
+     * @return Original bytes.
+     */
+    static byte[] decode(byte[] stored) {
+        if (stored == null || method(stored) < 0) {
+            return stored;
+        }
+        try (InputStream in = decode(new ByteArrayInputStream(stored))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw Utils.error("Corrupt object.");
+        }
+    }
+
+    /**
+     * Returns the original bytes of the encoded object STORED, which may be
+     * a mapped file. Stored contents are returned as a view of STORED
+     * without copying them; deflated ones are inflated onto the heap.
+     *
+     * @param stored Object bytes as stored on disk.
+     * @return Original bytes.
+     */
+    static ByteBuffer decode(ByteBuffer stored) {
+        return decode(stored, null);
+    }
+
+    /**
+     * Returns the original bytes of the encoded object STORED, which may be
+     * a mapped file. Stored contents are returned as a view of STORED
+     * without copying them. Deflated ones of at least MAP_THRESHOLD bytes
+     * are inflated a buffer at a time into a temporary file in SPILLDIR,
+     * which is then mapped, so that they are never held on the heap as a
+     * whole; smaller ones, or all of them if SPILLDIR is null, are
+     * inflated onto the heap.
+     *
+     * @param stored Object bytes as stored on disk.
+     * @param spillDir Directory for temporary files; may be null.
+     * @return Original bytes.
+     */
+    static ByteBuffer decode(ByteBuffer stored, File spillDir) {
+        byte[] header = new byte[Math.min(HEADER_LENGTH, stored.remaining())];
+        stored.get(stored.position(), header);
+        int method = method(header);
+        if (method < 0) {
+            return stored;
+        }
+        ByteBuffer contents = stored.slice(stored.position() + HEADER_LENGTH,
+                stored.remaining() - HEADER_LENGTH);
+        if (method == STORED) {
+            return contents;
+        }
+        long length = ByteBuffer.wrap(header).getLong(HEADER_LENGTH
+                - Long.BYTES);
+        if (length > Integer.MAX_VALUE) {
+            throw Utils.error("Object too large to map: %d bytes.", length);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(contents);
+            if (spillDir == null || length < GitletUtils.MAP_THRESHOLD) {
+                ByteBuffer result = ByteBuffer.allocate((int) length);
+                inflate(inflater, result);
+                return result.flip();
+            }
+            return GitletUtils.mapSpilled(spillDir, out -> {
+                ByteBuffer buffer = ByteBuffer.allocate(GitletUtils
+                        .BUFFER_SIZE);
+                for (long left = length; left > 0;
+                     left -= buffer.remaining()) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), left));
+                    inflate(inflater, buffer);
+                    if (buffer.hasRemaining()) {
+                        throw Utils.error("Corrupt object.");
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.rewind();
+                }
+            });
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Inflates from INFLATER into OUT until OUT is full or the deflated
+     * data ends.
+     *
+     * @param inflater An inflater with its input set.
+     * @param out Receives the inflated bytes.
+     */
+    private static void inflate(Inflater inflater, ByteBuffer out) {
+        try {
+            while (out.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(out) == 0 && (inflater.needsInput()
+                        || inflater.needsDictionary())) {
+                    throw Utils.error("Corrupt object.");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw Utils.error("Corrupt object.");
+        }
+    }
+
+    /**
+     * Returns the number of original bytes of the encoded object whose
+     * first bytes are STORED, or -1 if it has no header.
+     *
+     * @param stored The start of the object bytes as stored on disk.
+     * @return Original length, or -1.
+     */
+    static long length(ByteBuffer stored) {
+        byte[] header = new byte[Math.min(HEADER_LENGTH, stored.remaining())];
+        stored.get(stored.position(), header);
+        if (method(header) < 0) {
+            return -1;
+        }
+        return ByteBuffer.wrap(header).getLong(HEADER_LENGTH - Long.BYTES);
+    }
+
+    /**
+     * Returns a stream of the original bytes of the encoded object read
+     * from IN.
+     *
+     * @param in Stream of object bytes as stored on disk; closed along with
+     *           the returned stream.
+     * @return Stream of the original bytes.
+     * @throws IOException if IN cannot be read.
+     */
+    static InputStream decode(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in,
+                GitletUtils.BUFFER_SIZE);
+        buffered.mark(HEADER_LENGTH);
+        byte[] header = buffered.readNBytes(HEADER_LENGTH);
+        switch (method(header)) {
+        case STORED:
+            return buffered;
+        case DEFLATED:
+            Inflater inflater = new Inflater();
+            return new InflaterInputStream(buffered, inflater,
+                    GitletUtils.BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inflater.end();
+                }
+            };
+        default:
+            buffered.reset();
+            return buffered;
+        }
+    }
+
+    /**
+     * Returns the method byte of the object whose first bytes are HEADER,
+     * or -1 if HEADER is not a valid header.
+     *
+     * @param header Leading bytes of a stored object.
+     * @return STORED, DEFLATED or -1.
+     */
+    private static int method(byte[] header) {
+        if (header.length < HEADER_LENGTH) {
+            return -1;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        if (buffer.getInt() != MAGIC) {
+            return -1;
+        }
+        byte method = buffer.get();
+        long length = buffer.getLong();
+        if (length < 0 || (method != STORED && method != DEFLATED)) {
+            return -1;
+        }
+        return method;
+    }
+
+    /**
+     * Writes an object header to OUT.
+     *
+     * @param out Destination stream.
+     * @param method STORED or DEFLATED.
+     * @param length Length of the original bytes.
+     * @throws IOException if OUT cannot be written.
+     */
+    private static void writeHeader(DataOutputStream out, byte method,
+                                    long length) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(method);
+        out.writeLong(length);
+    }
+}
@@ -0,0 +1,76 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionTest {
+
+    @Test
+    public void roundTripTest() {
+        byte[] text = "wug\n".repeat(1000).getBytes();
+        byte[] encoded = Compression.encode(text);
+        assertTrue(encoded.length < text.length / 10);
+        assertArrayEquals(text, Compression.decode(encoded));
+    }
+
+    @Test
+    public void incompressibleIsStoredTest() {
+        byte[] noise = new byte[4096];
+        new Random(7).nextBytes(noise);
+        byte[] encoded = Compression.encode(noise);
+        assertEquals(Compression.HEADER_LENGTH + noise.length,
+                encoded.length);
+        assertArrayEquals(noise, Compression.decode(encoded));
+    }
+
+    @Test
+    public void headerlessPassesThroughTest() {
+        byte[] legacy = "written before objects had headers".getBytes();
+        assertArrayEquals(legacy, Compression.decode(legacy));
+        assertArrayEquals(new byte[0], Compression.decode(new byte[0]));
+    }
+
+    @Test
+    public void mappedDecodeTest() throws IOException {
+        File dir = Files.createTempDirectory("mapped").toFile();
+        byte[] text = "wug\n".repeat(100000).getBytes();
+        byte[] noise = new byte[1 << 17];
+        new Random(7).nextBytes(noise);
+        for (byte[] contents : new byte[][] {text, noise, new byte[0]}) {
+            File file = new File(dir, "object");
+            Utils.writeContents(file, (Object) Compression.encode(contents));
+            ByteBuffer decoded = Compression.decode(GitletUtils.map(file));
+            assertEquals(ByteBuffer.wrap(contents), decoded);
+        }
+        ByteBuffer legacy = ByteBuffer.wrap("no header".getBytes());
+        assertTrue(legacy == Compression.decode(legacy));
+    }
+
+    @Test
+    public void spilledDecodeTest() throws IOException {
+        File dir = Files.createTempDirectory("spilled").toFile();
+        File spill = new File(dir, "spill");
+        byte[] text = "wug\n".repeat(100000).getBytes();
+        File file = new File(dir, "object");
+        Utils.writeContents(file, (Object) Compression.encode(text));
+        ByteBuffer decoded = Compression.decode(GitletUtils.map(file),
+                spill);
+        assertTrue(decoded.isDirect());
+        assertEquals(ByteBuffer.wrap(text), decoded);
+        assertEquals(0, spill.list().length);
+
+        byte[] small = "wug\n".repeat(100).getBytes();
+        Utils.writeContents(file, (Object) Compression.encode(small));
+        decoded = Compression.decode(GitletUtils.map(file), spill);
+        assertEquals(ByteBuffer.wrap(small), decoded);
+    }
+}
@@ -0,0 +1,81 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * Per-repository settings, kept as key=value lines in .gitlet/config. A
+ * repository without a config file uses the defaults everywhere.
+ *
+ * @author Farhad Alemi
+ */
+class Config {
+
+    /** Key which, when true, stores new blobs as chunk manifests. */
+    static final String CHUNKED = "chunked";
+
+    /** Key naming the remote that a partial clone fetches its blobs from. */
+    static final String PROMISOR = "promisor";
+
+    /**
+     * The settings of the repository in GITLETFOLDER.
+     *
+     * @param gitletFolder A .gitlet directory.
+     */
+    Config(File gitletFolder) {
+        _file = new File(gitletFolder, "config");
+        _properties = new Properties();
+        if (_file.isFile()) {
+            try (InputStream in = Files.newInputStream(_file.toPath())) {
+                _properties.load(in);
+            } catch (IOException e) {
+                throw Utils.error("Cannot read %s.", _file.getPath());
+            }
+        }
+    }
+
+    /**
+     * Returns true iff KEY is set to true.
+     *
+     * @param key Setting name.
+     * @return Its boolean value; false if unset.
+     */
+    boolean getBoolean(String key) {
+        return Boolean.parseBoolean(_properties.getProperty(key));
+    }
+
+    /**
+     * Returns the value of KEY.
+     *
+     * @param key Setting name.
+     * @return Its value, or null if unset.
+     */
+    String get(String key) {
+        return _properties.getProperty(key);
+    }
+
+    /**
+     * Sets KEY to VALUE and writes the config file.
+     *
+     * @param key Setting name.
+     * @param value New value.
+     */
+    void set(String key, String value) {
+        _properties.setProperty(key, value);
+        try (OutputStream out = Files.newOutputStream(_file.toPath())) {
+            _properties.store(out, null);
+        } catch (IOException e) {
+            throw Utils.error("Cannot write %s.", _file.getPath());
+        }
+    }
+
+    /** The config file. */
+    private final File _file;
+
+    /** Current settings. */
+    private final Properties _properties;
+}
@@ -0,0 +1,425 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Line diffs, found with Myers' O(ND) algorithm in its linear-space form:
+ * each step searches from both ends at once for the middle snake of an
+ * optimal edit path, and the halves on either side of it are then solved on
+ * their own. Memory is proportional to the number of lines, never to their
+ * product, so large files can be compared. Lines are first replaced by small
+ * integers, equal lines by equal numbers, so each comparison is one int
+ * comparison.
+ * <p>
+ * Text is split into lines that keep their terminating newline, and bytes
+ * are mapped to chars one to one (ISO-8859-1), so joining the lines gives
+ * back exactly the original bytes whatever their encoding.
+ *
+ * @author Farhad Alemi
+ */
+class Diff {
+
+    /** A change: lines [aStart, aEnd) of A replaced by [bStart, bEnd) of B;
+     *  either range may be empty. */
+    static final class Hunk {
+        /**
+         * The hunk replacing A[ASTART .. AEND - 1] with B[BSTART .. BEND - 1].
+         *
+         * @param aStart First line of A.
+         * @param aEnd One past the last line of A.
+         * @param bStart First line of B.
+         * @param bEnd One past the last line of B.
+         */
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d,%d -> %d,%d", aStart, aEnd, bStart,
+                    bEnd);
+        }
+
+        /** First line of A. */
+        final int aStart;
+        /** One past the last line of A. */
+        final int aEnd;
+        /** First line of B. */
+        final int bStart;
+        /** One past the last line of B. */
+        final int bEnd;
+    }
+
+    /**
+     * Returns the lines of CONTENTS, each with its newline; the last one may
+     * lack it.
+     *
+     * @param contents File contents.
+     * @return Lines.
+     */
+    static List<String> lines(byte[] contents) {
+        return lines(ByteBuffer.wrap(contents));
+    }
+
+    /**
+     * Returns the lines of CONTENTS, each with its newline; the last one may
+     * lack it. CONTENTS may be a mapped file; only each line is copied.
+     *
+     * @param contents File contents.
+     * @return Lines.
+     */
+    static List<String> lines(ByteBuffer contents) {
+        List<String> result = new ArrayList<>();
+        int start = contents.position();
+        for (int i = start; i < contents.limit(); ++i) {
+            if (contents.get(i) == '\n') {
+                result.add(text(contents, start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < contents.limit()) {
+            result.add(text(contents, start, contents.limit()));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the bytes of CONTENTS from START to END as a string with one
+     * char per byte.
+     *
+     * @param contents File contents.
+     * @param start Index of the first byte.
+     * @param end Index after the last byte.
+     * @return The line.
+     */
+    private static String text(ByteBuffer contents, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        contents.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns the bytes of the text made of LINES.
+     *
+     * @param lines Lines as returned by lines().
+     * @return File contents.
+     */
+    static byte[] join(List<String> lines) {
+        return String.join("", lines).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns a shortest list of hunks that turns A into B.
+     *
+     * @param a Old lines.
+     * @param b New lines.
+     * @return Hunks in ascending order.
+     */
+    static List<Hunk> diff(List<String> a, List<String> b) {
+        HashMap<String, Integer> ids = new HashMap<>();
+        return diff(intern(a, ids), intern(b, ids));
+    }
+
+    /**
+     * Returns a shortest list of hunks that turns A into B.
+     *
+     * @param a Old lines as numbers.
+     * @param b New lines as numbers.
+     * @return Hunks in ascending order.
+     */
+    static List<Hunk> diff(int[] a, int[] b) {
+        Diff diff = new Diff(a, b);
+        diff.compare(0, a.length, 0, b.length);
+        return diff.hunks();
+    }
+
+    /**
+     * Returns LINES with each line replaced by its number in IDS, adding
+     * lines IDS does not have yet.
+     *
+     * @param lines Lines.
+     * @param ids Numbers of the lines seen so far.
+     * @return Line numbers.
+     */
+    static int[] intern(List<String> lines, HashMap<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; ++i) {
+            Integer id = ids.putIfAbsent(lines.get(i), ids.size());
+            result[i] = (id == null) ? ids.size() - 1 : id;
+        }
+        return result;
+    }
+
+    /**
+     * Appends to OUT a unified diff from A, called ANAME, to B, called
+     * BNAME, with CONTEXT lines of context around each change. Nothing is
+     * appended if A and B are equal.
+     *
+     * @param aName Name of the old file, or null if it did not exist.
+     * @param bName Name of the new file, or null if it was deleted.
+     * @param a Old lines.
+     * @param b New lines.
+     * @param context Number of unchanged lines shown around changes.
+     * @param out Receives the diff.
+     */
+    static void unified(String aName, String bName, List<String> a,
+                        List<String> b, int context, StringBuilder out) {
+        List<Hunk> hunks = diff(a, b);
+        if (hunks.isEmpty()) {
+            return;
+        }
+        String name = (aName != null) ? aName : bName;
+        out.append("diff --git a/").append(name).append(" b/").append(name)
+                .append('\n');
+        out.append("--- ").append((aName == null) ? "/dev/null"
+                : "a/" + aName).append('\n');
+        out.append("+++ ").append((bName == null) ? "/dev/null"
+                : "b/" + bName).append('\n');
+        for (int first = 0, last; first < hunks.size(); first = last + 1) {
+            last = first;
+            while (last + 1 < hunks.size() && hunks.get(last + 1).aStart
+                    - hunks.get(last).aEnd <= 2 * context) {
+                last += 1;
+            }
+            Hunk from = hunks.get(first), to = hunks.get(last);
+            int aStart = Math.max(0, from.aStart - context);
+            int bStart = from.bStart - (from.aStart - aStart);
+            int aEnd = Math.min(a.size(), to.aEnd + context);
+            int bEnd = to.bEnd + (aEnd - to.aEnd);
+            out.append("@@ -").append(range(aStart, aEnd)).append(" +")
+                    .append(range(bStart, bEnd)).append(" @@\n");
+            int i = aStart;
+            for (int h = first; h <= last; ++h) {
+                Hunk hunk = hunks.get(h);
+                for (; i < hunk.aStart; ++i) {
+                    line(out, ' ', a.get(i));
+                }
+                for (int k = hunk.aStart; k < hunk.aEnd; ++k) {
+                    line(out, '-', a.get(k));
+                }
+                for (int k = hunk.bStart; k < hunk.bEnd; ++k) {
+                    line(out, '+', b.get(k));
+                }
+                i = hunk.aEnd;
+            }
+            for (; i < aEnd; ++i) {
+                line(out, ' ', a.get(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the unified-diff form of lines [START, END).
+     *
+     * @param start First line, counting from 0.
+     * @param end One past the last line.
+     * @return "first,count", or just "first" for a single line.
+     */
+    private static String range(int start, int end) {
+        if (end - start == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (end == start ? start : start + 1) + "," + (end - start);
+    }
+
+    /**
+     * Appends LINE to OUT, preceded by PREFIX, noting a missing newline.
+     *
+     * @param out Receives the line.
+     * @param prefix ' ', '-' or '+'.
+     * @param line The line.
+     */
+    private static void line(StringBuilder out, char prefix, String line) {
+        out.append(prefix).append(line);
+        if (!line.endsWith("\n")) {
+            out.append("\n\\ No newline at end of file\n");
+        }
+    }
+
+    /**
+     * A diff from A to B.
+     *
+     * @param a Old lines as numbers.
+     * @param b New lines as numbers.
+     */
+    private Diff(int[] a, int[] b) {
+        _a = a;
+        _b = b;
+        _deleted = new boolean[a.length];
+        _inserted = new boolean[b.length];
+    }
+
+    /**
+     * Marks the lines that differ between A[ALO .. AHI - 1] and
+     * B[BLO .. BHI - 1]. The ranges are narrowed by their common prefix
+     * and suffix, split at a middle snake, and the halves compared in turn.
+     *
+     * @param aLo First line of A.
+     * @param aHi One past the last line of A.
+     * @param bLo First line of B.
+     * @param bHi One past the last line of B.
+     */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            Arrays.fill(_deleted, aLo, aHi, true);
+            Arrays.fill(_inserted, bLo, bHi, true);
+            return;
+        }
+        long split = middleSnake(aLo, aHi, bLo, bHi);
+        int x = (int) (split >>> 32), y = (int) split;
+        if (split < 0 || (x == aLo && y == bLo) || (x == aHi && y == bHi)) {
+            Arrays.fill(_deleted, aLo, aHi, true);
+            Arrays.fill(_inserted, bLo, bHi, true);
+            return;
+        }
+        compare(aLo, x, bLo, y);
+        compare(x, aHi, y, bHi);
+    }
+
+    /**
+     * Returns a point (x, y) on a shortest edit path from the start to the
+     * end of A[ALO .. AHI - 1] and B[BLO .. BHI - 1], found by running the
+     * greedy search forward from the start and backward from the end until
+     * the two overlap.
+     *
+     * @param aLo First line of A.
+     * @param aHi One past the last line of A.
+     * @param bLo First line of B.
+     * @param bHi One past the last line of B.
+     * @return X in the high and Y in the low 32 bits, or -1 if none exists.
+     */
+    private long middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD, length = 2 * maxD + 2;
+        int[] forward = new int[length], backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int k1Start = 0, k1End = 0, k2Start = 0, k2End = 0;
+        for (int d = 0; d < maxD; ++d) {
+            for (int k1 = -d + k1Start; k1 <= d - k1End; k1 += 2) {
+                int k1Offset = offset + k1;
+                int x1 = (k1 == -d || (k1 != d && forward[k1Offset - 1]
+                        < forward[k1Offset + 1])) ? forward[k1Offset + 1]
+                        : forward[k1Offset - 1] + 1;
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && _a[aLo + x1] == _b[bLo + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                forward[k1Offset] = x1;
+                if (x1 > n) {
+                    k1End += 2;
+                } else if (y1 > m) {
+                    k1Start += 2;
+                } else if (odd) {
+                    int k2Offset = offset + delta - k1;
+                    if (k2Offset >= 0 && k2Offset < length
+                            && backward[k2Offset] != -1
+                            && x1 >= n - backward[k2Offset]) {
+                        return point(aLo + x1, bLo + y1);
+                    }
+                }
+            }
+            for (int k2 = -d + k2Start; k2 <= d - k2End; k2 += 2) {
+                int k2Offset = offset + k2;
+                int x2 = (k2 == -d || (k2 != d && backward[k2Offset - 1]
+                        < backward[k2Offset + 1]))
+                        ? backward[k2Offset + 1] : backward[k2Offset - 1] + 1;
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                        && _a[aHi - x2 - 1] == _b[bHi - y2 - 1]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                backward[k2Offset] = x2;
+                if (x2 > n) {
+                    k2End += 2;
+                } else if (y2 > m) {
+                    k2Start += 2;
+                } else if (!odd) {
+                    int k1Offset = offset + delta - k2;
+                    if (k1Offset >= 0 && k1Offset < length
+                            && forward[k1Offset] != -1) {
+                        int x1 = forward[k1Offset];
+                        int y1 = offset + x1 - k1Offset;
+                        if (x1 >= n - x2) {
+                            return point(aLo + x1, bLo + y1);
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns X and Y packed into a long.
+     *
+     * @param x Line of A.
+     * @param y Line of B.
+     * @return X in the high and Y in the low 32 bits.
+     */
+    private static long point(int x, int y) {
+        return ((long) x << 32) | y;
+    }
+
+    /**
+     * Returns the hunks made of the marked lines.
+     *
+     * @return Hunks in ascending order.
+     */
+    private List<Hunk> hunks() {
+        List<Hunk> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < _a.length || j < _b.length) {
+            if (i < _a.length && j < _b.length && !_deleted[i]
+                    && !_inserted[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int aStart = i, bStart = j;
+            while (i < _a.length && _deleted[i]) {
+                i += 1;
+            }
+            while (j < _b.length && _inserted[j]) {
+                j += 1;
+            }
+            result.add(new Hunk(aStart, i, bStart, j));
+        }
+        return result;
+    }
+
+    /** Old lines as numbers. */
+    private final int[] _a;
+
+    /** New lines as numbers. */
+    private final int[] _b;
+
+    /** Lines of A that are not in B. */
+    private final boolean[] _deleted;
+
+    /** Lines of B that are not in A. */
+    private final boolean[] _inserted;
+}
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A line-level three-way merge. The changes from the base to each side are
+ * found with Diff, and grouped where they overlap or touch in the base.
+ * A group changed by one side only takes that side's lines, one changed the
+ * same way by both takes them once, and any other group is a conflict,
+ * written between the markers merge has always used:
+ * <pre>
+ * &lt;&lt;&lt;&lt;&lt;&lt;&lt; HEAD
+ * (current lines)=======
+ * (given lines)&gt;&gt;&gt;&gt;&gt;&gt;&gt;
+ * </pre>
+ * Lines outside the groups are common to all three and kept as they are.
+ *
+ * @author Farhad Alemi
+ */
+class Diff3 {
+
+    /**
+     * Merges the changes from BASE to OURS and from BASE to THEIRS.
+     *
+     * @param base Lines of the common ancestor.
+     * @param ours Lines of the current version.
+     * @param theirs Lines of the given version.
+     */
+    Diff3(List<String> base, List<String> ours, List<String> theirs) {
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] baseIds = Diff.intern(base, ids);
+        _ours = ours;
+        _theirs = theirs;
+        _result = new ArrayList<>();
+        merge(base, Diff.diff(baseIds, Diff.intern(ours, ids)),
+                Diff.diff(baseIds, Diff.intern(theirs, ids)));
+    }
+
+    /**
+     * Returns the merged lines, with conflict markers around conflicts.
+     *
+     * @return Merged lines.
+     */
+    List<String> result() {
+        return _result;
+    }
+
+    /**
+     * Returns the number of conflicting groups.
+     *
+     * @return Conflict count.
+     */
+    int conflicts() {
+        return _conflicts;
+    }
+
+    /**
+     * Builds the result from BASE and the hunks OURS and THEIRS of each
+     * side.
+     *
+     * @param base Lines of the common ancestor.
+     * @param ours Hunks from BASE to the current version.
+     * @param theirs Hunks from BASE to the given version.
+     */
+    private void merge(List<String> base, List<Diff.Hunk> ours,
+                       List<Diff.Hunk> theirs) {
+        int pos = 0, i = 0, j = 0;
+        int oursShift = 0, theirsShift = 0;
+        while (i < ours.size() || j < theirs.size()) {
+            boolean oursFirst = j == theirs.size() || (i < ours.size()
+                    && ours.get(i).aStart <= theirs.get(j).aStart);
+            int start = oursFirst ? ours.get(i).aStart
+                    : theirs.get(j).aStart;
+            int end = start;
+            int oursFrom = i, theirsFrom = j;
+            while (true) {
+                if (i < ours.size() && ours.get(i).aStart <= end) {
+                    end = Math.max(end, ours.get(i).aEnd);
+                    i += 1;
+                } else if (j < theirs.size() && theirs.get(j).aStart <= end) {
+                    end = Math.max(end, theirs.get(j).aEnd);
+                    j += 1;
+                } else {
+                    break;
+                }
+            }
+            _result.addAll(base.subList(pos, start));
+
+            int oursStart = start + oursShift, oursEnd = end + oursShift;
+            if (i > oursFrom) {
+                Diff.Hunk first = ours.get(oursFrom), last = ours.get(i - 1);
+                oursStart = first.bStart - (first.aStart - start);
+                oursEnd = last.bEnd + (end - last.aEnd);
+                oursShift = last.bEnd - last.aEnd;
+            }
+            int theirsStart = start + theirsShift;
+            int theirsEnd = end + theirsShift;
+            if (j > theirsFrom) {
+                Diff.Hunk first = theirs.get(theirsFrom);
+                Diff.Hunk last = theirs.get(j - 1);
+                theirsStart = first.bStart - (first.aStart - start);
+                theirsEnd = last.bEnd + (end - last.aEnd);
+                theirsShift = last.bEnd - last.aEnd;
+            }
+            List<String> oursLines = _ours.subList(oursStart, oursEnd);
+            List<String> theirsLines = _theirs.subList(theirsStart,
+                    theirsEnd);
+            if (j == theirsFrom || oursLines.equals(theirsLines)) {
+                _result.addAll(oursLines);
+            } else if (i == oursFrom) {
+                _result.addAll(theirsLines);
+            } else {
+                _conflicts += 1;
+                _result.add("<<<<<<< HEAD\n");
+                _result.addAll(oursLines);
+                _result.add("=======\n");
+                _result.addAll(theirsLines);
+                _result.add(">>>>>>>\n");
+            }
+            pos = end;
+        }
+        _result.addAll(base.subList(pos, base.size()));
+    }
+
+    /** Lines of the current version. */
+    private final List<String> _ours;
+
+    /** Lines of the given version. */
+    private final List<String> _theirs;
+
+    /** Merged lines. */
+    private final List<String> _result;
+
+    /** Number of conflicting groups. */
+    private int _conflicts;
+}
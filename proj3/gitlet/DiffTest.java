@@ -0,0 +1,125 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class DiffTest {
+
+    /** Returns the lines of TEXT, split on spaces, each with a newline. */
+    private static List<String> lines(String text) {
+        List<String> result = new ArrayList<>();
+        for (String line : text.split(" ")) {
+            if (!line.isEmpty()) {
+                result.add(line + "\n");
+            }
+        }
+        return result;
+    }
+
+    /** Returns the length of a longest common subsequence of A and B. */
+    private static int lcs(int[] a, int[] b) {
+        int[][] table = new int[a.length + 1][b.length + 1];
+        for (int i = 1; i <= a.length; ++i) {
+            for (int j = 1; j <= b.length; ++j) {
+                table[i][j] = (a[i - 1] == b[j - 1]) ? table[i - 1][j - 1] + 1
+                        : Math.max(table[i - 1][j], table[i][j - 1]);
+            }
+        }
+        return table[a.length][b.length];
+    }
+
+    @Test
+    public void shortestEditsTest() {
+        Random random = new Random(14);
+        for (int trial = 0; trial < 2000; ++trial) {
+            int[] a = new int[random.nextInt(30)];
+            int[] b = new int[random.nextInt(30)];
+            int alphabet = 1 + random.nextInt(5);
+            for (int i = 0; i < a.length; ++i) {
+                a[i] = random.nextInt(alphabet);
+            }
+            for (int i = 0; i < b.length; ++i) {
+                b[i] = random.nextInt(alphabet);
+            }
+            List<Integer> patched = new ArrayList<>();
+            int pos = 0, edits = 0;
+            for (Diff.Hunk hunk : Diff.diff(a, b)) {
+                for (; pos < hunk.aStart; ++pos) {
+                    patched.add(a[pos]);
+                }
+                for (int k = hunk.bStart; k < hunk.bEnd; ++k) {
+                    patched.add(b[k]);
+                }
+                edits += hunk.aEnd - hunk.aStart + hunk.bEnd - hunk.bStart;
+                pos = hunk.aEnd;
+            }
+            for (; pos < a.length; ++pos) {
+                patched.add(a[pos]);
+            }
+            assertEquals(Arrays.toString(b), patched.toString());
+            assertEquals(a.length + b.length - 2 * lcs(a, b), edits);
+        }
+    }
+
+    @Test
+    public void cleanMergeTest() {
+        Diff3 merge = new Diff3(lines("a b c d e f g"),
+                lines("a B c d e f g h"), lines("x a b c d e F g"));
+        assertEquals(0, merge.conflicts());
+        assertEquals(lines("x a B c d e F g h"), merge.result());
+
+        merge = new Diff3(lines("a b c"), lines("a B c"), lines("a B c"));
+        assertEquals(0, merge.conflicts());
+        assertEquals(lines("a B c"), merge.result());
+    }
+
+    @Test
+    public void conflictTest() {
+        Diff3 merge = new Diff3(lines("a b c d e"), lines("a X c d E"),
+                lines("a Y c d e"));
+        assertEquals(1, merge.conflicts());
+        assertEquals(lines("a <<<<<<< X ======= Y >>>>>>> c d E"),
+                replaceMarkers(merge.result()));
+
+        merge = new Diff3(new ArrayList<>(), Arrays.asList("x\n", "y"),
+                Arrays.asList("z"));
+        assertEquals("<<<<<<< HEAD\nx\ny=======\nz>>>>>>>\n", String.join("",
+                merge.result()));
+    }
+
+    /** Returns LINES with the HEAD marker shortened to match lines(). */
+    private static List<String> replaceMarkers(List<String> lines) {
+        List<String> result = new ArrayList<>();
+        for (String line : lines) {
+            result.add(line.equals("<<<<<<< HEAD\n") ? "<<<<<<<\n" : line);
+        }
+        return result;
+    }
+
+    @Test
+    public void unifiedTest() {
+        StringBuilder out = new StringBuilder();
+        Diff.unified("f", "f", lines("a b c"), Arrays.asList("a\n", "c"), 3,
+                out);
+        assertEquals("diff --git a/f b/f\n--- a/f\n+++ b/f\n@@ -1,3 +1,2 @@\n"
+                + " a\n-b\n-c\n+c\n\\ No newline at end of file\n",
+                out.toString());
+    }
+
+    @Test
+    public void bufferLinesTest() {
+        ByteBuffer contents = ByteBuffer.wrap("xa\nb\n\nc".getBytes());
+        contents.position(1);
+        assertEquals(Arrays.asList("a\n", "b\n", "\n", "c"),
+                Diff.lines(contents));
+        assertEquals(1, contents.position());
+        assertEquals(new ArrayList<String>(), Diff.lines(new byte[0]));
+    }
+}
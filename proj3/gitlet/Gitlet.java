@@ -2,11 +2,17 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
 
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNotNull;
@@ -24,57 +30,42 @@ public class Gitlet {
     /** Current Working Directory. */
     static final File CWD = new File(".");
 
-    /** Main metadata folder. */
-    private static File _gitletFolder = new File(CWD + SEPARATOR + ".gitlet");
-
-    /** The blobs folder used for storing file snapshots. */
-    private static File _blobsFolder = new File(_gitletFolder + SEPARATOR
-            + "blobs");
-
-    /** The commits folder used for storing commits. */
-    private static File _commitsFolder = new File(_gitletFolder + SEPARATOR
-            + "commits");
-
-    /** The index folder used to as staging area. */
-    static final File INDEX_FOLDER = new File(_gitletFolder + SEPARATOR
-            + "index");
-
-    /** The addition folder contains files staged for addition. */
-    static final File ADDITION_FOLDER = new File(INDEX_FOLDER + SEPARATOR
-            + "addition");
-
-    /** The removal folder contains files staged for removal. */
-    static final File REMOVAL_FOLDER = new File(INDEX_FOLDER + SEPARATOR
-            + "removal");
-
-    /** The refs folder used to store various pointers. */
-    private static File _refsFolder = new File(_gitletFolder + SEPARATOR
-            + "refs");
-
-    /** The folder which contains file(s) named after each branch.
-     * Inside each file is the latest commit's hash. */
-    private static File _headsFolder = new File(_refsFolder + SEPARATOR
-            + "heads");
-
-    /** The file which contains the full path for the active branch. */
-    private static File _headPtr = new File(_gitletFolder + SEPARATOR
-            + "HEAD");
-
     /** The initial branch name. */
     static final String INIT_BRANCH = "master";
 
+    /**
+     * A Gitlet working on the .gitlet directory of the current directory.
+     */
+    public Gitlet() {
+        this(new Repository(new File(CWD + SEPARATOR + ".gitlet")));
+    }
+
+    /**
+     * A Gitlet working on REPOSITORY, whose working directory is the
+     * current directory.
+     *
+     * @param repository The repository.
+     */
+    Gitlet(Repository repository) {
+        _repository = repository;
+    }
+
     /**
      * Creates a new Gitlet version-control system in the current directory.
      * It initially starts with an initialized commit having "initial
      * commit" as the commit message. The branch for this initial commit is
      * named "master". The timestamp for this initial commit is the Unix Epoch.
+     * With --chunked, blobs of the new repository are stored as deduplicated
+     * content-defined chunks.
      *
-     * @param args init.
+     * @param args init [--chunked].
      */
     public void doInit(String[] args) {
         Commit initCommit;
 
-        validateNumArgs(args, 1);
+        if (args.length != 2 || !args[1].equals("--chunked")) {
+            validateNumArgs(args, 1);
+        }
         if (gitletFolder().exists()) {
             Main.softFail("A Gitlet version-control system already exists"
                     + " in the current directory.");
@@ -83,69 +74,170 @@ public class Gitlet {
         headsFolder().mkdirs();
         blobsFolder().mkdir();
         commitsFolder().mkdir();
-        ADDITION_FOLDER.mkdirs();
-        REMOVAL_FOLDER.mkdir();
+        additionFolder().mkdirs();
+        removalFolder().mkdir();
 
         try {
-            Utils.writeContents(headPtr(), headsFolder().getCanonicalPath()
+            Repository.writeRef(headPtr(), headsFolder().getCanonicalPath()
                     + SEPARATOR + INIT_BRANCH);
         } catch (IOException e) {
             Main.softFail("File IO Failed.");
         }
+        if (args.length == 2) {
+            new Config(gitletFolder()).set(Config.CHUNKED, "true");
+            _repository = new Repository(gitletFolder());
+        }
         initCommit = new Commit("initial commit");
-        GitletUtils.addCommit(initCommit);
+        initCommit.setTree(Tree.write(objectStore(), new HashMap<>()));
+        GitletUtils.addCommit(_repository, initCommit);
     }
 
     /**
      * Sets up file for staging. Staging an already staged file overwrites the
      * previous entry and writes the new contents. The staging area has to be
-     * inside .gitlet directory.
+     * inside .gitlet directory. The copy is made outside the staging area
+     * and moved in, so a concurrent commit never takes it half-written.
+     * Naming a directory, such as ".", stages every new or changed file
+     * below it and every tracked file deleted from it.
      *
-     * @param args add [filename].
+     * @param args add [filename | directory].
      */
     public void doAdd(String[] args) {
-        File addendFile, stagedFile;
-        String addendNameSHA1, stagedFileSHA1;
-        Collection<String> trackedFiles;
+        File addendFile;
+        String fileName;
 
         validateInit();
         validateNumArgs(args, 2);
 
-        addendFile = new File(CWD + SEPARATOR + args[1]);
-        if (!addendFile.exists()) {
+        fileName = workPath(args[1]);
+        addendFile = fileName.isEmpty() ? CWD : new File(CWD, fileName);
+        if (fileName.startsWith("..") || !addendFile.exists()) {
             Main.softFail("File does not exist.");
         }
+        if (addendFile.isDirectory()) {
+            addDirectory(fileName);
+        } else {
+            addFile(fileName);
+        }
+    }
 
-        addendNameSHA1 = Utils.sha1(args[1]) + "-" + args[1];
-        stagedFile = new File(ADDITION_FOLDER + SEPARATOR + addendNameSHA1);
-        trackedFiles = GitletUtils.lastCommit().getBlobs().values();
+    /**
+     * Stages working file FILENAME for addition, or clears it from the
+     * staging area if it matches the current commit; helper method for
+     * doAdd.
+     *
+     * @param fileName Path relative to the working directory.
+     */
+    private void addFile(String fileName) {
+        File addendFile, stagedFile, tempFile;
+        String addendNameSHA1, stagedFileSHA1;
 
-        GitletUtils.clearStagingArea(addendNameSHA1);
-        Utils.writeContents(stagedFile, (Object) Utils
-                .readContents(addendFile));
-        stagedFileSHA1 = Utils.sha1(Utils.sha1((Object) Utils.readContents
-                (stagedFile)) + addendNameSHA1);
-        if (trackedFiles.contains(stagedFileSHA1)) {
-            stagedFile.delete();
+        addendFile = new File(CWD, fileName);
+        addendNameSHA1 = Utils.sha1(fileName) + "-" + fileName;
+        stagedFile = GitletUtils.stagedFile(additionFolder(), addendNameSHA1);
+
+        tempFile = GitletUtils.tempSibling(stagedFile);
+        stagedFileSHA1 = Utils.sha1(GitletUtils.copyAndSha1(addendFile,
+                tempFile) + addendNameSHA1);
+        GitletUtils.clearStagingArea(_repository, addendNameSHA1);
+        if (stagedFileSHA1.equals(GitletUtils.lastCommit(_repository)
+                .getBlob(objectStore(), addendNameSHA1))) {
+            tempFile.delete();
+        } else {
+            try {
+                GitletUtils.moveIntoPlace(tempFile, stagedFile);
+            } catch (IOException e) {
+                tempFile.delete();
+                Main.softFail("File IO Failed.");
+            }
         }
     }
 
+    /**
+     * Stages every file below directory DIR that differs from both the
+     * current commit and the staging area, and stages every tracked file
+     * missing from DIR for removal; helper method for doAdd. Files are
+     * compared through the stat cache, so only the changed ones are read.
+     *
+     * @param dir Path of a directory relative to the working directory;
+     *            "" for the working directory itself.
+     */
+    private void addDirectory(String dir) {
+        String prefix = dir.isEmpty() ? "" : dir + "/";
+        WorkTree workTree = workTree();
+        StatCache statCache = statCache();
+        HashMap<String, String> commitBlobs = GitletUtils.lastCommit(
+                _repository).getBlobs(objectStore());
+        HashSet<String> present = new HashSet<>();
+        for (String fileName : workTree.files()) {
+            if (!fileName.startsWith(prefix)) {
+                continue;
+            }
+            String key = Utils.sha1(fileName) + "-" + fileName;
+            present.add(key);
+            String sha1 = statCache.sha1(new File(CWD, fileName));
+            File staged = GitletUtils.stagedFile(additionFolder(), key);
+            if (staged.isFile() ? !sha1.equals(statCache.sha1(staged))
+                    : !Utils.sha1(sha1 + key).equals(commitBlobs.get(key))
+                    || GitletUtils.stagedFile(removalFolder(), key)
+                    .exists()) {
+                addFile(fileName);
+            }
+        }
+        for (String key : GitletUtils.stagedKeys(additionFolder())) {
+            if (key.startsWith(prefix, Utils.UID_LENGTH + 1)
+                    && !present.contains(key)) {
+                GitletUtils.clearStagingArea(_repository, key);
+            }
+        }
+        for (String key : commitBlobs.keySet()) {
+            if (key.startsWith(prefix, Utils.UID_LENGTH + 1)
+                    && !present.contains(key)) {
+                Utils.writeContents(GitletUtils.stagedFile(removalFolder(),
+                        key), "");
+            }
+        }
+        workTree.save();
+        statCache.save();
+    }
+
+    /**
+     * Returns file name NAME, as given on the command line, as a path
+     * relative to the working directory with '/' between names, and no
+     * "." or trailing separator.
+     *
+     * @param name File name operand.
+     * @return Normalized path; "" for the working directory.
+     */
+    private static String workPath(String name) {
+        return Paths.get(name).normalize().toString()
+                .replace(File.separatorChar, '/');
+    }
+
     /**
      * Creates a snapshot of files. The Commit obj mimics the characteristics
      * of a the git commit command. Commit only takes the snapshot of files
      * that have already been staged. By default a commit is the same as its
      * parent. Updates to the commits include files staged. Performing a commit
-     * clears the staging area.
+     * clears the staging area. Only the tree nodes on the paths to the staged
+     * files are written; the rest of the tree is shared with the parent. The
+     * branch is moved with a compare-and-swap, and if another gitlet process
+     * moved it first the staged changes are committed on top of its commit
+     * instead, unless its commit changed the same files. Each staged entry
+     * is taken out of the staging area by an atomic rename before it is
+     * committed, so when several processes commit at once every entry goes
+     * into exactly one commit. The entries taken are kept until the branch
+     * has moved, and if the commit fails they are put back, so a failed
+     * commit leaves the staging area as it was.
      *
      * @param args commit [message].
      * @param parents Commit parents; null if not a merge commit.
      */
     public void doCommit(String[] args, String[] parents) {
-        byte[] stagedFileContents;
-        File stagedBlob, finalBlob;
-        Commit parentCommit, newCommit;
-        HashMap<String, String> blobs;
+        File claimed, stagedBlob;
+        TreeMap<String, String> changes;
         List<String> stagedFiles, removalFiles;
+        List<File[]> claims;
         String stagedBlobSHA1;
 
         validateInit();
@@ -155,43 +247,100 @@ public class Gitlet {
             Main.softFail("Please enter a commit message.");
         }
 
-        parentCommit = GitletUtils.lastCommit();
-        blobs = parentCommit.getBlobs();
-
-        removalFiles = Utils.plainFilenamesIn(REMOVAL_FOLDER);
-        stagedFiles = Utils.plainFilenamesIn(ADDITION_FOLDER);
+        changes = new TreeMap<>();
 
-        assertTrue(removalFiles != null && stagedFiles != null);
+        removalFiles = GitletUtils.stagedKeys(removalFolder());
+        stagedFiles = GitletUtils.stagedKeys(additionFolder());
 
         if (removalFiles.size() == 0 && stagedFiles.size() == 0) {
             Main.softFail("No changes added to the commit.");
         }
 
-        for (String rmFile : removalFiles) {
-            blobs.remove(rmFile);
-            GitletUtils.clearStagingArea(rmFile);
-        }
-
-        for (String file : stagedFiles) {
-            stagedBlob = new File(ADDITION_FOLDER + SEPARATOR + file);
+        claimed = GitletUtils.tempSibling(new File(indexFolder(), "claimed"));
+        claimed.mkdir();
+        claims = new ArrayList<>();
+        try {
+            for (String rmFile : removalFiles) {
+                if (claimStaged(removalFolder(), rmFile, claimed, claims)) {
+                    changes.put(rmFile, null);
+                }
+            }
 
-            stagedFileContents = Utils.readContents(stagedBlob);
+            Metrics.Phase storing = Metrics.phase("store-blobs");
+            for (String file : stagedFiles) {
+                if (!claimStaged(additionFolder(), file, claimed, claims)) {
+                    continue;
+                }
+                stagedBlob = claims.get(claims.size() - 1)[0];
+                stagedBlobSHA1 = Utils.sha1(GitletUtils.sha1(stagedBlob)
+                        + file);
+                changes.put(file, stagedBlobSHA1);
+                objectStore().storeBlob(stagedBlobSHA1, file.substring(Utils
+                        .UID_LENGTH + 1), stagedBlob);
+            }
+            storing.close();
 
-            stagedBlobSHA1 = Utils.sha1(Utils.sha1((Object) stagedFileContents)
-                    + file);
-            blobs.put(file, stagedBlobSHA1);
-            finalBlob = new File(blobsFolder() + SEPARATOR + stagedBlobSHA1
-                    + file.substring(Utils.UID_LENGTH));
+            if (changes.isEmpty()) {
+                claimed.delete();
+                Main.softFail("No changes added to the commit.");
+            }
+            try (Metrics.Phase phase = Metrics.phase("write-commit")) {
+                _repository.commit(new File(GitletUtils.getHeadPtr(
+                        _repository)), args[1], changes,
+                        (parents != null) ? parents[1] : null,
+                        (parents != null) ? parents[0] : null);
+            }
+        } catch (RuntimeException e) {
+            releaseClaims(claims, claimed, true);
+            if (e instanceof GitletException) {
+                Main.softFail(e.getMessage());
+            }
+            throw e;
+        }
+        releaseClaims(claims, claimed, false);
+    }
 
-            Utils.writeContents(finalBlob, (Object) stagedFileContents);
-            GitletUtils.clearStagingArea(file);
+    /**
+     * Takes the entry for KEY out of staging folder FOLDER by moving it into
+     * directory CLAIMED, and records the move in CLAIMS so that it can be
+     * undone; helper method for doCommit.
+     *
+     * @param folder Addition or removal folder.
+     * @param key Filename's SHA1, a dash and the file name.
+     * @param claimed Directory holding the entries taken.
+     * @param claims Each entry taken and where it was staged.
+     * @return True if this process took the entry, false if another did.
+     */
+    private boolean claimStaged(File folder, String key, File claimed,
+                                List<File[]> claims) {
+        File staged = GitletUtils.stagedFile(folder, key);
+        File taken = new File(claimed, Integer.toString(claims.size()));
+        if (!GitletUtils.claim(staged, taken)) {
+            return false;
         }
+        claims.add(new File[] {taken, staged});
+        return true;
+    }
 
-        parents = (parents != null) ? parents : new String[]{GitletUtils
-                .lastCommitHash()};
-        newCommit = new Commit(args[1], parents);
-        newCommit.setBlobs(blobs);
-        GitletUtils.addCommit(newCommit);
+    /**
+     * Deletes the staging entries in CLAIMS once they are committed, or, if
+     * RESTORE, moves each back into the staging area unless it was staged
+     * again meanwhile; then deletes directory CLAIMED. Helper method for
+     * doCommit.
+     *
+     * @param claims Each entry taken and where it was staged.
+     * @param claimed Directory holding the entries taken.
+     * @param restore True if the commit failed.
+     */
+    private void releaseClaims(List<File[]> claims, File claimed,
+                               boolean restore) {
+        for (File[] claim : claims) {
+            if (!restore || claim[1].exists()
+                    || !GitletUtils.claim(claim[0], claim[1])) {
+                claim[0].delete();
+            }
+        }
+        claimed.delete();
     }
 
     /**
@@ -202,31 +351,29 @@ public class Gitlet {
      * @param args rm [file to be removed/un-tracked upon next commit.]
      */
     public void doRm(String[] args) {
-        File removalFile, stagingBlob, removalBlob;
-        String fileNameSHA1;
-        HashMap<String, String> trackedBlobs;
+        File stagingBlob, removalBlob;
+        String fileName, fileNameSHA1;
+        boolean isTracked;
 
         validateInit();
         validateNumArgs(args, 2);
 
-        removalFile = new File(CWD + SEPARATOR + args[1]);
-
-        fileNameSHA1 = Utils.sha1(args[1]) + "-" + args[1];
-        stagingBlob = new File(ADDITION_FOLDER + SEPARATOR + fileNameSHA1);
-        removalBlob = new File(REMOVAL_FOLDER + SEPARATOR + fileNameSHA1);
-        trackedBlobs = GitletUtils.lastCommit().getBlobs();
+        fileName = workPath(args[1]);
+        fileNameSHA1 = Utils.sha1(fileName) + "-" + fileName;
+        stagingBlob = GitletUtils.stagedFile(additionFolder(), fileNameSHA1);
+        removalBlob = GitletUtils.stagedFile(removalFolder(), fileNameSHA1);
+        isTracked = GitletUtils.lastCommit(_repository).getBlob(
+                objectStore(), fileNameSHA1) != null;
 
-        if (!trackedBlobs.containsKey(fileNameSHA1) && !stagingBlob.exists()) {
+        if (!isTracked && !stagingBlob.exists()) {
             Main.softFail("No reason to remove the file.");
         } else {
             if (stagingBlob.exists()) {
-                GitletUtils.clearStagingArea(fileNameSHA1);
+                GitletUtils.clearStagingArea(_repository, fileNameSHA1);
             }
-            if (trackedBlobs.containsKey(fileNameSHA1)) {
+            if (isTracked) {
                 Utils.writeContents(removalBlob, "");
-                if (removalFile.exists()) {
-                    Utils.restrictedDelete(removalFile);
-                }
+                GitletUtils.deleteWorkFile(fileName);
             }
         }
     }
@@ -234,72 +381,78 @@ public class Gitlet {
     /**
      * Provides a log of the commits starting at current head. It goes
      * back until the initial commit ignoring any second parent (due to merge).
+     * Each commit's header is read from the commit index just before it is
+     * printed, so output starts at once however long the history is. With
+     * --since, the walk stops at the first commit made before the date.
      *
-     * @param args log.
+     * @param args log [--max-count=N] [--since=DATE] [--format=FORMAT].
      */
     public void doLog(String[] args) {
-        Commit currCommit;
+        LogPrinter printer;
         String commitHash;
-        String[] parentHash;
 
         validateInit();
-        validateNumArgs(args, 1);
-
-        commitHash = GitletUtils.lastCommitHash();
-
-        do {
-            currCommit = Commit.retrieveCommit(commitHash);
-            Commit.printCommit(currCommit, commitHash);
-            parentHash = (currCommit == null) ? null : currCommit.getParents();
-            commitHash = (parentHash == null) ? null : parentHash[0];
-        } while (commitHash != null);
+        printer = new LogPrinter(args);
+
+        commitHash = GitletUtils.lastCommitHash(_repository);
+        try (CommitHeaders.Reader headers = objectStore().commitIndex()
+                .headers().reader()) {
+            while (commitHash != null) {
+                Commit header = headers.read(commitHash);
+                if (header == null) {
+                    header = Commit.retrieveCommit(_repository, commitHash);
+                }
+                if (printer.isTooOld(header)
+                        || !printer.print(commitHash, header)) {
+                    break;
+                }
+                commitHash = (header.getParents() == null
+                        || objectStore().isShallow(commitHash)) ? null
+                        : header.getParents()[0];
+            }
+        }
     }
 
     /**
-     * Provides a log of all commits ever made. The order of the
-     * commits is not specified.
+     * Provides a log of all commits ever made, in the order they were
+     * added to the commit index, streamed from the headers kept there.
      *
-     * @param  args global-log
+     * @param  args global-log [--max-count=N] [--since=DATE]
+     *              [--format=FORMAT]
      */
     void doGlobalLog(String[] args) {
-        List<String> commitHashList;
+        LogPrinter printer;
         validateInit();
-        validateNumArgs(args, 1);
+        printer = new LogPrinter(args);
 
-        commitHashList = Utils.plainFilenamesIn(commitsFolder());
-        assertNotNull(commitHashList);
-
-        for (String commitHash : commitHashList) {
-            Commit.printCommit(Commit.retrieveCommit(commitHash), commitHash);
-        }
+        objectStore().commitIndex().headers().forEach(printer::print);
     }
 
     /**
      * Prints out the ids of all commits which have the given commit message
      * on separate lines. Put the commit message in quotations if it is a
-     * multi-word message.
+     * multi-word message. With --words, prints the commits whose messages
+     * contain all of the given words instead, ignoring case. Both are
+     * answered from the commit index.
      *
-     * @param args find [commit message].
+     * @param args find [commit message] | find --words [word]...
      */
     public void doFind(String[] args) {
         List<String> commitHashList;
-        boolean found;
 
         validateInit();
-        validateNumArgs(args, 2);
-
-        found = false;
-        commitHashList = Utils.plainFilenamesIn(commitsFolder());
-        assertNotNull(commitHashList);
+        if (args.length > 2 && args[1].equals("--words")) {
+            commitHashList = objectStore().commitIndex().withWords(Arrays
+                    .asList(args).subList(2, args.length));
+        } else {
+            validateNumArgs(args, 2);
+            commitHashList = objectStore().commitIndex().withMessage(args[1]);
+        }
 
         for (String commitHash : commitHashList) {
-            if (Objects.requireNonNull(Commit.retrieveCommit(commitHash))
-                    .getMessage().equals(args[1])) {
-                System.out.println(commitHash);
-                found = true;
-            }
+            System.out.println(commitHash);
         }
-        if (!found) {
+        if (commitHashList.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
@@ -314,25 +467,28 @@ public class Gitlet {
         List<String> stagedFiles, removedFiles, cwdFiles, modNotStagedFiles,
                 unTrackedFiles;
         String cwdTotalSHA1, cwdFileName, cwdFileNameSHA1;
-        HashMap<String, String> cwdFilesSHA1, commitBlobs;
+        HashMap<String, String> commitBlobs;
+        StatCache statCache;
+        WorkTree workTree;
         validateInit(); validateNumArgs(args, 1);
-        stagedFiles = Utils.plainFilenamesIn(ADDITION_FOLDER);
-        removedFiles = Utils.plainFilenamesIn(REMOVAL_FOLDER);
-        cwdFiles = Utils.plainFilenamesIn(CWD);
-        cwdFilesSHA1 = GitletUtils.cwdFilesSHA1();
-        commitBlobs = GitletUtils.lastCommit().getBlobs();
-        assertTrue(stagedFiles != null && removedFiles != null && cwdFiles
-                != null && cwdFilesSHA1 != null);
+        stagedFiles = GitletUtils.stagedKeys(additionFolder());
+        removedFiles = GitletUtils.stagedKeys(removalFolder());
+        workTree = workTree();
+        cwdFiles = workTree.files();
+        statCache = statCache();
+        commitBlobs = GitletUtils.lastCommit(_repository).getBlobs(
+                objectStore());
         modNotStagedFiles = new ArrayList<>();
         unTrackedFiles = new ArrayList<>();
+        Metrics.Phase scanning = Metrics.phase("scan-files");
         for (String fileName : stagedFiles) {
             cwdFileName = fileName.substring(Utils.UID_LENGTH + 1);
             cwdFile = new File(CWD + SEPARATOR + cwdFileName);
-            stagedFile = new File(ADDITION_FOLDER + SEPARATOR + fileName);
+            stagedFile = GitletUtils.stagedFile(additionFolder(), fileName);
             if (!cwdFile.exists()) {
                 modNotStagedFiles.add(cwdFileName + " (deleted)");
-            } else if (!cwdFilesSHA1.get(cwdFileName).equals(Utils.sha1
-                    ((Object) Utils.readContents(stagedFile)))) {
+            } else if (!statCache.sha1(cwdFile).equals(statCache
+                    .sha1(stagedFile))) {
                 modNotStagedFiles.add(cwdFileName + " (modified)");
             }
         }
@@ -344,7 +500,7 @@ public class Gitlet {
                     modNotStagedFiles.add(cwdFileName + " (deleted)");
                 }
             } else {
-                cwdTotalSHA1 = Utils.sha1(cwdFilesSHA1.get(cwdFileName)
+                cwdTotalSHA1 = Utils.sha1(statCache.sha1(cwdFile)
                         + Utils.sha1(cwdFileName) + "-" + cwdFileName);
                 if (!cwdTotalSHA1.equals(commitBlobs.get(fileName))) {
                     modNotStagedFiles.add(cwdFileName + " (modified)");
@@ -359,8 +515,13 @@ public class Gitlet {
             }
         }
 
-        GitletUtils.printBranches();
-        GitletUtils.printFilenamesIn("=== Staged Files ===", stagedFiles,
+        workTree.save();
+        statCache.save();
+        scanning.close();
+
+        GitletUtils.printBranches(_repository);
+        GitletUtils.printFilenamesIn("=== Staged Files ===",
+                describeStaged(stagedFiles, removedFiles, commitBlobs),
                 Utils.UID_LENGTH + 1);
         GitletUtils.printFilenamesIn("=== Removed Files ===", removedFiles,
                 Utils.UID_LENGTH + 1);
@@ -370,6 +531,103 @@ public class Gitlet {
                 unTrackedFiles, 0);
     }
 
+    /**
+     * Returns the names of STAGEDFILES as status shows them: a file whose
+     * contents resemble those of one of REMOVEDFILES is shown as renamed
+     * from it, and failing that, one resembling the committed version of
+     * another staged file is shown as copied from it.
+     *
+     * @param stagedFiles Keys of the files staged for addition.
+     * @param removedFiles Keys of the files staged for removal.
+     * @param commitBlobs Blobs of the current commit.
+     * @return Staged file keys, with renames and copies noted.
+     */
+    private List<String> describeStaged(List<String> stagedFiles,
+            List<String> removedFiles, HashMap<String, String> commitBlobs) {
+        List<String> added = new ArrayList<>();
+        for (String fileName : stagedFiles) {
+            if (!commitBlobs.containsKey(fileName)) {
+                added.add(fileName);
+            }
+        }
+        TreeMap<String, String> renamed = new TreeMap<>();
+        if (!added.isEmpty() && !removedFiles.isEmpty()) {
+            Renames renames = new Renames(false);
+            for (String fileName : removedFiles) {
+                renames.addSource(fileName, committedContents(commitBlobs,
+                        fileName));
+            }
+            for (String fileName : added) {
+                addStaged(renames, fileName);
+            }
+            renamed = renames.detect();
+            added.removeAll(renamed.keySet());
+        }
+        TreeMap<String, String> copied = new TreeMap<>();
+        if (!added.isEmpty() && added.size() < stagedFiles.size()) {
+            Renames copies = new Renames(true);
+            for (String fileName : stagedFiles) {
+                if (commitBlobs.containsKey(fileName)) {
+                    copies.addSource(fileName, committedContents(commitBlobs,
+                            fileName));
+                }
+            }
+            for (String fileName : added) {
+                addStaged(copies, fileName);
+            }
+            copied = copies.detect();
+        }
+
+        List<String> result = new ArrayList<>();
+        for (String fileName : stagedFiles) {
+            if (renamed.containsKey(fileName)) {
+                result.add(fileName + " (renamed from " + renamed.get(
+                        fileName).substring(Utils.UID_LENGTH + 1) + ")");
+            } else if (copied.containsKey(fileName)) {
+                result.add(fileName + " (copied from " + copied.get(
+                        fileName).substring(Utils.UID_LENGTH + 1) + ")");
+            } else {
+                result.add(fileName);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the contents FILENAME has in the commit whose blobs are BLOBS,
+     * for rename detection: mapped rather than read, or null if they are
+     * too large to be paired.
+     *
+     * @param blobs Blobs of a commit.
+     * @param fileName A file key the commit tracks.
+     * @return File contents, or null.
+     */
+    private ByteBuffer committedContents(HashMap<String, String>
+            blobs, String fileName) {
+        String name = fileName.substring(Utils.UID_LENGTH + 1);
+        String blob = blobs.get(fileName);
+        if (objectStore().blobSize(blob, name) > Renames.MAX_SIZE) {
+            return null;
+        }
+        return objectStore().mapBlob(blob, name);
+    }
+
+    /**
+     * Adds the file staged for addition as FILENAME to RENAMES as a target,
+     * mapped rather than read and with its SHA-1 from the stat cache,
+     * unless it is too large to be paired.
+     *
+     * @param renames Rename or copy detection.
+     * @param fileName Key of a staged file.
+     */
+    private void addStaged(Renames renames, String fileName) {
+        File staged = GitletUtils.stagedFile(additionFolder(), fileName);
+        if (staged.length() <= Renames.MAX_SIZE) {
+            renames.addTarget(fileName, GitletUtils.map(staged),
+                    statCache().sha1(staged));
+        }
+    }
+
     /**
      * Performs the git checkout operation according to supplied args.
      *
@@ -390,7 +648,7 @@ public class Gitlet {
                 Main.softFail("Incorrect operands.");
             }
             checkoutFileFromCommit(new String[]{args[0], GitletUtils
-                    .lastCommitHash(), args[1], args[2]});
+                    .lastCommitHash(_repository), args[1], args[2]});
             break;
         case 4:
             if (!args[2].equals("--")) {
@@ -417,10 +675,10 @@ public class Gitlet {
         validateNumArgs(args, 2);
 
         branch = new File(headsFolder() + SEPARATOR + args[1]);
-        if (branch.exists()) {
+        if (branch.exists() || !Repository.updateRef(branch, null,
+                GitletUtils.lastCommitHash(_repository))) {
             Main.softFail("A branch with that name already exists.");
         }
-        Utils.writeContents(branch, GitletUtils.lastCommitHash());
     }
 
     /**
@@ -443,26 +701,34 @@ public class Gitlet {
         }
         if (!branch.exists()) {
             Main.softFail("A branch with that name does not exist.");
-        } else if (GitletUtils.getHeadPtr().equals(branchPath)) {
+        } else if (GitletUtils.getHeadPtr(_repository).equals(branchPath)) {
             Main.softFail("Cannot remove the current branch.");
         } else {
-            branch.delete();
+            Repository.deleteRef(branch, Repository.readRef(branch));
         }
     }
 
     /**
-     * Performs the git reset command.
+     * Performs the git reset command. The branch is moved only if no other
+     * gitlet process moved it during the checkout.
      *
      * @param args reset [commit id].
      */
     public void doReset(String[] args) {
+        String prevCommitHash;
+
         validateInit();
         validateNumArgs(args, 2);
 
-        args[1] = Commit.hashAutoComplete(args[1]);
+        args[1] = Commit.hashAutoComplete(_repository, args[1]);
 
-        checkoutCommit(Commit.retrieveCommit(args[1]), args[1]);
-        Utils.writeContents(new File(GitletUtils.getHeadPtr()), args[1]);
+        prevCommitHash = GitletUtils.lastCommitHash(_repository);
+        checkoutCommit(Commit.retrieveCommit(_repository, args[1]), args[1]);
+        if (!Repository.updateRef(new File(GitletUtils.getHeadPtr(_repository)),
+                prevCommitHash, args[1])) {
+            Main.softFail("Branch " + GitletUtils.getCurrBranchName(_repository)
+                    + " was moved by another gitlet process.");
+        }
     }
 
     /**
@@ -476,13 +742,17 @@ public class Gitlet {
 
         if (!isEmptyStagingArea()) {
             Main.softFail("You have uncommitted changes.");
-        } else if (GitletUtils.isCurrBranch(args[1])) {
+        } else if (GitletUtils.isCurrBranch(_repository, args[1])) {
             Main.softFail("Cannot merge a branch with itself.");
         }
     }
 
     /**
-     * Merges the files to to the current branch from another branch.
+     * Merges the files to to the current branch from another branch. Only
+     * files that changed between the split point and either head can need
+     * merging, so the trees are diffed against the split point's and just
+     * those files are passed on to mergeHelper, apart from files renamed on
+     * one side and edited on the other, which are merged by mergeRenamed.
      *
      * @param args merge [branch name].
      */
@@ -490,47 +760,74 @@ public class Gitlet {
         boolean hasConflict;
         Commit currCommit, givenCommit, splitPoint;
         HashMap<String, String> currBlob, givenBlob, splitPointBlob;
-        List<String> currParents, givenParents;
+        HashMap<String, String[]> changes;
+        List<String[]> renamed;
+        CommitGraph graph;
+        int currPos, givenPos;
         String currCommitHash, givenCommitHash;
 
         mergePreConditions(args);
 
         currCommitHash = Utils.readContentsAsString(GitletUtils
-                .getBranch(GitletUtils.getCurrBranchName()));
+                .getBranch(_repository, GitletUtils.getCurrBranchName(
+                        _repository)));
         givenCommitHash = Utils.readContentsAsString(GitletUtils
-                .getBranch(args[1]));
-        currParents = Commit.getAncestors(currCommitHash);
-        givenParents = Commit.getAncestors(givenCommitHash);
+                .getBranch(_repository, args[1]));
+        graph = commitGraph();
+        currPos = graph.position(currCommitHash);
+        givenPos = graph.position(givenCommitHash);
 
-        if (currParents.contains(givenCommitHash)) {
+        if (graph.isAncestor(givenPos, currPos)) {
             Main.softFail("Given branch is an ancestor of the current"
                     + " branch.");
         } else {
-            if (givenParents.contains(currCommitHash)) {
+            if (graph.isAncestor(currPos, givenPos)) {
                 doCheckout(new String[]{"checkout", args[1]});
                 Main.softFail("Current branch fast-forwarded.");
             }
         }
 
-        currCommit = Commit.retrieveCommit(currCommitHash);
-        givenCommit = Commit.retrieveCommit(givenCommitHash);
-        splitPoint = Commit.retrieveCommit(Commit.findSplitPoint(currParents,
-                givenParents));
+        currCommit = Commit.retrieveCommit(_repository, currCommitHash);
+        givenCommit = Commit.retrieveCommit(_repository, givenCommitHash);
+        try (Metrics.Phase phase = Metrics.phase("merge-base")) {
+            splitPoint = Commit.retrieveCommit(_repository, Commit
+                    .findSplitPoint(_repository, currCommitHash,
+                            givenCommitHash));
+        }
 
-        currBlob = Objects.requireNonNull(currCommit).getBlobs();
-        givenBlob = Objects.requireNonNull(givenCommit).getBlobs();
-        splitPointBlob = Objects.requireNonNull(splitPoint).getBlobs();
+        changes = new HashMap<>();
+        try (Metrics.Phase phase = Metrics.phase("diff-trees")) {
+            Tree.diff(objectStore(), Objects.requireNonNull(splitPoint)
+                    .getTree(objectStore()), Objects.requireNonNull(
+                            currCommit).getTree(objectStore()), changes);
+            Tree.diff(objectStore(), splitPoint.getTree(objectStore()),
+                    Objects.requireNonNull(givenCommit).getTree(
+                            objectStore()), changes);
+        }
 
-        currBlob = (currBlob != null) ? currBlob : new HashMap<>();
-        givenBlob = (givenBlob != null) ? givenBlob : new HashMap<>();
-        splitPointBlob = (splitPointBlob != null) ? splitPointBlob
-                : new HashMap<>();
+        currBlob = new HashMap<>();
+        givenBlob = new HashMap<>();
+        splitPointBlob = new HashMap<>();
+        for (String fileName : changes.keySet()) {
+            putIfTracked(currBlob, fileName, currCommit.getBlob(
+                    objectStore(), fileName));
+            putIfTracked(givenBlob, fileName, givenCommit.getBlob(
+                    objectStore(), fileName));
+            putIfTracked(splitPointBlob, fileName, splitPoint
+                    .getBlob(objectStore(), fileName));
+        }
 
-        hasConflict = mergeHelper(currBlob, givenBlob, splitPointBlob,
-                givenCommitHash);
+        try (Metrics.Phase phase = Metrics.phase("detect-renames")) {
+            renamed = followRenames(currBlob, givenBlob, splitPointBlob);
+        }
+        try (Metrics.Phase phase = Metrics.phase("merge-files")) {
+            hasConflict = mergeHelper(currBlob, givenBlob, splitPointBlob,
+                    givenCommitHash);
+            hasConflict |= mergeRenamed(renamed);
+        }
 
         doCommit(new String[]{"commit", "Merged " + args[1] + " into "
-                + GitletUtils.getCurrBranchName() + "."}, new
+                + GitletUtils.getCurrBranchName(_repository) + "."}, new
                 String[]{currCommitHash, givenCommitHash});
 
         if (hasConflict) {
@@ -539,7 +836,22 @@ public class Gitlet {
     }
 
     /**
-     * A helper method which performs file merge.
+     * Adds FILENAME to BLOBS if BLOBHASH is not null.
+     *
+     * @param blobs Blobs of a commit.
+     * @param fileName Filename's SHA1, a dash and the file name.
+     * @param blobHash The blob the commit holds for the file, or null.
+     */
+    private static void putIfTracked(HashMap<String, String> blobs,
+                                     String fileName, String blobHash) {
+        if (blobHash != null) {
+            blobs.put(fileName, blobHash);
+        }
+    }
+
+    /**
+     * A helper method which performs file merge. Files changed on both sides
+     * are merged line by line, so only overlapping changes conflict.
      *
      * @param currBlob Current commit blob.
      * @param givenBlob Incoming commit blob.
@@ -567,14 +879,15 @@ public class Gitlet {
                             checkoutFileFromCommit(new String[]{"checkout",
                                 givenCommitHash, "--", truncName});
                         } else if (!currFile.equals(givenFile)) {
-                            GitletUtils.handleConflict(currFile, givenFile,
-                                    truncName);
-                            hasConflict = true;
+                            hasConflict |= GitletUtils.mergeFile(
+                                    objectStore(), splitFile, currFile,
+                                    givenFile, truncName);
                         }
                         doAdd(new String[]{"add", truncName});
                     }
                 } else if (!givenFile.equals(splitFile)) {
-                    GitletUtils.handleConflict("", givenFile, truncName);
+                    GitletUtils.handleConflict(objectStore(), "", givenFile,
+                            truncName);
                     hasConflict = true;
                     doAdd(new String[]{"add", truncName});
                 }
@@ -594,21 +907,230 @@ public class Gitlet {
                     if (currFile.equals(splitFile)) {
                         doRm(new String[]{"rm", truncName});
                     } else {
-                        GitletUtils.handleConflict(currFile, "", truncName);
+                        GitletUtils.handleConflict(objectStore(), currFile,
+                                "", truncName);
                         hasConflict = true;
                         doAdd(new String[]{"add", truncName});
                     }
                 }
             } else if (givenBlob.containsKey(fileName) && !currFile
                     .equals(givenFile)) {
-                GitletUtils.handleConflict(currFile, givenFile, truncName);
-                hasConflict = true;
+                hasConflict |= GitletUtils.mergeFile(objectStore(), "",
+                        currFile, givenFile, truncName);
                 doAdd(new String[]{"add", truncName});
             }
         }
         return hasConflict;
     }
 
+    /**
+     * Finds the files renamed between the split point and one head and
+     * edited in the other, and takes them out of the blob maps, so that
+     * mergeHelper does not see them as a deletion conflicting with an edit.
+     * Renames whose other side left the file alone need no help: mergeHelper
+     * already deletes the old name and keeps or checks out the new one.
+     *
+     * @param currBlob Current commit blobs.
+     * @param givenBlob Incoming commit blobs.
+     * @param splitPointBlob Split-point blobs.
+     * @return For each renamed file, its split-point, current and incoming
+     *         file key and blob, in that order.
+     */
+    private List<String[]> followRenames(HashMap<String, String> currBlob,
+            HashMap<String, String> givenBlob, HashMap<String, String>
+            splitPointBlob) {
+        TreeMap<String, String> currRenames = detectRenames(splitPointBlob,
+                currBlob);
+        TreeMap<String, String> givenRenames = detectRenames(splitPointBlob,
+                givenBlob);
+        List<String[]> renamed = new ArrayList<>();
+        for (Map.Entry<String, String> rename : currRenames.entrySet()) {
+            String target = rename.getKey(), source = rename.getValue();
+            if (givenBlob.containsKey(source) && !givenBlob.containsKey(target)
+                    && !givenBlob.get(source).equals(splitPointBlob
+                    .get(source))) {
+                renamed.add(new String[]{source, splitPointBlob.remove(source),
+                    target, currBlob.get(target), source,
+                    givenBlob.remove(source)});
+            }
+        }
+        for (Map.Entry<String, String> rename : givenRenames.entrySet()) {
+            String target = rename.getKey(), source = rename.getValue();
+            if (currBlob.containsKey(source) && !currBlob.containsKey(target)
+                    && !currBlob.get(source).equals(splitPointBlob
+                    .get(source))) {
+                isOverWritingUnTracked(target, true);
+                renamed.add(new String[]{source, splitPointBlob.remove(source),
+                    source, currBlob.remove(source), target,
+                    givenBlob.remove(target)});
+            }
+        }
+        return renamed;
+    }
+
+    /**
+     * Returns the files renamed from BEFORE to AFTER, both maps from file
+     * keys to blobs, as found by Renames.
+     *
+     * @param before Blobs of the older commit.
+     * @param after Blobs of the newer commit.
+     * @return The old key of each renamed file's new key.
+     */
+    private TreeMap<String, String> detectRenames(HashMap<String, String>
+            before, HashMap<String, String> after) {
+        Renames renames = new Renames(false);
+        for (Map.Entry<String, String> blob : before.entrySet()) {
+            if (!after.containsKey(blob.getKey())) {
+                renames.addSource(blob.getKey(), committedContents(before,
+                        blob.getKey()));
+            }
+        }
+        for (Map.Entry<String, String> blob : after.entrySet()) {
+            if (!before.containsKey(blob.getKey())) {
+                renames.addTarget(blob.getKey(), committedContents(after,
+                        blob.getKey()));
+            }
+        }
+        return renames.detect();
+    }
+
+    /**
+     * Merges each file in RENAMED, as returned by followRenames, line by
+     * line into its new name, and removes its old name.
+     *
+     * @param renamed Split-point, current and incoming key and blob of each
+     *                renamed file.
+     * @return True if there was a file conflict.
+     */
+    private boolean mergeRenamed(List<String[]> renamed) {
+        boolean hasConflict = false;
+        for (String[] files : renamed) {
+            ByteBuffer[] contents = new ByteBuffer[3];
+            for (int i = 0; i < contents.length; ++i) {
+                contents[i] = objectStore().mapBlob(files[2 * i + 1],
+                        files[2 * i].substring(Utils.UID_LENGTH + 1));
+            }
+            String source = files[0].substring(Utils.UID_LENGTH + 1);
+            String target = (files[0].equals(files[2]) ? files[4] : files[2])
+                    .substring(Utils.UID_LENGTH + 1);
+            hasConflict |= GitletUtils.mergeContents(contents[0], contents[1],
+                    contents[2], target);
+            doAdd(new String[]{"add", target});
+            if (files[0].equals(files[2])) {
+                doRm(new String[]{"rm", source});
+            }
+        }
+        return hasConflict;
+    }
+
+    /**
+     * Prints the changes between two snapshots as a unified diff with three
+     * lines of context: from a commit (by default the current one) to the
+     * working directory, where only the commit's files are compared, or
+     * from one commit to another, where only the files whose blobs differ
+     * are read. Files are shown in order of name.
+     *
+     * @param args diff [commit id] [commit id], with both ids optional; a
+     *             branch name stands for its head.
+     */
+    public void doDiff(String[] args) {
+        TreeMap<String, String[]> files;
+        StringBuilder out;
+        String fromName, toName;
+        Commit from;
+
+        validateInit();
+        if (args.length > 3) {
+            Main.softFail("Incorrect operands.");
+        }
+
+        from = (args.length == 1) ? GitletUtils.lastCommit(_repository)
+                : diffCommit(args[1]);
+        files = new TreeMap<>();
+        if (args.length == 3) {
+            HashMap<String, String[]> changes = new HashMap<>();
+            Tree.diff(objectStore(), from.getTree(objectStore()),
+                    diffCommit(args[2]).getTree(objectStore()), changes);
+            for (Map.Entry<String, String[]> change : changes.entrySet()) {
+                files.put(change.getKey().substring(Utils.UID_LENGTH + 1),
+                        change.getValue());
+            }
+        } else {
+            StatCache statCache = statCache();
+            for (Map.Entry<String, String> blob : from.getBlobs(
+                    objectStore()).entrySet()) {
+                String fileName = blob.getKey().substring(Utils.UID_LENGTH
+                        + 1);
+                File file = new File(CWD + SEPARATOR + fileName);
+                if (!file.isFile()) {
+                    files.put(fileName, new String[]{blob.getValue(), null});
+                } else if (!Utils.sha1(statCache.sha1(file) + blob.getKey())
+                        .equals(blob.getValue())) {
+                    files.put(fileName, new String[]{blob.getValue(), ""});
+                }
+            }
+            statCache.save();
+        }
+
+        out = new StringBuilder();
+        for (Map.Entry<String, String[]> file : files.entrySet()) {
+            String fileName = file.getKey();
+            String[] blobs = file.getValue();
+            fromName = (blobs[0] == null) ? null : fileName;
+            toName = (blobs[1] == null) ? null : fileName;
+            Diff.unified(fromName, toName, diffLines(blobs[0], fileName),
+                    diffLines(blobs[1], fileName), 3, out);
+        }
+        System.out.write(out.toString().getBytes(StandardCharsets
+                .ISO_8859_1), 0, out.length());
+        System.out.flush();
+    }
+
+    /**
+     * Returns the commit named by NAME, a branch or a commit id.
+     *
+     * @param name Branch name or (abbreviated) commit id.
+     * @return The commit.
+     */
+    private Commit diffCommit(String name) {
+        String branchHead = Repository.readRef(new File(headsFolder()
+                + SEPARATOR + name));
+        return Commit.retrieveCommit(_repository, (branchHead != null)
+                ? branchHead : name);
+    }
+
+    /**
+     * Returns the lines of blob BLOBHASH of file FILENAME.
+     *
+     * @param blobHash Blob hash; null for a missing file, and "" for the
+     *                 file in the working directory.
+     * @param fileName File name.
+     * @return Lines of the file.
+     */
+    private List<String> diffLines(String blobHash, String fileName) {
+        if (blobHash == null) {
+            return new ArrayList<>();
+        } else if (blobHash.equals("")) {
+            return Diff.lines(GitletUtils.map(new File(CWD, fileName)));
+        }
+        return Diff.lines(objectStore().mapBlob(blobHash, fileName));
+    }
+
+    /**
+     * Moves all loose commits and blobs into a pack segment, so that the
+     * repository no longer needs one file per object.
+     *
+     * @param args gc.
+     */
+    public void doGc(String[] args) {
+        validateInit();
+        validateNumArgs(args, 1);
+
+        try (Metrics.Phase phase = Metrics.phase("repack")) {
+            objectStore().repack();
+        }
+    }
+
     /**
      * Saves the given login information under the given remote name.
      *
@@ -620,11 +1142,10 @@ public class Gitlet {
 
         File remoteDIR = new File(refsFolder() + SEPARATOR + args[1]);
 
-        if (remoteDIR.exists()) {
+        if (remoteDIR.exists()
+                || !Repository.updateRef(remoteDIR, null, args[2])) {
             Main.softFail("A remote with that name already exists.");
         }
-
-        Utils.writeContents(remoteDIR, args[2]);
     }
 
     /**
@@ -638,7 +1159,118 @@ public class Gitlet {
         validateRemote(args[1]);
 
         File remoteDIR = new File(refsFolder() + SEPARATOR + args[1]);
-        remoteDIR.delete();
+        Repository.deleteRef(remoteDIR, Repository.readRef(remoteDIR));
+    }
+
+    /**
+     * Creates a repository in the current directory holding the current
+     * branch of the repository whose .gitlet directory is given, adds that
+     * repository as the remote "origin", and checks the branch out. With
+     * --depth N only the N latest generations of history are copied; with
+     * --filter=blob:none no blobs are copied, and each is fetched from
+     * origin the first time it is needed, starting with those of the files
+     * checked out.
+     *
+     * @param args clone [--depth N] [--filter=blob:none] [remote directory].
+     */
+    public void doClone(String[] args) {
+        int depth = 0;
+        boolean blobless = false;
+        String remotePath = null;
+        for (int i = 1; i < args.length; ++i) {
+            if (args[i].equals("--depth") && i + 1 < args.length) {
+                i += 1;
+                depth = cloneDepth(args[i]);
+            } else if (args[i].startsWith("--depth=")) {
+                depth = cloneDepth(args[i].substring("--depth=".length()));
+            } else if (args[i].equals("--filter=blob:none")) {
+                blobless = true;
+            } else if (remotePath == null && !args[i].startsWith("--")) {
+                remotePath = args[i];
+            } else {
+                Main.softFail("Incorrect operands.");
+            }
+        }
+        if (remotePath == null) {
+            Main.softFail("Incorrect operands.");
+        }
+        if (gitletFolder().exists()) {
+            Main.softFail("A Gitlet version-control system already exists"
+                    + " in the current directory.");
+        }
+        File remoteGitlet = new File(remotePath);
+        Repository remote = new Repository(remoteGitlet);
+        if (!remote.headPtr().isFile()) {
+            Main.softFail("Remote directory not found.");
+        }
+        String branch = new File(Utils.readContentsAsString(
+                remote.headPtr())).getName();
+        String head = Repository.readRef(new File(remote.headsFolder(),
+                branch));
+        Commit headCommit = CommitCodec.decode(remote.objectStore()
+                .readCommit(head));
+        Map<String, String> files = headCommit.hasTree() ? Tree.read(
+                remote.objectStore(), headCommit.getTree(objectStore()))
+                : headCommit.getBlobs(objectStore());
+        for (String key : files.keySet()) {
+            if (new File(CWD + SEPARATOR + key.substring(Utils.UID_LENGTH
+                    + 1)).exists()) {
+                Main.softFail("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
+            }
+        }
+
+        headsFolder().mkdirs();
+        blobsFolder().mkdir();
+        commitsFolder().mkdir();
+        additionFolder().mkdirs();
+        removalFolder().mkdir();
+        Config config = new Config(gitletFolder());
+        if (new Config(remoteGitlet).getBoolean(Config.CHUNKED)) {
+            config.set(Config.CHUNKED, "true");
+        }
+        if (blobless) {
+            config.set(Config.PROMISOR, "origin");
+        }
+        Repository.writeRef(new File(refsFolder(), "origin"), remotePath);
+        _repository = new Repository(gitletFolder());
+
+        try (Metrics.Phase phase = Metrics.phase("transfer")) {
+            new Transfer(remote.objectStore(), objectStore(), depth,
+                    !blobless).send(head);
+        }
+        try {
+            Repository.writeRef(headPtr(), headsFolder().getCanonicalPath()
+                    + SEPARATOR + branch);
+        } catch (IOException e) {
+            Main.softFail("File IO Failed.");
+        }
+        Repository.writeRef(new File(headsFolder(), branch), head);
+        new File(headsFolder(), "origin").mkdir();
+        Repository.writeRef(new File(headsFolder() + SEPARATOR + "origin"
+                + SEPARATOR + branch), head);
+        Repository.writeRef(new File(headsFolder(), "remote_origin_"
+                + branch), head);
+        checkoutCommit(Commit.retrieveCommit(_repository, head), head);
+    }
+
+    /**
+     * Returns the clone depth given as TEXT.
+     *
+     * @param text A positive integer.
+     * @return Its value.
+     */
+    private static int cloneDepth(String text) {
+        int depth = 0;
+        try {
+            depth = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            depth = 0;
+        }
+        if (depth <= 0) {
+            Main.softFail("Incorrect operands.");
+        }
+        return depth;
     }
 
     /**
@@ -667,89 +1299,81 @@ public class Gitlet {
      * @param args push [remote name] [remote branch name].
      */
     public void doPush(String[] args) {
-        String remoteCommitHash, localCommitHash;
+        String remoteCommitHash, localCommitHash, prevCommitHash;
         File remoteGitlet, remoteBranch;
+        Repository remote;
         List<String> localNewCommits;
 
         preRemote(args);
         remoteGitlet = new File(Utils.readContentsAsString(new
                 File(refsFolder() + SEPARATOR + args[1])));
 
-        localCommitHash = GitletUtils.lastCommitHash();
-        switchGitlet(remoteGitlet.getPath());
-        remoteBranch = new File(headsFolder() + SEPARATOR + args[2]);
+        localCommitHash = GitletUtils.lastCommitHash(_repository);
+        remote = new Repository(remoteGitlet);
+        remoteBranch = new File(remote.headsFolder() + SEPARATOR + args[2]);
+        prevCommitHash = Repository.readRef(remoteBranch);
 
-        if (!remoteBranch.exists()) {
-            remoteBranch = new File(GitletUtils.getHeadPtr());
+        if (prevCommitHash == null) {
+            remoteBranch = new File(remote.headsFolder() + SEPARATOR + new
+                    File(Utils.readContentsAsString(remote.headPtr()))
+                    .getName());
         }
         remoteCommitHash = Utils.readContentsAsString(remoteBranch);
 
-        switchGitlet(CWD + SEPARATOR + ".gitlet");
-        localNewCommits = Commit.getAncestors(localCommitHash);
+        localNewCommits = Commit.getAncestors(_repository, localCommitHash);
 
         if (remoteCommitHash.equals(localCommitHash)) {
             Main.softFail("Nothing to push.");
         } else if (!localNewCommits.contains(remoteCommitHash)) {
             Main.softFail("Please pull down remote changes before pushing.");
         } else {
-            for (String commit : localNewCommits) {
-                if (commit.equals(remoteCommitHash) && !Commit.retrieveCommit
-                        (commit).getMessage().equals("initial commit")) {
-                    break;
-                }
-                GitletUtils.copyCommit(CWD, remoteGitlet, commit);
+            try (Metrics.Phase phase = Metrics.phase("transfer")) {
+                new Transfer(objectStore(), remote.objectStore())
+                        .send(localCommitHash);
             }
-            GitletUtils.copyCommit(CWD, remoteGitlet, localCommitHash);
         }
-        switchGitlet(remoteGitlet.getPath());
-        Utils.writeContents(new File(headsFolder() + SEPARATOR + args[2]),
-                localCommitHash);
-        doReset(new String[]{"reset", localCommitHash});
+        if (!Repository.updateRef(new File(remote.headsFolder() + SEPARATOR
+                + args[2]), prevCommitHash, localCommitHash)) {
+            Main.softFail("Please pull down remote changes before pushing.");
+        }
+        new Gitlet(remote).doReset(new String[]{"reset", localCommitHash});
     }
 
     /**
      * Brings down commits from the remote Gitlet repository into the local
-     * Gitlet repository.
+     * Gitlet repository. A partial clone brings down no blobs from its
+     * promisor remote, fetching them later as they are needed.
      *
      * @param args fetch [remote name] [remote branch name].
      */
     public void doFetch(String[] args) {
-        File remoteGitlet, remoteBranch, remoteDIR;
-        List<String> remoteNewCommits;
-        String localCommitHash, remoteCommitHash;
+        File remoteGitlet, remoteDIR;
+        Repository remote;
+        String remoteCommitHash;
 
         preRemote(args);
         remoteGitlet = new File(Utils.readContentsAsString(new
                 File(refsFolder() + SEPARATOR + args[1])));
 
-        localCommitHash = GitletUtils.lastCommitHash();
-        switchGitlet(remoteGitlet.getPath());
-        remoteBranch = new File(headsFolder() + SEPARATOR + args[2]);
+        remote = new Repository(remoteGitlet);
+        remoteCommitHash = Repository.readRef(new File(remote.headsFolder()
+                + SEPARATOR + args[2]));
 
-        if (!remoteBranch.exists()) {
+        if (remoteCommitHash == null) {
             Main.softFail("That remote does not have that branch.");
         }
 
-        remoteCommitHash = Utils.readContentsAsString(remoteBranch);
-        remoteNewCommits = Commit.getAncestors(remoteCommitHash);
-
-        for (String commit : remoteNewCommits) {
-            if (commit.equals(localCommitHash) && !Commit.retrieveCommit
-                    (commit).getMessage().equals("initial commit")) {
-                break;
-            }
-            GitletUtils.copyCommit(remoteGitlet.getParentFile(),
-                    new File(CWD + SEPARATOR + ".gitlet"), commit);
+        try (Metrics.Phase phase = Metrics.phase("transfer")) {
+            new Transfer(remote.objectStore(), objectStore(), 0,
+                    !args[1].equals(new Config(gitletFolder()).get(
+                            Config.PROMISOR))).send(remoteCommitHash);
         }
-        GitletUtils.copyCommit(remoteGitlet.getParentFile(),
-                new File(CWD + SEPARATOR + ".gitlet"), remoteCommitHash);
 
-        switchGitlet(CWD + SEPARATOR + ".gitlet");
         remoteDIR = new File(headsFolder() + SEPARATOR + args[1]);
         remoteDIR.mkdir();
-        Utils.writeContents(new File(remoteDIR + SEPARATOR + args[2]),
+        Repository.writeRef(new File(remoteDIR + SEPARATOR + args[2]),
                 remoteCommitHash);
-        Utils.writeContents(new File(headsFolder() + SEPARATOR + "remote_"
+        Repository.writeRef(new File(headsFolder() + SEPARATOR + "remote_"
                 + args[1] + "_" + args[2]), remoteCommitHash);
     }
 
@@ -765,20 +1389,6 @@ public class Gitlet {
         doFetch(new String[]{"fetch", args[1], args[2]});
         doMerge(new String[]{"merge", "remote_" + args[1] + "_" + args[2]});
     }
-    /**
-     * Switches the .gitlet directory by modifying the path for GITLET_FOLDER.
-     *
-     * @param gitletFolder new path for GITLET_FOLDER.
-     */
-    private void switchGitlet(String gitletFolder) {
-        _gitletFolder = new File(gitletFolder);
-        _blobsFolder = new File(gitletFolder() + SEPARATOR + "blobs");
-        _commitsFolder = new File(gitletFolder() + SEPARATOR + "commits");
-        _refsFolder = new File(gitletFolder() + SEPARATOR + "refs");
-        _headsFolder = new File(refsFolder() + SEPARATOR + "heads");
-        _headPtr = new File(gitletFolder() + SEPARATOR + "HEAD");
-    }
-
     /**
      * Checks if a remote with that name exists.
      *
@@ -819,7 +1429,7 @@ public class Gitlet {
      */
     private void checkoutBranch(String[] args) {
         File branch;
-        String inCommitStr, branchPath = "";
+        String inCommitStr, prevHead, branchPath = "";
 
         branch = new File(headsFolder() + SEPARATOR + args[1]);
         try {
@@ -829,91 +1439,110 @@ public class Gitlet {
         }
         if (!branch.exists()) {
             Main.softFail("No such branch exists.");
-        } else if (GitletUtils.getHeadPtr().equals(branchPath)) {
+        } else if (GitletUtils.getHeadPtr(_repository).equals(branchPath)) {
             Main.softFail("No need to checkout the current branch.");
         }
         inCommitStr = Utils.readContentsAsString(branch);
-        checkoutCommit(Commit.retrieveCommit(inCommitStr), inCommitStr);
-        Utils.writeContents(headPtr(), branchPath);
+        prevHead = Utils.readContentsAsString(headPtr());
+        checkoutCommit(Commit.retrieveCommit(_repository, inCommitStr),
+                inCommitStr);
+        if (!Repository.updateRef(headPtr(), prevHead, branchPath)) {
+            Main.softFail("HEAD was moved by another gitlet process.");
+        }
     }
 
     /**
      * Checks out a specific file from a commit; helper method for doCheckout.
+     * The blob is streamed into a temporary file which then replaces the
+     * working copy.
      * @param args java gitlet.Main checkout [commit ID] -- [file name].
      */
     private void checkoutFileFromCommit(String[] args) {
-        byte[] fileContents;
-
-        fileContents = fileFromCommit(args[1], args[3]);
-        Utils.writeContents(new File(CWD + SEPARATOR + args[3]),
-                (Object) fileContents);
+        String blobHash = blobFromCommit(args[1], args[3]);
+        Materializer.restore(objectStore(), blobHash, args[3], new File(CWD
+                + SEPARATOR + args[3]));
     }
 
     /**
-     * Returns contents of a specific file from a specific commit.
+     * Returns the hash of the blob a specific commit holds for a specific
+     * file.
      *
      * @param commitHash Commit hash.
      * @param fileName File name.
-     * @return The contents of the file read.
+     * @return The blob hash.
      */
-    private byte[] fileFromCommit(String commitHash, String fileName) {
-        HashMap<String, String> commitBlobs;
-        String suffix = "-" + fileName;
+    private String blobFromCommit(String commitHash, String fileName) {
+        String blobHash;
 
-        Commit commit = Commit.retrieveCommit(commitHash);
+        Commit commit = Commit.retrieveCommit(_repository, commitHash);
         if (commit == null) {
             Main.softFail("No commit with that id exists.");
         } else {
-            commitBlobs = commit.getBlobs();
-            if (commitBlobs == null || !commit.getBlobs().containsKey(Utils
-                    .sha1(fileName) + suffix)) {
+            blobHash = commit.getBlob(objectStore(), Utils.sha1(fileName)
+                    + "-" + fileName);
+            if (blobHash == null) {
                 Main.softFail("File does not exist in that commit.");
             } else {
-                return Utils.readContents(new File(blobsFolder() + SEPARATOR
-                        + commitBlobs.get(Utils.sha1(fileName) + suffix)
-                        + suffix));
+                return blobHash;
             }
         }
-        return new byte[]{};
+        return "";
     }
 
     /**
-     * Checks out all files in a commit.
+     * Checks out all files in a commit. Only the parts of the two trees that
+     * differ are compared, and files the commits share are rewritten only if
+     * the working copy no longer matches. The files are written concurrently
+     * by a Materializer.
      * @param inCommit The commit from which to check out files.
      * @param inCommitStr Commit hash.
      */
     private void checkoutCommit(Commit inCommit, String inCommitStr) {
-        HashMap<String, String> inBlobs, currBlobs;
+        HashMap<String, String[]> changes;
+        HashMap<String, String> inBlobs;
+        StatCache statCache;
+        Materializer materializer;
 
         if (inCommit == null) {
             Main.softFail("No commit with that id exists.");
         }
-        inBlobs = inCommit.getBlobs();
-        currBlobs = GitletUtils.lastCommit().getBlobs();
+        changes = new HashMap<>();
+        try (Metrics.Phase phase = Metrics.phase("diff-trees")) {
+            Tree.diff(objectStore(), GitletUtils.lastCommit(_repository)
+                    .getTree(objectStore()), inCommit.getTree(objectStore()),
+                    changes);
+        }
 
-        if (inBlobs != null) {
-            for (String fileName : inBlobs.keySet()) {
-                isOverWritingUnTracked(fileName, currBlobs == null
-                        || !currBlobs.containsKey(fileName));
-            }
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            isOverWritingUnTracked(change.getKey(), change.getValue()[0]
+                    == null);
         }
-        if (currBlobs != null) {
-            for (String fileName : currBlobs.keySet()) {
-                File currFile = new File(CWD + SEPARATOR + fileName
-                        .substring(Utils.UID_LENGTH + 1));
-                if (currFile.exists()) {
-                    currFile.delete();
-                }
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            if (change.getValue()[1] == null) {
+                GitletUtils.deleteWorkFile(change.getKey().substring(Utils
+                        .UID_LENGTH + 1));
             }
         }
-        GitletUtils.clearStagingArea();
-
-        if (inBlobs != null) {
-            for (String fileName : inBlobs.keySet()) {
-                checkoutFileFromCommit(new String[] {"checkout", inCommitStr,
-                    "--", fileName.substring(Utils.UID_LENGTH + 1)});
+        GitletUtils.clearStagingArea(_repository);
+
+        inBlobs = inCommit.getBlobs(objectStore());
+        statCache = statCache();
+        materializer = new Materializer(objectStore());
+        Metrics.Phase comparing = Metrics.phase("compare-files");
+        for (Map.Entry<String, String> blob : inBlobs.entrySet()) {
+            String fileName = blob.getKey().substring(Utils.UID_LENGTH + 1);
+            File inFile = new File(CWD + SEPARATOR + fileName);
+            if (changes.containsKey(blob.getKey()) || !inFile.isFile()
+                    || !Utils.sha1(statCache.sha1(inFile) + blob.getKey())
+                    .equals(blob.getValue())) {
+                materializer.add(blob.getValue(), fileName, inFile);
             }
         }
+        statCache.save();
+        comparing.close();
+        try (Metrics.Phase phase = Metrics.phase("materialize")) {
+            materializer.run();
+        }
     }
 
     /**
@@ -937,51 +1566,108 @@ public class Gitlet {
      * @return True if staging area is empty.
      */
     private boolean isEmptyStagingArea() {
-        return Objects.requireNonNull(Utils.plainFilenamesIn(ADDITION_FOLDER))
-                .size() == 0 && Objects.requireNonNull(Utils.plainFilenamesIn
-                (REMOVAL_FOLDER)).size() == 0;
+        return GitletUtils.stagedKeys(additionFolder()).isEmpty()
+                && GitletUtils.stagedKeys(removalFolder()).isEmpty();
     }
 
     /**
      * Returns the gitlet directory.
      * @return .gitlet directory.
      */
-    static File gitletFolder() {
-        return _gitletFolder;
+    File gitletFolder() {
+        return _repository.gitletFolder();
     }
     /**
      * Returns the blobs directory.
      * @return blobs directory.
      */
-    static File blobsFolder() {
-        return _blobsFolder;
+    File blobsFolder() {
+        return _repository.blobsFolder();
     }
     /**
      * Returns the commits directory.
      * @return commits directory.
      */
-    static File commitsFolder() {
-        return _commitsFolder;
+    File commitsFolder() {
+        return _repository.commitsFolder();
+    }
+    /**
+     * Returns the object store of the gitlet directory.
+     * @return Object store.
+     */
+    ObjectStore objectStore() {
+        return _repository.objectStore();
+    }
+    /**
+     * Returns the working tree, whose directory listings are cached in the
+     * index.
+     *
+     * @return The working tree.
+     */
+    WorkTree workTree() {
+        return new WorkTree(CWD, new File(indexFolder(), "dir-cache"));
+    }
+
+    /**
+     * Returns the stat cache of the working directory, loading it the first
+     * time it is needed.
+     * @return Stat cache.
+     */
+    StatCache statCache() {
+        return _repository.statCache();
+    }
+    /**
+     * Returns the index folder used as staging area.
+     * @return Index directory.
+     */
+    File indexFolder() {
+        return _repository.indexFolder();
+    }
+    /**
+     * Returns the folder of files staged for addition.
+     * @return Addition directory.
+     */
+    File additionFolder() {
+        return _repository.additionFolder();
+    }
+    /**
+     * Returns the folder of files staged for removal.
+     * @return Removal directory.
+     */
+    File removalFolder() {
+        return _repository.removalFolder();
+    }
+    /**
+     * Returns the commit graph of the gitlet directory, loading it the first
+     * time it is needed.
+     * @return Commit graph.
+     */
+    CommitGraph commitGraph() {
+        return _repository.commitGraph();
     }
     /**
      * Returns the refs directory.
      * @return refs directory.
      */
-    static File refsFolder() {
-        return _refsFolder;
+    File refsFolder() {
+        return _repository.refsFolder();
     }
     /**
      * Returns the heads directory.
      * @return heads directory.
      */
-    static File headsFolder() {
-        return _headsFolder;
+    File headsFolder() {
+        return _repository.headsFolder();
     }
     /**
      * Returns the head pointer.
      * @return Head pointer.
      */
-    static File headPtr() {
-        return _headPtr;
+    File headPtr() {
+        return _repository.headPtr();
     }
+
+    /** The repository this Gitlet works on; replaced by init and clone
+     *  once the repository's configuration is written. */
+    private Repository _repository;
 }
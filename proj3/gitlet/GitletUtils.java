@@ -2,9 +2,20 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.StandardCopyOption;
-import java.util.HashMap;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.PriorityQueue;
 
@@ -21,16 +32,44 @@ public class GitletUtils {
     /** File separator. */
     static final String SEPARATOR = Gitlet.SEPARATOR;
 
+    /** Size of the buffers used to stream file contents. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Smallest file that is mapped into memory rather than read. */
+    static final int MAP_THRESHOLD = 1 << 16;
+
+    /** Largest part of a file that is mapped at once for hashing. A single
+     *  mapping cannot exceed Integer.MAX_VALUE bytes. */
+    static final int MAP_WINDOW = 1 << 30;
+
+    /** Contents of a missing file. */
+    static final ByteBuffer EMPTY = ByteBuffer.allocate(0)
+            .asReadOnlyBuffer();
+
+    /** Line that opens a conflict. */
+    private static final byte[] CONFLICT_START = "<<<<<<< HEAD\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /** Line between the two versions of a conflict. */
+    private static final byte[] CONFLICT_MIDDLE = "=======\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /** Line that closes a conflict. */
+    private static final byte[] CONFLICT_END = ">>>>>>>\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
     /**
-     * Returns the File obj for the branch named branchName, if i exists.
+     * Returns the File obj for the branch of REPO named branchName, if i
+     * exists.
      *
+     * @param repo The repository.
      * @param branchName The branch name.
      * @return The branch File obj.
      */
-    static File getBranch(String branchName) {
+    static File getBranch(Repository repo, String branchName) {
         File givenBranch = null;
         try {
-            givenBranch = new File(Gitlet.headsFolder().getCanonicalPath()
+            givenBranch = new File(repo.headsFolder().getCanonicalPath()
                     + SEPARATOR + branchName);
             if (givenBranch.exists()) {
                 return givenBranch;
@@ -44,76 +83,37 @@ public class GitletUtils {
     }
 
     /**
-     * Returns  true if branchName is the current branch.
+     * Returns  true if branchName is the current branch of REPO.
      *
+     * @param repo The repository.
      * @param branchName A branch name.
      * @return True if branchName is the name of current branch.
      */
-    static boolean isCurrBranch(String branchName) {
-        return getBranch(branchName).getAbsolutePath()
-                .equals(getBranch(getCurrBranchName()).getAbsolutePath());
+    static boolean isCurrBranch(Repository repo, String branchName) {
+        return getBranch(repo, branchName).getAbsolutePath()
+                .equals(getBranch(repo, getCurrBranchName(repo))
+                        .getAbsolutePath());
     }
 
     /**
-     * Returns the name for the current branch.
+     * Returns the name for the current branch of REPO.
      *
+     * @param repo The repository.
      * @return Current branch name.
      */
-    static String getCurrBranchName() {
-        return new File(getHeadPtr()).getName();
+    static String getCurrBranchName(Repository repo) {
+        return new File(getHeadPtr(repo)).getName();
     }
 
     /**
-     * Copies commit, along with associated blobs to toGitlet directory.
-     *
-     * @param fromGitlet Source DIR.
-     * @param toGitlet Destination DIR.
-     * @param commitHash Hash of the commit to be copied.
-     */
-    static void copyCommit(File fromGitlet, File toGitlet, String commitHash) {
-        File fromCommit, toCommit;
-        Commit commit;
-
-        try {
-            fromCommit = new File(fromGitlet.getCanonicalPath() + SEPARATOR
-                    + ".gitlet/commits" + SEPARATOR + commitHash);
-            toCommit = new File(toGitlet.getCanonicalPath() + SEPARATOR
-                    + "commits" + SEPARATOR + commitHash);
-            commit = Commit.retrieveCommit(commitHash);
-            assertTrue(commit != null && fromCommit.exists());
-
-            Files.copy(fromCommit.toPath(), toCommit.toPath(),
-                    StandardCopyOption.REPLACE_EXISTING);
-
-            if (commit.getBlobs() != null) {
-                for (String blobName : commit.getBlobs().keySet()) {
-                    File fromBlob = new File(fromGitlet.getCanonicalPath()
-                            + SEPARATOR + ".gitlet/blobs" + SEPARATOR + commit
-                            .getBlobs().get(blobName) + "-" + blobName
-                            .substring(Utils.UID_LENGTH + 1));
-                    File toBlob = new File(toGitlet.getCanonicalPath()
-                            + SEPARATOR + "blobs" + SEPARATOR + commit
-                            .getBlobs().get(blobName) + "-" + blobName
-                            .substring(Utils.UID_LENGTH + 1));
-
-                    assertTrue(fromBlob.exists());
-                    Files.copy(fromBlob.toPath(), toBlob.toPath(),
-                            StandardCopyOption.REPLACE_EXISTING);
-                }
-            }
-        } catch (IOException e) {
-            Main.softFail("File copy failed.");
-        }
-    }
-
-    /**
-     * Returns the current head pointer.
+     * Returns the current head pointer of REPO.
      *
+     * @param repo The repository.
      * @return Current head-pointer full-path.*/
-    static String getHeadPtr() {
-        String temp = Utils.readContentsAsString(Gitlet.headPtr());
+    static String getHeadPtr(Repository repo) {
+        String temp = Utils.readContentsAsString(repo.headPtr());
         temp = temp.substring(temp.lastIndexOf(SEPARATOR) + 1);
-        File remoteBranch = new File(Gitlet.headsFolder() + SEPARATOR + temp);
+        File remoteBranch = new File(repo.headsFolder() + SEPARATOR + temp);
         try {
             return remoteBranch.getCanonicalPath();
         } catch (IOException e) {
@@ -123,51 +123,52 @@ public class GitletUtils {
     }
 
     /**
-     * Returns the last commit hash as pointed to by HEAD_PTR.
+     * Returns the last commit hash of REPO as pointed to by HEAD_PTR.
      *
+     * @param repo The repository.
      * @return Last commit hash. */
-    static String lastCommitHash() {
-        return Utils.readContentsAsString(new File(getHeadPtr()));
+    static String lastCommitHash(Repository repo) {
+        return Utils.readContentsAsString(new File(getHeadPtr(repo)));
     }
 
     /**
-     *  Returns the pointed to by the head pointer.
+     *  Returns the pointed to by the head pointer of REPO.
      *
+     *  @param repo The repository.
      *  @return Commit pointed to by the head pointer. */
-    static Commit lastCommit() {
-        return Commit.retrieveCommit(lastCommitHash());
+    static Commit lastCommit(Repository repo) {
+        return Commit.retrieveCommit(repo, lastCommitHash(repo));
     }
 
     /**
-     * Deletes all the files inside INDEX_FOLDER.
+     * Deletes all the files inside the index folder of REPO.
+     *
+     * @param repo The repository.
      */
-    static void clearStagingArea() {
+    static void clearStagingArea(Repository repo) {
         List<String> stagedFiles, removalFiles;
 
-        stagedFiles = Utils.plainFilenamesIn(Gitlet.ADDITION_FOLDER);
-        removalFiles = Utils.plainFilenamesIn(Gitlet.REMOVAL_FOLDER);
-
-        assertTrue(stagedFiles != null && removalFiles != null);
+        stagedFiles = stagedKeys(repo.additionFolder());
+        removalFiles = stagedKeys(repo.removalFolder());
 
         for (String fileName : stagedFiles) {
-            clearStagingArea(fileName);
+            clearStagingArea(repo, fileName);
         }
         for (String fileName : removalFiles) {
-            clearStagingArea(fileName);
+            clearStagingArea(repo, fileName);
         }
     }
 
     /**
-     * Deletes specific file from staging area.
+     * Deletes specific file from the staging area of REPO.
      *
+     * @param repo The repository.
      * @param fileNameSHA1 File name to be removed.
      */
-    static void clearStagingArea(String fileNameSHA1) {
+    static void clearStagingArea(Repository repo, String fileNameSHA1) {
         File stagedBlob, removalBlob;
-        stagedBlob = new File(Gitlet.ADDITION_FOLDER + SEPARATOR
-                + fileNameSHA1);
-        removalBlob = new File(Gitlet.REMOVAL_FOLDER + SEPARATOR
-                + fileNameSHA1);
+        stagedBlob = stagedFile(repo.additionFolder(), fileNameSHA1);
+        removalBlob = stagedFile(repo.removalFolder(), fileNameSHA1);
 
         if (stagedBlob.exists()) {
             stagedBlob.delete();
@@ -178,37 +179,147 @@ public class GitletUtils {
     }
 
     /**
-     * Stores the commit inside COMMITS_FOLDER.
+     * Returns the name under which the file with key KEY is stored in a flat
+     * folder such as the staging area. The key of a file in a subdirectory
+     * holds '/', so its name is escaped and set off with a '+' instead of
+     * the dash; the keys of top-level files are used as they are.
+     *
+     * @param key Filename's SHA1, a dash and the file name.
+     * @return File name within the folder.
+     */
+    static String flatName(String key) {
+        if (key.indexOf('/') < 0) {
+            return key;
+        }
+        return key.substring(0, Utils.UID_LENGTH) + "+"
+                + key.substring(Utils.UID_LENGTH + 1).replace("%", "%25")
+                .replace("/", "%2F");
+    }
+
+    /**
+     * Returns the key of the file stored under name FLAT, undoing
+     * flatName.
+     *
+     * @param flat File name within a flat folder.
+     * @return Filename's SHA1, a dash and the file name.
+     */
+    static String unflatName(String flat) {
+        if (flat.length() <= Utils.UID_LENGTH
+                || flat.charAt(Utils.UID_LENGTH) != '+') {
+            return flat;
+        }
+        return flat.substring(0, Utils.UID_LENGTH) + "-"
+                + flat.substring(Utils.UID_LENGTH + 1).replace("%2F", "/")
+                .replace("%25", "%");
+    }
+
+    /**
+     * Returns the file of staging folder FOLDER for the file with key KEY.
+     *
+     * @param folder Addition or removal folder.
+     * @param key Filename's SHA1, a dash and the file name.
+     * @return Staging file.
+     */
+    static File stagedFile(File folder, String key) {
+        return new File(folder, flatName(key));
+    }
+
+    /**
+     * Returns the keys of the files in staging folder FOLDER, sorted.
+     *
+     * @param folder Addition or removal folder.
+     * @return File keys.
+     */
+    static List<String> stagedKeys(File folder) {
+        List<String> names = Utils.plainFilenamesIn(folder);
+        assertNotNull(names);
+        List<String> keys = new ArrayList<>();
+        for (String name : names) {
+            if (!name.startsWith(".")) {
+                keys.add(unflatName(name));
+            }
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Returns working file FILENAME, whose name may run through
+     * subdirectories, after creating the directories it is in.
+     *
+     * @param fileName Path relative to the working directory.
+     * @return The working file.
+     */
+    static File workFile(String fileName) {
+        File file = new File(Gitlet.CWD, fileName);
+        if (fileName.indexOf('/') >= 0) {
+            file.getParentFile().mkdirs();
+        }
+        return file;
+    }
+
+    /**
+     * Deletes working file FILENAME, along with each directory it was in
+     * that is left empty.
      *
+     * @param fileName Path relative to the working directory.
+     */
+    static void deleteWorkFile(String fileName) {
+        File file = new File(Gitlet.CWD, fileName);
+        if (!file.isFile() || !file.delete()) {
+            return;
+        }
+        for (int end = fileName.lastIndexOf('/'); end > 0;
+             end = fileName.lastIndexOf('/', end - 1)) {
+            if (!new File(Gitlet.CWD, fileName.substring(0, end)).delete()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Stores the commit inside the commits folder of REPO, and moves the
+     * current branch to it if the branch still points to the commit's first
+     * parent (or does not exist yet, for the initial commit).
+     *
+     * @param repo The repository.
      * @param newCommit Commit to be stored.
      */
-    static void addCommit(Commit newCommit) {
+    static void addCommit(Repository repo, Commit newCommit) {
         File branch;
         String commitSHA1;
 
-        commitSHA1 = Utils.sha1((Object) Utils.serialize(newCommit));
-        Utils.writeObject(new File(Gitlet.commitsFolder() + SEPARATOR
-                        + commitSHA1), newCommit);
-
-        branch = new File(getHeadPtr());
-        Utils.writeContents(branch, commitSHA1);
+        byte[] contents = CommitCodec.encode(newCommit);
+        commitSHA1 = Utils.sha1((Object) contents);
+        repo.objectStore().writeCommit(commitSHA1, contents);
+        repo.commitGraph().add(commitSHA1, newCommit.getParents(),
+                newCommit.getTimestamp().getTime());
+
+        branch = new File(getHeadPtr(repo));
+        if (!Repository.updateRef(branch, (newCommit.getParents() == null)
+                ? null : newCommit.getParents()[0], commitSHA1)) {
+            Main.softFail("Branch " + branch.getName() + " was moved by"
+                    + " another gitlet process.");
+        }
     }
 
     /**
-     * Prints branch names; indicates current branch with '*'.
+     * Prints the branch names of REPO; indicates current branch with '*'.
+     *
+     * @param repo The repository.
      */
-    static void printBranches() {
+    static void printBranches(Repository repo) {
         List<String> branchNames;
         File currBranch, branch;
 
-        currBranch = new File(Utils.readContentsAsString(Gitlet.headPtr()));
-        branchNames = Utils.plainFilenamesIn(Gitlet.headsFolder());
+        currBranch = new File(Utils.readContentsAsString(repo.headPtr()));
+        branchNames = Utils.plainFilenamesIn(repo.headsFolder());
         assertNotNull(branchNames);
 
         System.out.println("=== Branches ===");
         try {
             for (String branchName : branchNames) {
-                branch = new File(Gitlet.headsFolder() + SEPARATOR
+                branch = new File(repo.headsFolder() + SEPARATOR
                         + branchName);
                 if (branch.getCanonicalPath().equals(currBranch
                         .getCanonicalPath())) {
@@ -253,49 +364,438 @@ public class GitletUtils {
     }
 
     /**
-     * Returns the SHA1 for files in CWD.
+     * Used for handling merge conflict. The two versions are written between
+     * the conflict markers straight from their mapped blobs, without being
+     * decoded.
+     *
+     * @param store Object store holding the blobs.
+     * @param currBlob Current file blob.
+     * @param givenBlob Given File blob.
+     * @param fileName Original filename.
+     */
+    static void handleConflict(ObjectStore store, String currBlob,
+                               String givenBlob, String fileName) {
+        writeConflict(currBlob.equals("") ? EMPTY
+                : store.mapBlob(currBlob, fileName), givenBlob.equals("")
+                ? EMPTY : store.mapBlob(givenBlob, fileName), fileName);
+    }
+
+    /**
+     * Merges the changes made to file FILENAME between the split point and
+     * each side, line by line, and writes the result to the working
+     * directory. Changes to different parts of the file are all kept; only
+     * where both sides changed the same lines differently are both versions
+     * written between conflict markers. Binary files, which have no lines,
+     * conflict as a whole.
      *
-     * @return SHA1 for all files in CWD: (Filename: FileSHA1).
+     * @param store Object store holding the blobs.
+     * @param splitBlob Split-point file blob; "" if the file was added on
+     *                  both sides.
+     * @param currBlob Current file blob.
+     * @param givenBlob Given file blob.
+     * @param fileName Original filename.
+     * @return True if there was a conflict.
      */
-    static HashMap<String, String> cwdFilesSHA1() {
-        File cwdFile;
-        HashMap<String, String> cwdFilesSHA1;
-        List<String> cwdFiles;
+    static boolean mergeFile(ObjectStore store, String splitBlob,
+                             String currBlob, String givenBlob,
+                             String fileName) {
+        return mergeContents(splitBlob.equals("") ? EMPTY
+                : store.mapBlob(splitBlob, fileName),
+                store.mapBlob(currBlob, fileName),
+                store.mapBlob(givenBlob, fileName), fileName);
+    }
 
-        cwdFiles = Utils.plainFilenamesIn(Gitlet.CWD);
-        if (cwdFiles == null) {
-            return null;
+    /**
+     * Merges the changes from BASE to OURS and from BASE to THEIRS line by
+     * line, and writes the result to file FILENAME of the working directory.
+     * Blob ids include the file name, so versions of a renamed file may be
+     * equal though their ids differ; equal versions are found by comparing
+     * the buffers, and then one side is written as it is. Binary contents
+     * conflict as a whole.
+     *
+     * @param base Split-point contents.
+     * @param ours Current contents.
+     * @param theirs Given contents.
+     * @param fileName Name of the merged file.
+     * @return True if there was a conflict.
+     */
+    static boolean mergeContents(ByteBuffer base, ByteBuffer ours,
+                                 ByteBuffer theirs, String fileName) {
+        if (ours.equals(theirs) || base.equals(theirs)) {
+            writeWorkFile(fileName, ours);
+            return false;
+        } else if (base.equals(ours)) {
+            writeWorkFile(fileName, theirs);
+            return false;
+        } else if (isBinary(base) || isBinary(ours) || isBinary(theirs)) {
+            writeConflict(ours, theirs, fileName);
+            return true;
         }
+        Diff3 merge = new Diff3(Diff.lines(base), Diff.lines(ours),
+                Diff.lines(theirs));
+        Utils.writeContents(workFile(fileName),
+                (Object) Diff.join(merge.result()));
+        return merge.conflicts() > 0;
+    }
+
+    /**
+     * Writes OURS and THEIRS between conflict markers to working file
+     * FILENAME.
+     *
+     * @param ours Current contents.
+     * @param theirs Given contents.
+     * @param fileName Name of the conflicted file.
+     */
+    private static void writeConflict(ByteBuffer ours, ByteBuffer theirs,
+                                      String fileName) {
+        writeWorkFile(fileName, ByteBuffer.wrap(CONFLICT_START),
+                ours.duplicate(), ByteBuffer.wrap(CONFLICT_MIDDLE),
+                theirs.duplicate(), ByteBuffer.wrap(CONFLICT_END));
+    }
 
-        cwdFilesSHA1 = new HashMap<>();
-        for (String fileName : cwdFiles) {
-            cwdFile = new File(Gitlet.CWD + SEPARATOR + fileName);
-            cwdFilesSHA1.put(fileName, Utils.sha1((Object) Utils.readContents
-                    (cwdFile)));
+    /**
+     * Writes the concatenation of PARTS to working file FILENAME, through
+     * a file channel so that mapped parts are not copied onto the heap.
+     *
+     * @param fileName Path relative to the working directory.
+     * @param parts Contents.
+     */
+    private static void writeWorkFile(String fileName, ByteBuffer... parts) {
+        long length = 0;
+        try (FileChannel out = FileChannel.open(workFile(fileName).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer part : parts) {
+                ByteBuffer view = part.duplicate();
+                length += view.remaining();
+                while (view.hasRemaining()) {
+                    out.write(view);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
         }
-        return cwdFilesSHA1;
+        Metrics.fileWritten(length);
     }
 
     /**
-     * Used for handling merge conflict.
+     * Returns true iff CONTENTS looks binary, i.e. holds a NUL byte.
      *
-     * @param currBlob Current file blob.
-     * @param givenBlob Given File blob.
-     * @param fileName Original filename.
+     * @param contents File contents.
+     * @return True if binary.
+     */
+    static boolean isBinary(ByteBuffer contents) {
+        for (int i = contents.position(); i < contents.limit(); ++i) {
+            if (contents.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the contents of FILE, mapped into memory if the file is at
+     * least MAP_THRESHOLD bytes long and read onto the heap otherwise,
+     * since mapping a small file costs more than reading it.
+     *
+     * @param file A plain file.
+     * @return Read-only contents.
+     */
+    static ByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return map(channel, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the LENGTH bytes of CHANNEL at OFFSET, mapped into memory if
+     * there are at least MAP_THRESHOLD of them and read onto the heap
+     * otherwise. A mapping stays valid after CHANNEL is closed. A buffer
+     * holds at most Integer.MAX_VALUE bytes, so longer contents cannot be
+     * mapped.
+     *
+     * @param channel An open file channel.
+     * @param offset Position of the first byte.
+     * @param length Number of bytes.
+     * @return Read-only contents.
+     * @throws IOException if CHANNEL cannot be read.
+     */
+    static ByteBuffer map(FileChannel channel, long offset, long length)
+            throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw Utils.error("File too large to map: %d bytes.", length);
+        }
+        Metrics.fileRead(length);
+        if (length >= MAP_THRESHOLD) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+        ByteBuffer result = ByteBuffer.allocate((int) length);
+        while (result.hasRemaining()) {
+            if (channel.read(result, offset + result.position()) < 0) {
+                throw new IOException("Unexpected end of file.");
+            }
+        }
+        return result.flip().asReadOnlyBuffer();
+    }
+
+    /** Writes contents to a file channel. */
+    interface ChannelWriter {
+        /**
+         * Writes the contents to OUT.
+         *
+         * @param out An open file channel.
+         * @throws IOException if OUT cannot be written.
+         */
+        void write(FileChannel out) throws IOException;
+    }
+
+    /**
+     * Returns the contents WRITER writes, having them written to a new
+     * temporary file in DIR and mapped from it (see map), so that large
+     * contents are built without being held on the heap. The file is
+     * deleted at once; its mapping stays valid until it is collected.
+     *
+     * @param dir Directory for the temporary file; created if missing.
+     * @param writer Writes the contents.
+     * @return Read-only contents.
+     */
+    static ByteBuffer mapSpilled(File dir, ChannelWriter writer) {
+        File temp = null;
+        try {
+            dir.mkdirs();
+            temp = Files.createTempFile(dir.toPath(), ".gitlet-", ".tmp")
+                    .toFile();
+            try (FileChannel channel = FileChannel.open(temp.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                writer.write(channel);
+                Metrics.fileWritten(channel.size());
+                return map(channel, 0, channel.size());
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            if (temp != null && !temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Returns the SHA-1 of the contents of FILE. A small file is read
+     * through a fixed-size buffer and a large one is mapped MAP_WINDOW
+     * bytes at a time, so that memory use does not depend on the file's
+     * size and files of any length can be hashed.
+     *
+     * @param file A plain file.
+     * @return Hex SHA-1 of its contents.
+     */
+    static String sha1(File file) {
+        return sha1(file, MAP_WINDOW);
+    }
+
+    /**
+     * Returns the SHA-1 of the contents of FILE, mapping a large file
+     * WINDOW bytes at a time.
+     *
+     * @param file A plain file.
+     * @param window Largest number of bytes mapped at once.
+     * @return Hex SHA-1 of its contents.
+     */
+    static String sha1(File file, int window) {
+        if (file.length() < MAP_THRESHOLD) {
+            return copyAndSha1(file, null);
+        }
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long pos = 0; pos < size; pos += window) {
+                ByteBuffer part = map(channel, pos,
+                        Math.min(window, size - pos));
+                Metrics.hashed(part.remaining());
+                md.update(part);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        byte[] digest = md.digest();
+        return toHex(digest, 0, digest.length);
+    }
+
+    /**
+     * Returns the SHA-1 of CONTENTS from its position to its limit, which
+     * may be mapped, without moving it.
+     *
+     * @param contents File contents.
+     * @return Hex SHA-1 of them.
+     */
+    static String sha1(ByteBuffer contents) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        Metrics.hashed(contents.remaining());
+        md.update(contents.duplicate());
+        byte[] digest = md.digest();
+        return toHex(digest, 0, digest.length);
+    }
+
+    /**
+     * Copies FROM to TO through a fixed-size buffer, hashing the bytes on the
+     * way, so that a file of any size is read only once and never held in
+     * memory as a whole.
+     *
+     * @param from Source file.
+     * @param to Destination file; if null, FROM is only hashed.
+     * @return Hex SHA-1 of the contents of FROM.
      */
-    static void handleConflict(String currBlob, String givenBlob, String
-            fileName) {
-        String currBlobContent = (currBlob.equals("")) ? "" : Utils
-                .readContentsAsString(new File(Gitlet.blobsFolder()
-                        + SEPARATOR + currBlob + "-" + fileName));
-        String givenBlobContent = (givenBlob.equals("")) ? "" : Utils
-                .readContentsAsString(new File(Gitlet.blobsFolder()
-                        + SEPARATOR + givenBlob + "-" + fileName));
+    static String copyAndSha1(File from, File to) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long length = 0;
+        try (InputStream in = Files.newInputStream(from.toPath());
+             OutputStream out = (to == null) ? OutputStream.nullOutputStream()
+                     : Files.newOutputStream(to.toPath())) {
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+                length += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Metrics.fileRead(length);
+        Metrics.hashed(length);
+        if (to != null) {
+            Metrics.fileWritten(length);
+        }
+        byte[] digest = md.digest();
+        return toHex(digest, 0, digest.length);
+    }
 
-        String newContents = "<<<<<<< HEAD\n" + currBlobContent + "=======\n"
-                + givenBlobContent + ">>>>>>>\n";
+    /**
+     * Returns a temporary file in the directory of FILE whose name is unique
+     * to this process and thread, for writing FILE's new contents before
+     * they are moved into place.
+     *
+     * @param file The file to be replaced.
+     * @return Temporary file.
+     */
+    static File tempSibling(File file) {
+        return new File(file.getAbsoluteFile().getParentFile(), ".gitlet-"
+                + ProcessHandle.current().pid() + "-"
+                + Thread.currentThread().getId() + ".tmp");
+    }
 
-        Utils.writeContents(new File(Gitlet.CWD + SEPARATOR + fileName),
-                newContents);
+    /**
+     * Renames TEMP over TARGET, atomically where the file system allows, so
+     * that TARGET is never seen half-written.
+     *
+     * @param temp The new contents.
+     * @param target The file created or replaced.
+     * @throws IOException if the rename fails.
+     */
+    static void moveIntoPlace(File temp, File target) throws IOException {
+        try {
+            Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Moves FROM to TO unless another process has taken FROM first.
+     *
+     * @param from A file that other processes may also try to take.
+     * @param to Where to move it.
+     * @return True if this process moved FROM, false if it was gone.
+     */
+    static boolean claim(File from, File to) {
+        try {
+            moveIntoPlace(from, to);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the lower-case hexadecimal form of LENGTH bytes of RAW starting
+     * at OFFSET.
+     *
+     * @param raw Raw bytes.
+     * @param offset First byte to convert.
+     * @param length Number of bytes to convert.
+     * @return Hexadecimal string.
+     */
+    static String toHex(byte[] raw, int offset, int length) {
+        char[] result = new char[2 * length];
+        for (int i = 0; i < length; ++i) {
+            int b = raw[offset + i] & 0xff;
+            result[2 * i] = HEX_DIGITS[b >>> 4];
+            result[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /**
+     * Returns the raw bytes denoted by the hexadecimal string HEX.
+     *
+     * @param hex Hexadecimal string of even length.
+     * @return Raw bytes.
+     */
+    static byte[] toRaw(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        toRaw(hex, result, 0);
+        return result;
+    }
+
+    /**
+     * Stores the raw bytes denoted by the hexadecimal string HEX into DEST,
+     * starting at OFFSET.
+     *
+     * @param hex Hexadecimal string of even length.
+     * @param dest Destination array.
+     * @param offset Position of the first byte in DEST.
+     */
+    static void toRaw(String hex, byte[] dest, int offset) {
+        for (int i = 0; i < hex.length(); i += 2) {
+            dest[offset++] = (byte) ((HEX_VALUES[hex.charAt(i) & 0x7f] << 4)
+                    | HEX_VALUES[hex.charAt(i + 1) & 0x7f]);
+        }
+    }
+
+    /** Digits used by toHex. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef"
+            .toCharArray();
+
+    /** Values of the digits used by toHex, indexed by the low seven bits of
+     *  a character; a table avoids the unpredictable branches of converting
+     *  random digits. Other characters count as zero. */
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        for (int i = 0; i < HEX_DIGITS.length; ++i) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+        }
     }
 }
@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exclusive access to a file shared by concurrent gitlet processes, taken by
+ * creating TARGET.lock, which fails if the file already exists. The holder
+ * may replace the target by writing the new contents into the lock file and
+ * renaming it over the target, so readers see either the old contents or
+ * the new ones and never a mix; or it may use the lock only to serialize
+ * changes made in place, and delete it when done.
+ *
+ * @author Farhad Alemi
+ */
+class LockFile implements AutoCloseable {
+
+    /** Milliseconds to keep trying to take a lock held by someone else. */
+    static final long TIMEOUT = 10000;
+
+    /**
+     * Takes the lock on TARGET, waiting for up to TIMEOUT milliseconds while
+     * another process holds it.
+     *
+     * @param target The file to lock; it need not exist.
+     */
+    LockFile(File target) {
+        _target = target;
+        _lock = new File(target.getPath() + ".lock");
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        for (long wait = 1; ; wait = Math.min(2 * wait, 50)) {
+            try {
+                Files.createFile(_lock.toPath());
+                _held = true;
+                return;
+            } catch (FileAlreadyExistsException e) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw Utils.error("Unable to lock %s; if no other gitlet"
+                            + " is running, remove %s.", target.getPath(),
+                            _lock.getPath());
+                }
+            } catch (IOException e) {
+                throw Utils.error("Unable to lock %s.", target.getPath());
+            }
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Utils.error("Interrupted while locking %s.",
+                        target.getPath());
+            }
+        }
+    }
+
+    /**
+     * Returns the lock file, into which the new contents of the target may
+     * be written before commit.
+     *
+     * @return The lock file.
+     */
+    File file() {
+        return _lock;
+    }
+
+    /**
+     * Replaces the target with CONTENTS and releases the lock.
+     *
+     * @param contents New contents of the target.
+     */
+    void commit(byte[] contents) {
+        try {
+            Files.write(_lock.toPath(), contents,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw Utils.error("Cannot write %s.", _lock.getPath());
+        }
+        commit();
+    }
+
+    /**
+     * Renames the lock file, which holds the new contents, over the target,
+     * releasing the lock.
+     */
+    void commit() {
+        try {
+            try {
+                Files.move(_lock.toPath(), _target.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(_lock.toPath(), _target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            _held = false;
+        } catch (IOException e) {
+            throw Utils.error("Cannot write %s.", _target.getPath());
+        }
+    }
+
+    /** Releases the lock, leaving the target as it is. */
+    @Override
+    public void close() {
+        if (_held) {
+            _lock.delete();
+            _held = false;
+        }
+    }
+
+    /** The locked file. */
+    private final File _target;
+
+    /** The lock file. */
+    private final File _lock;
+
+    /** True while this holds the lock. */
+    private boolean _held;
+}
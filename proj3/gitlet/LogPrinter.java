@@ -0,0 +1,204 @@
+package gitlet;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Prints the commits shown by log and global-log, as they are found, with
+ * the options those commands take:
+ * <ul>
+ * <li>--max-count=N (or -n N): stop after N commits;</li>
+ * <li>--since=DATE: leave out commits made before DATE, which is
+ * yyyy-MM-dd, yyyy-MM-dd HH:mm:ss, or @ and seconds since the epoch;</li>
+ * <li>--format=FORMAT: print each commit as FORMAT and a newline instead of
+ * the usual block, where %H is the commit hash, %h its first seven digits,
+ * %P and %p the same for the parents, %s the message, %ad the date as log
+ * shows it, %at the date in seconds since the epoch, %n a newline and %% a
+ * percent sign; --format=oneline stands for "%H %s".</li>
+ * </ul>
+ *
+ * @author Farhad Alemi
+ */
+class LogPrinter {
+
+    /** Length of an abbreviated commit hash. */
+    static final int ABBREV_LENGTH = 7;
+
+    /**
+     * A printer for the options in ARGS, which start with the command name.
+     * Fails softly on options it does not know.
+     *
+     * @param args log|global-log [OPTION]...
+     */
+    LogPrinter(String[] args) {
+        _maxCount = -1;
+        for (int i = 1; i < args.length; ++i) {
+            String arg = args[i];
+            if (arg.equals("-n") && i + 1 < args.length) {
+                i += 1;
+                _maxCount = count(args[i]);
+            } else if (arg.startsWith("--max-count=")) {
+                _maxCount = count(arg.substring("--max-count=".length()));
+            } else if (arg.startsWith("--since=")) {
+                _since = date(arg.substring("--since=".length()));
+            } else if (arg.startsWith("--format=")) {
+                _format = arg.substring("--format=".length());
+                if (_format.equals("oneline")) {
+                    _format = "%H %s";
+                }
+            } else {
+                Main.softFail("Incorrect operands.");
+            }
+        }
+    }
+
+    /**
+     * Returns true iff HEADER was made before the --since date.
+     *
+     * @param header A commit header.
+     * @return True if the commit is too old to be shown.
+     */
+    boolean isTooOld(Commit header) {
+        return _since != null && header.getTimestamp().before(_since);
+    }
+
+    /**
+     * Returns true iff --max-count commits have been printed.
+     *
+     * @return True if no more commits are wanted.
+     */
+    boolean isDone() {
+        return _maxCount >= 0 && _printed >= _maxCount;
+    }
+
+    /**
+     * Prints commit ID, whose header is HEADER, unless it is too old.
+     *
+     * @param id Full commit hash.
+     * @param header Its header.
+     * @return False once no more commits are wanted.
+     */
+    boolean print(String id, Commit header) {
+        if (isDone()) {
+            return false;
+        }
+        if (!isTooOld(header)) {
+            if (_format == null) {
+                Commit.printCommit(header, id);
+            } else {
+                System.out.println(format(id, header));
+            }
+            _printed += 1;
+        }
+        return !isDone();
+    }
+
+    /**
+     * Returns commit ID, whose header is HEADER, in the --format format.
+     *
+     * @param id Full commit hash.
+     * @param header Its header.
+     * @return Formatted line.
+     */
+    private String format(String id, Commit header) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < _format.length(); ++i) {
+            char c = _format.charAt(i);
+            String rest = _format.substring(i + 1);
+            if (c != '%' || rest.isEmpty()) {
+                out.append(c);
+            } else if (rest.startsWith("ad") || rest.startsWith("at")) {
+                out.append(rest.charAt(1) == 'd'
+                        ? Commit.formatDate(header.getTimestamp())
+                        : header.getTimestamp().getTime() / 1000);
+                i += 2;
+            } else {
+                i += 1;
+                switch (rest.charAt(0)) {
+                case 'H':
+                    out.append(id);
+                    break;
+                case 'h':
+                    out.append(id, 0, ABBREV_LENGTH);
+                    break;
+                case 'P':
+                case 'p':
+                    String[] parents = header.getParents();
+                    for (int k = 0; parents != null && k < parents.length;
+                         ++k) {
+                        out.append(k > 0 ? " " : "").append(rest.charAt(0)
+                                == 'P' ? parents[k] : parents[k]
+                                .substring(0, ABBREV_LENGTH));
+                    }
+                    break;
+                case 's':
+                    out.append(header.getMessage());
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case '%':
+                    out.append('%');
+                    break;
+                default:
+                    out.append(c).append(rest.charAt(0));
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Returns the --max-count given as TEXT.
+     *
+     * @param text A non-negative integer.
+     * @return Its value.
+     */
+    private static int count(String text) {
+        int count = -1;
+        try {
+            count = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            count = -1;
+        }
+        if (count < 0) {
+            Main.softFail("Incorrect operands.");
+        }
+        return count;
+    }
+
+    /**
+     * Returns the --since date given as TEXT.
+     *
+     * @param text yyyy-MM-dd, yyyy-MM-dd HH:mm:ss or @SECONDS.
+     * @return The date.
+     */
+    private static Date date(String text) {
+        try {
+            if (text.startsWith("@")) {
+                return new Date(Long.parseLong(text.substring(1)) * 1000);
+            }
+            SimpleDateFormat format = new SimpleDateFormat(text.length()
+                    > "yyyy-MM-dd".length() ? "yyyy-MM-dd HH:mm:ss"
+                    : "yyyy-MM-dd");
+            format.setLenient(false);
+            return format.parse(text);
+        } catch (ParseException | NumberFormatException e) {
+            Main.softFail("Incorrect operands.");
+            return null;
+        }
+    }
+
+    /** Largest number of commits to print; negative for no limit. */
+    private int _maxCount;
+
+    /** Commits made before this are left out; null for none. */
+    private Date _since;
+
+    /** The --format format, or null for the usual block. */
+    private String _format;
+
+    /** Number of commits printed so far. */
+    private int _printed;
+}
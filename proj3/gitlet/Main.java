@@ -15,6 +15,7 @@ public class Main {
         if (args.length == 0) {
             softFail("Please enter a command.");
         }
+        Metrics.start(args[0]);
         Gitlet gitlet = new Gitlet();
         switch (args[0]) {
         case "init":
@@ -60,12 +61,19 @@ public class Main {
             gitlet.doAddRemote(args); break;
         case "rm-remote":
             gitlet.doRmRemote(args); break;
+        case "clone":
+            gitlet.doClone(args); break;
         case "push":
             gitlet.doPush(args); break;
         case "fetch":
             gitlet.doFetch(args); break;
         case "pull":
             gitlet.doPull(args); break;
+        case "diff":
+            gitlet.doDiff(args); break;
+        case "gc":
+        case "repack":
+            gitlet.doGc(args); break;
         default:
             System.out.println("No command with that name exists.");
         }
@@ -0,0 +1,228 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes blobs from an object store into the working directory. Files are
+ * restored concurrently by a fixed pool of threads, since restoring many
+ * small files is bound by the latency of each read and write rather than by
+ * the disk's throughput. Each file is first written to a temporary file in
+ * the same directory and then renamed over its destination, so a file is
+ * never seen half-written, even if the command is interrupted.
+ * <p>
+ * When both standard input and output are a terminal, progress is reported
+ * on standard error for checkouts of at least PROGRESS_MIN files.
+ *
+ * @author Farhad Alemi
+ */
+class Materializer {
+
+    /** Default number of threads: restoring files mostly waits on I/O, so
+     *  this is a few times the number of processors. */
+    static final int THREADS = Math.min(32, Math.max(4,
+            4 * Runtime.getRuntime().availableProcessors()));
+
+    /** Smallest number of files for which progress is reported. */
+    static final int PROGRESS_MIN = 1000;
+
+    /**
+     * A materializer reading blobs from STORE with THREADS threads.
+     *
+     * @param store Object store holding the blobs.
+     * @param threads Number of threads; 1 restores files in order on the
+     *                calling thread.
+     */
+    Materializer(ObjectStore store, int threads) {
+        _store = store;
+        _threads = threads;
+        _ids = new ArrayList<>();
+        _names = new ArrayList<>();
+        _dests = new ArrayList<>();
+    }
+
+    /**
+     * A materializer reading blobs from STORE with the default number of
+     * threads.
+     *
+     * @param store Object store holding the blobs.
+     */
+    Materializer(ObjectStore store) {
+        this(store, THREADS);
+    }
+
+    /**
+     * Schedules blob ID of FILENAME to be written to DEST.
+     *
+     * @param id Blob hash.
+     * @param fileName Name of the file the blob was made from.
+     * @param dest Destination file; created or replaced.
+     */
+    void add(String id, String fileName, File dest) {
+        _ids.add(id);
+        _names.add(fileName);
+        _dests.add(dest);
+    }
+
+    /**
+     * Writes every scheduled file, and returns once all are in place.
+     *
+     * @return Number of files written.
+     */
+    int run() {
+        int total = _ids.size();
+        Progress progress = new Progress(total);
+        if (_threads <= 1 || total <= 1) {
+            for (int i = 0; i < total; ++i) {
+                restore(_store, _ids.get(i), _names.get(i), _dests.get(i));
+                progress.advance();
+            }
+            progress.done();
+            return total;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(
+                _threads, total));
+        List<Future<?>> tasks = new ArrayList<>(total);
+        try {
+            for (int i = 0; i < total; ++i) {
+                final int k = i;
+                tasks.add(pool.submit(() -> {
+                    restore(_store, _ids.get(k), _names.get(k),
+                            _dests.get(k));
+                    progress.advance();
+                }));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IllegalArgumentException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Utils.error("Checkout interrupted.");
+        } finally {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        progress.done();
+        return total;
+    }
+
+    /**
+     * Writes blob ID of FILENAME from STORE to DEST through a temporary
+     * file that is renamed into place. The temporary file's name is unique
+     * to the process and thread, and it gets the default permissions of new
+     * files. The directories DEST is in are created if they are missing.
+     *
+     * @param store Object store holding the blob.
+     * @param id Blob hash.
+     * @param fileName Name of the file the blob was made from.
+     * @param dest Destination file; created or replaced.
+     */
+    static void restore(ObjectStore store, String id, String fileName,
+                        File dest) {
+        File dir = dest.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory()) {
+            dir.mkdirs();
+        }
+        File temp = GitletUtils.tempSibling(dest);
+        try {
+            if (!store.copyBlobTo(id, fileName, temp)) {
+                throw Utils.error("Missing blob %s.", id);
+            }
+            GitletUtils.moveIntoPlace(temp, dest);
+            temp = null;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /** Reports the number of files written so far. */
+    private static class Progress {
+        /**
+         * Progress of writing TOTAL files.
+         *
+         * @param total Number of files to write.
+         */
+        Progress(int total) {
+            _total = total;
+            _out = (total >= PROGRESS_MIN && System.console() != null)
+                    ? System.err : null;
+        }
+
+        /** Records that one more file was written. */
+        void advance() {
+            int done = _done.incrementAndGet();
+            if (_out != null && done * 100L / _total
+                    > (done - 1) * 100L / _total) {
+                print(done, "");
+            }
+        }
+
+        /** Finishes the report. */
+        void done() {
+            if (_out != null) {
+                print(_total, ", done.\n");
+            }
+        }
+
+        /**
+         * Prints the progress line for DONE files followed by END.
+         *
+         * @param done Files written.
+         * @param end Appended to the line.
+         */
+        private synchronized void print(int done, String end) {
+            _out.printf("\rUpdating files: %3d%% (%d/%d)%s",
+                    done * 100L / _total, done, _total, end);
+            _out.flush();
+        }
+
+        /** Number of files to write. */
+        private final int _total;
+
+        /** Number written so far. */
+        private final AtomicInteger _done = new AtomicInteger();
+
+        /** Where progress goes; null if it is not reported. */
+        private final PrintStream _out;
+    }
+
+    /** Object store holding the blobs. */
+    private final ObjectStore _store;
+
+    /** Number of threads. */
+    private final int _threads;
+
+    /** Scheduled blob hashes. */
+    private final List<String> _ids;
+
+    /** Names of the files the scheduled blobs were made from. */
+    private final List<String> _names;
+
+    /** Destinations of the scheduled blobs. */
+    private final List<File> _dests;
+}
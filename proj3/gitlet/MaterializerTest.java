@@ -0,0 +1,37 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+public class MaterializerTest {
+
+    @Test
+    public void restoresAllFilesTest() throws IOException {
+        File dir = Files.createTempDirectory("materializer").toFile();
+        File gitlet = new File(dir, ".gitlet");
+        new File(gitlet, "blobs").mkdirs();
+        ObjectStore store = new ObjectStore(gitlet);
+        Materializer materializer = new Materializer(store, 4);
+        for (int i = 0; i < 100; ++i) {
+            String name = "f" + i + ".txt";
+            File source = new File(dir, "source");
+            Utils.writeContents(source, "contents of " + name);
+            store.storeBlob(Utils.sha1(name), name, source);
+            materializer.add(Utils.sha1(name), name, new File(dir, name));
+        }
+        new File(dir, "source").delete();
+        Utils.writeContents(new File(dir, "f7.txt"), "stale");
+
+        assertEquals(100, materializer.run());
+        for (int i = 0; i < 100; ++i) {
+            assertEquals("contents of f" + i + ".txt", Utils
+                    .readContentsAsString(new File(dir, "f" + i + ".txt")));
+        }
+        assertEquals(101, dir.list().length);
+    }
+}
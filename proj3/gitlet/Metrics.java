@@ -0,0 +1,212 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in counters of the work a gitlet command does: bytes and files read
+ * and written, directories listed, SHA-1 hashes computed, and wall time
+ * spent in named phases. They are enabled by setting the environment
+ * variable GITLET_METRICS or the system property gitlet.metrics to
+ * anything but "0" or "false", and then a one-line JSON summary is printed
+ * to standard error when the command exits. When disabled, every counter
+ * returns after testing the constant ENABLED, which the JIT folds away, and
+ * nothing is allocated.
+ *
+ * @author Farhad Alemi
+ */
+final class Metrics {
+
+    /** True iff metrics are being collected. */
+    static final boolean ENABLED = isEnabled(System.getenv(
+            "GITLET_METRICS")) || isEnabled(System.getProperty(
+            "gitlet.metrics"));
+
+    /** Not instantiable. */
+    private Metrics() {
+    }
+
+    /**
+     * Starts measuring COMMAND, and prints its summary when the JVM exits,
+     * however the command ends.
+     *
+     * @param command Command name.
+     */
+    static void start(String command) {
+        _command = command;
+        _start = System.nanoTime();
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                    System.err.println(summary())));
+        }
+    }
+
+    /**
+     * Counts a read of BYTES bytes from one file.
+     *
+     * @param bytes Bytes read.
+     */
+    static void fileRead(long bytes) {
+        if (ENABLED) {
+            FILES_READ.increment();
+            BYTES_READ.add(bytes);
+        }
+    }
+
+    /**
+     * Counts a write of BYTES bytes to one file.
+     *
+     * @param bytes Bytes written.
+     */
+    static void fileWritten(long bytes) {
+        if (ENABLED) {
+            FILES_WRITTEN.increment();
+            BYTES_WRITTEN.add(bytes);
+        }
+    }
+
+    /** Counts the listing of one directory. */
+    static void dirListed() {
+        if (ENABLED) {
+            DIRS_LISTED.increment();
+        }
+    }
+
+    /**
+     * Counts one SHA-1 hash of BYTES bytes.
+     *
+     * @param bytes Bytes hashed.
+     */
+    static void hashed(long bytes) {
+        if (ENABLED) {
+            HASHES.increment();
+            BYTES_HASHED.add(bytes);
+        }
+    }
+
+    /**
+     * Starts timing phase NAME; the time until the returned phase is closed
+     * is added to NAME's total. Phases may nest.
+     *
+     * @param name Phase name.
+     * @return The running phase.
+     */
+    static Phase phase(String name) {
+        return ENABLED ? new Phase(name) : Phase.NONE;
+    }
+
+    /** A timed phase of a command, closed when it ends. */
+    static final class Phase implements AutoCloseable {
+
+        /** The phase returned while metrics are disabled. */
+        private static final Phase NONE = new Phase(null);
+
+        /**
+         * Phase NAME, starting now.
+         *
+         * @param name Phase name, or null for none.
+         */
+        private Phase(String name) {
+            _name = name;
+            _start = (name == null) ? 0 : System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (_name != null) {
+                long nanos = System.nanoTime() - _start;
+                synchronized (PHASES) {
+                    PHASES.merge(_name, nanos, Long::sum);
+                }
+            }
+        }
+
+        /** Phase name, or null for none. */
+        private final String _name;
+
+        /** Start time, in nanoseconds. */
+        private final long _start;
+    }
+
+    /**
+     * Returns the JSON summary of the command so far.
+     *
+     * @return One-line JSON object.
+     */
+    static String summary() {
+        StringBuilder out = new StringBuilder("{\"command\":\"")
+                .append(_command.replaceAll("[\"\\\\]", ""))
+                .append("\",\"wall_ms\":")
+                .append(millis(System.nanoTime() - _start))
+                .append(",\"files_read\":").append(FILES_READ.sum())
+                .append(",\"bytes_read\":").append(BYTES_READ.sum())
+                .append(",\"files_written\":").append(FILES_WRITTEN.sum())
+                .append(",\"bytes_written\":").append(BYTES_WRITTEN.sum())
+                .append(",\"dirs_listed\":").append(DIRS_LISTED.sum())
+                .append(",\"hashes\":").append(HASHES.sum())
+                .append(",\"bytes_hashed\":").append(BYTES_HASHED.sum())
+                .append(",\"phases_ms\":{");
+        synchronized (PHASES) {
+            String separator = "";
+            for (Map.Entry<String, Long> phase : PHASES.entrySet()) {
+                out.append(separator).append('"').append(phase.getKey())
+                        .append("\":").append(millis(phase.getValue()));
+                separator = ",";
+            }
+        }
+        return out.append("}}").toString();
+    }
+
+    /**
+     * Returns NANOS in milliseconds, to three decimal places.
+     *
+     * @param nanos A duration in nanoseconds.
+     * @return The duration in milliseconds.
+     */
+    private static String millis(long nanos) {
+        return String.format("%d.%03d", nanos / 1000000,
+                nanos / 1000 % 1000);
+    }
+
+    /**
+     * Returns true iff VALUE turns metrics on.
+     *
+     * @param value An environment variable or property value, or null.
+     * @return True unless VALUE is null, empty, "0" or "false".
+     */
+    private static boolean isEnabled(String value) {
+        return value != null && !value.isEmpty() && !value.equals("0")
+                && !value.equalsIgnoreCase("false");
+    }
+
+    /** Number of files read. */
+    private static final LongAdder FILES_READ = new LongAdder();
+
+    /** Number of bytes read. */
+    private static final LongAdder BYTES_READ = new LongAdder();
+
+    /** Number of files written. */
+    private static final LongAdder FILES_WRITTEN = new LongAdder();
+
+    /** Number of bytes written. */
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+
+    /** Number of directories listed. */
+    private static final LongAdder DIRS_LISTED = new LongAdder();
+
+    /** Number of SHA-1 hashes computed. */
+    private static final LongAdder HASHES = new LongAdder();
+
+    /** Number of bytes hashed. */
+    private static final LongAdder BYTES_HASHED = new LongAdder();
+
+    /** Total nanoseconds spent in each phase, in order of first use. */
+    private static final Map<String, Long> PHASES = new LinkedHashMap<>();
+
+    /** The command being measured. */
+    private static String _command;
+
+    /** When the command started, in nanoseconds. */
+    private static long _start;
+}
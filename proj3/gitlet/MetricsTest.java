@@ -0,0 +1,30 @@
+package gitlet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @Test
+    public void disabledPhaseTest() {
+        if (!Metrics.ENABLED) {
+            assertTrue(Metrics.phase("a") == Metrics.phase("b"));
+        }
+    }
+
+    @Test
+    public void summaryTest() {
+        Metrics.start("st\"atus");
+        try (Metrics.Phase phase = Metrics.phase("scan")) {
+            Metrics.fileRead(10);
+            Metrics.hashed(10);
+        }
+        String summary = Metrics.summary();
+        assertTrue(summary.startsWith("{\"command\":\"status\",\"wall_ms\":"));
+        assertTrue(summary.endsWith("}}"));
+        assertEquals(Metrics.ENABLED, summary.contains("\"scan\":"));
+        assertEquals(!Metrics.ENABLED, summary.contains("\"hashes\":0,"));
+    }
+}
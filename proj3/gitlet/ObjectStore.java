@@ -0,0 +1,954 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The object database of a single .gitlet directory. Objects are either
+ * loose (one file each under blobs/, commits/ and trees/) or packed into segment
+ * files under packs/. All reads of commits and blobs go through here.
+ * Objects are kept in the encoding of Compression, and decoded as they are
+ * read.
+ * <p>
+ * In a chunked repository a blob is not stored whole: its contents are cut
+ * into content-defined chunks (see Chunker), each chunk is stored once under
+ * the SHA-1 of its bytes, and the blob itself becomes a manifest listing its
+ * chunks. Blob ids are the same in both modes, so commits do not care how
+ * their blobs are stored.
+ * <p>
+ * A shallow clone lacks the history behind some commits; those commits are
+ * listed in .gitlet/shallow and treated as having no parents. A partial
+ * clone lacks blobs, and fetches each from its promisor remote, named in
+ * the config, the first time it is read.
+ *
+ * @author Farhad Alemi
+ */
+class ObjectStore implements Tree.Nodes {
+
+    /** Type tag of commit objects. */
+    static final byte COMMIT = 1;
+
+    /** Type tag of blob objects. */
+    static final byte BLOB = 2;
+
+    /** Type tag of chunks of chunked blobs. */
+    static final byte CHUNK = 3;
+
+    /** Type tag of chunk manifests, which stand in for whole blobs. */
+    static final byte MANIFEST = 4;
+
+    /** Type tag of tree nodes. */
+    static final byte TREE = 5;
+
+    /** Magic number at the start of every chunk manifest. */
+    static final int MANIFEST_MAGIC = 0x474d4631;
+
+    /**
+     * The object store living inside GITLETFOLDER.
+     *
+     * @param gitletFolder A .gitlet directory.
+     */
+    ObjectStore(File gitletFolder) {
+        _blobsFolder = new File(gitletFolder, "blobs");
+        _commitsFolder = new File(gitletFolder, "commits");
+        _packsFolder = new File(gitletFolder, "packs");
+        _chunksFolder = new File(gitletFolder, "chunks");
+        _manifestsFolder = new File(gitletFolder, "manifests");
+        _treesFolder = new File(gitletFolder, "trees");
+        _commitIndex = new CommitIndex(new File(gitletFolder,
+                "commit-index"), this);
+        _refsFolder = new File(gitletFolder, "refs");
+        _shallowFile = new File(gitletFolder, "shallow");
+        Config config = new Config(gitletFolder);
+        _chunked = config.getBoolean(Config.CHUNKED);
+        _promisor = config.get(Config.PROMISOR);
+    }
+
+    /**
+     * Returns the serialized commit named ID, or null if there is none.
+     *
+     * @param id Full commit hash.
+     * @return Commit bytes.
+     */
+    byte[] readCommit(String id) {
+        File loose = new File(_commitsFolder, id);
+        if (loose.isFile()) {
+            return Compression.decode(Utils.readContents(loose));
+        }
+        return readPacked(id, COMMIT);
+    }
+
+    /**
+     * Returns the contents of blob ID which was stored for FILENAME, or null
+     * if there is no such blob.
+     *
+     * @param id Blob hash.
+     * @param fileName Name of the file the blob was made from.
+     * @return Blob contents.
+     */
+    byte[] readBlob(String id, String fileName) {
+        fetchIfPromised(id, fileName);
+        File loose = looseBlob(id, fileName);
+        if (loose.isFile()) {
+            return Compression.decode(Utils.readContents(loose));
+        }
+        byte[] manifest = readManifest(id);
+        if (manifest != null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeChunks(manifest, out);
+            return out.toByteArray();
+        }
+        return readPacked(id, BLOB);
+    }
+
+    /**
+     * Returns the contents of blob ID which was stored for FILENAME, or null
+     * if there is no such blob, as a read-only buffer. A large blob is
+     * mapped from its loose file or pack, and if it is stored undeflated
+     * the buffer is a view of that mapping. A large deflated or chunked
+     * blob is inflated or assembled, a buffer or chunk at a time, into a
+     * temporary file that is then mapped. Either way its bytes are never
+     * copied onto the heap as a whole.
+     *
+     * @param id Blob hash.
+     * @param fileName Name of the file the blob was made from.
+     * @return Blob contents.
+     */
+    ByteBuffer mapBlob(String id, String fileName) {
+        fetchIfPromised(id, fileName);
+        File loose = looseBlob(id, fileName);
+        if (loose.isFile()) {
+            return Compression.decode(GitletUtils.map(loose), _blobsFolder);
+        }
+        byte[] manifest = readManifest(id);
+        if (manifest != null) {
+            return GitletUtils.mapSpilled(_blobsFolder, out -> {
+                for (String chunk : manifestChunks(manifest)) {
+                    ByteBuffer contents = ByteBuffer.wrap(readChunk(chunk));
+                    while (contents.hasRemaining()) {
+                        out.write(contents);
+                    }
+                }
+            });
+        }
+        for (PackFile pack : packs()) {
+            ByteBuffer stored = pack.map(id, BLOB);
+            if (stored != null) {
+                return Compression.decode(stored, _blobsFolder);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the size in bytes of blob ID which was stored for FILENAME,
+     * or -1 if there is no such blob, reading only its header or manifest.
+     *
+     * @param id Blob hash.
+     * @param fileName Name of the file the blob was made from.
+     * @return Blob size.
+     */
+    long blobSize(String id, String fileName) {
+        fetchIfPromised(id, fileName);
+        File loose = looseBlob(id, fileName);
+        if (loose.isFile()) {
+            try (FileChannel channel = FileChannel.open(loose.toPath(),
+                    StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(Compression
+                        .HEADER_LENGTH);
+                channel.read(header, 0);
+                long length = Compression.length(header.flip());
+                return (length >= 0) ? length : channel.size();
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
+        byte[] manifest = readManifest(id);
+        if (manifest != null) {
+            return ByteBuffer.wrap(manifest).getLong(Integer.BYTES);
+        }
+        for (PackFile pack : packs()) {
+            ByteBuffer stored = pack.map(id, BLOB);
+            if (stored != null) {
+                long length = Compression.length(stored);
+                return (length >= 0) ? length : stored.remaining();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true iff commit ID is stored here.
+     *
+     * @param id Full commit hash.
+     * @return True if present.
+     */
+    boolean hasCommit(String id) {
+        return new File(_commitsFolder, id).isFile()
+                || hasPacked(id, COMMIT);
+    }
+
+    /**
+     * Returns true iff blob ID of FILENAME is stored here.
+     *
+     * @param id Blob hash.
+     * @param fileName Name of the file the blob was made from.
+     * @return True if present.
+     */
+    boolean hasBlob(String id, String fileName) {
+        return looseBlob(id, fileName).isFile()
+                || new File(_manifestsFolder, id).isFile()
+                || hasPacked(id, BLOB) || hasPacked(id, MANIFEST);
+    }
+
+    /**
+     * Stores CONTENTS as commit ID, and adds it to the commit index.
+     *
+     * @param id Full commit hash.
+     * @param contents Serialized commit.
+     */
+    void writeCommit(String id, byte[] contents) {
+        writeLoose(new File(_commitsFolder, id), Compression.encode(contents));
+        _commitIndex.add(id, CommitCodec.decode(contents));
+    }
+
+    /**
+     * Returns the index of the commits in this store.
+     *
+     * @return Commit index.
+     */
+    CommitIndex commitIndex() {
+        return _commitIndex;
+    }
+
+    /**
+     * Returns the modification time of the folder of loose commits, which
+     * changes whenever a loose commit is added or removed.
+     *
+     * @return Time in nanoseconds; 0 if the folder does not exist.
+     */
+    long commitsModified() {
+        try {
+            return Files.getLastModifiedTime(_commitsFolder.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public byte[] readTree(String id) {
+        File loose = new File(_treesFolder, id);
+        if (loose.isFile()) {
+            return Compression.decode(Utils.readContents(loose));
+        }
+        return readPacked(id, TREE);
+    }
+
+    @Override
+    public void writeTree(String id, byte[] contents) {
+        _treesFolder.mkdir();
+        writeLoose(new File(_treesFolder, id), Compression.encode(contents));
+    }
+
+    @Override
+    public boolean hasTree(String id) {
+        return new File(_treesFolder, id).isFile() || hasPacked(id, TREE);
+    }
+
+    /**
+     * Stores the contents of SOURCE as blob ID of FILENAME, unless the blob
+     * is already present. In a plain repository SOURCE is compressed into
+     * a loose blob as it streams through, so the contents are never held in
+     * memory; in a chunked one it is cut into chunks, of which only the new
+     * ones are written.
+     *
+     * @param id Blob hash.
+     * @param fileName Name of the file the blob was made from.
+     * @param source File holding the contents; it is left in place.
+     */
+    void storeBlob(String id, String fileName, File source) {
+        try {
+            if (hasBlob(id, fileName)) {
+                return;
+            } else if (_chunked) {
+                try (InputStream in = Files.newInputStream(source.toPath())) {
+                    writeManifest(id, chunk(in));
+                }
+            } else {
+                File temp = GitletUtils.tempSibling(looseBlob(id, fileName));
+                Compression.encode(source, temp);
+                GitletUtils.moveIntoPlace(temp, looseBlob(id, fileName));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Copies blob ID of FILENAME into DEST in whatever form it is stored
+     * here, so a chunked blob only transfers the chunks DEST lacks and a
+     * compressed one is not inflated on the way.
+     *
+     * @param dest Destination store.
+     * @param id Blob hash.
+     * @param fileName Name of the file the blob was made from.
+     */
+    void copyBlobInto(ObjectStore dest, String id, String fileName) {
+        if (dest.hasBlob(id, fileName)) {
+            return;
+        }
+        byte[] manifest = readManifest(id);
+        if (manifest == null) {
+            File loose = looseBlob(id, fileName);
+            File target = dest.looseBlob(id, fileName);
+            File temp = GitletUtils.tempSibling(target);
+            try (InputStream in = loose.isFile()
+                    ? Files.newInputStream(loose.toPath())
+                    : openPacked(id, BLOB)) {
+                Files.copy(in, temp.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                GitletUtils.moveIntoPlace(temp, target);
+            } catch (IOException e) {
+                temp.delete();
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            return;
+        }
+        for (String chunk : manifestChunks(manifest)) {
+            if (!dest.hasChunk(chunk)) {
+                dest.writeChunk(chunk, readChunk(chunk));
+            }
+        }
+        dest.writeManifest(id, manifest);
+    }
+
+    /**
+     * Stores blob ID of FILENAME here, copied from the promisor remote, if
+     * this is a partial clone that lacks it and the promisor has it.
+     *
+     * @param id Blob hash.
+     * @param fileName Name of the file the blob was made from.
+     */
+    void fetchIfPromised(String id, String fileName) {
+        if (_promisor != null && !hasBlob(id, fileName)) {
+            ObjectStore promisor = promisor();
+            if (promisor.hasBlob(id, fileName)) {
+                promisor.copyBlobInto(this, id, fileName);
+            }
+        }
+    }
+
+    /**
+     * Returns true iff commit ID is at the edge of a shallow clone, so that
+     * its parents are not stored here.
+     *
+     * @param id Full commit hash.
+     * @return True if ID's history is cut off.
+     */
+    synchronized boolean isShallow(String id) {
+        if (_shallow == null) {
+            _shallow = new HashSet<>();
+            if (_shallowFile.isFile()) {
+                for (String line : Utils.readContentsAsString(_shallowFile)
+                        .split("\n")) {
+                    if (!line.isEmpty()) {
+                        _shallow.add(line);
+                    }
+                }
+            }
+        }
+        return _shallow.contains(id);
+    }
+
+    /**
+     * Records IDS as commits whose parents are not stored here.
+     *
+     * @param ids Full commit hashes.
+     */
+    synchronized void addShallow(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (String id : ids) {
+            if (!isShallow(id)) {
+                _shallow.add(id);
+                lines.append(id).append('\n');
+            }
+        }
+        try {
+            Files.write(_shallowFile.toPath(), lines.toString().getBytes(
+                    StandardCharsets.US_ASCII), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw Utils.error("Cannot write %s.", _shallowFile.getPath());
+        }
+    }
+
+    /**
+     * Returns the object store of the promisor remote, opening it the first
+     * time it is needed.
+     *
+     * @return Promisor's object store.
+     */
+    private synchronized ObjectStore promisor() {
+        if (_promisorStore == null) {
+            String path = Repository.readRef(new File(_refsFolder,
+                    _promisor));
+            if (path == null) {
+                throw Utils.error("Remote %s not found.", _promisor);
+            }
+            _promisorStore = new ObjectStore(new File(path));
+        }
+        return _promisorStore;
+    }
+
+    /**
+     * Cuts the bytes of IN into chunks, stores the chunks that are new, and
+     * returns the manifest listing all of them.
+     *
+     * @param in Blob contents.
+     * @return Manifest bytes.
+     * @throws IOException if IN cannot be read.
+     */
+    byte[] chunk(InputStream in) throws IOException {
+        Chunker chunker = new Chunker(in);
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream entryOut = new DataOutputStream(entries);
+        long total = 0;
+        int count = 0;
+        for (byte[] chunk = chunker.next(); chunk != null;
+             chunk = chunker.next()) {
+            String hash = Utils.sha1((Object) chunk);
+            if (!hasChunk(hash)) {
+                writeChunk(hash, chunk);
+            }
+            entryOut.write(GitletUtils.toRaw(hash));
+            entryOut.writeInt(chunk.length);
+            total += chunk.length;
+            count += 1;
+        }
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(manifest);
+        out.writeInt(MANIFEST_MAGIC);
+        out.writeLong(total);
+        out.writeInt(count);
+        entries.writeTo(out);
+        return manifest.toByteArray();
+    }
+
+    /**
+     * Writes the contents of blob ID of FILENAME to DEST, streaming and
+     * decompressing them from the loose file or the pack that holds the
+     * blob.
+     *
+     * @param id Blob hash.
+     * @param fileName Name of the file the blob was made from.
+     * @param dest Destination file; created or overwritten.
+     * @return False if there is no such blob.
+     */
+    boolean copyBlobTo(String id, String fileName, File dest) {
+        fetchIfPromised(id, fileName);
+        File loose = looseBlob(id, fileName);
+        try {
+            byte[] manifest = readManifest(id);
+            if (manifest != null) {
+                try (OutputStream out = new BufferedOutputStream(Files
+                        .newOutputStream(dest.toPath()),
+                        GitletUtils.BUFFER_SIZE)) {
+                    writeChunks(manifest, out);
+                }
+                return true;
+            }
+            InputStream stored = loose.isFile()
+                    ? Files.newInputStream(loose.toPath())
+                    : openPacked(id, BLOB);
+            if (stored == null) {
+                return false;
+            }
+            try (InputStream in = Compression.decode(stored)) {
+                Metrics.fileWritten(Files.copy(in, dest.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING));
+            }
+            return true;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the hashes of all commits in this store, loose or packed.
+     *
+     * @return Commit hashes in lexicographic order.
+     */
+    List<String> commitIds() {
+        TreeSet<String> ids = new TreeSet<>();
+        List<String> loose = looseNames(_commitsFolder);
+        if (loose != null) {
+            ids.addAll(loose);
+        }
+        for (PackFile pack : packs()) {
+            ids.addAll(pack.ids(COMMIT));
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * Moves every loose object, and every object of the existing packs, into
+     * a single new pack segment, and deletes the old copies once the pack is
+     * safely on disk. Commits made before trees existed are first rewritten
+     * in the current encoding of CommitCodec, with a tree written for each;
+     * they keep their ids. The commit index is rebuilt afterwards.
+     *
+     * @return Number of objects packed.
+     */
+    int repack() {
+        List<PackFile.Entry> entries = new ArrayList<>();
+        List<File> packed = new ArrayList<>();
+        TreeSet<String> seen = new TreeSet<>();
+
+        for (String id : commitIds()) {
+            byte[] contents = readCommit(id);
+            if (!CommitCodec.isCurrent(contents)) {
+                Commit commit = CommitCodec.decode(contents);
+                HashMap<String, String> blobs = commit.getBlobs(this);
+                commit.setTree(Tree.write(this, (blobs == null)
+                        ? new HashMap<>() : blobs));
+                writeCommit(id, CommitCodec.encode(commit));
+            }
+        }
+
+        List<String> commits = looseNames(_commitsFolder);
+        List<String> blobs = looseNames(_blobsFolder);
+        if (commits != null) {
+            for (String name : commits) {
+                File loose = new File(_commitsFolder, name);
+                packed.add(loose);
+                if (seen.add(name)) {
+                    entries.add(new PackFile.Entry(name, COMMIT, loose));
+                }
+            }
+        }
+        if (blobs != null) {
+            for (String name : blobs) {
+                File loose = new File(_blobsFolder, name);
+                String id = name.substring(0, Utils.UID_LENGTH);
+                packed.add(loose);
+                if (seen.add(id)) {
+                    entries.add(new PackFile.Entry(id, BLOB, loose));
+                }
+            }
+        }
+        packLoose(_manifestsFolder, MANIFEST, entries, packed, seen);
+        packLoose(_chunksFolder, CHUNK, entries, packed, seen);
+        packLoose(_treesFolder, TREE, entries, packed, seen);
+
+        List<PackFile> oldPacks = new ArrayList<>(packs());
+        for (PackFile pack : oldPacks) {
+            for (byte type = COMMIT; type <= TREE; ++type) {
+                for (String id : pack.ids(type)) {
+                    if (seen.add(id)) {
+                        entries.add(new PackFile.Entry(id, type, pack));
+                    }
+                }
+            }
+        }
+        if (!entries.isEmpty()) {
+            _packsFolder.mkdir();
+            PackFile pack = PackFile.write(_packsFolder, entries);
+            for (PackFile old : oldPacks) {
+                if (!old.file().equals(pack.file())) {
+                    old.delete();
+                }
+            }
+            _packs = new ArrayList<>(List.of(pack));
+        }
+        for (File loose : packed) {
+            loose.delete();
+        }
+        _commitIndex.build();
+        return entries.size();
+    }
+
+    /**
+     * Returns a pack entry that copies the stored, still encoded bytes of
+     * object ID of type TYPE from wherever this store keeps it.
+     *
+     * @param id Object hash.
+     * @param type Object type.
+     * @param fileName For blobs, the name of the file the blob was made
+     *                 from; ignored otherwise.
+     * @return Pack entry, or null if the object is not stored here.
+     */
+    PackFile.Entry storedEntry(String id, byte type, String fileName) {
+        File loose;
+        switch (type) {
+        case COMMIT:
+            loose = new File(_commitsFolder, id);
+            break;
+        case BLOB:
+            loose = looseBlob(id, fileName);
+            break;
+        case CHUNK:
+            loose = new File(_chunksFolder, id);
+            break;
+        case MANIFEST:
+            loose = new File(_manifestsFolder, id);
+            break;
+        default:
+            loose = new File(_treesFolder, id);
+            break;
+        }
+        if (loose.isFile()) {
+            return new PackFile.Entry(id, type, loose);
+        }
+        for (PackFile pack : packs()) {
+            if (pack.contains(id, type)) {
+                return new PackFile.Entry(id, type, pack);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores ENTRIES, received from another store, as one new pack segment,
+     * and adds the commits among them to the commit index.
+     *
+     * @param entries Objects to store.
+     */
+    void writePack(List<PackFile.Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        _packsFolder.mkdir();
+        PackFile pack = PackFile.write(_packsFolder, entries);
+        List<PackFile> packs = packs();
+        if (packs.stream().noneMatch(p -> p.file().equals(pack.file()))) {
+            packs.add(pack);
+        }
+        for (PackFile.Entry entry : entries) {
+            if (entry.type() == COMMIT) {
+                _commitIndex.add(entry.id(), CommitCodec.decode(readCommit(
+                        entry.id())));
+            }
+        }
+    }
+
+    /**
+     * Returns the names of the loose objects in FOLDER, leaving out the
+     * temporary files of writes in progress.
+     *
+     * @param folder Folder of loose objects.
+     * @return File names, or null if FOLDER does not exist.
+     */
+    private static List<String> looseNames(File folder) {
+        List<String> names = Utils.plainFilenamesIn(folder);
+        if (names == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<>(names);
+        result.removeIf(name -> name.startsWith("."));
+        return result;
+    }
+
+    /**
+     * Writes CONTENTS to the loose object FILE through a temporary file
+     * renamed into place, so that another gitlet process reading FILE never
+     * sees it half-written.
+     *
+     * @param file Loose object file.
+     * @param contents Encoded object.
+     */
+    private static void writeLoose(File file, byte[] contents) {
+        File temp = GitletUtils.tempSibling(file);
+        Utils.writeContents(temp, (Object) contents);
+        try {
+            GitletUtils.moveIntoPlace(temp, file);
+        } catch (IOException e) {
+            temp.delete();
+            throw Utils.error("Cannot write %s.", file.getPath());
+        }
+    }
+
+    /**
+     * Returns the loose file for blob ID of FILENAME.
+     *
+     * @param id Blob hash.
+     * @param fileName Name of the file the blob was made from.
+     * @return Loose blob file.
+     */
+    File looseBlob(String id, String fileName) {
+        return new File(_blobsFolder, GitletUtils.flatName(id + "-"
+                + fileName));
+    }
+
+    /**
+     * Adds every loose object of type TYPE in FOLDER, whose file names are
+     * their ids, to ENTRIES unless it is in SEEN, and adds its file to
+     * PACKED.
+     *
+     * @param folder Folder of loose objects.
+     * @param type Their type.
+     * @param entries Receives objects to be packed.
+     * @param packed Receives loose files to delete once packed.
+     * @param seen Ids added to ENTRIES so far.
+     */
+    private void packLoose(File folder, byte type,
+                           List<PackFile.Entry> entries, List<File> packed,
+                           TreeSet<String> seen) {
+        List<String> names = looseNames(folder);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File loose = new File(folder, name);
+            packed.add(loose);
+            if (seen.add(name)) {
+                entries.add(new PackFile.Entry(name, type, loose));
+            }
+        }
+    }
+
+    /**
+     * Returns true iff chunk ID is stored here.
+     *
+     * @param id SHA-1 of the chunk's bytes.
+     * @return True if present.
+     */
+    boolean hasChunk(String id) {
+        return new File(_chunksFolder, id).isFile() || hasPacked(id, CHUNK);
+    }
+
+    /**
+     * Stores CONTENTS as loose chunk ID.
+     *
+     * @param id SHA-1 of CONTENTS.
+     * @param contents Chunk bytes.
+     */
+    private void writeChunk(String id, byte[] contents) {
+        _chunksFolder.mkdir();
+        writeLoose(new File(_chunksFolder, id), Compression.encode(contents));
+    }
+
+    /**
+     * Returns the bytes of chunk ID.
+     *
+     * @param id SHA-1 of the chunk's bytes.
+     * @return Chunk bytes.
+     */
+    private byte[] readChunk(String id) {
+        File loose = new File(_chunksFolder, id);
+        byte[] contents = loose.isFile()
+                ? Compression.decode(Utils.readContents(loose))
+                : readPacked(id, CHUNK);
+        if (contents == null) {
+            throw Utils.error("Missing chunk %s.", id);
+        }
+        return contents;
+    }
+
+    /**
+     * Stores MANIFEST as the manifest of blob ID.
+     *
+     * @param id Blob hash.
+     * @param manifest Manifest bytes.
+     */
+    private void writeManifest(String id, byte[] manifest) {
+        _manifestsFolder.mkdir();
+        writeLoose(new File(_manifestsFolder, id),
+                Compression.encode(manifest));
+    }
+
+    /**
+     * Returns the manifest of blob ID, or null if that blob is not chunked.
+     *
+     * @param id Blob hash.
+     * @return Manifest bytes.
+     */
+    byte[] readManifest(String id) {
+        File loose = new File(_manifestsFolder, id);
+        if (loose.isFile()) {
+            return Compression.decode(Utils.readContents(loose));
+        }
+        return readPacked(id, MANIFEST);
+    }
+
+    /**
+     * Writes the chunks listed in MANIFEST, in order, to OUT.
+     *
+     * @param manifest Manifest bytes.
+     * @param out Destination stream.
+     */
+    private void writeChunks(byte[] manifest, OutputStream out) {
+        try {
+            for (String chunk : manifestChunks(manifest)) {
+                out.write(readChunk(chunk));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the chunk ids listed in MANIFEST, in order.
+     *
+     * @param manifest Manifest bytes.
+     * @return Chunk ids.
+     */
+    static List<String> manifestChunks(byte[] manifest) {
+        List<String> chunks = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new
+                ByteArrayInputStream(manifest))) {
+            if (in.readInt() != MANIFEST_MAGIC) {
+                throw Utils.error("Corrupt chunk manifest.");
+            }
+            in.readLong();
+            byte[] raw = new byte[PackFile.RAW_LENGTH];
+            for (int count = in.readInt(); count > 0; count -= 1) {
+                in.readFully(raw);
+                in.readInt();
+                chunks.add(GitletUtils.toHex(raw, 0, raw.length));
+            }
+        } catch (IOException e) {
+            throw Utils.error("Corrupt chunk manifest.");
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns true iff some pack holds object ID of type TYPE.
+     *
+     * @param id Object hash.
+     * @param type Object type.
+     * @return True if packed.
+     */
+    private boolean hasPacked(String id, byte type) {
+        for (PackFile pack : packs()) {
+            if (pack.contains(id, type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads and decodes object ID of type TYPE from the packs.
+     *
+     * @param id Object hash.
+     * @param type Object type.
+     * @return Object bytes, or null if no pack holds it.
+     */
+    private byte[] readPacked(String id, byte type) {
+        for (PackFile pack : packs()) {
+            byte[] contents = pack.read(id, type);
+            if (contents != null) {
+                return Compression.decode(contents);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a stream of the stored, still encoded bytes of object ID of
+     * type TYPE from the packs.
+     *
+     * @param id Object hash.
+     * @param type Object type.
+     * @return Stream of object bytes, or null if no pack holds it.
+     */
+    private InputStream openPacked(String id, byte type) {
+        for (PackFile pack : packs()) {
+            InputStream in = pack.open(id, type);
+            if (in != null) {
+                return in;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the pack segments of this store, loading their indices the
+     * first time they are needed. Blobs may be read from several threads
+     * at once, so the first load is synchronized.
+     *
+     * @return Pack segments.
+     */
+    private synchronized List<PackFile> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            File[] files = _packsFolder.listFiles((dir, name) -> name
+                    .endsWith(".pack"));
+            if (files != null) {
+                for (File pack : files) {
+                    if (PackFile.indexFor(pack).isFile()) {
+                        _packs.add(new PackFile(pack));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** The folder holding loose blobs. */
+    private final File _blobsFolder;
+
+    /** The folder holding loose commits. */
+    private final File _commitsFolder;
+
+    /** The folder holding pack segments. */
+    private final File _packsFolder;
+
+    /** The folder holding loose chunks. */
+    private final File _chunksFolder;
+
+    /** The folder holding loose chunk manifests. */
+    private final File _manifestsFolder;
+
+    /** The folder holding loose tree nodes. */
+    private final File _treesFolder;
+
+    /** Indices of commit hashes and messages. */
+    private final CommitIndex _commitIndex;
+
+    /** True iff new blobs are stored as chunk manifests. */
+    private final boolean _chunked;
+
+    /** The folder holding refs, among them the paths of remotes. */
+    private final File _refsFolder;
+
+    /** The list of commits at the edge of a shallow clone. */
+    private final File _shallowFile;
+
+    /** Name of the remote missing blobs are fetched from, or null. */
+    private final String _promisor;
+
+    /** Commits at the edge of a shallow clone; null until first needed. */
+    private HashSet<String> _shallow;
+
+    /** The promisor's object store; null until first needed. */
+    private ObjectStore _promisorStore;
+
+    /** Loaded pack segments; null until first needed. */
+    private List<PackFile> _packs;
+}
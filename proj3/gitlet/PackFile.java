@@ -0,0 +1,489 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A single pack segment: an append-only data file holding many objects back
+ * to back, along with a sorted offset index keyed by the raw SHA-1 of each
+ * object.
+ *
+ * @author Farhad Alemi
+ */
+class PackFile {
+
+    /** Magic number at the start of every pack data file. */
+    static final int PACK_MAGIC = 0x47504b32;
+
+    /** Magic number at the start of every pack index file. */
+    static final int INDEX_MAGIC = 0x47494432;
+
+    /** Length of a raw SHA-1 hash in bytes. */
+    static final int RAW_LENGTH = Utils.UID_LENGTH / 2;
+
+    /**
+     * Loads the index of the pack segment whose data file is PACK.
+     *
+     * @param pack The pack data file; PACK.idx must sit beside it.
+     */
+    PackFile(File pack) {
+        _pack = pack;
+        File index = indexFor(pack);
+        try (DataInputStream in = new DataInputStream(new
+                BufferedInputStream(Files.newInputStream(index.toPath())))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                throw Utils.error("Corrupt pack index %s.", index.getName());
+            }
+            int count = in.readInt();
+            _ids = new byte[count * RAW_LENGTH];
+            _types = new byte[count];
+            _offsets = new long[count];
+            _lengths = new long[count];
+            for (int i = 0; i < count; ++i) {
+                in.readFully(_ids, i * RAW_LENGTH, RAW_LENGTH);
+                _types[i] = in.readByte();
+                _offsets[i] = in.readLong();
+                _lengths[i] = in.readLong();
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot read pack index %s.", index.getName());
+        }
+    }
+
+    /**
+     * Returns the number of objects in this pack.
+     *
+     * @return Object count.
+     */
+    int size() {
+        return _types.length;
+    }
+
+    /**
+     * Returns true iff this pack holds an object named ID of the given TYPE.
+     *
+     * @param id Hex SHA-1 of the object.
+     * @param type Object type, one of the ObjectStore type constants.
+     * @return True if the object is present.
+     */
+    boolean contains(String id, byte type) {
+        int pos = find(id);
+        return pos >= 0 && _types[pos] == type;
+    }
+
+    /**
+     * Reads the object named ID of the given TYPE from this pack.
+     *
+     * @param id Hex SHA-1 of the object.
+     * @param type Object type, one of the ObjectStore type constants.
+     * @return The object's bytes, or null if it is not in this pack.
+     */
+    byte[] read(String id, byte type) {
+        int pos = find(id);
+        if (pos < 0 || _types[pos] != type) {
+            return null;
+        }
+        byte[] result = new byte[(int) _lengths[pos]];
+        try (RandomAccessFile in = new RandomAccessFile(_pack, "r")) {
+            in.seek(_offsets[pos]);
+            in.readFully(result);
+        } catch (IOException e) {
+            throw Utils.error("Cannot read pack %s.", _pack.getName());
+        }
+        Metrics.fileRead(result.length);
+        return result;
+    }
+
+    /**
+     * Returns the bytes of the object named ID of the given TYPE, mapped
+     * from this pack if the object is large.
+     *
+     * @param id Hex SHA-1 of the object.
+     * @param type Object type, one of the ObjectStore type constants.
+     * @return The object's bytes, or null if it is not in this pack.
+     */
+    ByteBuffer map(String id, byte type) {
+        int pos = find(id);
+        if (pos < 0 || _types[pos] != type) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(_pack.toPath(),
+                StandardOpenOption.READ)) {
+            return GitletUtils.map(channel, _offsets[pos], _lengths[pos]);
+        } catch (IOException e) {
+            throw Utils.error("Cannot read pack %s.", _pack.getName());
+        }
+    }
+
+    /**
+     * Returns a stream of the bytes of the object named ID of the given
+     * TYPE, read from this pack without staging them in memory.
+     *
+     * @param id Hex SHA-1 of the object.
+     * @param type Object type, one of the ObjectStore type constants.
+     * @return Stream of the object's bytes, or null if it is not in this
+     *         pack.
+     */
+    InputStream open(String id, byte type) {
+        int pos = find(id);
+        if (pos < 0 || _types[pos] != type) {
+            return null;
+        }
+        try {
+            FileChannel channel = FileChannel.open(_pack.toPath(),
+                    StandardOpenOption.READ);
+            channel.position(_offsets[pos]);
+            return new Segment(Channels.newInputStream(channel),
+                    _lengths[pos]);
+        } catch (IOException e) {
+            throw Utils.error("Cannot read pack %s.", _pack.getName());
+        }
+    }
+
+    /**
+     * Returns the length of the object named ID of the given TYPE.
+     *
+     * @param id Hex SHA-1 of the object.
+     * @param type Object type, one of the ObjectStore type constants.
+     * @return Length in bytes, or -1 if it is not in this pack.
+     */
+    long length(String id, byte type) {
+        int pos = find(id);
+        return (pos < 0 || _types[pos] != type) ? -1 : _lengths[pos];
+    }
+
+    /**
+     * Returns the pack data file.
+     *
+     * @return Data file.
+     */
+    File file() {
+        return _pack;
+    }
+
+    /** Deletes the data and index files of this pack. */
+    void delete() {
+        indexFor(_pack).delete();
+        _pack.delete();
+    }
+
+    /**
+     * Returns the hex ids of all objects of the given TYPE in this pack.
+     *
+     * @param type Object type, one of the ObjectStore type constants.
+     * @return Ids in lexicographic order.
+     */
+    List<String> ids(byte type) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < _types.length; ++i) {
+            if (_types[i] == type) {
+                result.add(GitletUtils.toHex(_ids, i * RAW_LENGTH,
+                        RAW_LENGTH));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Binary searches the index for ID.
+     *
+     * @param id Hex SHA-1 of the object.
+     * @return Index position of ID, or -1 if absent.
+     */
+    private int find(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = GitletUtils.toRaw(id);
+        int lo = 0, hi = _types.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Arrays.compareUnsigned(_ids, mid * RAW_LENGTH,
+                    (mid + 1) * RAW_LENGTH, key, 0, RAW_LENGTH);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes ENTRIES as a new pack segment inside DIR, and returns it. The
+     * segment is named after the SHA-1 of its sorted ids, so writing the same
+     * set of objects twice yields the same file.
+     *
+     * @param dir The packs directory.
+     * @param entries Objects to be packed.
+     * @return The newly written pack.
+     */
+    static PackFile write(File dir, List<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(e -> e.id()));
+        List<Object> names = new ArrayList<>();
+        for (Entry entry : sorted) {
+            names.add(entry.id());
+        }
+        String name = "pack-" + Utils.sha1(names);
+        File pack = new File(dir, name + ".pack");
+        File index = indexFor(pack);
+        File tmpPack = new File(dir, name + ".pack.tmp");
+        File tmpIndex = new File(dir, name + ".idx.tmp");
+
+        long[] offsets = new long[sorted.size()];
+        try {
+            try (DataOutputStream out = new DataOutputStream(new
+                    BufferedOutputStream(Files.newOutputStream(tmpPack
+                    .toPath()), GitletUtils.BUFFER_SIZE))) {
+                long offset = 4;
+                out.writeInt(PACK_MAGIC);
+                for (int i = 0; i < sorted.size(); ++i) {
+                    Entry entry = sorted.get(i);
+                    out.writeByte(entry.type());
+                    out.writeLong(entry.length());
+                    offset += 9;
+                    offsets[i] = offset;
+                    entry.writeTo(out);
+                    offset += entry.length();
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(new
+                    BufferedOutputStream(Files.newOutputStream(tmpIndex
+                    .toPath())))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(sorted.size());
+                for (int i = 0; i < sorted.size(); ++i) {
+                    Entry entry = sorted.get(i);
+                    out.write(GitletUtils.toRaw(entry.id()));
+                    out.writeByte(entry.type());
+                    out.writeLong(offsets[i]);
+                    out.writeLong(entry.length());
+                }
+            }
+            Files.move(tmpPack.toPath(), pack.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpIndex.toPath(), index.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw Utils.error("Cannot write pack %s.", name);
+        }
+        return new PackFile(pack);
+    }
+
+    /**
+     * Returns the index file that belongs to the pack data file PACK.
+     *
+     * @param pack Pack data file.
+     * @return Its index file.
+     */
+    static File indexFor(File pack) {
+        String name = pack.getName();
+        return new File(pack.getParentFile(), name.substring(0,
+                name.length() - ".pack".length()) + ".idx");
+    }
+
+    /** A stream over one object inside a pack data file. */
+    private static final class Segment extends FilterInputStream {
+        /**
+         * A stream of the next LENGTH bytes of IN.
+         *
+         * @param in Stream positioned at the start of the object.
+         * @param length Object length.
+         */
+        Segment(InputStream in, long length) {
+            super(in);
+            _remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (_remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                _remaining -= 1;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (_remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(buf, off, (int) Math.min(len, _remaining));
+            if (n > 0) {
+                _remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, _remaining));
+            _remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), _remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /** Bytes of the object not yet read. */
+        private long _remaining;
+    }
+
+    /** An object waiting to be packed, held either in memory or in a
+     *  file that is streamed into the pack. */
+    static final class Entry {
+        /**
+         * A packable object held in memory.
+         *
+         * @param id Hex SHA-1 of the object.
+         * @param type Object type.
+         * @param contents Object bytes.
+         */
+        Entry(String id, byte type, byte[] contents) {
+            _id = id;
+            _type = type;
+            _contents = contents;
+            _source = null;
+            _sourcePack = null;
+        }
+
+        /**
+         * A packable object whose bytes are the contents of SOURCE.
+         *
+         * @param id Hex SHA-1 of the object.
+         * @param type Object type.
+         * @param source File holding the object bytes.
+         */
+        Entry(String id, byte type, File source) {
+            _id = id;
+            _type = type;
+            _contents = null;
+            _source = source;
+            _sourcePack = null;
+        }
+
+        /**
+         * A packable object copied as is from another pack.
+         *
+         * @param id Hex SHA-1 of the object.
+         * @param type Object type.
+         * @param source Pack holding the object.
+         */
+        Entry(String id, byte type, PackFile source) {
+            _id = id;
+            _type = type;
+            _contents = null;
+            _source = null;
+            _sourcePack = source;
+        }
+
+        /**
+         * Returns the object id.
+         * @return Hex SHA-1.
+         */
+        String id() {
+            return _id;
+        }
+
+        /**
+         * Returns the object type.
+         * @return Object type.
+         */
+        byte type() {
+            return _type;
+        }
+
+        /**
+         * Returns the object length.
+         * @return Length in bytes.
+         */
+        long length() {
+            if (_contents != null) {
+                return _contents.length;
+            } else if (_source != null) {
+                return _source.length();
+            }
+            return _sourcePack.length(_id, _type);
+        }
+
+        /**
+         * Writes the object bytes to OUT.
+         *
+         * @param out Destination stream.
+         * @throws IOException if the source cannot be read.
+         */
+        void writeTo(OutputStream out) throws IOException {
+            if (_contents != null) {
+                out.write(_contents);
+            } else if (_source != null) {
+                Files.copy(_source.toPath(), out);
+            } else {
+                try (InputStream in = _sourcePack.open(_id, _type)) {
+                    in.transferTo(out);
+                }
+            }
+        }
+
+        /** Hex SHA-1 of the object. */
+        private final String _id;
+
+        /** Object type. */
+        private final byte _type;
+
+        /** Object bytes, or null if they are in _source. */
+        private final byte[] _contents;
+
+        /** File holding the object bytes, or null. */
+        private final File _source;
+
+        /** Pack holding the object bytes, or null. */
+        private final PackFile _sourcePack;
+    }
+
+    /** The pack data file. */
+    private final File _pack;
+
+    /** Raw ids, RAW_LENGTH bytes each, in sorted order. */
+    private byte[] _ids;
+
+    /** Type of each object. */
+    private byte[] _types;
+
+    /** Offset of each object's bytes within the pack data file. */
+    private long[] _offsets;
+
+    /** Length of each object in bytes. */
+    private long[] _lengths;
+}
@@ -0,0 +1,345 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A file of fixed-size records kept sorted by their first KEYLENGTH bytes,
+ * compared as unsigned bytes. After a header come the sorted records, which
+ * are searched in place with a binary search that reads one record per
+ * probe, and then a short tail of records appended since the file was last
+ * sorted, which is scanned. Once the tail reaches TAIL_LIMIT records the
+ * whole file is sorted again.
+ *
+ * @author Farhad Alemi
+ */
+class RecordIndex {
+
+    /** Magic number at the start of every record index. */
+    static final int MAGIC = 0x47524931;
+
+    /** Size of the header: magic, record length and sorted record count. */
+    static final int HEADER_SIZE = 12;
+
+    /** Largest number of unsorted records kept at the end of the file. */
+    static final int TAIL_LIMIT = 1024;
+
+    /**
+     * The index in FILE, whose records are RECORDLENGTH bytes long and
+     * sorted by their first KEYLENGTH bytes.
+     *
+     * @param file Index file.
+     * @param keyLength Length of the sort key.
+     * @param recordLength Length of a whole record.
+     */
+    RecordIndex(File file, int keyLength, int recordLength) {
+        _file = file;
+        _keyLength = keyLength;
+        _recordLength = recordLength;
+    }
+
+    /**
+     * Returns true iff the index file exists.
+     *
+     * @return True if present.
+     */
+    boolean exists() {
+        return _file.isFile();
+    }
+
+    /**
+     * Replaces the index with one holding RECORDS.
+     *
+     * @param records Records of the right length, in any order.
+     */
+    void create(Collection<byte[]> records) {
+        try (LockFile lock = new LockFile(_file)) {
+            write(lock, records);
+        }
+    }
+
+    /**
+     * Adds RECORD to the end of the index, sorting the index again if the
+     * unsorted tail has grown to TAIL_LIMIT records. Other processes may add
+     * records at the same time, so the index is locked meanwhile.
+     *
+     * @param record A record of the right length.
+     */
+    void append(byte[] record) {
+        try (LockFile lock = new LockFile(_file)) {
+            try (OutputStream out = Files.newOutputStream(_file.toPath(),
+                    StandardOpenOption.APPEND)) {
+                out.write(record);
+            } catch (IOException e) {
+                throw Utils.error("Cannot write %s.", _file.getPath());
+            }
+            if (tailCount() >= TAIL_LIMIT) {
+                write(lock, all());
+            }
+        }
+    }
+
+    /**
+     * Returns up to LIMIT records whose keys lie between LO and HI
+     * inclusive; all of them if LIMIT is not positive.
+     *
+     * @param lo Smallest key.
+     * @param hi Largest key.
+     * @param limit Largest number of records wanted.
+     * @return Matching records, those of the sorted part first.
+     */
+    List<byte[]> range(byte[] lo, byte[] hi, int limit) {
+        List<byte[]> result = new ArrayList<>();
+        try (RandomAccessFile in = new RandomAccessFile(_file, "r")) {
+            int sorted = sortedCount(in);
+            byte[] record = new byte[_recordLength];
+            int first = 0, last = sorted;
+            while (first < last) {
+                int mid = (first + last) >>> 1;
+                read(in, mid, record);
+                if (compareKeys(record, lo) < 0) {
+                    first = mid + 1;
+                } else {
+                    last = mid;
+                }
+            }
+            in.seek(offset(first));
+            for (int i = first; i < sorted; ++i) {
+                in.readFully(record);
+                if (compareKeys(record, hi) > 0
+                        || (limit > 0 && result.size() >= limit)) {
+                    break;
+                }
+                result.add(record.clone());
+            }
+            long records = (in.length() - HEADER_SIZE) / _recordLength;
+            in.seek(offset(sorted));
+            for (long i = sorted; i < records; ++i) {
+                in.readFully(record);
+                if (limit > 0 && result.size() >= limit) {
+                    break;
+                }
+                if (compareKeys(record, lo) >= 0
+                        && compareKeys(record, hi) <= 0) {
+                    result.add(record.clone());
+                }
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot read %s.", _file.getPath());
+        }
+        return result;
+    }
+
+    /**
+     * Returns a reader of the index as it is now.
+     *
+     * @return An open reader, to be closed by the caller.
+     */
+    Reader reader() {
+        return new Reader();
+    }
+
+    /**
+     * Looks up records by their exact key in a snapshot of the index, for
+     * callers making many lookups: the file stays open between them, and
+     * the unsorted tail is read once, when the reader is opened.
+     */
+    class Reader implements AutoCloseable {
+
+        /** A reader of the index as it is now. */
+        Reader() {
+            try {
+                _in = new RandomAccessFile(_file, "r");
+                _sorted = sortedCount(_in);
+                long records = (_in.length() - HEADER_SIZE) / _recordLength;
+                _tail = new byte[(int) (records - _sorted) * _recordLength];
+                _in.seek(offset(_sorted));
+                _in.readFully(_tail);
+            } catch (IOException e) {
+                close();
+                throw Utils.error("Cannot read %s.", _file.getPath());
+            }
+        }
+
+        /**
+         * Returns the first record whose key is KEY, or null.
+         *
+         * @param key A key.
+         * @return The record.
+         */
+        byte[] find(byte[] key) {
+            byte[] record = new byte[_recordLength];
+            try {
+                int first = 0, last = _sorted;
+                while (first < last) {
+                    int mid = (first + last) >>> 1;
+                    read(_in, mid, record);
+                    int cmp = compareKeys(record, key);
+                    if (cmp == 0) {
+                        return record;
+                    } else if (cmp < 0) {
+                        first = mid + 1;
+                    } else {
+                        last = mid;
+                    }
+                }
+            } catch (IOException e) {
+                throw Utils.error("Cannot read %s.", _file.getPath());
+            }
+            for (int pos = 0; pos < _tail.length; pos += _recordLength) {
+                if (Arrays.compareUnsigned(_tail, pos, pos + _keyLength, key,
+                        0, _keyLength) == 0) {
+                    return Arrays.copyOfRange(_tail, pos,
+                            pos + _recordLength);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (_in != null) {
+                    _in.close();
+                }
+            } catch (IOException e) {
+                throw Utils.error("Cannot close %s.", _file.getPath());
+            }
+        }
+
+        /** The open index file. */
+        private RandomAccessFile _in;
+
+        /** Number of sorted records. */
+        private int _sorted;
+
+        /** The records of the unsorted tail. */
+        private byte[] _tail;
+    }
+
+    /**
+     * Returns every record in the index.
+     *
+     * @return All records.
+     */
+    List<byte[]> all() {
+        byte[] contents = Utils.readContents(_file);
+        List<byte[]> result = new ArrayList<>();
+        for (int pos = HEADER_SIZE; pos + _recordLength <= contents.length;
+             pos += _recordLength) {
+            result.add(Arrays.copyOfRange(contents, pos, pos + _recordLength));
+        }
+        return result;
+    }
+
+    /**
+     * Writes an index holding RECORDS into the file of LOCK, and renames it
+     * over the index.
+     *
+     * @param lock The lock on the index.
+     * @param records Records of the right length, in any order.
+     */
+    private void write(LockFile lock, Collection<byte[]> records) {
+        byte[][] sorted = records.toArray(new byte[0][]);
+        Arrays.sort(sorted, this::compareKeys);
+        try (DataOutputStream out = new DataOutputStream(new
+                BufferedOutputStream(Files.newOutputStream(lock.file()
+                .toPath()), GitletUtils.BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_recordLength);
+            out.writeInt(sorted.length);
+            for (byte[] record : sorted) {
+                out.write(record);
+            }
+        } catch (IOException e) {
+            throw Utils.error("Cannot write %s.", _file.getPath());
+        }
+        lock.commit();
+    }
+
+    /**
+     * Compares the keys of records A and B; either may also be just a key.
+     *
+     * @param a A record or key.
+     * @param b A record or key.
+     * @return Negative, zero or positive as A's key is below, equal to or
+     *         above B's.
+     */
+    private int compareKeys(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, 0, _keyLength, b, 0, _keyLength);
+    }
+
+    /**
+     * Returns the number of records in the unsorted tail.
+     *
+     * @return Tail length.
+     */
+    private int tailCount() {
+        try (RandomAccessFile in = new RandomAccessFile(_file, "r")) {
+            return (int) ((in.length() - HEADER_SIZE) / _recordLength)
+                    - sortedCount(in);
+        } catch (IOException e) {
+            throw Utils.error("Cannot read %s.", _file.getPath());
+        }
+    }
+
+    /**
+     * Checks the header read from IN and returns the number of sorted
+     * records.
+     *
+     * @param in The open index file.
+     * @return Sorted record count.
+     * @throws IOException if IN cannot be read.
+     */
+    private int sortedCount(RandomAccessFile in) throws IOException {
+        in.seek(0);
+        if (in.length() < HEADER_SIZE || in.readInt() != MAGIC
+                || in.readInt() != _recordLength) {
+            throw Utils.error("Corrupt index %s.", _file.getPath());
+        }
+        return in.readInt();
+    }
+
+    /**
+     * Reads record K from IN into RECORD.
+     *
+     * @param in The open index file.
+     * @param k Record number.
+     * @param record Receives the record.
+     * @throws IOException if IN cannot be read.
+     */
+    private void read(RandomAccessFile in, int k, byte[] record)
+            throws IOException {
+        in.seek(offset(k));
+        in.readFully(record);
+    }
+
+    /**
+     * Returns the file offset of record K.
+     *
+     * @param k Record number.
+     * @return Byte offset.
+     */
+    private long offset(int k) {
+        return HEADER_SIZE + (long) k * _recordLength;
+    }
+
+    /** The index file. */
+    private final File _file;
+
+    /** Length of the sort key at the start of each record. */
+    private final int _keyLength;
+
+    /** Length of each record. */
+    private final int _recordLength;
+}
@@ -0,0 +1,47 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RecordIndexTest {
+
+    /** Returns the raw SHA-1 of "record" and N. */
+    private static byte[] record(int n) {
+        return GitletUtils.toRaw(Utils.sha1("record", Integer.toString(n)));
+    }
+
+    @Test
+    public void rangeTest() throws IOException {
+        File dir = Files.createTempDirectory("recordindex").toFile();
+        RecordIndex index = new RecordIndex(new File(dir, "ids"), 20, 20);
+        List<byte[]> records = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            records.add(record(i));
+        }
+        index.create(records);
+        for (int i = 500; i < 500 + RecordIndex.TAIL_LIMIT + 10; ++i) {
+            index.append(record(i));
+        }
+        assertEquals(500 + RecordIndex.TAIL_LIMIT + 10, index.all().size());
+
+        for (int i = 0; i < 500 + RecordIndex.TAIL_LIMIT + 10; i += 97) {
+            List<byte[]> found = index.range(record(i), record(i), 0);
+            assertEquals(1, found.size());
+            assertArrayEquals(record(i), found.get(0));
+        }
+        byte[] lo = new byte[20], hi = new byte[20];
+        Arrays.fill(hi, (byte) 0xff);
+        assertEquals(500 + RecordIndex.TAIL_LIMIT + 10,
+                index.range(lo, hi, 0).size());
+        assertEquals(2, index.range(lo, hi, 2).size());
+    }
+}
@@ -0,0 +1,371 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Pairs files that went away (sources) with files that appeared (targets)
+ * when their contents are similar, so that a rename is seen as one file
+ * moving rather than a deletion and an unrelated addition.
+ * <p>
+ * Similarity is the Jaccard index of the two files' sets of lines. Rather
+ * than comparing every source with every target, each file is reduced to a
+ * MinHash signature of HASHES values, the i-th being the least of the i-th
+ * hash function over its lines; two signatures agree in each position with
+ * probability equal to the similarity of the files. Signatures are cut into
+ * bands of ROWS values, and only pairs sharing at least one band, found by
+ * binary search in each band's sorted keys, are compared. That finds almost
+ * every pair at THRESHOLD or above, while the work grows with the number of
+ * files, not with its square.
+ * <p>
+ * As in Git, files larger than MAX_SIZE are left out, so that detection
+ * never has to read a huge file; they are neither sources nor targets.
+ * Identical contents, which are preferred to any similar ones, are told by
+ * the SHA-1 of each file, given by the caller if it already knows it.
+ *
+ * @author Farhad Alemi
+ */
+class Renames {
+
+    /** Least estimated similarity for two files to be paired. */
+    static final double THRESHOLD = 0.5;
+
+    /** Number of MinHash values in a signature. */
+    static final int HASHES = 64;
+
+    /** Number of signature values per band. */
+    static final int ROWS = 2;
+
+    /** Largest file, in bytes, that is paired. */
+    static final long MAX_SIZE = 1 << 26;
+
+    /** The bits of a band key kept in a bucket entry; the rest hold the
+     *  index of a source, so no source beyond the 16M-th can be found. */
+    private static final long KEY_MASK = -1L << 24;
+
+    /** Seed mixed into each of the HASHES hash functions. */
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        long seed = 0x5eed61b61bL;
+        for (int i = 0; i < HASHES; ++i) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    /**
+     * Detects renames and, if COPIES, copies, where a source may be paired
+     * with any number of targets.
+     *
+     * @param copies True if sources are kept, so that targets are copies.
+     */
+    Renames(boolean copies) {
+        _copies = copies;
+        _sources = new ArrayList<>();
+        _targets = new ArrayList<>();
+    }
+
+    /**
+     * Adds a source NAME with contents CONTENTS.
+     *
+     * @param name File name.
+     * @param contents File contents.
+     */
+    void addSource(String name, byte[] contents) {
+        add(_sources, name, ByteBuffer.wrap(contents), null);
+    }
+
+    /**
+     * Adds a source NAME with contents CONTENTS, which may be a mapped
+     * file, unless they are null.
+     *
+     * @param name File name.
+     * @param contents File contents; null for a file left out.
+     */
+    void addSource(String name, ByteBuffer contents) {
+        add(_sources, name, contents, null);
+    }
+
+    /**
+     * Adds a target NAME with contents CONTENTS.
+     *
+     * @param name File name.
+     * @param contents File contents.
+     */
+    void addTarget(String name, byte[] contents) {
+        add(_targets, name, ByteBuffer.wrap(contents), null);
+    }
+
+    /**
+     * Adds a target NAME with contents CONTENTS, which may be a mapped
+     * file, unless they are null.
+     *
+     * @param name File name.
+     * @param contents File contents; null for a file left out.
+     */
+    void addTarget(String name, ByteBuffer contents) {
+        add(_targets, name, contents, null);
+    }
+
+    /**
+     * Adds a target NAME with contents CONTENTS, which may be a mapped
+     * file, and whose SHA-1 is SHA1, unless they are null.
+     *
+     * @param name File name.
+     * @param contents File contents; null for a file left out.
+     * @param sha1 Hex SHA-1 of CONTENTS; null to have it computed.
+     */
+    void addTarget(String name, ByteBuffer contents, String sha1) {
+        add(_targets, name, contents, sha1);
+    }
+
+    /**
+     * Returns the source of each target that was paired with one. Each
+     * target is paired with its most similar source, preferring identical
+     * contents, then higher similarity, then the first names; unless copies
+     * are detected, a source is paired with at most one target.
+     *
+     * @return The source name of each paired target name.
+     */
+    TreeMap<String, String> detect() {
+        int bands = HASHES / ROWS;
+        long[][] buckets = new long[bands][_sources.size()];
+        for (int band = 0; band < bands; ++band) {
+            for (int s = 0; s < _sources.size(); ++s) {
+                buckets[band][s] = bandKey(_sources.get(s), band) & KEY_MASK
+                        | s;
+            }
+            Arrays.sort(buckets[band]);
+        }
+        List<Pair> pairs = new ArrayList<>();
+        int[] seen = new int[_sources.size()];
+        for (int t = 0; t < _targets.size(); ++t) {
+            Entry target = _targets.get(t);
+            for (int band = 0; band < bands; ++band) {
+                long key = bandKey(target, band) & KEY_MASK;
+                int i = Arrays.binarySearch(buckets[band], key);
+                i = (i < 0) ? -i - 1 : i;
+                for (; i < _sources.size()
+                        && (buckets[band][i] & KEY_MASK) == key; ++i) {
+                    int s = (int) (buckets[band][i] & ~KEY_MASK);
+                    if (seen[s] != t + 1) {
+                        seen[s] = t + 1;
+                        consider(_sources.get(s), target, pairs);
+                    }
+                }
+            }
+        }
+        pairs.sort((x, y) -> x._score != y._score
+                ? Double.compare(y._score, x._score)
+                : !x._source._name.equals(y._source._name)
+                ? x._source._name.compareTo(y._source._name)
+                : x._target._name.compareTo(y._target._name));
+
+        TreeMap<String, String> result = new TreeMap<>();
+        HashSet<String> used = new HashSet<>();
+        for (Pair pair : pairs) {
+            if (!result.containsKey(pair._target._name)
+                    && (_copies || used.add(pair._source._name))) {
+                result.put(pair._target._name, pair._source._name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the pairing of SOURCE with TARGET to PAIRS if they are similar
+     * enough.
+     *
+     * @param source A source.
+     * @param target A target.
+     * @param pairs Candidate pairings.
+     */
+    private static void consider(Entry source, Entry target,
+                                 List<Pair> pairs) {
+        double score = similarity(source._signature, target._signature);
+        if (source._sha1.equals(target._sha1)) {
+            score = 2;
+        }
+        if (score >= THRESHOLD) {
+            pairs.add(new Pair(source, target, score));
+        }
+    }
+
+    /**
+     * Returns the MinHash signature of the lines of CONTENTS, or null if it
+     * has none.
+     *
+     * @param contents File contents.
+     * @return HASHES values.
+     */
+    static int[] signature(byte[] contents) {
+        return signature(ByteBuffer.wrap(contents));
+    }
+
+    /**
+     * Returns the MinHash signature of the lines of CONTENTS, from its
+     * position to its limit, or null if it has none.
+     *
+     * @param contents File contents; read without being moved.
+     * @return HASHES values.
+     */
+    static int[] signature(ByteBuffer contents) {
+        int start = contents.position(), end = contents.limit();
+        if (start == end) {
+            return null;
+        }
+        long[] min = new long[HASHES];
+        Arrays.fill(min, Long.MAX_VALUE);
+        long line = FNV_BASIS;
+        for (int i = start; i <= end; ++i) {
+            if (i < end) {
+                line = (line ^ (contents.get(i) & 0xff)) * FNV_PRIME;
+            }
+            if (i == end ? contents.get(i - 1) != '\n'
+                    : contents.get(i) == '\n') {
+                for (int h = 0; h < HASHES; ++h) {
+                    min[h] = Math.min(min[h], mix(line ^ SEEDS[h]) >>> 1);
+                }
+                line = FNV_BASIS;
+            }
+        }
+        int[] signature = new int[HASHES];
+        for (int h = 0; h < HASHES; ++h) {
+            signature[h] = (int) min[h];
+        }
+        return signature;
+    }
+
+    /**
+     * Returns the fraction of positions at which signatures A and B agree,
+     * an estimate of the similarity of their files.
+     *
+     * @param a A signature.
+     * @param b A signature.
+     * @return Estimated similarity, from 0 to 1.
+     */
+    static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int h = 0; h < HASHES; ++h) {
+            if (a[h] == b[h]) {
+                same += 1;
+            }
+        }
+        return (double) same / HASHES;
+    }
+
+    /**
+     * Adds file NAME, with contents CONTENTS whose SHA-1 is SHA1, to FILES,
+     * unless it is empty, left out, or larger than MAX_SIZE.
+     *
+     * @param files Sources or targets.
+     * @param name File name.
+     * @param contents File contents; null for a file left out.
+     * @param sha1 Hex SHA-1 of CONTENTS; null to have it computed.
+     */
+    private static void add(List<Entry> files, String name,
+                            ByteBuffer contents, String sha1) {
+        if (contents == null || contents.remaining() > MAX_SIZE) {
+            return;
+        }
+        int[] signature = signature(contents);
+        if (signature != null) {
+            files.add(new Entry(name, (sha1 == null)
+                    ? GitletUtils.sha1(contents) : sha1, signature));
+        }
+    }
+
+    /**
+     * Returns the hash table key of band BAND of FILE's signature. Keys of
+     * different bands may collide, which only adds a candidate pair.
+     *
+     * @param file A source or target.
+     * @param band Band number.
+     * @return Key.
+     */
+    private static long bandKey(Entry file, int band) {
+        long key = band;
+        for (int h = band * ROWS; h < (band + 1) * ROWS; ++h) {
+            key = mix(key * FNV_PRIME + file._signature[h]);
+        }
+        return key;
+    }
+
+    /**
+     * Returns X with its bits mixed by the SplitMix64 finalizer.
+     *
+     * @param x A value.
+     * @return Mixed value.
+     */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** A source or target file. */
+    private static final class Entry {
+        /**
+         * File NAME, with contents hashing to SHA1 and signature SIGNATURE.
+         *
+         * @param name File name.
+         * @param sha1 Hex SHA-1 of its contents.
+         * @param signature MinHash signature.
+         */
+        Entry(String name, String sha1, int[] signature) {
+            _name = name;
+            _sha1 = sha1;
+            _signature = signature;
+        }
+
+        /** File name. */
+        private final String _name;
+        /** Hex SHA-1 of the contents. */
+        private final String _sha1;
+        /** MinHash signature. */
+        private final int[] _signature;
+    }
+
+    /** A candidate pairing. */
+    private static final class Pair {
+        /**
+         * SOURCE paired with TARGET, with similarity SCORE.
+         *
+         * @param source Source.
+         * @param target Target.
+         * @param score Estimated similarity; 2 for identical contents.
+         */
+        Pair(Entry source, Entry target, double score) {
+            _source = source;
+            _target = target;
+            _score = score;
+        }
+
+        /** Source. */
+        private final Entry _source;
+        /** Target. */
+        private final Entry _target;
+        /** Estimated similarity; 2 for identical contents. */
+        private final double _score;
+    }
+
+    /** FNV-1a offset basis, the hash of an empty line. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+
+    /** FNV-1a prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** True if a source may be paired with several targets. */
+    private final boolean _copies;
+
+    /** Files that went away. */
+    private final List<Entry> _sources;
+
+    /** Files that appeared. */
+    private final List<Entry> _targets;
+}
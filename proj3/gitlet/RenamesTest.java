@@ -0,0 +1,149 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RenamesTest {
+
+    /** Returns a file of LINES random lines drawn with RANDOM. */
+    private static String randomFile(Random random, int lines) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; ++i) {
+            text.append(Long.toHexString(random.nextLong())).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Returns TEXT with every STEP-th line replaced. */
+    private static String edit(String text, int step) {
+        String[] lines = text.split("\n");
+        for (int i = 0; i < lines.length; i += step) {
+            lines[i] = "edited " + i;
+        }
+        return String.join("\n", lines) + "\n";
+    }
+
+    /** Returns the bytes of TEXT. */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void renamesTest() {
+        Random random = new Random(15);
+        Renames renames = new Renames(false);
+        String[] files = new String[200];
+        for (int i = 0; i < files.length; ++i) {
+            files[i] = randomFile(random, 50);
+            renames.addSource("old" + i, bytes(files[i]));
+        }
+        for (int i = 0; i < files.length; ++i) {
+            renames.addTarget("new" + i, bytes(i % 2 == 0 ? files[i]
+                    : edit(files[i], 10)));
+        }
+        renames.addTarget("unrelated", bytes(randomFile(random, 50)));
+        renames.addTarget("empty", new byte[0]);
+        Map<String, String> result = renames.detect();
+        assertEquals(files.length, result.size());
+        for (int i = 0; i < files.length; ++i) {
+            assertEquals("old" + i, result.get("new" + i));
+        }
+        assertNull(result.get("unrelated"));
+    }
+
+    @Test
+    public void identicalContentsFirstTest() {
+        String text = randomFile(new Random(16), 40);
+        Renames renames = new Renames(false);
+        renames.addSource("a", bytes(text));
+        renames.addTarget("b", bytes(edit(text, 20)));
+        renames.addTarget("c", bytes(text));
+        Map<String, String> result = renames.detect();
+        assertEquals("a", result.get("c"));
+        assertNull(result.get("b"));
+    }
+
+    @Test
+    public void givenHashTest() {
+        String text = randomFile(new Random(20), 40);
+        String edited = edit(text, 20);
+        Renames renames = new Renames(false);
+        renames.addSource("a", bytes(text));
+        renames.addTarget("b", ByteBuffer.wrap(bytes(edited)),
+                Utils.sha1(edited));
+        renames.addTarget("c", ByteBuffer.wrap(bytes(text)),
+                Utils.sha1(text));
+        Map<String, String> result = renames.detect();
+        assertEquals("a", result.get("c"));
+        assertNull(result.get("b"));
+    }
+
+    @Test
+    public void copiesTest() {
+        String text = randomFile(new Random(17), 40);
+        Renames copies = new Renames(true);
+        copies.addSource("a", bytes(text));
+        copies.addTarget("b", bytes(edit(text, 20)));
+        copies.addTarget("c", bytes(text));
+        Map<String, String> result = copies.detect();
+        assertEquals("a", result.get("b"));
+        assertEquals("a", result.get("c"));
+    }
+
+    @Test
+    public void mappedAndLargeFilesTest() throws IOException {
+        String text = randomFile(new Random(19), 40);
+        ByteBuffer padded = ByteBuffer.wrap(bytes("xx" + text));
+        padded.position(2);
+        assertArrayEquals(Renames.signature(bytes(text)),
+                Renames.signature(padded));
+        assertEquals(2, padded.position());
+        assertEquals(Utils.sha1(text), GitletUtils.sha1(padded));
+        assertEquals(2, padded.position());
+
+        File file = Files.createTempFile("renames", ".bin").toFile();
+        try {
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.setLength(Renames.MAX_SIZE + 1);
+            }
+            ByteBuffer large = GitletUtils.map(file);
+            Renames renames = new Renames(false);
+            renames.addSource("a", padded);
+            renames.addSource("big", large);
+            renames.addTarget("b", bytes(text));
+            renames.addTarget("big2", large.duplicate());
+            renames.addTarget("gone", (ByteBuffer) null);
+            Map<String, String> result = renames.detect();
+            assertEquals("a", result.get("b"));
+            assertEquals(1, result.size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void similarityTest() {
+        String text = randomFile(new Random(18), 400);
+        int[] a = Renames.signature(bytes(text));
+        assertEquals(1.0, Renames.similarity(a, a), 0);
+        assertTrue(Renames.similarity(a,
+                Renames.signature(bytes(text.trim()))) > 0.9);
+        double half = Renames.similarity(a,
+                Renames.signature(bytes(edit(text, 3))));
+        assertTrue(half > 0.3 && half < 0.7);
+        assertNull(Renames.signature(new byte[0]));
+    }
+}
@@ -0,0 +1,398 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks of whole gitlet commands on synthetic repositories. A
+ * repository of FILES files, a master history DEPTH commits deep and
+ * BRANCHING topic branches merged back into it is generated once, in a
+ * forked JVM. Then each command gets a fresh copy of it, and a forked JVM
+ * of its own whose working directory is that copy, since Gitlet works on
+ * the directory it is started in. There the command runs WARMUP times
+ * untimed and then ITERATIONS times timed, in the same process, so the
+ * times are those of warm code and exclude JVM startup. Usage:
+ *      java gitlet.Benchmarks repo [FILES [DEPTH [BRANCHING [ITERATIONS
+ *          [COMMAND,...]]]]]
+ * The commands are add, commit, status, checkout, log, merge, push and
+ * fetch; push and fetch use a second copy as the remote "origin". With
+ * GITLET_METRICS set, each fork also prints its counters.
+ *
+ * @author Farhad Alemi
+ */
+class RepoBenchmarks {
+
+    /** The commands that can be benchmarked. */
+    static final List<String> COMMANDS = Arrays.asList("add", "commit",
+            "status", "checkout", "log", "merge", "push", "fetch");
+
+    /** Number of untimed runs of a command before the timed ones. */
+    static final int WARMUP = 3;
+
+    /** Number of text lines in a synthetic file. */
+    private static final int LINES = 40;
+
+    /**
+     * Runs a fork: generate FILES DEPTH BRANCHING RUNS, or measure COMMAND
+     * FILES ITERATIONS REMOTE, in the current directory.
+     *
+     * @param args The fork's mode and parameters.
+     */
+    public static void main(String... args) {
+        PrintStream out = System.out;
+        boolean[] done = new boolean[1];
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!done[0]) {
+                out.printf("  %-10s failed%n", args[0].equals("generate")
+                        ? args[0] : args[1]);
+            }
+        }));
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        if (args[0].equals("generate")) {
+            Metrics.start("generate");
+            new RepoBenchmarks(Integer.parseInt(args[1])).generate(
+                    Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                    Integer.parseInt(args[4]));
+        } else {
+            Metrics.start(args[1]);
+            long[] times = new RepoBenchmarks(Integer.parseInt(args[2]))
+                    .measure(args[1], Integer.parseInt(args[3]), args[4]);
+            long total = 0, min = Long.MAX_VALUE, max = 0;
+            for (long time : times) {
+                total += time;
+                min = Math.min(min, time);
+                max = Math.max(max, time);
+            }
+            out.printf("  %-10s %10.3f ms/op %10.3f min %10.3f max%n",
+                    args[1], total / 1e6 / times.length, min / 1e6,
+                    max / 1e6);
+        }
+        done[0] = true;
+        out.flush();
+    }
+
+    /**
+     * Generates a repository of FILES files with a history DEPTH commits
+     * deep and BRANCHING merged topic branches, and runs each command in
+     * COMMANDS (all of them if null) on its own copy, timing ITERATIONS
+     * runs of each.
+     *
+     * @param files Number of files.
+     * @param depth Number of commits on master.
+     * @param branching Number of topic branches merged into master.
+     * @param iterations Number of timed runs of each command.
+     * @param commands Comma-separated commands to run, or null.
+     */
+    static void run(int files, int depth, int branching, int iterations,
+                    String commands) {
+        List<String> selected = (commands == null) ? COMMANDS
+                : Arrays.asList(commands.split(","));
+        if (!COMMANDS.containsAll(selected)) {
+            Main.softFail("Commands are " + String.join(",", COMMANDS) + ".");
+        }
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("gitlet-bench");
+            File template = new File(dir.toFile(), "template");
+            template.mkdir();
+            System.out.printf("repo: %d files, %d commits deep, %d topic "
+                    + "branches, %d+%d runs%n", files, depth, branching,
+                    WARMUP, iterations);
+            long start = System.nanoTime();
+            fork(template, "generate", files, depth, branching,
+                    WARMUP + iterations);
+            Benchmarks.report("generate", System.nanoTime() - start, 1);
+            for (String command : selected) {
+                File work = new File(dir.toFile(), command);
+                File remote = new File(dir.toFile(), command + "-origin");
+                copy(template.toPath(), work.toPath());
+                if (command.equals("push") || command.equals("fetch")) {
+                    copy(template.toPath(), remote.toPath());
+                }
+                fork(work, "measure", command, files, iterations,
+                        new File(remote, ".gitlet").getAbsolutePath());
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            if (dir != null) {
+                Benchmarks.delete(dir);
+            }
+        }
+    }
+
+    /**
+     * Runs this class in a new JVM, in directory DIR, with arguments ARGS,
+     * and waits for it.
+     *
+     * @param dir Working directory of the fork.
+     * @param args Arguments of the fork.
+     */
+    private static void fork(File dir, Object... args) {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-cp");
+        StringBuilder classPath = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path")
+                .split(File.pathSeparator)) {
+            classPath.append(classPath.length() > 0 ? File.pathSeparator
+                    : "").append(new File(entry).getAbsolutePath());
+        }
+        command.add(classPath.toString());
+        command.add(RepoBenchmarks.class.getName());
+        for (Object arg : args) {
+            command.add(arg.toString());
+        }
+        try {
+            int status = new ProcessBuilder(command).directory(dir)
+                    .inheritIO().start().waitFor();
+            if (status != 0) {
+                throw new IllegalStateException("benchmark fork failed");
+            }
+        } catch (IOException | InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copies directory FROM to TO, which must not exist.
+     *
+     * @param from Source directory.
+     * @param to Destination directory.
+     * @throws IOException if the copy fails.
+     */
+    private static void copy(Path from, Path to) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (var walk = Files.walk(from)) {
+            walk.forEach(paths::add);
+        }
+        for (Path path : paths) {
+            Files.copy(path, to.resolve(from.relativize(path)),
+                    StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    /**
+     * A benchmark run on a repository of FILES synthetic files in the
+     * current directory.
+     *
+     * @param files Number of files.
+     */
+    RepoBenchmarks(int files) {
+        _files = files;
+        _gitlet = new Gitlet();
+        _random = new Random(61);
+    }
+
+    /**
+     * Creates the synthetic repository: an initial commit of all the files,
+     * DEPTH - 1 more commits on master that each change 1% of them, with
+     * BRANCHING topic branches of two commits merged in along the way, and
+     * then a branch "other" that changes a tenth of the files, and RUNS
+     * branches m0... and f0... of one commit each, for merge and fetch.
+     *
+     * @param depth Number of commits on master.
+     * @param branching Number of topic branches.
+     * @param runs Number of runs of each command.
+     */
+    void generate(int depth, int branching, int runs) {
+        _gitlet.doInit(new String[] {"init"});
+        for (int i = 0; i < _files; ++i) {
+            write(name(i), "base");
+            _gitlet.doAdd(new String[] {"add", name(i)});
+        }
+        _gitlet.doCommit(new String[] {"commit", "base"}, null);
+        int every = Math.max(1, depth / (branching + 1));
+        for (int c = 1, topics = 0; c < depth; ++c) {
+            if (topics < branching && c % every == 0 && c > 1) {
+                _gitlet.doMerge(new String[] {"merge", "topic" + topics});
+                topics += 1;
+            } else {
+                if (topics < branching && (c + 1) % every == 0) {
+                    branch("topic" + topics, 2);
+                }
+                stage(edit(changed(), "commit " + c));
+                _gitlet.doCommit(new String[] {"commit", "commit " + c},
+                        null);
+            }
+        }
+        _gitlet.doBranch(new String[] {"branch", "other"});
+        _gitlet.doCheckout(new String[] {"checkout", "other"});
+        stage(edit(Math.max(1, _files / 10), "other"));
+        _gitlet.doCommit(new String[] {"commit", "other"}, null);
+        _gitlet.doCheckout(new String[] {"checkout", "master"});
+        for (int i = 0; i < runs; ++i) {
+            branch("m" + i, 1);
+            branch("f" + i, 1);
+        }
+        stage(edit(changed(), "tip"));
+        _gitlet.doCommit(new String[] {"commit", "tip"}, null);
+    }
+
+    /**
+     * Runs COMMAND WARMUP times and then ITERATIONS times, using the remote
+     * repository REMOTE for push and fetch.
+     *
+     * @param command Command to run.
+     * @param iterations Number of timed runs.
+     * @param remote Path of the remote's .gitlet directory.
+     * @return Time of each timed run, in nanoseconds.
+     */
+    long[] measure(String command, int iterations, String remote) {
+        if (command.equals("push") || command.equals("fetch")) {
+            _gitlet.doAddRemote(new String[] {"add-remote", "origin",
+                remote});
+        }
+        long[] times = new long[iterations];
+        for (int i = 0; i < WARMUP + iterations; ++i) {
+            List<String> added = new ArrayList<>();
+            if (command.equals("add") || command.equals("commit")
+                    || command.equals("push")) {
+                added = edit(changed(), "run " + i);
+            }
+            if (!command.equals("add")) {
+                stage(added);
+            }
+            if (command.equals("push")) {
+                _gitlet.doCommit(new String[] {"commit", "run " + i}, null);
+            }
+            long start = System.nanoTime();
+            switch (command) {
+            case "add":
+                stage(added);
+                break;
+            case "commit":
+                _gitlet.doCommit(new String[] {"commit", "run " + i}, null);
+                break;
+            case "status":
+                _gitlet.doStatus(new String[] {"status"});
+                break;
+            case "checkout":
+                _gitlet.doCheckout(new String[] {"checkout",
+                    (i % 2 == 0) ? "other" : "master"});
+                break;
+            case "log":
+                _gitlet.doLog(new String[] {"log"});
+                break;
+            case "merge":
+                _gitlet.doMerge(new String[] {"merge", "m" + i});
+                break;
+            case "push":
+                _gitlet.doPush(new String[] {"push", "origin", "master"});
+                break;
+            default:
+                _gitlet.doFetch(new String[] {"fetch", "origin", "f" + i});
+            }
+            long time = System.nanoTime() - start;
+            if (i >= WARMUP) {
+                times[i - WARMUP] = time;
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Creates branch BRANCH from the current commit with COMMITS commits
+     * that each add a file of its own, and returns to master.
+     *
+     * @param branch Branch name.
+     * @param commits Number of commits on it.
+     */
+    private void branch(String branch, int commits) {
+        _gitlet.doBranch(new String[] {"branch", branch});
+        _gitlet.doCheckout(new String[] {"checkout", branch});
+        for (int c = 0; c < commits; ++c) {
+            String name = branch + "-" + c + ".txt";
+            write(name, branch);
+            _gitlet.doAdd(new String[] {"add", name});
+            _gitlet.doCommit(new String[] {"commit", branch + " " + c},
+                    null);
+        }
+        _gitlet.doCheckout(new String[] {"checkout", "master"});
+    }
+
+    /**
+     * Rewrites COUNT files chosen at random, with new contents mentioning
+     * TAG.
+     *
+     * @param count Number of files.
+     * @param tag Part of their new contents.
+     * @return The names of the files written.
+     */
+    private List<String> edit(int count, String tag) {
+        List<String> names = new ArrayList<>();
+        for (int k = 0; k < count; ++k) {
+            String name = name(_random.nextInt(_files));
+            if (!names.contains(name)) {
+                write(name, tag);
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Stages the working files NAMES.
+     *
+     * @param names File names.
+     */
+    private void stage(List<String> names) {
+        for (String name : names) {
+            _gitlet.doAdd(new String[] {"add", name});
+        }
+    }
+
+    /**
+     * Writes LINES random lines and TAG to working file NAME.
+     *
+     * @param name File name.
+     * @param tag Last line.
+     */
+    private void write(String name, String tag) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LINES; ++i) {
+            text.append("line ").append(_random.nextInt(1000000))
+                    .append(' ').append(Long.toHexString(_random.nextLong()))
+                    .append('\n');
+        }
+        Utils.writeContents(new File(name), text.append(tag).append('\n')
+                .toString());
+    }
+
+    /**
+     * Returns the number of files a commit changes: 1% of them.
+     *
+     * @return At least one.
+     */
+    private int changed() {
+        return Math.max(1, _files / 100);
+    }
+
+    /**
+     * Returns the name of synthetic file I.
+     *
+     * @param i File number.
+     * @return Its name.
+     */
+    private static String name(int i) {
+        return String.format("file%06d.txt", i);
+    }
+
+    /** Number of synthetic files. */
+    private final int _files;
+
+    /** Runs the commands. */
+    private final Gitlet _gitlet;
+
+    /** Chooses files and their contents. */
+    private final Random _random;
+}
@@ -0,0 +1,309 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.SortedMap;
+
+/**
+ * A handle on one .gitlet directory: its folders, object store and commit
+ * graph, and the refs kept in it. Several gitlet processes may work on the
+ * same repository at once, so refs are never written in place. Each update
+ * takes the ref's LockFile, checks that the ref still holds the value the
+ * caller based its change on, and renames the new value into place, so a
+ * ref only ever moves from a value someone has seen to one derived from it.
+ *
+ * @author Farhad Alemi
+ */
+class Repository {
+
+    /** Number of times a commit is rebased onto a branch that moved. */
+    static final int COMMIT_ATTEMPTS = 100;
+
+    /**
+     * The repository kept in GITLETFOLDER.
+     *
+     * @param gitletFolder The .gitlet directory.
+     */
+    Repository(File gitletFolder) {
+        String path = gitletFolder.getPath();
+        _gitletFolder = gitletFolder;
+        _blobsFolder = new File(path + Gitlet.SEPARATOR + "blobs");
+        _commitsFolder = new File(path + Gitlet.SEPARATOR + "commits");
+        _refsFolder = new File(path + Gitlet.SEPARATOR + "refs");
+        _headsFolder = new File(_refsFolder + Gitlet.SEPARATOR + "heads");
+        _headPtr = new File(path + Gitlet.SEPARATOR + "HEAD");
+        _indexFolder = new File(path + Gitlet.SEPARATOR + "index");
+        _additionFolder = new File(_indexFolder + Gitlet.SEPARATOR
+                + "addition");
+        _removalFolder = new File(_indexFolder + Gitlet.SEPARATOR
+                + "removal");
+        _objectStore = new ObjectStore(gitletFolder);
+    }
+
+    /**
+     * Returns the .gitlet directory.
+     * @return .gitlet directory.
+     */
+    File gitletFolder() {
+        return _gitletFolder;
+    }
+
+    /**
+     * Returns the blobs directory.
+     * @return blobs directory.
+     */
+    File blobsFolder() {
+        return _blobsFolder;
+    }
+
+    /**
+     * Returns the commits directory.
+     * @return commits directory.
+     */
+    File commitsFolder() {
+        return _commitsFolder;
+    }
+
+    /**
+     * Returns the refs directory.
+     * @return refs directory.
+     */
+    File refsFolder() {
+        return _refsFolder;
+    }
+
+    /**
+     * Returns the heads directory.
+     * @return heads directory.
+     */
+    File headsFolder() {
+        return _headsFolder;
+    }
+
+    /**
+     * Returns the head pointer.
+     * @return Head pointer.
+     */
+    File headPtr() {
+        return _headPtr;
+    }
+
+    /**
+     * Returns the index folder used as staging area.
+     * @return Index directory.
+     */
+    File indexFolder() {
+        return _indexFolder;
+    }
+
+    /**
+     * Returns the folder of files staged for addition.
+     * @return Addition directory.
+     */
+    File additionFolder() {
+        return _additionFolder;
+    }
+
+    /**
+     * Returns the folder of files staged for removal.
+     * @return Removal directory.
+     */
+    File removalFolder() {
+        return _removalFolder;
+    }
+
+    /**
+     * Returns the object store.
+     * @return Object store.
+     */
+    ObjectStore objectStore() {
+        return _objectStore;
+    }
+
+    /**
+     * Returns the commit graph, loading it the first time it is needed.
+     * @return Commit graph.
+     */
+    synchronized CommitGraph commitGraph() {
+        if (_commitGraph == null) {
+            _commitGraph = new CommitGraph(new File(_gitletFolder,
+                    "commit-graph"), _objectStore);
+        }
+        return _commitGraph;
+    }
+
+    /**
+     * Returns the stat cache of the working and staged files, loading it
+     * the first time it is needed.
+     * @return Stat cache.
+     */
+    synchronized StatCache statCache() {
+        if (_statCache == null) {
+            _statCache = new StatCache(new File(_indexFolder, "stat-cache"));
+        }
+        return _statCache;
+    }
+
+    /**
+     * Returns the value of REF.
+     *
+     * @param ref A ref file, such as a branch or HEAD.
+     * @return Its contents, or null if it does not exist.
+     */
+    static String readRef(File ref) {
+        return ref.isFile() ? Utils.readContentsAsString(ref) : null;
+    }
+
+    /**
+     * Sets REF to VALUE if it still holds EXPECTED.
+     *
+     * @param ref A ref file.
+     * @param expected The value the change is based on; null if REF must
+     *                 not exist yet.
+     * @param value New value.
+     * @return True if REF was updated, false if it held something else.
+     */
+    static boolean updateRef(File ref, String expected, String value) {
+        try (LockFile lock = new LockFile(ref)) {
+            if (!Objects.equals(readRef(ref), expected)) {
+                return false;
+            }
+            lock.commit(value.getBytes(StandardCharsets.UTF_8));
+            return true;
+        }
+    }
+
+    /**
+     * Sets REF to VALUE, whatever it held before.
+     *
+     * @param ref A ref file.
+     * @param value New value.
+     */
+    static void writeRef(File ref, String value) {
+        try (LockFile lock = new LockFile(ref)) {
+            lock.commit(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Deletes REF if it still holds EXPECTED.
+     *
+     * @param ref A ref file.
+     * @param expected The value the deletion is based on.
+     * @return True if REF was deleted.
+     */
+    static boolean deleteRef(File ref, String expected) {
+        try (LockFile lock = new LockFile(ref)) {
+            return expected.equals(readRef(ref)) && ref.delete();
+        }
+    }
+
+    /**
+     * Commits CHANGES to the files of the head of BRANCH, with message
+     * MESSAGE, and moves BRANCH to the new commit. If another process moves
+     * BRANCH meanwhile, the changes are applied again on top of its new
+     * head, so no commit is lost; but if the commits made meanwhile changed
+     * or removed any of the files in CHANGES, the commit fails rather than
+     * overwrite their work. A merge commit, whose changes were worked out
+     * against a particular head, is not rebased: it fails instead.
+     *
+     * @param branch The branch to commit on.
+     * @param message Commit message.
+     * @param changes New blob hash of each changed file key; null for files
+     *                that are removed.
+     * @param mergeParent The commit merged in, or null.
+     * @param expected The head the changes were made against; for a commit
+     *                 that is not a merge, null stands for the head BRANCH
+     *                 has when the commit starts.
+     * @return Hash of the new commit.
+     */
+    String commit(File branch, String message,
+                  SortedMap<String, String> changes, String mergeParent,
+                  String expected) {
+        String base = expected, baseTree = null;
+        for (int attempt = 0; attempt < COMMIT_ATTEMPTS; ++attempt) {
+            String head = readRef(branch);
+            if (mergeParent != null && !head.equals(expected)) {
+                break;
+            }
+            if (base == null) {
+                base = head;
+            }
+            String tree = treeOf(head);
+            if (!head.equals(base)) {
+                if (baseTree == null) {
+                    baseTree = treeOf(base);
+                }
+                for (String key : changes.keySet()) {
+                    if (!Objects.equals(Tree.get(_objectStore, baseTree, key),
+                            Tree.get(_objectStore, tree, key))) {
+                        throw Utils.error("File %s was changed by another"
+                                + " gitlet process.", key.substring(Utils
+                                .UID_LENGTH + 1));
+                    }
+                }
+            }
+            Commit commit = new Commit(message, (mergeParent == null)
+                    ? new String[] {head} : new String[] {head, mergeParent});
+            commit.setTree(Tree.update(_objectStore, tree, changes));
+            byte[] contents = CommitCodec.encode(commit);
+            String id = Utils.sha1((Object) contents);
+            _objectStore.writeCommit(id, contents);
+            commitGraph().add(id, commit.getParents(),
+                    commit.getTimestamp().getTime());
+            if (updateRef(branch, head, id)) {
+                return id;
+            }
+        }
+        throw Utils.error("Branch %s was moved by another gitlet process.",
+                branch.getName());
+    }
+
+    /**
+     * Returns the root of the tree of commit ID.
+     *
+     * @param id A commit hash.
+     * @return Hash of its root tree node.
+     */
+    private String treeOf(String id) {
+        return CommitCodec.decode(_objectStore.readCommit(id))
+                .getTree(_objectStore);
+    }
+
+    /** The .gitlet directory. */
+    private final File _gitletFolder;
+
+    /** The blobs folder used for storing file snapshots. */
+    private final File _blobsFolder;
+
+    /** The commits folder used for storing commits. */
+    private final File _commitsFolder;
+
+    /** The refs folder used to store various pointers. */
+    private final File _refsFolder;
+
+    /** The folder which contains file(s) named after each branch. */
+    private final File _headsFolder;
+
+    /** The file which contains the full path for the active branch. */
+    private final File _headPtr;
+
+    /** The index folder used as staging area. */
+    private final File _indexFolder;
+
+    /** The folder of files staged for addition. */
+    private final File _additionFolder;
+
+    /** The folder of files staged for removal. */
+    private final File _removalFolder;
+
+    /** The object database. */
+    private final ObjectStore _objectStore;
+
+    /** The commit graph; loaded on first use. */
+    private CommitGraph _commitGraph;
+
+    /** Cached hashes of working and staged files; loaded on first use. */
+    private StatCache _statCache;
+}
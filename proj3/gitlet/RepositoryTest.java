@@ -0,0 +1,256 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RepositoryTest {
+
+    /** Number of committing processes in the stress test. */
+    private static final int PROCESSES = 4;
+
+    /** Number of commits made by each process. */
+    private static final int COMMITS = 4;
+
+    @Test
+    public void compareAndSetTest() throws IOException {
+        File ref = new File(Files.createTempDirectory("refs").toFile(), "b");
+        assertTrue(Repository.updateRef(ref, null, "one"));
+        assertFalse(Repository.updateRef(ref, null, "two"));
+        assertFalse(Repository.updateRef(ref, "two", "three"));
+        assertTrue(Repository.updateRef(ref, "one", "two"));
+        assertEquals("two", Repository.readRef(ref));
+        assertFalse(Repository.deleteRef(ref, "one"));
+        assertTrue(Repository.deleteRef(ref, "two"));
+        assertNull(Repository.readRef(ref));
+        assertFalse(new File(ref.getPath() + ".lock").exists());
+    }
+
+    /** Returns a new repository in a temporary directory whose master
+     *  branch holds just an initial commit. */
+    private static Repository newRepository() throws IOException {
+        Repository repo = new Repository(new File(Files.createTempDirectory(
+                "repository").toFile(), ".gitlet"));
+        repo.headsFolder().mkdirs();
+        repo.blobsFolder().mkdir();
+        repo.commitsFolder().mkdir();
+        Commit initial = new Commit("initial commit");
+        initial.setTree(Tree.write(repo.objectStore(), new HashMap<>()));
+        byte[] contents = CommitCodec.encode(initial);
+        String root = Utils.sha1((Object) contents);
+        repo.objectStore().writeCommit(root, contents);
+        assertTrue(Repository.updateRef(new File(repo.headsFolder(),
+                "master"), null, root));
+        return repo;
+    }
+
+    /** Returns the changes that set file NAME to blob BLOB. */
+    private static TreeMap<String, String> change(String name, String blob) {
+        TreeMap<String, String> changes = new TreeMap<>();
+        changes.put(Utils.sha1(name) + "-" + name, blob);
+        return changes;
+    }
+
+    @Test
+    public void rebaseConflictTest() throws IOException {
+        Repository repo = newRepository();
+        File branch = new File(repo.headsFolder(), "master");
+        String root = Repository.readRef(branch);
+        String first = repo.commit(branch, "a", change("a.txt",
+                Utils.sha1("a1")), null, null);
+
+        String second = repo.commit(branch, "b", change("b.txt",
+                Utils.sha1("b")), null, root);
+        assertEquals(first, CommitCodec.decode(repo.objectStore()
+                .readCommit(second)).getParents()[0]);
+        assertEquals(2, Tree.read(repo.objectStore(), CommitCodec.decode(
+                repo.objectStore().readCommit(second)).getTree(null))
+                .size());
+
+        for (String blob : new String[] {Utils.sha1("a2"), null}) {
+            try {
+                repo.commit(branch, "a again", change("a.txt", blob), null,
+                        root);
+                fail("commit overwrote a change made meanwhile");
+            } catch (GitletException e) {
+                assertEquals(second, Repository.readRef(branch));
+            }
+        }
+        repo.commit(branch, "a again", change("a.txt", Utils.sha1("a2")),
+                null, second);
+    }
+
+    @Test
+    public void unindexedCommitTest() throws IOException {
+        Repository repo = newRepository();
+        File branch = new File(repo.headsFolder(), "master");
+        String first = repo.commit(branch, "a", change("a.txt",
+                Utils.sha1("a")), null, null);
+        CommitIndex index = repo.objectStore().commitIndex();
+        assertEquals(1, index.resolve(first.substring(0, 8), 2).size());
+
+        Commit commit = new Commit("written without the index",
+                new String[] {first});
+        commit.setTree(CommitCodec.decode(repo.objectStore()
+                .readCommit(first)).getTree(null));
+        byte[] contents = CommitCodec.encode(commit);
+        String id = Utils.sha1((Object) contents);
+        Utils.writeContents(new File(repo.commitsFolder(), id),
+                (Object) Compression.encode(contents));
+        assertEquals(id, index.resolve(id.substring(0, 8), 2).get(0));
+        assertTrue(index.resolve("0000000000", 2).isEmpty());
+    }
+
+    /**
+     * Runs gitlet.Main with arguments ARGS in a new JVM whose working
+     * directory is DIR, and returns what it printed.
+     */
+    private static String gitlet(File dir, String... args)
+        throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-cp");
+        StringBuilder classPath = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path")
+                .split(File.pathSeparator)) {
+            classPath.append(classPath.length() > 0 ? File.pathSeparator
+                    : "").append(new File(entry).getAbsolutePath());
+        }
+        command.add(classPath.toString());
+        command.add(Main.class.getName());
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command).directory(dir)
+                .redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8).trim();
+        assertEquals(output, 0, process.waitFor());
+        return output;
+    }
+
+    @Test
+    public void concurrentCommittersTest() throws Exception {
+        File dir = Files.createTempDirectory("repository").toFile();
+        gitlet(dir, "init");
+        File gitlet = new File(dir, ".gitlet");
+        Repository repo = new Repository(gitlet);
+        String root = GitletUtils.lastCommitHash(repo);
+
+        List<Thread> processes = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int p = 0; p < PROCESSES; ++p) {
+            final int k = p;
+            processes.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < COMMITS; ++i) {
+                        String name = "p" + k + "-" + i + ".txt";
+                        Utils.writeContents(new File(dir, name), name);
+                        assertEquals("", gitlet(dir, "add", name));
+                        String output = gitlet(dir, "commit", name);
+                        assertTrue(output, output.isEmpty() || output
+                                .equals("No changes added to the commit."));
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread process : processes) {
+            process.start();
+        }
+        for (Thread process : processes) {
+            process.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        String head = GitletUtils.lastCommitHash(repo);
+        List<String> chain = new ArrayList<>();
+        for (String id = head; !id.equals(root); id = CommitCodec.decode(
+                repo.objectStore().readCommit(id)).getParents()[0]) {
+            chain.add(id);
+        }
+        assertTrue(chain.size() >= 1 && chain.size() <= PROCESSES * COMMITS);
+        HashMap<String, String> files = GitletUtils.lastCommit(repo)
+                .getBlobs(repo.objectStore());
+        assertEquals(PROCESSES * COMMITS, files.size());
+        for (int p = 0; p < PROCESSES; ++p) {
+            for (int i = 0; i < COMMITS; ++i) {
+                String name = "p" + p + "-" + i + ".txt";
+                String key = Utils.sha1(name) + "-" + name;
+                assertEquals(Utils.sha1(Utils.sha1(name) + key),
+                        files.get(key));
+            }
+        }
+        CommitGraph graph = repo.commitGraph();
+        assertEquals(chain.size() + 1, graph.generation(graph
+                .position(head)));
+        for (String id : chain) {
+            assertEquals(1, repo.objectStore().commitIndex().resolve(id
+                    .substring(0, 12), 2).size());
+        }
+        assertTrue(GitletUtils.stagedKeys(repo.additionFolder()).isEmpty());
+        assertTrue(GitletUtils.stagedKeys(repo.removalFolder()).isEmpty());
+        for (String name : repo.indexFolder().list()) {
+            assertFalse(name, name.startsWith(".gitlet-"));
+        }
+        for (String name : repo.headsFolder().list()) {
+            assertFalse(name, name.endsWith(".lock"));
+        }
+    }
+
+    @Test
+    public void failedCommitKeepsStagingTest() throws IOException {
+        File gitlet = new File(Files.createTempDirectory("repository")
+                .toFile(), ".gitlet");
+        Repository repo = new Repository(gitlet);
+        Gitlet commands = new Gitlet(repo);
+        commands.doInit(new String[] {"init"});
+        String head = GitletUtils.lastCommitHash(repo);
+        String added = Utils.sha1("a.txt") + "-a.txt";
+        String removed = Utils.sha1("b.txt") + "-b.txt";
+        File staged = GitletUtils.stagedFile(repo.additionFolder(), added);
+        File marker = GitletUtils.stagedFile(repo.removalFolder(), removed);
+        Utils.writeContents(staged, "a contents");
+        Utils.writeContents(marker, "");
+
+        assertTrue(repo.blobsFolder().delete());
+        Utils.writeContents(repo.blobsFolder(), "not a folder");
+        try {
+            commands.doCommit(new String[] {"commit", "a"}, null);
+            fail("commit stored a blob in a missing folder");
+        } catch (IllegalArgumentException e) {
+            assertEquals(head, GitletUtils.lastCommitHash(repo));
+            assertEquals("a contents", Utils.readContentsAsString(staged));
+            assertTrue(marker.isFile());
+            assertEquals(List.of(added),
+                    GitletUtils.stagedKeys(repo.additionFolder()));
+            for (String name : repo.indexFolder().list()) {
+                assertFalse(name, name.startsWith(".gitlet-"));
+            }
+        }
+
+        assertTrue(repo.blobsFolder().delete());
+        assertTrue(repo.blobsFolder().mkdir());
+        commands.doCommit(new String[] {"commit", "a"}, null);
+        assertFalse(head.equals(GitletUtils.lastCommitHash(repo)));
+        assertTrue(GitletUtils.stagedKeys(repo.additionFolder()).isEmpty());
+        assertTrue(GitletUtils.stagedKeys(repo.removalFolder()).isEmpty());
+        assertEquals(Utils.sha1(Utils.sha1("a contents") + added),
+                GitletUtils.lastCommit(repo).getBlob(repo.objectStore(),
+                        added));
+    }
+}
@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent cache of file content hashes, keyed by path and validated by
+ * each file's size, modification time and inode. A file whose stat data is
+ * unchanged since it was last hashed is not read again, so checking a large
+ * working directory costs about one stat per file. The entries of files
+ * that are gone are dropped whenever the cache is written back.
+ *
+ * @author Farhad Alemi
+ */
+class StatCache {
+
+    /** Magic number at the start of the cache file. */
+    static final int MAGIC = 0x47534331;
+
+    /** A file modified less than this many milliseconds before it was hashed
+     *  may have changed again within the same timestamp tick, so its entry
+     *  is never trusted. */
+    static final long RACY_WINDOW = 2000;
+
+    /**
+     * The stat cache stored in CACHEFILE.
+     *
+     * @param cacheFile The cache file; it need not exist yet.
+     */
+    StatCache(File cacheFile) {
+        _cacheFile = cacheFile;
+        _entries = new HashMap<>();
+        if (cacheFile.isFile()) {
+            load();
+        }
+    }
+
+    /**
+     * Returns the SHA-1 of the contents of FILE, reading the file only if
+     * its stat data no longer matches the cached entry.
+     *
+     * @param file A plain file.
+     * @return Hex SHA-1 of its contents.
+     */
+    String sha1(File file) {
+        String key = file.getPath();
+        Entry stat = stat(file);
+        Entry cached = _entries.get(key);
+        if (cached != null && stat != null && cached.matches(stat)) {
+            return cached._hash;
+        }
+        String hash = GitletUtils.sha1(file);
+        if (stat != null) {
+            stat._hash = hash;
+            stat._recorded = System.currentTimeMillis();
+            _entries.put(key, stat);
+            _dirty = true;
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the cache back to disk if it has changed, dropping the entries
+     * of files that no longer exist, such as removed or committed ones.
+     */
+    void save() {
+        if (!_dirty) {
+            return;
+        }
+        _entries.keySet().removeIf(path -> !new File(path).isFile());
+        File tmp = GitletUtils.tempSibling(_cacheFile);
+        try (DataOutputStream out = new DataOutputStream(new
+                BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> item : _entries.entrySet()) {
+                Entry entry = item.getValue();
+                out.writeUTF(item.getKey());
+                out.writeLong(entry._size);
+                out.writeLong(entry._mtime);
+                out.writeLong(entry._inode);
+                out.writeLong(entry._recorded);
+                out.write(GitletUtils.toRaw(entry._hash));
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        try {
+            GitletUtils.moveIntoPlace(tmp, _cacheFile);
+            _dirty = false;
+        } catch (IOException e) {
+            tmp.delete();
+        }
+    }
+
+    /** Reads the cache file; a damaged file is treated as empty. */
+    private void load() {
+        try (DataInputStream in = new DataInputStream(new
+                BufferedInputStream(Files.newInputStream(_cacheFile
+                .toPath())))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            byte[] raw = new byte[PackFile.RAW_LENGTH];
+            for (int count = in.readInt(); count > 0; count -= 1) {
+                String key = in.readUTF();
+                Entry entry = new Entry(in.readLong(), in.readLong(),
+                        in.readLong());
+                entry._recorded = in.readLong();
+                in.readFully(raw);
+                entry._hash = GitletUtils.toHex(raw, 0, raw.length);
+                _entries.put(key, entry);
+            }
+        } catch (IOException e) {
+            _entries.clear();
+        }
+    }
+
+    /**
+     * Returns the current stat data of FILE, or null if it cannot be read.
+     *
+     * @param file A file.
+     * @return Its size, modification time and inode.
+     */
+    private static Entry stat(File file) {
+        try {
+            if (_unixAttributes) {
+                try {
+                    Map<String, Object> attrs = Files.readAttributes(file
+                            .toPath(), "unix:size,lastModifiedTime,ino");
+                    return new Entry((Long) attrs.get("size"),
+                            ((FileTime) attrs.get("lastModifiedTime"))
+                                    .to(TimeUnit.NANOSECONDS),
+                            (Long) attrs.get("ino"));
+                } catch (UnsupportedOperationException
+                         | IllegalArgumentException e) {
+                    _unixAttributes = false;
+                }
+            }
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            Object key = attrs.fileKey();
+            return new Entry(attrs.size(), attrs.lastModifiedTime()
+                    .to(TimeUnit.NANOSECONDS), (key == null) ? 0
+                    : key.hashCode());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** True until the platform turns out not to support the unix attribute
+     *  view, which is the only portable way to read inode numbers. */
+    private static boolean _unixAttributes = true;
+
+    /** The cached stat data and hash of one file. */
+    private static final class Entry {
+        /**
+         * Stat data of a file.
+         *
+         * @param size Size in bytes.
+         * @param mtime Modification time in nanoseconds.
+         * @param inode Inode number, or another stable file key.
+         */
+        Entry(long size, long mtime, long inode) {
+            _size = size;
+            _mtime = mtime;
+            _inode = inode;
+        }
+
+        /**
+         * Returns true iff this cached entry can stand in for the file whose
+         * current stat data is STAT.
+         *
+         * @param stat Current stat data.
+         * @return True if the cached hash is still valid.
+         */
+        boolean matches(Entry stat) {
+            return _size == stat._size && _mtime == stat._mtime
+                    && _inode == stat._inode
+                    && TimeUnit.NANOSECONDS.toMillis(_mtime)
+                    < _recorded - RACY_WINDOW;
+        }
+
+        /** Size in bytes. */
+        private final long _size;
+
+        /** Modification time in nanoseconds. */
+        private final long _mtime;
+
+        /** Inode number. */
+        private final long _inode;
+
+        /** When the hash was computed, in milliseconds since the epoch. */
+        private long _recorded;
+
+        /** Hex SHA-1 of the contents. */
+        private String _hash;
+    }
+
+    /** The cache file. */
+    private final File _cacheFile;
+
+    /** Cached entries by path. */
+    private final HashMap<String, Entry> _entries;
+
+    /** True iff the entries differ from the cache file. */
+    private boolean _dirty;
+}
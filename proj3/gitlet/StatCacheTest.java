@@ -0,0 +1,129 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StatCacheTest {
+
+    /** Writes CONTENTS to FILE and backdates it by an hour, so that its
+     *  cache entry is not considered racy. */
+    private static void writeOld(File file, String contents) {
+        Utils.writeContents(file, contents);
+        file.setLastModified(System.currentTimeMillis() - 3600 * 1000);
+    }
+
+    @Test
+    public void unchangedStatSkipsRehashTest() throws IOException {
+        File dir = Files.createTempDirectory("statcache").toFile();
+        File file = new File(dir, "f.txt");
+        File cacheFile = new File(dir, "stat-cache");
+        writeOld(file, "abc");
+        long mtime = file.lastModified();
+
+        StatCache cache = new StatCache(cacheFile);
+        assertEquals(Utils.sha1("abc"), cache.sha1(file));
+        cache.save();
+
+        Utils.writeContents(file, "xyz");
+        file.setLastModified(mtime);
+        assertEquals(Utils.sha1("abc"), new StatCache(cacheFile).sha1(file));
+
+        writeOld(file, "wxyz");
+        assertEquals(Utils.sha1("wxyz"), new StatCache(cacheFile).sha1(file));
+    }
+
+    @Test
+    public void windowedHashTest() throws IOException {
+        File dir = Files.createTempDirectory("statcache").toFile();
+        File file = new File(dir, "large.bin");
+        byte[] contents = new byte[5 * GitletUtils.MAP_THRESHOLD + 123];
+        new Random(61).nextBytes(contents);
+        Utils.writeContents(file, (Object) contents);
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            String expected = Utils.sha1((Object) contents);
+            for (int window : new int[] {GitletUtils.MAP_THRESHOLD, 100003,
+                contents.length, GitletUtils.MAP_WINDOW}) {
+                assertEquals("window " + window, expected,
+                        GitletUtils.sha1(file, window));
+            }
+            assertEquals(expected, GitletUtils.sha1(file));
+            try {
+                GitletUtils.map(channel, 0, Integer.MAX_VALUE + 1L);
+                fail("mapped more than a buffer can hold");
+            } catch (GitletException e) {
+                assertTrue(e.getMessage().startsWith("File too large"));
+            }
+        } finally {
+            file.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void deletedFileIsForgottenTest() throws IOException {
+        File dir = Files.createTempDirectory("statcache").toFile();
+        File kept = new File(dir, "kept.txt");
+        File gone = new File(dir, "gone.txt");
+        File cacheFile = new File(dir, "stat-cache");
+        writeOld(kept, "abc");
+        writeOld(gone, "def");
+        StatCache cache = new StatCache(cacheFile);
+        cache.sha1(kept);
+        cache.sha1(gone);
+        cache.save();
+        assertTrue(Utils.readContentsAsString(cacheFile)
+                .contains(gone.getPath()));
+
+        gone.delete();
+        writeOld(kept, "abcd");
+        cache = new StatCache(cacheFile);
+        assertEquals(Utils.sha1("abcd"), cache.sha1(kept));
+        cache.save();
+        assertFalse(Utils.readContentsAsString(cacheFile)
+                .contains(gone.getPath()));
+    }
+
+    @Test
+    public void saveLeavesNoTempFileTest() throws IOException {
+        File dir = Files.createTempDirectory("statcache").toFile();
+        File file = new File(dir, "f.txt");
+        File cacheFile = new File(dir, "stat-cache");
+        writeOld(file, "abc");
+        StatCache first = new StatCache(cacheFile);
+        StatCache second = new StatCache(cacheFile);
+        first.sha1(file);
+        second.sha1(file);
+        first.save();
+        second.save();
+        String[] names = dir.list();
+        Arrays.sort(names);
+        assertArrayEquals(new String[] {"f.txt", "stat-cache"}, names);
+        assertEquals(Utils.sha1("abc"), new StatCache(cacheFile).sha1(file));
+    }
+
+    @Test
+    public void racyEntryIsRehashedTest() throws IOException {
+        File dir = Files.createTempDirectory("statcache").toFile();
+        File file = new File(dir, "f.txt");
+        StatCache cache = new StatCache(new File(dir, "stat-cache"));
+
+        Utils.writeContents(file, "abc");
+        assertEquals(Utils.sha1("abc"), cache.sha1(file));
+        long mtime = file.lastModified();
+        Utils.writeContents(file, "xyz");
+        file.setLastModified(mtime);
+        assertEquals(Utils.sha1("xyz"), cache.sha1(file));
+    }
+}
@@ -0,0 +1,222 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends the history of a commit from one object store to another, as push
+ * and fetch do. The sender first negotiates what to send: it walks back from
+ * the wanted commit through all parents and stops at every commit the
+ * receiver already has. It then collects the objects of the missing commits
+ * that the receiver lacks, skipping every tree node the receiver has along
+ * with everything below it, and each object is sent once, whichever commits
+ * share it. All of them are written to the receiver as one pack segment, in
+ * their stored, compressed form, so a fetch after one small commit moves
+ * only that commit's new objects.
+ * <p>
+ * A clone may limit the transfer to the DEPTH generations nearest the
+ * wanted commit, in which case the commits whose parents were left out
+ * become the receiver's shallow edge. It may also leave out blobs, which a
+ * partial clone fetches later as it needs them.
+ *
+ * @author Farhad Alemi
+ */
+class Transfer implements Tree.Nodes {
+
+    /**
+     * A transfer from store FROM to store TO.
+     *
+     * @param from Sending store.
+     * @param to Receiving store.
+     */
+    Transfer(ObjectStore from, ObjectStore to) {
+        this(from, to, 0, true);
+    }
+
+    /**
+     * A transfer from store FROM to store TO of at most DEPTH generations
+     * of history, or all of it if DEPTH is 0, and of blobs only if BLOBS.
+     *
+     * @param from Sending store.
+     * @param to Receiving store.
+     * @param depth Number of generations to send; 0 for all.
+     * @param blobs False if commits and trees are sent without blobs.
+     */
+    Transfer(ObjectStore from, ObjectStore to, int depth, boolean blobs) {
+        _from = from;
+        _to = to;
+        _depth = depth;
+        _blobs = blobs;
+        _entries = new ArrayList<>();
+        _sent = new HashSet<>();
+        _shallow = new ArrayList<>();
+    }
+
+    /**
+     * Sends commit HEAD and every ancestor of it that the receiver lacks,
+     * along with their trees and blobs.
+     *
+     * @param head Full hash of the wanted commit.
+     * @return Number of objects sent.
+     */
+    int send(String head) {
+        for (String id : missingCommits(head)) {
+            Commit commit = CommitCodec.decode(_from.readCommit(id));
+            if (commit.hasTree()) {
+                Tree.copy(_from, this, commit.getTree(_from), _blobs
+                        ? this::addBlob : (key, blob) -> { });
+            } else if (_blobs && commit.getBlobs(_from) != null) {
+                for (Map.Entry<String, String> blob
+                        : commit.getBlobs(_from).entrySet()) {
+                    addBlob(blob.getKey(), blob.getValue());
+                }
+            }
+            add(id, ObjectStore.COMMIT, null);
+        }
+        _to.writePack(_entries);
+        _to.addShallow(_shallow);
+        return _entries.size();
+    }
+
+    /**
+     * Returns the commits sent without their parents, because of the depth
+     * limit or because the sender is shallow there; the receiver records
+     * them as its shallow edge.
+     *
+     * @return Full commit hashes.
+     */
+    List<String> shallow() {
+        return _shallow;
+    }
+
+    @Override
+    public byte[] readTree(String id) {
+        return _from.readTree(id);
+    }
+
+    @Override
+    public void writeTree(String id, byte[] contents) {
+        add(id, ObjectStore.TREE, null);
+    }
+
+    @Override
+    public boolean hasTree(String id) {
+        return _sent.contains(id) || _to.hasTree(id);
+    }
+
+    /**
+     * Returns HEAD and all its ancestors that the receiver does not have,
+     * following every parent. The receiver has all ancestors of each commit
+     * it has, so the walk stops there. Under a depth limit the walk goes
+     * breadth first, so that each commit is reached by its shortest path,
+     * and stops at that depth.
+     *
+     * @param head Full hash of the wanted commit.
+     * @return Missing commit hashes.
+     */
+    private List<String> missingCommits(String head) {
+        List<String> missing = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        HashMap<String, Integer> depths = new HashMap<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(head);
+        depths.put(head, 1);
+        while (!pending.isEmpty()) {
+            String id = pending.pop();
+            if (!seen.add(id) || _to.hasCommit(id)) {
+                continue;
+            }
+            byte[] contents = _from.readCommit(id);
+            if (contents == null) {
+                throw Utils.error("Missing commit %s.", id);
+            }
+            missing.add(id);
+            String[] parents = CommitCodec.decode(contents).getParents();
+            int depth = depths.get(id);
+            if (parents != null && (depth == _depth
+                    || _from.isShallow(id))) {
+                _shallow.add(id);
+            } else if (parents != null) {
+                for (String parent : parents) {
+                    depths.putIfAbsent(parent, depth + 1);
+                    if (_depth > 0) {
+                        pending.addLast(parent);
+                    } else {
+                        pending.push(parent);
+                    }
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Queues blob ID of the file with key KEY unless the receiver has it or
+     * it is already queued. A chunked blob is sent as its manifest and the
+     * chunks the receiver lacks.
+     *
+     * @param key Filename's SHA1, a dash and the file name.
+     * @param id Blob hash.
+     */
+    private void addBlob(String key, String id) {
+        String fileName = key.substring(Utils.UID_LENGTH + 1);
+        if (_sent.contains(id) || _to.hasBlob(id, fileName)) {
+            return;
+        }
+        _from.fetchIfPromised(id, fileName);
+        byte[] manifest = _from.readManifest(id);
+        if (manifest == null) {
+            add(id, ObjectStore.BLOB, fileName);
+            return;
+        }
+        for (String chunk : ObjectStore.manifestChunks(manifest)) {
+            if (!_sent.contains(chunk) && !_to.hasChunk(chunk)) {
+                add(chunk, ObjectStore.CHUNK, null);
+            }
+        }
+        add(id, ObjectStore.MANIFEST, null);
+    }
+
+    /**
+     * Queues object ID of type TYPE as stored by the sender.
+     *
+     * @param id Object hash.
+     * @param type Object type.
+     * @param fileName For blobs, the name of the file the blob was made
+     *                 from.
+     */
+    private void add(String id, byte type, String fileName) {
+        PackFile.Entry entry = _from.storedEntry(id, type, fileName);
+        if (entry == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        _sent.add(id);
+        _entries.add(entry);
+    }
+
+    /** Sending store. */
+    private final ObjectStore _from;
+
+    /** Receiving store. */
+    private final ObjectStore _to;
+
+    /** Number of generations of history to send; 0 for all. */
+    private final int _depth;
+
+    /** False if blobs are left out. */
+    private final boolean _blobs;
+
+    /** Commits sent without their parents. */
+    private final List<String> _shallow;
+
+    /** Objects to send. */
+    private final List<PackFile.Entry> _entries;
+
+    /** Hashes of the objects to send. */
+    private final HashSet<String> _sent;
+}
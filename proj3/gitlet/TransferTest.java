@@ -0,0 +1,96 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TransferTest {
+
+    /**
+     * Stores a commit with MESSAGE, parent PARENT and files NAMES in STORE,
+     * whose file contents are their names followed by SUFFIX.
+     */
+    private static String commit(ObjectStore store, File dir, String message,
+                                 String parent, String suffix,
+                                 String... names) {
+        TreeMap<String, String> files = new TreeMap<>();
+        for (String name : names) {
+            File source = new File(dir, "source");
+            Utils.writeContents(source, name + suffix);
+            String blob = Utils.sha1(name + suffix);
+            store.storeBlob(blob, name, source);
+            files.put(Utils.sha1(name) + "-" + name, blob);
+        }
+        Commit commit = new Commit(message, parent == null ? null
+                : new String[] {parent}, new Date(0));
+        commit.setTree(Tree.write(store, files));
+        byte[] contents = CommitCodec.encode(commit);
+        String id = Utils.sha1((Object) contents);
+        store.writeCommit(id, contents);
+        return id;
+    }
+
+    private static ObjectStore store(File dir, String name) {
+        File gitlet = new File(new File(dir, name), ".gitlet");
+        new File(gitlet, "blobs").mkdirs();
+        new File(gitlet, "commits").mkdirs();
+        return new ObjectStore(gitlet);
+    }
+
+    @Test
+    public void sendsOnlyMissingObjectsTest() throws IOException {
+        File dir = Files.createTempDirectory("transfer").toFile();
+        ObjectStore from = store(dir, "from"), to = store(dir, "to");
+        String[] names = new String[200];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = "f" + i + ".txt";
+        }
+        String first = commit(from, dir, "first", null, "", names);
+        int all = new Transfer(from, to).send(first);
+        assertTrue(all > names.length + 1);
+        assertTrue(to.hasCommit(first));
+
+        names[7] = "changed.txt";
+        String second = commit(from, dir, "second", first, "", names);
+        int sent = new Transfer(from, to).send(second);
+        assertTrue(sent < 10);
+        assertTrue(to.hasCommit(second));
+        assertEquals("changed.txt", new String(to.readBlob(
+                Utils.sha1("changed.txt"), "changed.txt")));
+        assertEquals(0, new Transfer(from, to).send(second));
+    }
+
+    @Test
+    public void shallowPartialTransferTest() throws IOException {
+        File dir = Files.createTempDirectory("transfer").toFile();
+        ObjectStore from = store(dir, "from"), to = store(dir, "to");
+        String first = commit(from, dir, "first", null, "1", "a.txt");
+        String second = commit(from, dir, "second", first, "2", "a.txt");
+        String third = commit(from, dir, "third", second, "3", "a.txt");
+        new Transfer(from, to, 2, false).send(third);
+        assertTrue(to.hasCommit(third) && to.hasCommit(second));
+        assertFalse(to.hasCommit(first));
+        assertTrue(to.isShallow(second));
+        assertFalse(to.isShallow(third));
+        assertFalse(to.hasBlob(Utils.sha1("a.txt2"), "a.txt"));
+
+        File gitlet = new File(new File(dir, "to"), ".gitlet");
+        new Config(gitlet).set(Config.PROMISOR, "origin");
+        new File(gitlet, "refs").mkdir();
+        Utils.writeContents(new File(new File(gitlet, "refs"), "origin"),
+                new File(new File(dir, "from"), ".gitlet").getPath());
+        ObjectStore partial = new ObjectStore(gitlet);
+        assertTrue(partial.isShallow(second));
+        assertEquals("a.txt2", new String(partial.readBlob(
+                Utils.sha1("a.txt2"), "a.txt")));
+        assertTrue(to.hasBlob(Utils.sha1("a.txt2"), "a.txt"));
+    }
+}
@@ -0,0 +1,555 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Tree objects: the set of files tracked by a commit, stored as a trie of
+ * immutable, content-addressed nodes. Files are keyed as everywhere else
+ * by SHA-1 of the name, a dash, and the name. A set of at most MAX_LEAF
+ * files is one leaf node; a larger set is an inner node whose sixteen
+ * children hold the files whose keys have each possible hex digit at the
+ * next position. The shape of a tree depends only on the files in it, so
+ * equal sets of files always have the same root, and two trees can be
+ * compared by skipping every pair of children with equal hashes.
+ * <p>
+ * A commit that changes a few files writes only the nodes on the paths to
+ * those files, and shares all others with its parent.
+ *
+ * @author Farhad Alemi
+ */
+class Tree {
+
+    /** Largest number of files kept in one leaf node. */
+    static final int MAX_LEAF = 64;
+
+    /** Number of children of an inner node. */
+    static final int FANOUT = 16;
+
+    /** Kind byte of leaf nodes. */
+    private static final byte LEAF = 1;
+
+    /** Kind byte of inner nodes. */
+    private static final byte INNER = 2;
+
+    /** Somewhere tree nodes can be read from and written to. */
+    interface Nodes {
+        /**
+         * Returns the bytes of node ID, or null if it is not stored.
+         *
+         * @param id Node hash.
+         * @return Node bytes.
+         */
+        byte[] readTree(String id);
+
+        /**
+         * Stores CONTENTS as node ID.
+         *
+         * @param id SHA-1 of CONTENTS.
+         * @param contents Node bytes.
+         */
+        void writeTree(String id, byte[] contents);
+
+        /**
+         * Returns true iff node ID is stored.
+         *
+         * @param id Node hash.
+         * @return True if present.
+         */
+        boolean hasTree(String id);
+    }
+
+    /**
+     * Stores the tree holding FILES in NODES and returns its root.
+     *
+     * @param nodes Node storage.
+     * @param files Blob hashes by file key.
+     * @return Hash of the root node.
+     */
+    static String write(Nodes nodes, Map<String, String> files) {
+        TreeMap<String, String> sorted = new TreeMap<>(files);
+        String[] keys = sorted.keySet().toArray(new String[0]);
+        String[] blobs = sorted.values().toArray(new String[0]);
+        return build(nodes, keys, blobs, 0, keys.length, 0);
+    }
+
+    /**
+     * Stores the tree obtained from tree ROOT by applying CHANGES, and
+     * returns its root. Only the nodes on the paths to the changed files
+     * are written.
+     *
+     * @param nodes Node storage.
+     * @param root Hash of the root node of the old tree.
+     * @param changes New blob hashes by file key; a null hash removes the
+     *                file.
+     * @return Hash of the root node of the new tree.
+     */
+    static String update(Nodes nodes, String root,
+                         SortedMap<String, String> changes) {
+        if (changes.isEmpty()) {
+            return root;
+        }
+        String[] keys = changes.keySet().toArray(new String[0]);
+        String[] blobs = changes.values().toArray(new String[0]);
+        return update(nodes, root, keys, blobs, 0, keys.length, 0)._id;
+    }
+
+    /**
+     * Returns all files in tree ROOT.
+     *
+     * @param nodes Node storage.
+     * @param root Hash of the root node.
+     * @return Blob hashes by file key.
+     */
+    static HashMap<String, String> read(Nodes nodes, String root) {
+        Node node = node(nodes, root);
+        HashMap<String, String> files = new HashMap<>(Math.max(16,
+                node._count * 4 / 3 + 1));
+        collect(nodes, node, files);
+        return files;
+    }
+
+    /**
+     * Returns the blob hash of file KEY in tree ROOT, reading only the nodes
+     * on the path to it.
+     *
+     * @param nodes Node storage.
+     * @param root Hash of the root node.
+     * @param key File key.
+     * @return Blob hash, or null if the tree does not hold the file.
+     */
+    static String get(Nodes nodes, String root, String key) {
+        String id = root;
+        for (int depth = 0; id != null; ++depth) {
+            Node node = node(nodes, id);
+            if (node.isLeaf()) {
+                int pos = Arrays.binarySearch(node._keys, key);
+                return (pos < 0) ? null : node._blobs[pos];
+            }
+            id = node._children[digit(key, depth)];
+        }
+        return null;
+    }
+
+    /**
+     * Adds to CHANGES every file whose blob differs between trees FROM and
+     * TO, mapped to its blob hash in FROM and in TO; a null hash means the
+     * tree does not hold the file. Subtrees that are equal in both trees are
+     * not read.
+     *
+     * @param nodes Node storage.
+     * @param from Hash of the root node of the first tree, or null if empty.
+     * @param to Hash of the root node of the second tree, or null if empty.
+     * @param changes Receives the differences.
+     */
+    static void diff(Nodes nodes, String from, String to,
+                     Map<String, String[]> changes) {
+        if (Objects.equals(from, to)) {
+            return;
+        }
+        Node a = (from == null) ? Node.EMPTY : node(nodes, from);
+        Node b = (to == null) ? Node.EMPTY : node(nodes, to);
+        if (!a.isLeaf() && !b.isLeaf()) {
+            for (int i = 0; i < FANOUT; ++i) {
+                diff(nodes, a._children[i], b._children[i], changes);
+            }
+            return;
+        }
+        HashMap<String, String> aFiles = new HashMap<>();
+        HashMap<String, String> bFiles = new HashMap<>();
+        collect(nodes, a, aFiles);
+        collect(nodes, b, bFiles);
+        for (Map.Entry<String, String> file : aFiles.entrySet()) {
+            String other = bFiles.get(file.getKey());
+            if (!file.getValue().equals(other)) {
+                changes.put(file.getKey(), new String[]{file.getValue(),
+                    other});
+            }
+        }
+        for (Map.Entry<String, String> file : bFiles.entrySet()) {
+            if (!aFiles.containsKey(file.getKey())) {
+                changes.put(file.getKey(), new String[]{null,
+                    file.getValue()});
+            }
+        }
+    }
+
+    /**
+     * Copies tree ROOT from FROM to TO, skipping every subtree TO already
+     * has, and passes the key and blob hash of each file in the copied
+     * leaves to BLOBS. Children are stored before their parents, so a
+     * node that is present always has all its descendants.
+     *
+     * @param from Source storage.
+     * @param to Destination storage.
+     * @param root Hash of the root node.
+     * @param blobs Called for each file of each copied leaf.
+     */
+    static void copy(Nodes from, Nodes to, String root,
+                     BiConsumer<String, String> blobs) {
+        if (to.hasTree(root)) {
+            return;
+        }
+        Node node = node(from, root);
+        if (node.isLeaf()) {
+            for (int i = 0; i < node._keys.length; ++i) {
+                blobs.accept(node._keys[i], node._blobs[i]);
+            }
+        } else {
+            for (String child : node._children) {
+                if (child != null) {
+                    copy(from, to, child, blobs);
+                }
+            }
+        }
+        to.writeTree(root, from.readTree(root));
+    }
+
+    /**
+     * Stores the tree at depth DEPTH holding files KEYS[LO .. HI - 1], whose
+     * blob hashes are BLOBS[LO .. HI - 1], and returns its root.
+     *
+     * @param nodes Node storage.
+     * @param keys File keys in ascending order.
+     * @param blobs Blob hashes.
+     * @param lo First file.
+     * @param hi One past the last file.
+     * @param depth Number of key digits consumed by the ancestors.
+     * @return Hash of the root node.
+     */
+    private static String build(Nodes nodes, String[] keys, String[] blobs,
+                                int lo, int hi, int depth) {
+        if (hi - lo <= MAX_LEAF) {
+            return store(nodes, encodeLeaf(keys, blobs, lo, hi));
+        }
+        String[] children = new String[FANOUT];
+        for (int start = lo, end; start < hi; start = end) {
+            int digit = digit(keys[start], depth);
+            end = start + 1;
+            while (end < hi && digit(keys[end], depth) == digit) {
+                end += 1;
+            }
+            children[digit] = build(nodes, keys, blobs, start, end,
+                    depth + 1);
+        }
+        return store(nodes, encodeInner(hi - lo, children));
+    }
+
+    /**
+     * Applies the changes KEYS[LO .. HI - 1], BLOBS[LO .. HI - 1] to the
+     * tree at depth DEPTH rooted at ID, and stores the result.
+     *
+     * @param nodes Node storage.
+     * @param id Hash of the root node, or null if the tree is empty.
+     * @param keys Changed file keys in ascending order.
+     * @param blobs New blob hashes; null removes a file.
+     * @param lo First change.
+     * @param hi One past the last change.
+     * @param depth Number of key digits consumed by the ancestors.
+     * @return The new root, and the file counts before and after.
+     */
+    private static Ref update(Nodes nodes, String id, String[] keys,
+                              String[] blobs, int lo, int hi, int depth) {
+        Node node = (id == null) ? Node.EMPTY : node(nodes, id);
+        if (node.isLeaf()) {
+            TreeMap<String, String> files = new TreeMap<>();
+            collect(nodes, node, files);
+            for (int i = lo; i < hi; ++i) {
+                if (blobs[i] == null) {
+                    files.remove(keys[i]);
+                } else {
+                    files.put(keys[i], blobs[i]);
+                }
+            }
+            return new Ref(build(nodes, files.keySet().toArray(new
+                    String[0]), files.values().toArray(new String[0]), 0,
+                    files.size(), depth), node._count, files.size());
+        }
+
+        String[] children = node._children.clone();
+        int count = node._count;
+        for (int start = lo, end; start < hi; start = end) {
+            int digit = digit(keys[start], depth);
+            end = start + 1;
+            while (end < hi && digit(keys[end], depth) == digit) {
+                end += 1;
+            }
+            Ref child = update(nodes, children[digit], keys, blobs, start,
+                    end, depth + 1);
+            count += child._count - child._oldCount;
+            children[digit] = (child._count == 0) ? null : child._id;
+        }
+        if (count <= MAX_LEAF) {
+            TreeMap<String, String> files = new TreeMap<>();
+            for (String child : children) {
+                if (child != null) {
+                    collect(nodes, node(nodes, child), files);
+                }
+            }
+            return new Ref(store(nodes, encodeLeaf(files.keySet().toArray(
+                    new String[0]), files.values().toArray(new String[0]), 0,
+                    files.size())), node._count, count);
+        }
+        return new Ref(store(nodes, encodeInner(count, children)),
+                node._count, count);
+    }
+
+    /**
+     * Adds every file below NODE to FILES.
+     *
+     * @param nodes Node storage.
+     * @param node A node.
+     * @param files Receives blob hashes by file key.
+     */
+    private static void collect(Nodes nodes, Node node,
+                                Map<String, String> files) {
+        if (node.isLeaf()) {
+            for (int i = 0; i < node._keys.length; ++i) {
+                files.put(node._keys[i], node._blobs[i]);
+            }
+        } else {
+            for (String child : node._children) {
+                if (child != null) {
+                    collect(nodes, node(nodes, child), files);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes node CONTENTS to NODES unless it is there already.
+     *
+     * @param nodes Node storage.
+     * @param contents Encoded node.
+     * @return Its hash.
+     */
+    private static String store(Nodes nodes, byte[] contents) {
+        String id = Utils.sha1((Object) contents);
+        if (!nodes.hasTree(id)) {
+            nodes.writeTree(id, contents);
+        }
+        return id;
+    }
+
+    /**
+     * Returns node ID, decoding it the first time it is read.
+     *
+     * @param nodes Node storage.
+     * @param id Node hash.
+     * @return The node.
+     */
+    private static Node node(Nodes nodes, String id) {
+        Node node = CACHE.get(id);
+        if (node == null) {
+            byte[] contents = nodes.readTree(id);
+            if (contents == null) {
+                throw Utils.error("Missing tree %s.", id);
+            }
+            node = decode(contents);
+            CACHE.put(id, node);
+        }
+        return node;
+    }
+
+    /**
+     * Returns the leaf node holding files KEYS[LO .. HI - 1] with blob
+     * hashes BLOBS[LO .. HI - 1]: its kind, the file count, and for each
+     * file the raw hash of its name, the name and the raw blob hash.
+     *
+     * @param keys File keys in ascending order.
+     * @param blobs Blob hashes.
+     * @param lo First file.
+     * @param hi One past the last file.
+     * @return Encoded node.
+     */
+    private static byte[] encodeLeaf(String[] keys, String[] blobs, int lo,
+                                     int hi) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(result)) {
+            out.writeByte(LEAF);
+            out.writeInt(hi - lo);
+            for (int i = lo; i < hi; ++i) {
+                byte[] name = keys[i].substring(Utils.UID_LENGTH + 1)
+                        .getBytes(StandardCharsets.UTF_8);
+                out.write(GitletUtils.toRaw(keys[i].substring(0,
+                        Utils.UID_LENGTH)));
+                out.writeShort(name.length);
+                out.write(name);
+                out.write(GitletUtils.toRaw(blobs[i]));
+            }
+        } catch (IOException e) {
+            throw Utils.error("Internal error writing tree.");
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Returns the inner node with children CHILDREN holding COUNT files in
+     * all: its kind, the file count, a bit mask of the present children,
+     * and the raw hash of each of them.
+     *
+     * @param count Number of files below the node.
+     * @param children Child hashes by key digit; null for no child.
+     * @return Encoded node.
+     */
+    private static byte[] encodeInner(int count, String[] children) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(result)) {
+            int mask = 0;
+            for (int i = 0; i < FANOUT; ++i) {
+                mask |= (children[i] == null) ? 0 : 1 << i;
+            }
+            out.writeByte(INNER);
+            out.writeInt(count);
+            out.writeShort(mask);
+            for (String child : children) {
+                if (child != null) {
+                    out.write(GitletUtils.toRaw(child));
+                }
+            }
+        } catch (IOException e) {
+            throw Utils.error("Internal error writing tree.");
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Decodes the node stored as CONTENTS.
+     *
+     * @param contents Encoded node.
+     * @return The node.
+     */
+    private static Node decode(byte[] contents) {
+        try (DataInputStream in = new DataInputStream(new
+                ByteArrayInputStream(contents))) {
+            byte kind = in.readByte();
+            int count = in.readInt();
+            byte[] raw = new byte[PackFile.RAW_LENGTH];
+            if (kind == LEAF) {
+                String[] keys = new String[count];
+                String[] blobs = new String[count];
+                for (int i = 0; i < count; ++i) {
+                    in.readFully(raw);
+                    String nameHash = GitletUtils.toHex(raw, 0, raw.length);
+                    byte[] name = new byte[in.readUnsignedShort()];
+                    in.readFully(name);
+                    keys[i] = nameHash + "-" + new String(name,
+                            StandardCharsets.UTF_8);
+                    in.readFully(raw);
+                    blobs[i] = GitletUtils.toHex(raw, 0, raw.length);
+                }
+                return new Node(count, keys, blobs, null);
+            } else if (kind == INNER) {
+                int mask = in.readUnsignedShort();
+                String[] children = new String[FANOUT];
+                for (int i = 0; i < FANOUT; ++i) {
+                    if ((mask & (1 << i)) != 0) {
+                        in.readFully(raw);
+                        children[i] = GitletUtils.toHex(raw, 0, raw.length);
+                    }
+                }
+                return new Node(count, null, null, children);
+            }
+        } catch (IOException e) {
+            throw Utils.error("Corrupt tree.");
+        }
+        throw Utils.error("Corrupt tree.");
+    }
+
+    /**
+     * Returns the value of the hex digit at position DEPTH of KEY.
+     *
+     * @param key File key.
+     * @param depth Digit position.
+     * @return A value in 0 .. FANOUT - 1.
+     */
+    private static int digit(String key, int depth) {
+        char c = key.charAt(depth);
+        return (c <= '9') ? c - '0' : c - 'a' + 10;
+    }
+
+    /** A decoded node. */
+    private static final class Node {
+        /** The node of the empty tree. */
+        static final Node EMPTY = new Node(0, new String[0], new String[0],
+                null);
+
+        /**
+         * A node holding COUNT files; a leaf if CHILDREN is null.
+         *
+         * @param count Number of files below the node.
+         * @param keys File keys of a leaf, in ascending order.
+         * @param blobs Blob hashes of a leaf.
+         * @param children Child hashes of an inner node by key digit.
+         */
+        Node(int count, String[] keys, String[] blobs, String[] children) {
+            _count = count;
+            _keys = keys;
+            _blobs = blobs;
+            _children = children;
+        }
+
+        /**
+         * Returns true iff this is a leaf.
+         * @return True for leaves.
+         */
+        boolean isLeaf() {
+            return _children == null;
+        }
+
+        /** Number of files below this node. */
+        private final int _count;
+
+        /** File keys of a leaf, in ascending order. */
+        private final String[] _keys;
+
+        /** Blob hashes of a leaf. */
+        private final String[] _blobs;
+
+        /** Child hashes of an inner node by key digit; null for none. */
+        private final String[] _children;
+    }
+
+    /** The result of updating a subtree. */
+    private static final class Ref {
+        /**
+         * The subtree now rooted at ID, which held OLDCOUNT files before
+         * the update and COUNT after.
+         *
+         * @param id Hash of the new root.
+         * @param oldCount Files before.
+         * @param count Files after.
+         */
+        Ref(String id, int oldCount, int count) {
+            _id = id;
+            _oldCount = oldCount;
+            _count = count;
+        }
+
+        /** Hash of the new root. */
+        private final String _id;
+
+        /** Files before the update. */
+        private final int _oldCount;
+
+        /** Files after the update. */
+        private final int _count;
+    }
+
+    /** Nodes decoded so far, by hash. Nodes never change, so they can be
+     *  shared by every tree that contains them, in any thread. */
+    private static final ConcurrentHashMap<String, Node> CACHE =
+            new ConcurrentHashMap<>();
+}
@@ -0,0 +1,96 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TreeTest {
+
+    /** Tree nodes kept in memory. */
+    private static class Nodes implements Tree.Nodes {
+        @Override
+        public byte[] readTree(String id) {
+            return _nodes.get(id);
+        }
+
+        @Override
+        public void writeTree(String id, byte[] contents) {
+            _nodes.put(id, contents);
+        }
+
+        @Override
+        public boolean hasTree(String id) {
+            return _nodes.containsKey(id);
+        }
+
+        /** Stored nodes by hash. */
+        private final HashMap<String, byte[]> _nodes = new HashMap<>();
+    }
+
+    /** Returns N files keyed as in commits, with blobs of version V. */
+    private static HashMap<String, String> files(int n, String v) {
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < n; ++i) {
+            files.put(CommitCodec.blobKey("f" + i), Utils.sha1("f" + i, v));
+        }
+        return files;
+    }
+
+    @Test
+    public void updateTest() {
+        Nodes nodes = new Nodes();
+        HashMap<String, String> files = files(1000, "v1");
+        String root = Tree.write(nodes, files);
+        assertEquals(files, Tree.read(nodes, root));
+
+        String changed = CommitCodec.blobKey("f7");
+        String removed = CommitCodec.blobKey("f8");
+        String added = CommitCodec.blobKey("new");
+        TreeMap<String, String> changes = new TreeMap<>();
+        changes.put(changed, Utils.sha1("f7", "v2"));
+        changes.put(removed, null);
+        changes.put(added, Utils.sha1("new", "v1"));
+        int stored = nodes._nodes.size();
+        String updated = Tree.update(nodes, root, changes);
+        assertTrue(nodes._nodes.size() - stored < 10);
+
+        files.put(changed, Utils.sha1("f7", "v2"));
+        files.remove(removed);
+        files.put(added, Utils.sha1("new", "v1"));
+        assertEquals(files, Tree.read(nodes, updated));
+        assertEquals(Tree.write(nodes, files), updated);
+        assertEquals(Utils.sha1("f7", "v2"), Tree.get(nodes, updated,
+                changed));
+        assertNull(Tree.get(nodes, updated, removed));
+
+        HashMap<String, String[]> diff = new HashMap<>();
+        Tree.diff(nodes, root, updated, diff);
+        assertEquals(3, diff.size());
+        assertArrayEquals(new String[]{Utils.sha1("f7", "v1"),
+            Utils.sha1("f7", "v2")}, diff.get(changed));
+        assertArrayEquals(new String[]{Utils.sha1("f8", "v1"), null},
+                diff.get(removed));
+        assertArrayEquals(new String[]{null, Utils.sha1("new", "v1")},
+                diff.get(added));
+    }
+
+    @Test
+    public void shrinkTest() {
+        Nodes nodes = new Nodes();
+        HashMap<String, String> files = files(200, "v1");
+        String root = Tree.write(nodes, files);
+        TreeMap<String, String> changes = new TreeMap<>();
+        for (int i = 10; i < 200; ++i) {
+            changes.put(CommitCodec.blobKey("f" + i), null);
+            files.remove(CommitCodec.blobKey("f" + i));
+        }
+        assertEquals(Tree.write(nodes, files), Tree.update(nodes, root,
+                changes));
+    }
+}
@@ -11,7 +11,14 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class, CommitTest.class));
+        System.exit(textui.runClasses(UnitTest.class, CommitTest.class,
+                CommitGraphTest.class, StatCacheTest.class,
+                ChunkerTest.class, CompressionTest.class,
+                CommitCodecTest.class, TreeTest.class,
+                MaterializerTest.class, RecordIndexTest.class,
+                TransferTest.class, RepositoryTest.class, DiffTest.class,
+                RenamesTest.class, CommitHeadersTest.class,
+                MetricsTest.class, WorkTreeTest.class));
     }
 
     /** A dummy test to avoid complaint. */
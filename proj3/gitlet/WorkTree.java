@@ -0,0 +1,323 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The files of a working directory and all its subdirectories, as paths
+ * relative to it with '/' between names. The .gitlet directory is left out,
+ * and so is every subdirectory holding a .gitlet directory of its own.
+ * Symbolic links are not followed: like any other entry that is neither a
+ * plain file nor a directory, they are left out.
+ * <p>
+ * Listing every directory on each status would cost one directory read per
+ * directory, so the listing of each directory is cached, persistently,
+ * together with the directory's modification time. Adding, removing or
+ * renaming an entry changes that time, so a directory whose time still
+ * matches is not read again; only its time is looked up. Like StatCache,
+ * a directory changed less than RACY_WINDOW before it was listed is never
+ * trusted. A walk with an empty cache, which must read every directory,
+ * reads them with a pool of threads, since it mostly waits on the disk.
+ *
+ * @author Farhad Alemi
+ */
+class WorkTree {
+
+    /** Magic number at the start of the cache file. */
+    static final int MAGIC = 0x47574331;
+
+    /** Number of threads of a walk with an empty cache. */
+    static final int THREADS = Materializer.THREADS;
+
+    /**
+     * The working directory ROOT, whose directory listings are cached in
+     * CACHEFILE.
+     *
+     * @param root Working directory.
+     * @param cacheFile The cache file; it need not exist yet.
+     */
+    WorkTree(File root, File cacheFile) {
+        _root = root;
+        _cacheFile = cacheFile;
+        _dirs = new ConcurrentHashMap<>();
+        if (cacheFile.isFile()) {
+            load();
+        }
+    }
+
+    /**
+     * Returns the path of every file under the working directory, sorted.
+     *
+     * @return Relative file paths.
+     */
+    List<String> files() {
+        return files(_dirs.isEmpty() ? THREADS : 1);
+    }
+
+    /**
+     * Returns the path of every file under the working directory, sorted,
+     * walking with THREADS threads.
+     *
+     * @param threads Number of threads; 1 walks on the calling thread.
+     * @return Relative file paths.
+     */
+    List<String> files(int threads) {
+        Walk walk = new Walk("", threads > 1);
+        List<String> files;
+        if (threads > 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                files = pool.invoke(walk);
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            files = walk.compute();
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Writes the cache back to disk if it has changed, dropping the
+     * listings of directories that no longer exist.
+     */
+    void save() {
+        if (!_dirty) {
+            return;
+        }
+        _dirs.keySet().removeIf(dir -> !dir.isEmpty()
+                && !new File(_root, dir).isDirectory());
+        File tmp = GitletUtils.tempSibling(_cacheFile);
+        try (DataOutputStream out = new DataOutputStream(new
+                BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_dirs.size());
+            for (Map.Entry<String, Listing> item : _dirs.entrySet()) {
+                Listing listing = item.getValue();
+                out.writeUTF(item.getKey());
+                out.writeLong(listing._mtime);
+                out.writeLong(listing._recorded);
+                out.writeInt(listing._names.length);
+                for (int i = 0; i < listing._names.length; ++i) {
+                    out.writeUTF(listing._names[i]);
+                    out.writeBoolean(listing._isDir[i]);
+                }
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        try {
+            GitletUtils.moveIntoPlace(tmp, _cacheFile);
+            _dirty = false;
+        } catch (IOException e) {
+            tmp.delete();
+        }
+    }
+
+    /** Reads the cache file; a damaged file is treated as empty. */
+    private void load() {
+        try (DataInputStream in = new DataInputStream(new
+                BufferedInputStream(Files.newInputStream(_cacheFile
+                .toPath())))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            for (int count = in.readInt(); count > 0; count -= 1) {
+                String dir = in.readUTF();
+                long mtime = in.readLong();
+                long recorded = in.readLong();
+                int size = in.readInt();
+                String[] names = new String[size];
+                boolean[] isDir = new boolean[size];
+                for (int i = 0; i < size; ++i) {
+                    names[i] = in.readUTF();
+                    isDir[i] = in.readBoolean();
+                }
+                _dirs.put(dir, new Listing(mtime, recorded, names, isDir));
+            }
+        } catch (IOException e) {
+            _dirs.clear();
+        }
+    }
+
+    /**
+     * Returns the entries of directory DIR, from the cache if DIR has not
+     * changed since it was listed, or null if DIR cannot be read.
+     *
+     * @param dir Relative path of a directory; "" for the root.
+     * @return Its listing.
+     */
+    private Listing listing(String dir) {
+        Path path = dir.isEmpty() ? _root.toPath() : new File(_root, dir)
+                .toPath();
+        long mtime;
+        try {
+            mtime = Files.readAttributes(path, BasicFileAttributes.class)
+                    .lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            return null;
+        }
+        Listing cached = _dirs.get(dir);
+        if (cached != null && cached._mtime == mtime
+                && TimeUnit.NANOSECONDS.toMillis(mtime)
+                < cached._recorded - StatCache.RACY_WINDOW) {
+            return cached;
+        }
+        long recorded = System.currentTimeMillis();
+        List<String> names = new ArrayList<>();
+        List<Boolean> dirs = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+            for (Path entry : entries) {
+                boolean isDir = Files.isDirectory(entry,
+                        LinkOption.NOFOLLOW_LINKS);
+                if (isDir || Files.isRegularFile(entry,
+                        LinkOption.NOFOLLOW_LINKS)) {
+                    names.add(entry.getFileName().toString());
+                    dirs.add(isDir);
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        Metrics.dirListed();
+        boolean[] isDir = new boolean[dirs.size()];
+        for (int i = 0; i < isDir.length; ++i) {
+            isDir[i] = dirs.get(i);
+        }
+        Listing listing = new Listing(mtime, recorded,
+                names.toArray(new String[0]), isDir);
+        _dirs.put(dir, listing);
+        _dirty = true;
+        return listing;
+    }
+
+    /** The walk of one directory and everything below it. */
+    private final class Walk extends RecursiveTask<List<String>> {
+
+        /**
+         * A walk of directory DIR, which forks a task for each
+         * subdirectory iff PARALLEL.
+         *
+         * @param dir Relative path of a directory; "" for the root.
+         * @param parallel True if subdirectories are walked concurrently.
+         */
+        Walk(String dir, boolean parallel) {
+            _dir = dir;
+            _parallel = parallel;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> files = new ArrayList<>();
+            Listing listing = listing(_dir);
+            if (listing == null
+                    || !_dir.isEmpty() && listing.hasGitlet()) {
+                return files;
+            }
+            String prefix = _dir.isEmpty() ? "" : _dir + "/";
+            List<Walk> subdirs = new ArrayList<>();
+            for (int i = 0; i < listing._names.length; ++i) {
+                String name = listing._names[i];
+                if (!listing._isDir[i]) {
+                    files.add(prefix + name);
+                } else if (!(_dir.isEmpty() && name.equals(".gitlet"))) {
+                    subdirs.add(new Walk(prefix + name, _parallel));
+                }
+            }
+            if (_parallel) {
+                for (Walk subdir : invokeAll(subdirs)) {
+                    files.addAll(subdir.join());
+                }
+            } else {
+                for (Walk subdir : subdirs) {
+                    files.addAll(subdir.compute());
+                }
+            }
+            return files;
+        }
+
+        /** Relative path of the directory. */
+        private final String _dir;
+
+        /** True if subdirectories are walked concurrently. */
+        private final boolean _parallel;
+    }
+
+    /** The cached entries of one directory. */
+    private static final class Listing {
+        /**
+         * The entries NAMES of a directory whose modification time was
+         * MTIME when it was listed at RECORDED; ISDIR tells which are
+         * directories.
+         *
+         * @param mtime Modification time in nanoseconds.
+         * @param recorded When it was listed, in milliseconds.
+         * @param names Entry names.
+         * @param isDir True for the entries that are directories.
+         */
+        Listing(long mtime, long recorded, String[] names, boolean[] isDir) {
+            _mtime = mtime;
+            _recorded = recorded;
+            _names = names;
+            _isDir = isDir;
+        }
+
+        /**
+         * Returns true iff the directory holds a .gitlet directory, so
+         * that it belongs to a repository of its own.
+         *
+         * @return True for a nested repository.
+         */
+        boolean hasGitlet() {
+            for (int i = 0; i < _names.length; ++i) {
+                if (_isDir[i] && _names[i].equals(".gitlet")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Modification time in nanoseconds. */
+        private final long _mtime;
+
+        /** When the directory was listed, in milliseconds. */
+        private final long _recorded;
+
+        /** Entry names. */
+        private final String[] _names;
+
+        /** True for the entries that are directories. */
+        private final boolean[] _isDir;
+    }
+
+    /** The working directory. */
+    private final File _root;
+
+    /** The cache file. */
+    private final File _cacheFile;
+
+    /** Cached listings by relative directory path. */
+    private final ConcurrentHashMap<String, Listing> _dirs;
+
+    /** True iff the listings differ from the cache file. */
+    private volatile boolean _dirty;
+}
@@ -0,0 +1,110 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WorkTreeTest {
+
+    /** Sets the modification time of DIR to an hour ago, so that its
+     *  listing is not considered racy. */
+    private static void backdate(File dir) {
+        dir.setLastModified(System.currentTimeMillis() - 3600 * 1000);
+    }
+
+    /** Returns a temporary working directory with files in nested
+     *  directories, a .gitlet directory and a nested repository. */
+    private static File makeTree() throws IOException {
+        File root = Files.createTempDirectory("worktree").toFile();
+        new File(root, "a/b").mkdirs();
+        new File(root, "c").mkdirs();
+        new File(root, ".gitlet").mkdirs();
+        new File(root, "nested/.gitlet").mkdirs();
+        Utils.writeContents(new File(root, "top.txt"), "t");
+        Utils.writeContents(new File(root, "a/x.txt"), "x");
+        Utils.writeContents(new File(root, "a/b/y.txt"), "y");
+        Utils.writeContents(new File(root, "c/z.txt"), "z");
+        Utils.writeContents(new File(root, ".gitlet/HEAD"), "h");
+        Utils.writeContents(new File(root, "nested/n.txt"), "n");
+        return root;
+    }
+
+    @Test
+    public void nestedFilesTest() throws IOException {
+        File root = makeTree();
+        WorkTree tree = new WorkTree(root, new File(root, ".gitlet/cache"));
+        assertEquals(Arrays.asList("a/b/y.txt", "a/x.txt", "c/z.txt",
+                "top.txt"), tree.files(1));
+        assertEquals(tree.files(1), tree.files(4));
+    }
+
+    @Test
+    public void unchangedDirectoryIsNotReadTest() throws IOException {
+        File root = makeTree();
+        File cacheFile = new File(root, ".gitlet/cache");
+        File dir = new File(root, "a/b");
+        backdate(dir);
+        long mtime = dir.lastModified();
+        WorkTree tree = new WorkTree(root, cacheFile);
+        tree.files();
+        tree.save();
+
+        Utils.writeContents(new File(dir, "w.txt"), "w");
+        dir.setLastModified(mtime);
+        assertEquals(Arrays.asList("a/b/y.txt", "a/x.txt", "c/z.txt",
+                "top.txt"), new WorkTree(root, cacheFile).files());
+
+        backdate(dir);
+        assertEquals(Arrays.asList("a/b/w.txt", "a/b/y.txt", "a/x.txt",
+                "c/z.txt", "top.txt"), new WorkTree(root, cacheFile).files());
+    }
+
+    @Test
+    public void symbolicLinksAreSkippedTest() throws IOException {
+        File root = makeTree();
+        Files.createSymbolicLink(new File(root, "link.txt").toPath(),
+                new File(root, "top.txt").toPath());
+        Files.createSymbolicLink(new File(root, "linkdir").toPath(),
+                new File(root, "c").toPath());
+        WorkTree tree = new WorkTree(root, new File(root, ".gitlet/cache"));
+        assertEquals(Arrays.asList("a/b/y.txt", "a/x.txt", "c/z.txt",
+                "top.txt"), tree.files(1));
+    }
+
+    @Test
+    public void deletedDirectoryIsForgottenTest() throws IOException {
+        File root = makeTree();
+        File cacheFile = new File(root, ".gitlet/cache");
+        WorkTree tree = new WorkTree(root, cacheFile);
+        tree.files();
+        tree.save();
+        assertTrue(Utils.readContentsAsString(cacheFile).contains("z.txt"));
+
+        new File(root, "c/z.txt").delete();
+        new File(root, "c").delete();
+        tree = new WorkTree(root, cacheFile);
+        assertEquals(Arrays.asList("a/b/y.txt", "a/x.txt", "top.txt"),
+                tree.files());
+        tree.save();
+        assertFalse(Utils.readContentsAsString(cacheFile)
+                .contains("z.txt"));
+    }
+
+    @Test
+    public void flatNameTest() {
+        String key = Utils.sha1("a/b%2F.txt") + "-a/b%2F.txt";
+        String flat = GitletUtils.flatName(key);
+        assertEquals(-1, flat.indexOf('/'));
+        assertEquals(key, GitletUtils.unflatName(flat));
+        String top = Utils.sha1("f.txt") + "-f.txt";
+        assertEquals(top, GitletUtils.flatName(top));
+        assertEquals(top, GitletUtils.unflatName(top));
+    }
+}